@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Base class for all benchmarks that run a generated grammar in all flavours
+ * and with the options that influence the generated code.
+ */
+@State (Scope.Benchmark)
+public abstract class AbstractGrammarBenchmark
+{
+  /** The minimum size of the synthetic corpus in chars */
+  public static final int CORPUS_SIZE = 256 * 1024;
+
+  @Param ({ "JSON", "JAVA", "C", "PLSQL" })
+  public EBenchmarkGrammar grammar;
+
+  @Param ({ "CLASSIC", "MODERN", "TABLE_DRIVEN", "DFA" })
+  public EFlavour flavour;
+
+  /**
+   * Either "default" or a list of options separated by "+". An option without
+   * value is set to <code>true</code>.
+   */
+  @Param ({ "default", "CACHE_TOKENS", "KEEP_LINE_COLUMN=false", "ERROR_REPORTING=false" })
+  public String options;
+
+  /**
+   * @param sOptions
+   *        The value of the "options" parameter
+   * @return The command line options. Never <code>null</code>.
+   */
+  @Nonnull
+  static String [] toCommandLineOptions (@Nonnull final String sOptions)
+  {
+    if (sOptions.isEmpty () || sOptions.equals ("default"))
+      return new String [0];
+
+    final String [] aParts = sOptions.split ("\\+");
+    final String [] ret = new String [aParts.length];
+    for (int i = 0; i < aParts.length; i++)
+    {
+      final String sPart = aParts[i].trim ();
+      ret[i] = "-" + (sPart.indexOf ('=') >= 0 ? sPart : sPart + "=true");
+    }
+    return ret;
+  }
+
+  /**
+   * @return The grammar generated with the current parameters. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  protected final GeneratedGrammar generate ()
+  {
+    return GeneratedGrammar.generate (grammar, flavour, toCommandLineOptions (options));
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.benchmark;
+
+import java.io.File;
+import java.util.function.IntFunction;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * The grammars of this repository that are used for benchmarking, together
+ * with the production to start parsing and a synthetic corpus.
+ */
+public enum EBenchmarkGrammar
+{
+  JSON ("grammars/JSONParser.jjt", "parse", new String [0], "{\"a\": [1, true, null]}", SyntheticCorpus::createJson),
+  JAVA ("examples/JavaGrammars/Java1.1.jj",
+        "CompilationUnit",
+        new String [] { "main" },
+        "class A { int a; }",
+        SyntheticCorpus::createJava),
+  C ("grammars/CParser.jj", "TranslationUnit", new String [] { "main" }, "int a;", SyntheticCorpus::createC),
+  PLSQL ("grammars/PlSql.jj",
+         "CompilationUnit",
+         new String [] { "main", "reInit" },
+         "BEGIN NULL; END;",
+         SyntheticCorpus::createPlSql);
+
+  /** System property to define the directory of the repository */
+  public static final String SYSTEM_PROPERTY_BASE_DIR = "pgcc.basedir";
+
+  private final String m_sPath;
+  private final String m_sStartProduction;
+  private final String [] m_aStripMethods;
+  private final String m_sMinimalInput;
+  private final IntFunction <String> m_aCorpusCreator;
+
+  EBenchmarkGrammar (@Nonnull final String sPath,
+                     @Nonnull final String sStartProduction,
+                     @Nonnull final String [] aStripMethods,
+                     @Nonnull final String sMinimalInput,
+                     @Nonnull final IntFunction <String> aCorpusCreator)
+  {
+    m_sPath = sPath;
+    m_sStartProduction = sStartProduction;
+    m_aStripMethods = aStripMethods;
+    m_sMinimalInput = sMinimalInput;
+    m_aCorpusCreator = aCorpusCreator;
+  }
+
+  /**
+   * @return The grammar file. Never <code>null</code>.
+   */
+  @Nonnull
+  public File getFile ()
+  {
+    return new File (getBaseDir (), m_sPath);
+  }
+
+  /**
+   * @return The name of the production to start parsing with. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getStartProduction ()
+  {
+    return m_sStartProduction;
+  }
+
+  /**
+   * @return The names of the methods in the parser code that are removed before
+   *         generation. They use constructors that are no longer generated.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public String [] getStripMethods ()
+  {
+    return m_aStripMethods.clone ();
+  }
+
+  /**
+   * @return A small valid input, used to trigger class initialisation. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getMinimalInput ()
+  {
+    return m_sMinimalInput;
+  }
+
+  /**
+   * @param nMinChars
+   *        The minimum number of chars to create.
+   * @return A valid synthetic input of at least the provided size. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String createSyntheticCorpus (final int nMinChars)
+  {
+    return m_aCorpusCreator.apply (nMinChars);
+  }
+
+  /**
+   * @return The directory of the repository. Taken from the system property
+   *         {@value #SYSTEM_PROPERTY_BASE_DIR} or searched in the current
+   *         directory and its parent. Never <code>null</code>.
+   */
+  @Nonnull
+  public static File getBaseDir ()
+  {
+    final String sBaseDir = System.getProperty (SYSTEM_PROPERTY_BASE_DIR);
+    if (sBaseDir != null)
+      return new File (sBaseDir).getAbsoluteFile ();
+
+    for (final String sCandidate : new String [] { ".", ".." })
+    {
+      final File aDir = new File (sCandidate).getAbsoluteFile ();
+      if (new File (aDir, "grammars").isDirectory ())
+        return aDir;
+    }
+    throw new IllegalStateException ("Failed to find the 'grammars' directory. Please set the system property " +
+                                     SYSTEM_PROPERTY_BASE_DIR);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.benchmark;
+
+import com.helger.pgcc.parser.Options;
+import com.helger.pgcc.parser.table.DfaJavaCodeGenerator;
+import com.helger.pgcc.parser.table.TableDrivenJavaCodeGenerator;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * The different flavours of generated Java code.
+ */
+public enum EFlavour
+{
+  /** Classic templates with the generated NFA token manager */
+  CLASSIC,
+  /** Modern templates with the generated NFA token manager */
+  MODERN ("-" + Options.USEROPTION__JAVA_TEMPLATE_TYPE + "=" + Options.JAVA_TEMPLATE_TYPE_MODERN),
+  /** Classic templates with the table driven token manager */
+  TABLE_DRIVEN ("-" + Options.USEROPTION__TOKEN_MANAGER_CODE_GENERATOR + "=" + TableDrivenJavaCodeGenerator.class.getName ()),
+  /** Classic templates with the minimized DFA token manager */
+  DFA ("-" + Options.USEROPTION__TOKEN_MANAGER_CODE_GENERATOR + "=" + DfaJavaCodeGenerator.class.getName ());
+
+  private final String [] m_aOptions;
+
+  EFlavour (@Nonnull final String... aOptions)
+  {
+    m_aOptions = aOptions;
+  }
+
+  /**
+   * @return The command line options that select this flavour. Never
+   *         <code>null</code> but maybe empty.
+   */
+  @Nonnull
+  public String [] getOptions ()
+  {
+    return m_aOptions.clone ();
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import com.helger.pgcc.parser.GenerationContext;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * A grammar that was generated and compiled with a certain flavour and
+ * options. The generated code contains an additional driver class that
+ * implements {@link IBenchmarkDriver}.
+ */
+public final class GeneratedGrammar
+{
+  private static final String DRIVER_CLASS_NAME = "PGCCBenchmarkDriver";
+  private static final Pattern PARSER_NAME = Pattern.compile ("PARSER_BEGIN\\s*\\(\\s*(\\w+)\\s*\\)");
+  private static final Pattern PACKAGE_NAME = Pattern.compile ("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+
+  private final File m_aClassesDir;
+  private final String m_sDriverClassName;
+
+  private GeneratedGrammar (@Nonnull final File aClassesDir, @Nonnull final String sDriverClassName)
+  {
+    m_aClassesDir = aClassesDir;
+    m_sDriverClassName = sDriverClassName;
+  }
+
+  /**
+   * @return The fully qualified name of the generated driver class. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public String getDriverClassName ()
+  {
+    return m_sDriverClassName;
+  }
+
+  /**
+   * Load the generated classes with a new class loader and create a new
+   * driver. No generated class is initialised before this call.
+   *
+   * @return A new driver instance. Never <code>null</code>.
+   */
+  @Nonnull
+  public IBenchmarkDriver createDriver ()
+  {
+    try
+    {
+      final URLClassLoader aLoader = new URLClassLoader (new URL [] { m_aClassesDir.toURI ().toURL () },
+                                                        GeneratedGrammar.class.getClassLoader ());
+      final Class <?> aClass = Class.forName (m_sDriverClassName, true, aLoader);
+      return (IBenchmarkDriver) aClass.getDeclaredConstructor ().newInstance ();
+    }
+    catch (final ReflectiveOperationException | IOException ex)
+    {
+      throw new IllegalStateException ("Failed to load " + m_sDriverClassName, ex);
+    }
+  }
+
+  /**
+   * Remove the method with the provided name from the parser code between
+   * PARSER_BEGIN and PARSER_END.
+   *
+   * @param sGrammar
+   *        Grammar source
+   * @param sMethodName
+   *        Method to remove
+   * @return The modified grammar source
+   */
+  @Nonnull
+  static String stripMethod (@Nonnull final String sGrammar, @Nonnull final String sMethodName)
+  {
+    final int nParserBegin = sGrammar.indexOf ("PARSER_BEGIN");
+    final int nParserEnd = sGrammar.indexOf ("PARSER_END");
+    // Only declarations at the start of a line, so that comments don't match
+    final Matcher aMatcher = Pattern.compile ("^[ \\t]*((public|static|private|protected|final)\\s+)*[\\w<>\\[\\]]+\\s+" +
+                                              sMethodName +
+                                              "\\s*\\(",
+                                              Pattern.MULTILINE)
+                                    .matcher (sGrammar);
+    if (nParserBegin < 0 || !aMatcher.find (nParserBegin) || aMatcher.start () > nParserEnd)
+      return sGrammar;
+
+    int nPos = sGrammar.indexOf ('{', aMatcher.end ());
+    int nDepth = 0;
+    while (nPos < sGrammar.length ())
+    {
+      final char c = sGrammar.charAt (nPos);
+      if (c == '"' || c == '\'')
+      {
+        // Skip string and char literals
+        nPos++;
+        while (sGrammar.charAt (nPos) != c)
+        {
+          if (sGrammar.charAt (nPos) == '\\')
+            nPos++;
+          nPos++;
+        }
+      }
+      else
+        if (c == '{')
+          nDepth++;
+        else
+          if (c == '}')
+          {
+            nDepth--;
+            if (nDepth == 0)
+              break;
+          }
+      nPos++;
+    }
+    return sGrammar.substring (0, aMatcher.start ()) + sGrammar.substring (nPos + 1);
+  }
+
+  private static void _deleteRecursive (@Nonnull final File aFile)
+  {
+    final File [] aChildren = aFile.listFiles ();
+    if (aChildren != null)
+      for (final File aChild : aChildren)
+        _deleteRecursive (aChild);
+    aFile.delete ();
+  }
+
+  @Nonnull
+  private static String _group (@Nonnull final Pattern aPattern, @Nonnull final String sText, final String sDefault)
+  {
+    final Matcher aMatcher = aPattern.matcher (sText);
+    return aMatcher.find () ? aMatcher.group (1) : sDefault;
+  }
+
+  @Nonnull
+  private static String _createDriverSource (@Nonnull final String sPackage,
+                                             @Nonnull final String sParserName,
+                                             @Nonnull final EBenchmarkGrammar eGrammar,
+                                             @Nonnull final EFlavour eFlavour,
+                                             @Nonnull final String sCharStreamName)
+  {
+    final String sNewStream;
+    if (eFlavour == EFlavour.MODERN)
+      sNewStream = "new " + sCharStreamName + " (new StringProvider (sInput))";
+    else
+      sNewStream = "new " + sCharStreamName + " (new java.io.StringReader (sInput))";
+
+    final StringBuilder aSB = new StringBuilder ();
+    if (!sPackage.isEmpty ())
+      aSB.append ("package ").append (sPackage).append (";\n\n");
+    aSB.append ("public final class ")
+       .append (DRIVER_CLASS_NAME)
+       .append (" implements ")
+       .append (IBenchmarkDriver.class.getName ())
+       .append (" {\n");
+    aSB.append ("  public int lex (final String sInput) throws Exception {\n")
+       .append ("    final ")
+       .append (sParserName)
+       .append ("TokenManager aTM = new ")
+       .append (sParserName)
+       .append ("TokenManager (")
+       .append (sNewStream)
+       .append (");\n")
+       .append ("    int nCount = 0;\n")
+       .append ("    while (aTM.getNextToken ().kind != 0)\n")
+       .append ("      nCount++;\n")
+       .append ("    return nCount;\n")
+       .append ("  }\n\n");
+    aSB.append ("  public Object parse (final String sInput) throws Exception {\n")
+       .append ("    final ")
+       .append (sParserName)
+       .append (" aParser = new ")
+       .append (sParserName)
+       .append (" (new ")
+       .append (sParserName)
+       .append ("TokenManager (")
+       .append (sNewStream)
+       .append ("));\n")
+       .append ("    aParser.")
+       .append (eGrammar.getStartProduction ())
+       .append (" ();\n")
+       .append ("    return aParser;\n")
+       .append ("  }\n");
+    aSB.append ("}\n");
+    return aSB.toString ();
+  }
+
+  private static void _compile (@Nonnull final File aSourceDir, @Nonnull final File aClassesDir) throws IOException
+  {
+    final List <String> aArgs = new ArrayList <> ();
+    aArgs.add ("-d");
+    aArgs.add (aClassesDir.getAbsolutePath ());
+    aArgs.add ("-classpath");
+    aArgs.add (System.getProperty ("java.class.path"));
+    aArgs.add ("-encoding");
+    aArgs.add ("ISO-8859-1");
+    aArgs.add ("-proc:none");
+    aArgs.add ("-nowarn");
+    aArgs.add ("-Xlint:none");
+    try (final Stream <java.nio.file.Path> aStream = Files.walk (aSourceDir.toPath ()))
+    {
+      aStream.filter (p -> p.toString ().endsWith (".java")).forEach (p -> aArgs.add (p.toString ()));
+    }
+
+    final JavaCompiler aCompiler = ToolProvider.getSystemJavaCompiler ();
+    if (aCompiler == null)
+      throw new IllegalStateException ("No Java compiler is available - please run on a JDK");
+
+    final ByteArrayOutputStream aErrors = new ByteArrayOutputStream ();
+    if (aCompiler.run (null, aErrors, aErrors, aArgs.toArray (new String [0])) != 0)
+      throw new IllegalStateException ("Failed to compile the generated code in " +
+                                       aSourceDir +
+                                       ":\n" +
+                                       aErrors.toString (StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Generate, extend and compile the provided grammar.
+   *
+   * @param eGrammar
+   *        The grammar to generate. May not be <code>null</code>.
+   * @param eFlavour
+   *        The flavour of the generated code. May not be <code>null</code>.
+   * @param aExtraOptions
+   *        Additional command line options like <code>-CACHE_TOKENS=true</code>.
+   *        May not be <code>null</code>.
+   * @return The generated grammar. Never <code>null</code>.
+   */
+  @Nonnull
+  public static GeneratedGrammar generate (@Nonnull final EBenchmarkGrammar eGrammar,
+                                           @Nonnull final EFlavour eFlavour,
+                                           @Nonnull final String... aExtraOptions)
+  {
+    try
+    {
+      final File aWorkDir = Files.createTempDirectory ("pgcc-benchmark-" + eGrammar.name ().toLowerCase () + "-")
+                                 .toFile ();
+      Runtime.getRuntime ().addShutdownHook (new Thread ( () -> _deleteRecursive (aWorkDir)));
+      final File aSourceDir = new File (aWorkDir, "src");
+      final File aClassesDir = new File (aWorkDir, "classes");
+      aClassesDir.mkdirs ();
+
+      // Remove the methods that don't compile with the current templates
+      String sGrammar = new String (Files.readAllBytes (eGrammar.getFile ().toPath ()), StandardCharsets.ISO_8859_1);
+      for (final String sMethod : eGrammar.getStripMethods ())
+        sGrammar = stripMethod (sGrammar, sMethod);
+      final File aGrammarFile = new File (aWorkDir, eGrammar.getFile ().getName ());
+      Files.write (aGrammarFile.toPath (), sGrammar.getBytes (StandardCharsets.ISO_8859_1));
+
+      final String sPackage = _group (PACKAGE_NAME, sGrammar, "");
+      final String sParserName = _group (PARSER_NAME, sGrammar, null);
+      final File aPackageDir = sPackage.isEmpty () ? aSourceDir : new File (aSourceDir, sPackage.replace ('.', '/'));
+
+      final List <String> aOptions = new ArrayList <> ();
+      aOptions.add ("-OUTPUT_DIRECTORY=" + aPackageDir.getAbsolutePath ());
+      aOptions.add ("-JDK_VERSION=1.8");
+      for (final String s : eFlavour.getOptions ())
+        aOptions.add (s);
+      for (final String s : aExtraOptions)
+        aOptions.add (s);
+
+      final PrintStream aSilent = new PrintStream (new ByteArrayOutputStream (), true, StandardCharsets.UTF_8);
+      try (final GenerationContext aCtx = new GenerationContext ())
+      {
+        aCtx.setOutput (aSilent, aSilent);
+
+        File aJJFile = aGrammarFile;
+        if (aGrammarFile.getName ().endsWith (".jjt"))
+        {
+          final List <String> aTreeOptions = new ArrayList <> (aOptions);
+          aTreeOptions.add (aGrammarFile.getAbsolutePath ());
+          if (aCtx.jjtree (aTreeOptions.toArray (new String [0])).isFailure ())
+            throw new IllegalStateException ("JJTree failed on " + aGrammarFile);
+          final String sName = aGrammarFile.getName ();
+          aJJFile = new File (aPackageDir, sName.substring (0, sName.length () - 1));
+        }
+
+        aOptions.add (aJJFile.getAbsolutePath ());
+        if (aCtx.mainProgram (aOptions.toArray (new String [0])).isFailure ())
+          throw new IllegalStateException ("Failed to generate " + aJJFile);
+      }
+
+      final String sCharStreamName = new File (aPackageDir, "JavaCharStream.java").exists () ? "JavaCharStream"
+                                                                                              : "SimpleCharStream";
+      Files.write (new File (aPackageDir, DRIVER_CLASS_NAME + ".java").toPath (),
+                   _createDriverSource (sPackage, sParserName, eGrammar, eFlavour, sCharStreamName).getBytes (StandardCharsets.ISO_8859_1));
+
+      _compile (aSourceDir, aClassesDir);
+      return new GeneratedGrammar (aClassesDir, sPackage.isEmpty () ? DRIVER_CLASS_NAME : sPackage + "." + DRIVER_CLASS_NAME);
+    }
+    catch (final IOException ex)
+    {
+      throw new UncheckedIOException (ex);
+    }
+  }
+}
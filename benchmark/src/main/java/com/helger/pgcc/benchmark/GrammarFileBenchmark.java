@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.helger.pgcc.parser.JavaCCParser;
+import com.helger.pgcc.parser.JavaCCParserTokenManager;
+import com.helger.pgcc.parser.JavaCharStream;
+import com.helger.pgcc.parser.Main;
+import com.helger.pgcc.parser.StringProvider;
+
+/**
+ * Measures the lexer and parser generated from <code>JavaCC.jj</code> (the
+ * grammar of PGCC itself, built with the modern templates) on the real grammar
+ * files of this repository.
+ */
+@BenchmarkMode (Mode.Throughput)
+@OutputTimeUnit (TimeUnit.SECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+@State (Scope.Benchmark)
+public class GrammarFileBenchmark
+{
+  @Param ({ "JavaCC.jj", "PlSql.jj", "CParser.jj", "CobolParser.jj" })
+  public String file;
+
+  private String m_sContent;
+
+  @Setup (Level.Trial)
+  public void setup () throws Exception
+  {
+    final File aFile = new File (new File (EBenchmarkGrammar.getBaseDir (), "grammars"), file);
+    m_sContent = new String (Files.readAllBytes (aFile.toPath ()), StandardCharsets.ISO_8859_1);
+    // Fail early if the file is not valid
+    parse ();
+  }
+
+  @Benchmark
+  public int lex ()
+  {
+    final JavaCCParserTokenManager aTM = new JavaCCParserTokenManager (new JavaCharStream (new StringProvider (m_sContent)));
+    int nCount = 0;
+    while (aTM.getNextToken ().kind != 0)
+      nCount++;
+    return nCount;
+  }
+
+  @Benchmark
+  public Object parse () throws Exception
+  {
+    // The parser stores the grammar in global state
+    Main.reInitAll ();
+    final JavaCCParser aParser = new JavaCCParser (new StringProvider (m_sContent));
+    aParser.javacc_input ();
+    return aParser;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.benchmark;
+
+import java.util.Random;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Creates synthetic inputs of a given size for the benchmarked grammars. The
+ * inputs are deterministic, so that the results of different runs can be
+ * compared.
+ */
+public final class SyntheticCorpus
+{
+  private SyntheticCorpus ()
+  {}
+
+  @Nonnull
+  public static String createJson (final int nMinChars)
+  {
+    final Random aRandom = new Random (4711);
+    final StringBuilder aSB = new StringBuilder (nMinChars + 256);
+    aSB.append ("{\n  \"items\": [\n");
+    int nIndex = 0;
+    while (aSB.length () < nMinChars)
+    {
+      if (nIndex > 0)
+        aSB.append (",\n");
+      aSB.append ("    {\"id\": ")
+         .append (nIndex)
+         .append (", \"name\": \"item ")
+         .append (nIndex)
+         .append ("\", \"price\": ")
+         .append (aRandom.nextInt (10000))
+         .append ('.')
+         .append (aRandom.nextInt (100))
+         .append (", \"delta\": -")
+         .append (aRandom.nextInt (50))
+         .append (", \"tags\": [\"red\", \"green\", \"blue\"], \"active\": ")
+         .append (aRandom.nextBoolean ())
+         .append (", \"parent\": null}");
+      nIndex++;
+    }
+    aSB.append ("\n  ]\n}\n");
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  public static String createJava (final int nMinChars)
+  {
+    final Random aRandom = new Random (4711);
+    final StringBuilder aSB = new StringBuilder (nMinChars + 1024);
+    aSB.append ("package bench;\n\nimport java.util.Vector;\n\n");
+    int nIndex = 0;
+    while (aSB.length () < nMinChars)
+    {
+      aSB.append ("/** Class number ")
+         .append (nIndex)
+         .append (" */\n")
+         .append ("class Bench")
+         .append (nIndex)
+         .append (" extends Object {\n")
+         .append ("  private int count = ")
+         .append (aRandom.nextInt (1000))
+         .append (";\n")
+         .append ("  private Vector list = new Vector ();\n\n")
+         .append ("  public int compute (int a, int b) {\n")
+         .append ("    int result = a + b * ")
+         .append (aRandom.nextInt (100))
+         .append (";\n")
+         .append ("    if (result > 100) {\n      result -= 100;\n    } else {\n      result = result << 1;\n    }\n")
+         .append ("    for (int i = 0; i < 10; i++) {\n      count += i; // accumulate\n    }\n")
+         .append ("    String s = \"value \" + result;\n")
+         .append ("    list.addElement (s);\n")
+         .append ("    return result > 0 ? result : -result;\n")
+         .append ("  }\n}\n\n");
+      nIndex++;
+    }
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  public static String createC (final int nMinChars)
+  {
+    final Random aRandom = new Random (4711);
+    final StringBuilder aSB = new StringBuilder (nMinChars + 1024);
+    aSB.append ("int counter;\n\n");
+    int nIndex = 0;
+    while (aSB.length () < nMinChars)
+    {
+      aSB.append ("/* Function number ")
+         .append (nIndex)
+         .append (" */\n")
+         .append ("static int compute")
+         .append (nIndex)
+         .append (" (int a, int b)\n{\n")
+         .append ("  int result;\n  int i;\n")
+         .append ("  result = a + b * ")
+         .append (aRandom.nextInt (100))
+         .append (";\n")
+         .append ("  if (result > 100) {\n    result = result - 100;\n  } else {\n    result = result * 2;\n  }\n")
+         .append ("  while (a < b) {\n    a++;\n  }\n")
+         .append ("  for (i = 0; i < 10; i++) {\n    counter += i;\n  }\n")
+         .append ("  return result;\n}\n\n");
+      nIndex++;
+    }
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  public static String createPlSql (final int nMinChars)
+  {
+    final Random aRandom = new Random (4711);
+    final StringBuilder aSB = new StringBuilder (nMinChars + 1024);
+    aSB.append ("PROCEDURE bench IS\n  v_count NUMBER := 0;\n  v_name VARCHAR2(100);\nBEGIN\n");
+    int nIndex = 0;
+    while (aSB.length () < nMinChars)
+    {
+      aSB.append ("  -- Block number ")
+         .append (nIndex)
+         .append ('\n')
+         .append ("  v_count := v_count + ")
+         .append (aRandom.nextInt (100))
+         .append (";\n")
+         .append ("  IF v_count > 100 THEN\n    v_name := 'large';\n  ELSE\n    v_name := 'small';\n  END IF;\n")
+         .append ("  SELECT name INTO v_name FROM employees WHERE id = v_count;\n")
+         .append ("  UPDATE employees SET salary = salary * 2 WHERE id = v_count;\n");
+      nIndex++;
+    }
+    aSB.append ("END;\n");
+    return aSB.toString ();
+  }
+}
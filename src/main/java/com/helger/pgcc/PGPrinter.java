@@ -38,6 +38,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.util.function.Consumer;
 
 import com.helger.base.enforce.ValueEnforcer;
 import com.helger.base.rt.StackTraceHelper;
@@ -86,6 +87,39 @@ public final class PGPrinter
     }
   }
 
+  /**
+   * A printer that passes all lines on. Used to connect the printers of
+   * different class loaders.
+   *
+   * @since 2.0.0
+   */
+  public static final class ForwardingPrinter implements IPrinter
+  {
+    private final Consumer <String> m_aPrintln;
+    private final Runnable m_aFlush;
+
+    public ForwardingPrinter (@Nonnull final Consumer <String> aPrintln, @Nonnull final Runnable aFlush)
+    {
+      m_aPrintln = aPrintln;
+      m_aFlush = aFlush;
+    }
+
+    public void close ()
+    {
+      // The target printer is closed by its owner
+    }
+
+    public void println (@Nonnull final String s)
+    {
+      m_aPrintln.accept (s);
+    }
+
+    public void flush ()
+    {
+      m_aFlush.run ();
+    }
+  }
+
   private static IPrinter s_aOut = new PSPrinter (System.out, false);
   private static IPrinter s_aErr = new PSPrinter (System.err, false);
 
@@ -105,6 +139,26 @@ public final class PGPrinter
     s_aErr = aPrinterError;
   }
 
+  /**
+   * @return The printer for informational output. Never <code>null</code>.
+   * @since 2.0.0
+   */
+  @Nonnull
+  public static IPrinter getInfoPrinter ()
+  {
+    return s_aOut;
+  }
+
+  /**
+   * @return The printer for warnings and errors. Never <code>null</code>.
+   * @since 2.0.0
+   */
+  @Nonnull
+  public static IPrinter getErrorPrinter ()
+  {
+    return s_aErr;
+  }
+
   public static void debug (@Nonnull final String sMsg)
   {
     s_aOut.println (sMsg);
@@ -41,6 +41,7 @@ import java.nio.charset.Charset;
 import com.helger.base.state.ESuccess;
 import com.helger.io.file.FileHelper;
 import com.helger.pgcc.PGPrinter;
+import com.helger.pgcc.parser.GenerationContext;
 import com.helger.pgcc.parser.JavaCCErrors;
 import com.helger.pgcc.parser.JavaCCGlobals;
 import com.helger.pgcc.parser.JavaCCParser;
@@ -130,9 +131,17 @@ public final class JJDocMain
    * @throws Exception
    *         in case of error
    */
-  @SuppressWarnings ("resource")
   @Nonnull
   public static ESuccess mainProgram (final String [] args) throws Exception
+  {
+    if (!GenerationContext.isRunningInContext ())
+      return GenerationContext.runPooled (aCtx -> aCtx.jjdoc (args));
+    return _mainProgram (args);
+  }
+
+  @SuppressWarnings ("resource")
+  @Nonnull
+  private static ESuccess _mainProgram (final String [] args) throws Exception
   {
     Main.reInitAll ();
     JJDocOptions.init ();
@@ -72,6 +72,7 @@ import com.helger.pgcc.jjtree.output.JJTreeStateCpp;
 import com.helger.pgcc.jjtree.output.JJTreeStateJava;
 import com.helger.pgcc.jjtree.output.NodeFilesCpp;
 import com.helger.pgcc.jjtree.output.NodeFilesJava;
+import com.helger.pgcc.parser.GenerationContext;
 import com.helger.pgcc.parser.JavaCCGlobals;
 import com.helger.pgcc.parser.Options;
 
@@ -148,6 +149,14 @@ public class JJTree
    */
   @Nonnull
   public ESuccess main (final String [] args)
+  {
+    if (!GenerationContext.isRunningInContext ())
+      return GenerationContext.runPooled (aCtx -> aCtx.jjtree (args));
+    return _main (args);
+  }
+
+  @Nonnull
+  private ESuccess _main (final String [] args)
   {
     // initialize static state for allowing repeat runs without exiting
     ASTNodeDescriptor.reInit ();
@@ -34,9 +34,6 @@
 package com.helger.pgcc.main;
 
 import java.io.File;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
 
 import com.helger.io.file.SimpleFileIO;
 import com.helger.pgcc.PGPrinter;
@@ -48,6 +45,7 @@ import com.helger.pgcc.parser.MetaParseException;
 import com.helger.pgcc.parser.Options;
 import com.helger.pgcc.parser.Semanticize;
 import com.helger.pgcc.parser.TokenizerData;
+import com.helger.pgcc.parser.TokenizerDfa;
 
 public class JavaCCInterpreter
 {
@@ -105,94 +103,41 @@ public class JavaCCInterpreter
 
   private static void _tokenize (final TokenizerData td, final String input)
   {
-    // First match the string literals.
+    // Compile once, so that the per char work is a plain array lookup
+    final TokenizerDfa dfa = TokenizerDfa.compile (td, Options.isIgnoreCase ());
     final int input_size = input.length ();
     int curPos = 0;
-    int curLexState = td.m_defaultLexState;
-    Set <Integer> curStates = new HashSet <> ();
-    Set <Integer> newStates = new HashSet <> ();
+    int curLexState = dfa.getDefaultLexState ();
     while (curPos < input_size)
     {
       final int beg = curPos;
       int matchedPos = beg;
       int matchedKind = Integer.MAX_VALUE;
-      int nfaStartState = td.m_initialStates.get (Integer.valueOf (curLexState)).intValue ();
 
-      char c = input.charAt (curPos);
-      if (Options.isIgnoreCase ())
-        c = Character.toLowerCase (c);
-      final int key = curLexState << 16 | c;
-      final List <String> literals = td.m_literalSequence.get (Integer.valueOf (key));
-      if (literals != null)
+      // Run the DFA as long as possible and remember the last match
+      int state = dfa.getStartState (curLexState);
+      while (state != TokenizerDfa.NO_STATE && curPos < input_size)
       {
-        // We need to go in order so that the longest match works.
-        int litIndex = 0;
-        for (final String s : literals)
+        state = dfa.getNextState (state, input.charAt (curPos));
+        if (state == TokenizerDfa.NO_STATE)
+          break;
+        final int kind = dfa.getAcceptKind (state);
+        if (kind != Integer.MAX_VALUE)
         {
-          int index = 1;
-          // See which literal matches.
-          while (index < s.length () && curPos + index < input_size)
-          {
-            c = input.charAt (curPos + index);
-            if (Options.isIgnoreCase ())
-              c = Character.toLowerCase (c);
-            if (c != s.charAt (index))
-              break;
-            index++;
-          }
-          if (index == s.length ())
-          {
-            // Found a string literal match.
-            matchedKind = td.m_literalKinds.get (Integer.valueOf (key)).get (litIndex).intValue ();
-            matchedPos = curPos + index - 1;
-            nfaStartState = td.m_kindToNfaStartState.get (Integer.valueOf (matchedKind)).intValue ();
-            curPos += index;
-            break;
-          }
-          litIndex++;
+          matchedKind = kind;
+          matchedPos = curPos;
         }
+        curPos++;
       }
 
-      if (nfaStartState != -1)
+      final int wildcardKind = dfa.getWildcardKind (curLexState);
+      if (matchedPos == beg && matchedKind > wildcardKind)
       {
-        // We need to add the composite states first.
-        int kind = Integer.MAX_VALUE;
-        curStates.add (Integer.valueOf (nfaStartState));
-        curStates.addAll (td.m_nfa.get (Integer.valueOf (nfaStartState)).m_compositeStates);
-        do
-        {
-          c = input.charAt (curPos);
-          if (Options.isIgnoreCase ())
-            c = Character.toLowerCase (c);
-          for (final int state : curStates)
-          {
-            final TokenizerData.NfaState nfaState = td.m_nfa.get (Integer.valueOf (state));
-            if (nfaState.m_characters.contains (Character.valueOf (c)))
-            {
-              if (kind > nfaState.m_kind)
-                kind = nfaState.m_kind;
-              newStates.addAll (nfaState.m_nextStates);
-            }
-          }
-          final Set <Integer> tmp = newStates;
-          newStates = curStates;
-          curStates = tmp;
-          newStates.clear ();
-          if (kind != Integer.MAX_VALUE)
-          {
-            matchedKind = kind;
-            matchedPos = curPos;
-            kind = Integer.MAX_VALUE;
-          }
-        } while (!curStates.isEmpty () && ++curPos < input_size);
-      }
-      if (matchedPos == beg && matchedKind > td.m_wildcardKind.get (Integer.valueOf (curLexState)).intValue ())
-      {
-        matchedKind = td.m_wildcardKind.get (Integer.valueOf (curLexState)).intValue ();
+        matchedKind = wildcardKind;
       }
       if (matchedKind != Integer.MAX_VALUE)
       {
-        final TokenizerData.MatchInfo matchInfo = td.m_allMatches.get (Integer.valueOf (matchedKind));
+        final TokenizerData.MatchInfo matchInfo = dfa.getMatchInfo (matchedKind);
         if (matchInfo.m_action != null)
         {
           PGPrinter.error ("Actions not implemented (yet) in intererpreted mode");
@@ -209,7 +154,7 @@ public class JavaCCInterpreter
       }
       else
       {
-        PGPrinter.error ("Encountered token error at char: " + input.charAt (curPos));
+        PGPrinter.error ("Encountered token error at char: " + input.charAt (beg));
         return;
       }
     }
@@ -109,6 +109,7 @@ public class OutputFile implements AutoCloseable
     m_aFile = file;
     m_sCompatibleVersion = compatibleVersion;
     m_aOptions = options;
+    JavaCCGlobals.addGeneratedFile (file);
 
     if (file.exists ())
     {
@@ -66,6 +66,7 @@ package com.helger.pgcc.output.cpp;
 import static com.helger.pgcc.parser.JavaCCGlobals.CU_TO_INSERTION_POINT_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.ORDERED_NAME_TOKENS;
 import static com.helger.pgcc.parser.JavaCCGlobals.REXPR_LIST;
+import static com.helger.pgcc.parser.JavaCCGlobals.addGeneratedFile;
 import static com.helger.pgcc.parser.JavaCCGlobals.getIdString;
 import static com.helger.pgcc.parser.JavaCCGlobals.printToken;
 import static com.helger.pgcc.parser.JavaCCGlobals.printTokenSetup;
@@ -124,8 +125,9 @@ public class OtherFilesGenCPP
     FilesCpp.gen_ParseException ();
     FilesCpp.gen_ErrorHandler ();
 
-    final Writer w = FileHelper.getBufferedWriter (new File (Options.getOutputDirectory (), s_cu_name + "Constants.h"),
-                                                   Options.getOutputEncoding ());
+    final File aConstantsFile = new File (Options.getOutputDirectory (), s_cu_name + "Constants.h");
+    addGeneratedFile (aConstantsFile);
+    final Writer w = FileHelper.getBufferedWriter (aConstantsFile, Options.getOutputEncoding ());
     if (w == null)
     {
       JavaCCErrors.semantic_error ("Could not open file " + s_cu_name + "Constants.h for writing.");
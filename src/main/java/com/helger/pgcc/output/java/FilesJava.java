@@ -37,6 +37,7 @@ import static com.helger.pgcc.parser.JavaCCGlobals.CU_TO_INSERTION_POINT_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.printToken;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_ccol;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cline;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_name;
 import static com.helger.pgcc.parser.JavaCCParserConstants.PACKAGE;
 import static com.helger.pgcc.parser.JavaCCParserConstants.SEMICOLON;
 
@@ -50,6 +51,7 @@ import com.helger.annotation.WillNotClose;
 import com.helger.pgcc.EJDKVersion;
 import com.helger.pgcc.PGVersion;
 import com.helger.pgcc.output.OutputFile;
+import com.helger.pgcc.parser.CodeGenerator;
 import com.helger.pgcc.parser.JavaCCErrors;
 import com.helger.pgcc.parser.Options;
 import com.helger.pgcc.utils.OutputFileGenerator;
@@ -137,7 +139,10 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "CharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
+                                                                       Options.USEROPTION__KEYWORD_HASH }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -164,7 +169,11 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "AbstractCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
+                                                                       Options.USEROPTION__KEYWORD_HASH,
+                                                                       Options.USEROPTION__BYTE_CHAR_STREAM }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -192,7 +201,8 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "JavaCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -220,7 +230,8 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "SimpleCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -242,12 +253,75 @@ public class FilesJava
     }
   }
 
+  public static void gen_ByteCharStream (final IJavaResourceTemplateLocations locations)
+  {
+    final File file = new File (Options.getOutputDirectory (), "ByteCharStream.java");
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       charStreamVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        final OutputFileGenerator generator = new OutputFileGenerator (locations.getByteCharStreamTemplateResourceUrl (), options);
+        generator.setReadFromClasspath (s_bReadFromClassPath);
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file ByteCharStream.java for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  public static void gen_CharSequenceCharStream (final IJavaResourceTemplateLocations locations)
+  {
+    final File file = new File (Options.getOutputDirectory (), "CharSequenceCharStream.java");
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       charStreamVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
+                                                                       Options.USEROPTION__KEYWORD_HASH,
+                                                                       Options.USEROPTION__JAVA_TEMPLATE_TYPE }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        // The modern template type reads from a Provider instead of a Reader
+        options.put ("JAVA_MODERN", Boolean.valueOf (Options.getJavaTemplateType ().equals (Options.JAVA_TEMPLATE_TYPE_MODERN)));
+        final OutputFileGenerator generator = new OutputFileGenerator (locations.getCharSequenceCharStreamTemplateResourceUrl (), options);
+        generator.setReadFromClasspath (s_bReadFromClassPath);
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file CharSequenceCharStream.java for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
   public static void gen_JavaModernFiles ()
   {
     // Abstraction for char reader
     _genMiscFile ("Provider.java", "/templates/stream/java/modern/Provider.template");
     _genMiscFile ("StringProvider.java", "/templates/stream/java/modern/StringProvider.template");
     _genMiscFile ("StreamProvider.java", "/templates/stream/java/modern/StreamProvider.template");
+    _genMiscFile ("MappedFileProvider.java", "/templates/stream/java/modern/MappedFileProvider.template");
   }
 
   private static void _genMiscFile (final String fileName, final String templatePath) throws Error
@@ -278,7 +352,13 @@ public class FilesJava
   public static void gen_ParseException (final IJavaResourceTemplateLocations locations)
   {
     final File file = new File (Options.getOutputDirectory (), "ParseException.java");
-    try (final OutputFile outputFile = new OutputFile (file, parseExceptionVersion, new String [] { Options.USEROPTION__KEEP_LINE_COLUMN }))
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       parseExceptionVersion,
+                                                       new String [] { Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
+                                                                       Options.USEROPTION__RECYCLE_TOKENS,
+                                                                       Options.USEROPTION__PARSE_EXCEPTION_STACK_TRACE }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -334,6 +414,8 @@ public class FilesJava
                                                        tokenVersion,
                                                        new String [] { Options.USEROPTION__TOKEN_EXTENDS,
                                                                        Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN,
                                                                        Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
     {
       if (!outputFile.needToWrite ())
@@ -356,12 +438,74 @@ public class FilesJava
     }
   }
 
+  public static void gen_TokenBuffer (final IJavaResourceTemplateLocations locations)
+  {
+    final File file = new File (Options.getOutputDirectory (), "TokenBuffer.java");
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       tokenVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        final OutputFileGenerator generator = new OutputFileGenerator (locations.getTokenBufferTemplateResourceUrl (), options);
+        generator.setReadFromClasspath (s_bReadFromClassPath);
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file TokenBuffer.java for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  public static void gen_TokenSpliterator (final IJavaResourceTemplateLocations locations)
+  {
+    final String sFilename = s_cu_name + "TokenSpliterator.java";
+    final File file = new File (Options.getOutputDirectory (), sFilename);
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       tokenManagerVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__CHAR_SEQUENCE_CHAR_STREAM,
+                                                                       Options.USEROPTION__JAVA_TEMPLATE_TYPE }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        options.put ("parserName", s_cu_name);
+        options.put ("charStreamName", CodeGenerator.getCharStreamName ());
+        options.put ("JAVA_MODERN", Boolean.valueOf (Options.getJavaTemplateType ().equals (Options.JAVA_TEMPLATE_TYPE_MODERN)));
+        final OutputFileGenerator generator = new OutputFileGenerator (locations.getTokenSpliteratorTemplateResourceUrl (), options);
+        generator.setReadFromClasspath (s_bReadFromClassPath);
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file " + sFilename + " for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
   public static void gen_TokenManager (final IJavaResourceTemplateLocations locations)
   {
     final File file = new File (Options.getOutputDirectory (), "TokenManager.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        tokenManagerVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
     {
       if (!outputFile.needToWrite ())
         return;
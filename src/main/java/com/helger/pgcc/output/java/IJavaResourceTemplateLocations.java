@@ -49,5 +49,13 @@ public interface IJavaResourceTemplateLocations
 
   String getSimpleCharStreamTemplateResourceUrl ();
 
+  String getByteCharStreamTemplateResourceUrl ();
+
+  String getCharSequenceCharStreamTemplateResourceUrl ();
+
+  String getTokenBufferTemplateResourceUrl ();
+
+  String getTokenSpliteratorTemplateResourceUrl ();
+
   String getParseExceptionTemplateResourceUrl ();
 }
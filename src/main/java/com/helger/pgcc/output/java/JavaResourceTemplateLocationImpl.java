@@ -76,6 +76,26 @@ public class JavaResourceTemplateLocationImpl implements IJavaResourceTemplateLo
     return "/templates/stream/java/SimpleCharStream.template";
   }
 
+  public String getByteCharStreamTemplateResourceUrl ()
+  {
+    return "/templates/stream/java/ByteCharStream.template";
+  }
+
+  public String getCharSequenceCharStreamTemplateResourceUrl ()
+  {
+    return "/templates/stream/java/CharSequenceCharStream.template";
+  }
+
+  public String getTokenBufferTemplateResourceUrl ()
+  {
+    return "/templates/TokenBuffer.template";
+  }
+
+  public String getTokenSpliteratorTemplateResourceUrl ()
+  {
+    return "/templates/TokenSpliterator.template";
+  }
+
   public String getParseExceptionTemplateResourceUrl ()
   {
     return "/templates/ParseException.template";
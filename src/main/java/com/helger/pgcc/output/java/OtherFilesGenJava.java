@@ -67,6 +67,7 @@ import static com.helger.pgcc.parser.JavaCCGlobals.CU_TO_INSERTION_POINT_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.ORDERED_NAME_TOKENS;
 import static com.helger.pgcc.parser.JavaCCGlobals.REXPR_LIST;
 import static com.helger.pgcc.parser.JavaCCGlobals.addEscapes;
+import static com.helger.pgcc.parser.JavaCCGlobals.addGeneratedFile;
 import static com.helger.pgcc.parser.JavaCCGlobals.getIdString;
 import static com.helger.pgcc.parser.JavaCCGlobals.printToken;
 import static com.helger.pgcc.parser.JavaCCGlobals.printTokenSetup;
@@ -125,6 +126,8 @@ public class OtherFilesGenJava
       FilesJava.gen_TokenMgrError (templateLoc);
       FilesJava.gen_ParseException (templateLoc);
       FilesJava.gen_Token (templateLoc);
+      if (Options.isTokenBuffer ())
+        FilesJava.gen_TokenBuffer (templateLoc);
     }
 
     if (Options.isUserTokenManager ())
@@ -140,16 +143,34 @@ public class OtherFilesGenJava
 
         if (!Options.isJavaUserCharStream ())
         {
-          FilesJava.gen_AbstractCharStream (templateLoc);
-          if (Options.isJavaUnicodeEscape ())
-            FilesJava.gen_JavaCharStream (templateLoc);
+          if (Options.isCharSequenceCharStream ())
+          {
+            // Reads directly from the input - no buffer management needed
+            FilesJava.gen_CharSequenceCharStream (templateLoc);
+          }
           else
-            FilesJava.gen_SimpleCharStream (templateLoc);
+          {
+            FilesJava.gen_AbstractCharStream (templateLoc);
+            if (Options.isJavaUnicodeEscape ())
+              FilesJava.gen_JavaCharStream (templateLoc);
+            else
+              if (Options.isByteCharStream ())
+                FilesJava.gen_ByteCharStream (templateLoc);
+              else
+                FilesJava.gen_SimpleCharStream (templateLoc);
+          }
         }
       }
 
-    final Writer w = FileHelper.getBufferedWriter (new File (Options.getOutputDirectory (), s_cu_name + CONSTANTS_FILENAME_SUFFIX),
-                                                   Options.getOutputEncoding ());
+    if (Options.isTokenSpliterator ())
+    {
+      // Depends on the token manager of this grammar
+      FilesJava.gen_TokenSpliterator (templateLoc);
+    }
+
+    final File aConstantsFile = new File (Options.getOutputDirectory (), s_cu_name + CONSTANTS_FILENAME_SUFFIX);
+    addGeneratedFile (aConstantsFile);
+    final Writer w = FileHelper.getBufferedWriter (aConstantsFile, Options.getOutputEncoding ());
     if (w == null)
     {
       JavaCCErrors.semantic_error ("Could not open file " + s_cu_name + CONSTANTS_FILENAME_SUFFIX + " for writing.");
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.helger.base.state.ESuccess;
+import com.helger.pgcc.CPG;
+import com.helger.pgcc.PGPrinter;
+import com.helger.pgcc.utils.OptionInfo;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * Generate many grammars at once within a single JVM. All <code>.jjt</code>
+ * files are first run through JJTree, and the resulting grammar is then
+ * handed to PGCC. <code>.jj</code> files are handed to PGCC directly. The
+ * grammars are generated concurrently on a work-stealing pool, where each
+ * worker thread uses its own {@link GenerationContext}.
+ */
+public final class BatchMain
+{
+  /** Batch option: the number of worker threads */
+  public static final String BATCHOPTION__THREADS = "BATCH_THREADS";
+  /** Batch option: always print the output of the generators */
+  public static final String BATCHOPTION__VERBOSE = "BATCH_VERBOSE";
+
+  /**
+   * The result of generating a single grammar.
+   */
+  public static final class GrammarResult
+  {
+    private final File m_aGrammar;
+    private final ESuccess m_eSuccess;
+    private final long m_nDurationNanos;
+    private final String m_sOutput;
+
+    GrammarResult (@Nonnull final File aGrammar,
+                   @Nonnull final ESuccess eSuccess,
+                   final long nDurationNanos,
+                   @Nonnull final String sOutput)
+    {
+      m_aGrammar = aGrammar;
+      m_eSuccess = eSuccess;
+      m_nDurationNanos = nDurationNanos;
+      m_sOutput = sOutput;
+    }
+
+    /**
+     * @return The grammar file. Never <code>null</code>.
+     */
+    @Nonnull
+    public File getGrammar ()
+    {
+      return m_aGrammar;
+    }
+
+    /**
+     * @return Whether generation succeeded. Never <code>null</code>.
+     */
+    @Nonnull
+    public ESuccess getSuccess ()
+    {
+      return m_eSuccess;
+    }
+
+    /**
+     * @return The time it took to generate this grammar in milliseconds.
+     */
+    public long getDurationMillis ()
+    {
+      return TimeUnit.NANOSECONDS.toMillis (m_nDurationNanos);
+    }
+
+    /**
+     * @return The console output of JJTree and PGCC for this grammar. Never
+     *         <code>null</code>.
+     */
+    @Nonnull
+    public String getOutput ()
+    {
+      return m_sOutput;
+    }
+  }
+
+  private BatchMain ()
+  {}
+
+  private static void _showHelpMessage ()
+  {
+    PGPrinter.info ("Usage:");
+    PGPrinter.info ("    " + CPG.CMDLINE_NAME + "batch option-settings grammar-files-or-globs...");
+    PGPrinter.info ();
+    PGPrinter.info ("Each grammar file must end with \".jj\" or \".jjt\". Arguments containing");
+    PGPrinter.info ("one of the characters '*', '?', '[' or '{' are glob patterns, e.g.");
+    PGPrinter.info ("\"grammars/*.jj\" or \"src/**/*.jjt\".");
+    PGPrinter.info ();
+    PGPrinter.info ("All option settings are passed to JJTree and " + CPG.APP_NAME + " for every grammar.");
+    PGPrinter.info ("If OUTPUT_DIRECTORY is set, the files of each grammar are generated into the");
+    PGPrinter.info ("sub directory OUTPUT_DIRECTORY/<grammar name> (a numeric suffix is added for");
+    PGPrinter.info ("duplicate names). Otherwise they are generated next to the grammar file.");
+    PGPrinter.info ("JJTREE_OUTPUT_DIRECTORY and OUTPUT_FILE are not supported.");
+    PGPrinter.info ();
+    PGPrinter.info ("Additional batch options:");
+    PGPrinter.info ("    " + BATCHOPTION__THREADS + "=n   The number of worker threads (default: number of CPUs)");
+    PGPrinter.info ("    " + BATCHOPTION__VERBOSE + "     Print the output of every grammar, not only of failed ones");
+    PGPrinter.info ();
+    PGPrinter.info ("EXAMPLE:");
+    PGPrinter.info ("    " + CPG.CMDLINE_NAME + "batch -" + BATCHOPTION__THREADS + "=4 -OUTPUT_DIRECTORY=target/generated \"grammars/*.jj*\"");
+    PGPrinter.info ();
+  }
+
+  @Nonnull
+  private static String _getOptionName (@Nonnull final String sArg)
+  {
+    int nEnd = sArg.length ();
+    final int nEquals = sArg.indexOf ('=');
+    if (nEquals > 0)
+      nEnd = nEquals;
+    final int nColon = sArg.indexOf (':');
+    if (nColon > 0 && nColon < nEnd)
+      nEnd = nColon;
+    return sArg.substring (1, nEnd).toUpperCase (Locale.US);
+  }
+
+  @Nonnull
+  private static String _getOptionValue (@Nonnull final String sArg)
+  {
+    return sArg.substring (_getOptionName (sArg).length () + 2);
+  }
+
+  private static boolean _isGlob (@Nonnull final String sArg)
+  {
+    for (final char c : sArg.toCharArray ())
+      if (c == '*' || c == '?' || c == '[' || c == '{')
+        return true;
+    return false;
+  }
+
+  private static boolean _isGrammar (@Nonnull final String sFilename)
+  {
+    return sFilename.endsWith (".jj") || sFilename.endsWith (".jjt");
+  }
+
+  /**
+   * Resolve a single file name or glob pattern.
+   *
+   * @param sArg
+   *        The file name or glob pattern
+   * @param aTarget
+   *        The set to add the grammar files to
+   * @return {@link ESuccess#FAILURE} if a plain file name does not exist or is
+   *         no grammar
+   * @throws IOException
+   *         if a directory cannot be traversed
+   */
+  @Nonnull
+  static ESuccess resolveGrammarFiles (@Nonnull final String sArg, @Nonnull final Set <File> aTarget) throws IOException
+  {
+    final String sPattern = sArg.replace (File.separatorChar, '/');
+    if (!_isGlob (sPattern))
+    {
+      final File aFile = new File (sArg);
+      if (!aFile.isFile ())
+      {
+        PGPrinter.error ("Grammar file \"" + sArg + "\" does not exist.");
+        return ESuccess.FAILURE;
+      }
+      if (!_isGrammar (aFile.getName ()))
+      {
+        PGPrinter.error ("File \"" + sArg + "\" is neither a .jj nor a .jjt file.");
+        return ESuccess.FAILURE;
+      }
+      aTarget.add (aFile);
+      return ESuccess.SUCCESS;
+    }
+
+    // Everything before the first path segment with a wildcard is the base
+    // directory
+    final String [] aSegments = sPattern.split ("/");
+    final StringBuilder aBase = new StringBuilder ();
+    int nFirstGlob = 0;
+    while (!_isGlob (aSegments[nFirstGlob]))
+    {
+      aBase.append (aSegments[nFirstGlob]).append ('/');
+      nFirstGlob++;
+    }
+    final String sRest = String.join ("/", List.of (aSegments).subList (nFirstGlob, aSegments.length));
+
+    final Path aBasePath = Paths.get (aBase.length () == 0 ? "." : aBase.toString ());
+    if (!Files.isDirectory (aBasePath))
+      return ESuccess.SUCCESS;
+
+    final PathMatcher aMatcher = FileSystems.getDefault ().getPathMatcher ("glob:" + sRest);
+    final int nMaxDepth = sRest.contains ("**") ? Integer.MAX_VALUE : aSegments.length - nFirstGlob;
+    final List <File> aMatches = new ArrayList <> ();
+    try (final Stream <Path> aStream = Files.walk (aBasePath, nMaxDepth))
+    {
+      aStream.filter (Files::isRegularFile)
+             .filter (p -> _isGrammar (p.getFileName ().toString ()))
+             .filter (p -> aMatcher.matches (aBasePath.relativize (p)))
+             .map (p -> p.normalize ().toFile ())
+             .sorted ()
+             .forEach (aMatches::add);
+    }
+    aTarget.addAll (aMatches);
+    return ESuccess.SUCCESS;
+  }
+
+  @Nonnull
+  private static String _getBaseName (@Nonnull final File aGrammar)
+  {
+    final String sName = aGrammar.getName ();
+    return sName.substring (0, sName.lastIndexOf ('.'));
+  }
+
+  /**
+   * @param sArg
+   *        A command line option like <code>-MULTI=true</code>.
+   * @return <code>true</code> if the option is a PGCC option, and not an
+   *         option that is only known to JJTree.
+   */
+  private static boolean _isPGCCOption (@Nonnull final String sArg)
+  {
+    String sName = sArg.charAt (0) == '-' ? sArg.substring (1) : sArg;
+    final int nIndex1 = sName.indexOf ('=');
+    final int nIndex2 = sName.indexOf (':');
+    final int nIndex = nIndex1 < 0 ? nIndex2 : nIndex2 < 0 ? nIndex1 : Math.min (nIndex1, nIndex2);
+    if (nIndex >= 0)
+      sName = sName.substring (0, nIndex);
+    sName = sName.toUpperCase (Locale.US);
+    for (final OptionInfo aOption : Options.getUserOptions ())
+    {
+      if (aOption.getName ().equals (sName))
+        return true;
+      // Boolean options can be disabled with "-NO..."
+      if (nIndex < 0 && sName.equals ("NO" + aOption.getName ()))
+        return true;
+    }
+    return false;
+  }
+
+  @Nonnull
+  private static String [] _args (@Nonnull final List <String> aOptions,
+                                  @Nonnull final File aOutputDir,
+                                  @Nonnull final File aGrammar)
+  {
+    final List <String> ret = new ArrayList <> (aOptions);
+    ret.add ("-" + Options.USEROPTION__OUTPUT_DIRECTORY + "=" + aOutputDir.getPath ());
+    ret.add (aGrammar.getPath ());
+    return ret.toArray (new String [0]);
+  }
+
+  @Nonnull
+  private static GrammarResult _generate (@Nonnull final GenerationContext aCtx,
+                                          @Nonnull final File aGrammar,
+                                          @Nonnull final List <String> aOptions,
+                                          @Nonnull final File aRealOutputDir)
+  {
+    final long nStart = System.nanoTime ();
+    final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+    ESuccess eSuccess;
+    try (final PrintStream aPS = new PrintStream (aBAOS, true, StandardCharsets.UTF_8))
+    {
+      aCtx.setOutput (aPS, aPS);
+      try
+      {
+        if (aGrammar.getName ().endsWith (".jjt"))
+        {
+          eSuccess = aCtx.jjtree (_args (aOptions, aRealOutputDir, aGrammar));
+          if (eSuccess.isSuccess ())
+          {
+            // JJTree only copies the options of the grammar file into the
+            // created grammar, so the command line options are passed again -
+            // except for the ones only known to JJTree
+            final List <String> aPGCCOptions = new ArrayList <> ();
+            for (final String sOption : aOptions)
+              if (_isPGCCOption (sOption))
+                aPGCCOptions.add (sOption);
+            final File aJJ = new File (aRealOutputDir, _getBaseName (aGrammar) + ".jj");
+            eSuccess = aCtx.mainProgram (_args (aPGCCOptions, aRealOutputDir, aJJ));
+          }
+        }
+        else
+          eSuccess = aCtx.mainProgram (_args (aOptions, aRealOutputDir, aGrammar));
+      }
+      catch (final Exception ex)
+      {
+        ex.printStackTrace (aPS);
+        eSuccess = ESuccess.FAILURE;
+      }
+    }
+    return new GrammarResult (aGrammar,
+                              eSuccess,
+                              System.nanoTime () - nStart,
+                              new String (aBAOS.toByteArray (), StandardCharsets.UTF_8));
+  }
+
+  private static long _getTotalLength (@Nonnull final List <File> aGrammars, @Nonnull final List <Integer> aIndices)
+  {
+    long ret = 0;
+    for (final Integer aIndex : aIndices)
+      ret += aGrammars.get (aIndex.intValue ()).length ();
+    return ret;
+  }
+
+  /**
+   * Generate all provided grammars concurrently.
+   *
+   * @param aGrammars
+   *        The grammar files to generate. Each file must end with
+   *        <code>.jj</code> or <code>.jjt</code>.
+   * @param aOptions
+   *        The option settings (like <code>-JDK_VERSION=1.8</code>) to apply to
+   *        all grammars. OUTPUT_DIRECTORY must not be contained.
+   * @param aOutputDir
+   *        The base output directory. If <code>null</code> the files are
+   *        generated next to each grammar, and grammars in the same directory
+   *        are generated one after the other, as they share the support
+   *        classes. Otherwise the files are generated into a sub directory per
+   *        grammar. The sub directory is named after the grammar, and
+   *        grammars with the same name get a numeric suffix (like
+   *        <code>grammar_2</code>) in the order of the provided grammars.
+   * @param nThreads
+   *        The number of worker threads. Must be &gt; 0.
+   * @return The results in the order of the provided grammars. Never
+   *         <code>null</code>.
+   */
+  @Nonnull
+  public static List <GrammarResult> generate (@Nonnull final List <File> aGrammars,
+                                               @Nonnull final List <String> aOptions,
+                                               @Nullable final File aOutputDir,
+                                               final int nThreads)
+  {
+    if (nThreads <= 0)
+      throw new IllegalArgumentException ("Thread count must be > 0: " + nThreads);
+
+    // Determine the output directory of each grammar up front
+    final List <File> aOutputDirs = new ArrayList <> (aGrammars.size ());
+    final Set <String> aUsedNames = new HashSet <> ();
+    for (final File aGrammar : aGrammars)
+      if (aOutputDir == null)
+        aOutputDirs.add (aGrammar.toPath ().toAbsolutePath ().normalize ().getParent ().toFile ());
+      else
+      {
+        // Grammars with the same name must not overwrite each other
+        final String sBaseName = _getBaseName (aGrammar);
+        String sName = sBaseName;
+        int nSuffix = 2;
+        while (!aUsedNames.add (sName.toLowerCase (Locale.US)))
+          sName = sBaseName + "_" + nSuffix++;
+        aOutputDirs.add (new File (aOutputDir, sName));
+      }
+
+    // One context per worker thread, so that the generator classes are only
+    // loaded once per thread
+    final ConcurrentLinkedQueue <GenerationContext> aAllContexts = new ConcurrentLinkedQueue <> ();
+    final ThreadLocal <GenerationContext> aContexts = ThreadLocal.withInitial ( () -> {
+      final GenerationContext ret = new GenerationContext ();
+      aAllContexts.add (ret);
+      return ret;
+    });
+
+    final ForkJoinPool aPool = new ForkJoinPool (nThreads);
+    try
+    {
+      // Grammars with the same output directory share the support classes
+      // like Token.java, so they are generated one after the other
+      final Map <File, List <Integer>> aGroups = new LinkedHashMap <> ();
+      for (int i = 0; i < aGrammars.size (); i++)
+        aGroups.computeIfAbsent (aOutputDirs.get (i), k -> new ArrayList <> ()).add (Integer.valueOf (i));
+
+      // Start with the largest groups to get a better balance at the end
+      final List <List <Integer>> aOrdered = new ArrayList <> (aGroups.values ());
+      aOrdered.sort (Comparator.comparingLong ((final List <Integer> aGroup) -> _getTotalLength (aGrammars, aGroup))
+                               .reversed ());
+      final GrammarResult [] aResults = new GrammarResult [aGrammars.size ()];
+      final List <Future <?>> aFutures = new ArrayList <> (aOrdered.size ());
+      for (final List <Integer> aGroup : aOrdered)
+        aFutures.add (aPool.submit ( () -> {
+          for (final Integer aIndex : aGroup)
+          {
+            final int nIndex = aIndex.intValue ();
+            aResults[nIndex] = _generate (aContexts.get (), aGrammars.get (nIndex), aOptions, aOutputDirs.get (nIndex));
+          }
+        }));
+
+      for (final Future <?> aFuture : aFutures)
+        aFuture.get ();
+      return new ArrayList <> (Arrays.asList (aResults));
+    }
+    catch (final InterruptedException ex)
+    {
+      Thread.currentThread ().interrupt ();
+      throw new IllegalStateException ("Interrupted while generating grammars", ex);
+    }
+    catch (final ExecutionException ex)
+    {
+      throw new IllegalStateException ("Failed to generate grammars", ex.getCause ());
+    }
+    finally
+    {
+      aPool.shutdown ();
+      for (final GenerationContext aCtx : aAllContexts)
+        aCtx.close ();
+    }
+  }
+
+  /**
+   * A main program that generates all grammars. Calls
+   * <code>System.exit</code> with return code 0 for success and 1 for error!
+   *
+   * @param args
+   *        arguments to main
+   * @throws IOException
+   *         on IO error
+   * @see #mainProgram(String...) for a version that does NOT call
+   *      <code>System.exit</code>
+   */
+  public static void main (final String... args) throws IOException
+  {
+    final ESuccess eSuccess = mainProgram (args);
+    System.exit (eSuccess.isSuccess () ? 0 : 1);
+  }
+
+  /**
+   * Generate all grammars provided on the command line and print the timing of
+   * each grammar.
+   *
+   * @param args
+   *        main arguments
+   * @return {@link ESuccess#SUCCESS} if all grammars were generated
+   *         successfully.
+   * @throws IOException
+   *         on IO error
+   */
+  @Nonnull
+  public static ESuccess mainProgram (final String... args) throws IOException
+  {
+    JavaCCGlobals.bannerLine (CPG.APP_NAME + " Batch", "");
+
+    if (args.length == 0)
+    {
+      PGPrinter.info ();
+      _showHelpMessage ();
+      return ESuccess.FAILURE;
+    }
+
+    final List <String> aOptions = new ArrayList <> ();
+    final Set <File> aGrammars = new LinkedHashSet <> ();
+    File aOutputDir = null;
+    int nThreads = Runtime.getRuntime ().availableProcessors ();
+    boolean bVerbose = false;
+    for (final String sArg : args)
+    {
+      if (Options.isOption (sArg))
+      {
+        final String sName = _getOptionName (sArg);
+        if (sName.equals (BATCHOPTION__THREADS))
+        {
+          try
+          {
+            nThreads = Integer.parseInt (_getOptionValue (sArg));
+          }
+          catch (final RuntimeException ex)
+          {
+            nThreads = -1;
+          }
+          if (nThreads <= 0)
+          {
+            PGPrinter.error ("Option \"" + sArg + "\" requires a positive number.");
+            return ESuccess.FAILURE;
+          }
+        }
+        else
+          if (sName.equals (BATCHOPTION__VERBOSE))
+            bVerbose = true;
+          else
+            if (sName.equals (Options.USEROPTION__OUTPUT_DIRECTORY))
+              aOutputDir = new File (_getOptionValue (sArg));
+            else
+              if (sName.equals ("JJTREE_OUTPUT_DIRECTORY") || sName.equals ("OUTPUT_FILE"))
+              {
+                PGPrinter.error ("Option \"" + sArg + "\" is not supported in batch mode.");
+                return ESuccess.FAILURE;
+              }
+              else
+                aOptions.add (sArg);
+      }
+      else
+        if (resolveGrammarFiles (sArg, aGrammars).isFailure ())
+          return ESuccess.FAILURE;
+    }
+
+    if (aGrammars.isEmpty ())
+    {
+      PGPrinter.error ("No grammar files found.");
+      return ESuccess.FAILURE;
+    }
+
+    final long nStart = System.nanoTime ();
+    final List <GrammarResult> aResults = generate (new ArrayList <> (aGrammars), aOptions, aOutputDir, nThreads);
+    final long nTotalMillis = TimeUnit.NANOSECONDS.toMillis (System.nanoTime () - nStart);
+
+    int nFailed = 0;
+    long nSumMillis = 0;
+    for (final GrammarResult aResult : aResults)
+    {
+      final boolean bFailed = aResult.getSuccess ().isFailure ();
+      if (bFailed)
+        nFailed++;
+      nSumMillis += aResult.getDurationMillis ();
+      if (bVerbose || bFailed)
+        PGPrinter.info (aResult.getOutput ());
+      PGPrinter.info (String.format (Locale.US,
+                                     "%-6s %7d ms  %s",
+                                     bFailed ? "FAILED" : "OK",
+                                     Long.valueOf (aResult.getDurationMillis ()),
+                                     aResult.getGrammar ().getPath ()));
+    }
+    PGPrinter.info ();
+    PGPrinter.info ("Generated " +
+                    aResults.size () +
+                    " grammar(s) on " +
+                    nThreads +
+                    " thread(s) in " +
+                    nTotalMillis +
+                    " ms (sum of all grammars: " +
+                    nSumMillis +
+                    " ms) - " +
+                    nFailed +
+                    " failed.");
+    return nFailed == 0 ? ESuccess.SUCCESS : ESuccess.FAILURE;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Partitions the complete char range into equivalence classes. Two characters
+ * end up in the same class if and only if every refining set either contains
+ * both of them or none of them. The automatons built on top of this only need
+ * one transition per class instead of one per character.
+ */
+public final class CharClassPartition
+{
+  private static final int CHAR_COUNT = Character.MAX_VALUE + 1;
+
+  private final char [] m_classOf = new char [CHAR_COUNT];
+  private final int [] m_classSize = new int [CHAR_COUNT];
+  // Scratch space for refine - always all false outside of it
+  private final boolean [] m_seen = new boolean [CHAR_COUNT];
+  private int m_classCount = 1;
+
+  public CharClassPartition ()
+  {
+    // Initially all characters are in class 0
+    m_classSize[0] = CHAR_COUNT;
+  }
+
+  /**
+   * Split all existing classes so that the provided characters are separated
+   * from the ones not contained.
+   *
+   * @param chars
+   *        The characters to separate. May contain duplicates.
+   */
+  public void refine (@Nonnull final char [] chars)
+  {
+    // Count how many of the chars fall into each class, without duplicates
+    final int [] hits = new int [m_classCount];
+    int distinct = 0;
+    for (final char c : chars)
+      if (!m_seen[c])
+      {
+        m_seen[c] = true;
+        hits[m_classOf[c]]++;
+        distinct++;
+      }
+    if (distinct == 0)
+      return;
+
+    // Only classes that are partially covered need to be split
+    final int [] newClass = new int [m_classCount];
+    for (int i = 0; i < hits.length; i++)
+      newClass[i] = hits[i] > 0 && hits[i] < m_classSize[i] ? m_classCount++ : i;
+
+    for (final char c : chars)
+      if (m_seen[c])
+      {
+        m_seen[c] = false;
+        final int old = m_classOf[c];
+        final int nu = newClass[old];
+        if (nu != old)
+        {
+          m_classOf[c] = (char) nu;
+          m_classSize[old]--;
+          m_classSize[nu]++;
+        }
+      }
+  }
+
+  public void refine (@Nonnull final Collection <Character> chars)
+  {
+    final char [] arr = new char [chars.size ()];
+    int i = 0;
+    for (final Character c : chars)
+      arr[i++] = c.charValue ();
+    refine (arr);
+  }
+
+  /**
+   * Map every character to the class of its lower case variant. This mirrors
+   * the global IGNORE_CASE handling that lower cases the input before matching.
+   */
+  public void foldToLowerCase ()
+  {
+    for (int c = 0; c < CHAR_COUNT; c++)
+    {
+      final char lower = Character.toLowerCase ((char) c);
+      if (lower != c)
+      {
+        m_classSize[m_classOf[c]]--;
+        m_classOf[c] = m_classOf[lower];
+        m_classSize[m_classOf[c]]++;
+      }
+    }
+  }
+
+  /**
+   * @return The number of equivalence classes. Always &ge; 1. After
+   *         {@link #foldToLowerCase()} some classes may be empty.
+   */
+  public int getClassCount ()
+  {
+    return m_classCount;
+  }
+
+  public int getClassOf (final char c)
+  {
+    return m_classOf[c];
+  }
+
+  /**
+   * @return A copy of the char to class mapping, indexed by char.
+   */
+  @Nonnull
+  public char [] getClassMap ()
+  {
+    return m_classOf.clone ();
+  }
+
+  /**
+   * Get a representative character for each class.
+   *
+   * @return An array indexed by class id. Empty classes map to -1.
+   */
+  @Nonnull
+  public int [] getRepresentatives ()
+  {
+    final int [] ret = new int [m_classCount];
+    Arrays.fill (ret, -1);
+    for (int c = CHAR_COUNT - 1; c >= 0; c--)
+      ret[m_classOf[c]] = c;
+    return ret;
+  }
+}
@@ -36,6 +36,7 @@
 
 package com.helger.pgcc.parser;
 
+import static com.helger.pgcc.parser.JavaCCGlobals.CU_TO_INSERTION_POINT_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.addUnicodeEscapes;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_name;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_jjtreeGenerated;
@@ -166,6 +167,63 @@ public class CodeGenerator
     genCodeNewLine ();
   }
 
+  /**
+   * Print the package declaration and all imports of the compilation unit
+   * before the parser class.
+   *
+   * @return <code>true</code> if at least one import was printed
+   */
+  public final boolean genPackageAndImports ()
+  {
+    boolean bHasImport = false;
+    int nIndex = 0;
+    int i = 1;
+    for (;;)
+    {
+      if (CU_TO_INSERTION_POINT_1.size () <= nIndex)
+        break;
+
+      int nKind = CU_TO_INSERTION_POINT_1.get (nIndex).kind;
+      if (nKind == JavaCCParserConstants.PACKAGE || nKind == JavaCCParserConstants.IMPORT)
+      {
+        if (nKind == JavaCCParserConstants.IMPORT)
+          bHasImport = true;
+
+        for (; i < CU_TO_INSERTION_POINT_1.size (); i++)
+        {
+          nKind = CU_TO_INSERTION_POINT_1.get (i).kind;
+          if (nKind == JavaCCParserConstants.SEMICOLON ||
+              nKind == JavaCCParserConstants.ABSTRACT ||
+              nKind == JavaCCParserConstants.FINAL ||
+              nKind == JavaCCParserConstants.PRIVATE ||
+              nKind == JavaCCParserConstants.PROTECTED ||
+              nKind == JavaCCParserConstants.PUBLIC ||
+              nKind == JavaCCParserConstants.CLASS ||
+              nKind == JavaCCParserConstants.INTERFACE ||
+              nKind == JavaCCParserConstants.ENUM)
+          {
+            setLineAndCol (CU_TO_INSERTION_POINT_1.get (nIndex).beginLine,
+                           CU_TO_INSERTION_POINT_1.get (nIndex).beginColumn);
+            int j = nIndex;
+            for (; j < i; j++)
+            {
+              printToken (CU_TO_INSERTION_POINT_1.get (j));
+            }
+            if (nKind == JavaCCParserConstants.SEMICOLON)
+              printToken (CU_TO_INSERTION_POINT_1.get (j));
+            genCodeNewLine ();
+            break;
+          }
+        }
+        ++i;
+        nIndex = i;
+      }
+      else
+        break;
+    }
+    return bHasImport;
+  }
+
   public final void saveOutput (final String fileName)
   {
     if (getOutputLanguage ().hasIncludeFile ())
@@ -206,6 +264,7 @@ public class CodeGenerator
 
   public final void saveOutput (final String fileName, final StringBuilder sb)
   {
+    JavaCCGlobals.addGeneratedFile (new File (fileName));
     try (final NonBlockingBufferedWriter fw = FileHelper.getBufferedWriter (new File (fileName), Options.getOutputEncoding ()))
     {
       fw.write (sb.toString ());
@@ -519,7 +578,11 @@ public class CodeGenerator
       // User interface name
       return "CharStream";
     }
-    return Options.isJavaUnicodeEscape () ? "JavaCharStream" : "SimpleCharStream";
+    if (Options.isJavaUnicodeEscape ())
+      return "JavaCharStream";
+    if (Options.isByteCharStream ())
+      return "ByteCharStream";
+    return Options.isCharSequenceCharStream () ? "CharSequenceCharStream" : "SimpleCharStream";
   }
 
   public void writeTemplate (final String name, final Map <String, Object> options) throws IOException
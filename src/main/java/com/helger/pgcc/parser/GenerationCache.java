@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.helger.base.string.StringHex;
+import com.helger.pgcc.CPG;
+import com.helger.pgcc.PGPrinter;
+import com.helger.pgcc.PGVersion;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * The generation cache allows to skip the complete generation if neither the
+ * grammar file, nor the options nor the version of PGCC changed since the last
+ * successful run.<br>
+ * The cache file <code>.&lt;grammar file name&gt;.pgcc-cache</code> in the
+ * output directory is a UTF-8 text file with a comment header line, followed
+ * by
+ * <ul>
+ * <li>one line <code>key=&lt;hash&gt;</code> - the hex encoded SHA-256 hash
+ * over the PGCC version, all options sorted by name as
+ * <code>NAME=value</code> and the bytes of the grammar file</li>
+ * <li>one line <code>file=&lt;path&gt;</code> per generated file, relative to
+ * the output directory and with '/' as the separator</li>
+ * </ul>
+ * The cache is only considered valid if the key matches and all of the listed
+ * files still exist.
+ */
+final class GenerationCache
+{
+  private static final String HEADER = "# " + CPG.APP_NAME + " generation cache - do not edit";
+  private static final String PREFIX_KEY = "key=";
+  private static final String PREFIX_FILE = "file=";
+
+  private GenerationCache ()
+  {}
+
+  /**
+   * Get the cache file for a grammar.
+   *
+   * @param aOutputDir
+   *        The output directory from the command line
+   * @param aGrammarFile
+   *        The grammar file
+   * @return The cache file. Never <code>null</code>.
+   */
+  @Nonnull
+  static File getCacheFile (@Nonnull final File aOutputDir, @Nonnull final File aGrammarFile)
+  {
+    return new File (aOutputDir, "." + aGrammarFile.getName () + ".pgcc-cache");
+  }
+
+  /**
+   * Create the hash over all inputs of the generation.
+   *
+   * @param aGrammarFile
+   *        The grammar file
+   * @param aOptions
+   *        The effective options before the grammar is read
+   * @return The hex encoded hash. Never <code>null</code>.
+   * @throws IOException
+   *         If the grammar file cannot be read
+   */
+  @Nonnull
+  static String createKey (@Nonnull final File aGrammarFile, @Nonnull final Map <String, Object> aOptions) throws IOException
+  {
+    final MessageDigest aDigest;
+    try
+    {
+      aDigest = MessageDigest.getInstance ("SHA-256");
+    }
+    catch (final NoSuchAlgorithmException ex)
+    {
+      throw new IOException ("No SHA-256 implementation", ex);
+    }
+
+    aDigest.update (PGVersion.VERSION_NUMBER.getBytes (StandardCharsets.UTF_8));
+    aDigest.update ((byte) 0);
+    // Sort the options so that the order is stable
+    for (final Map.Entry <String, Object> aEntry : new TreeMap <> (aOptions).entrySet ())
+    {
+      aDigest.update ((aEntry.getKey () + "=" + aEntry.getValue ()).getBytes (StandardCharsets.UTF_8));
+      aDigest.update ((byte) 0);
+    }
+    aDigest.update (Files.readAllBytes (aGrammarFile.toPath ()));
+    return StringHex.getHexEncoded (aDigest.digest ());
+  }
+
+  /**
+   * Check if the cache is valid.
+   *
+   * @param aCacheFile
+   *        The cache file
+   * @param sKey
+   *        The key of the current inputs
+   * @return <code>true</code> if the cache file contains the provided key and
+   *         all generated files still exist.
+   */
+  static boolean isUpToDate (@Nonnull final File aCacheFile, @Nonnull final String sKey)
+  {
+    if (!aCacheFile.isFile ())
+      return false;
+
+    final List <String> aLines;
+    try
+    {
+      aLines = Files.readAllLines (aCacheFile.toPath (), StandardCharsets.UTF_8);
+    }
+    catch (final IOException ex)
+    {
+      return false;
+    }
+
+    boolean bKeyMatches = false;
+    int nFiles = 0;
+    for (final String sLine : aLines)
+      if (sLine.startsWith (PREFIX_KEY))
+        bKeyMatches = sLine.substring (PREFIX_KEY.length ()).equals (sKey);
+      else
+        if (sLine.startsWith (PREFIX_FILE))
+        {
+          final File aFile = new File (aCacheFile.getParentFile (), sLine.substring (PREFIX_FILE.length ()));
+          if (!aFile.isFile ())
+            return false;
+          nFiles++;
+        }
+    return bKeyMatches && nFiles > 0;
+  }
+
+  /**
+   * Remove an outdated cache file, so that a failed generation does not leave
+   * it behind.
+   *
+   * @param aCacheFile
+   *        The cache file
+   */
+  static void remove (@Nonnull final File aCacheFile)
+  {
+    if (aCacheFile.exists () && !aCacheFile.delete ())
+      PGPrinter.warn ("Failed to delete generation cache file " + aCacheFile.getPath ());
+  }
+
+  /**
+   * Write the cache file after a successful generation.
+   *
+   * @param aCacheFile
+   *        The cache file
+   * @param sKey
+   *        The key of the inputs
+   * @param aGeneratedFiles
+   *        All files written or kept by the generation
+   */
+  static void write (@Nonnull final File aCacheFile,
+                     @Nonnull final String sKey,
+                     @Nonnull final Collection <File> aGeneratedFiles)
+  {
+    final File aBaseDir = aCacheFile.getAbsoluteFile ().getParentFile ();
+    final List <String> aLines = new ArrayList <> ();
+    aLines.add (HEADER);
+    aLines.add (PREFIX_KEY + sKey);
+    for (final File aFile : aGeneratedFiles)
+      aLines.add (PREFIX_FILE + aBaseDir.toPath ().relativize (aFile.getAbsoluteFile ().toPath ()).toString ().replace ('\\', '/'));
+
+    try
+    {
+      aBaseDir.mkdirs ();
+      Files.write (aCacheFile.toPath (), aLines, StandardCharsets.UTF_8);
+    }
+    catch (final IOException ex)
+    {
+      // Not fatal - the next run will simply generate again
+      PGPrinter.warn ("Failed to write generation cache file " + aCacheFile.getPath (), ex);
+    }
+  }
+}
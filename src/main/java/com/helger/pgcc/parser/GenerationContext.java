@@ -0,0 +1,396 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Consumer;
+
+import com.helger.base.functional.IThrowingFunction;
+import com.helger.base.state.ESuccess;
+import com.helger.pgcc.PGPrinter;
+import com.helger.pgcc.PGPrinter.IPrinter;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * A generation context that allows to run PGCC, JJTree and JJDoc on several
+ * threads at once within a single JVM.<br>
+ * The generators keep their state in static fields (see
+ * {@link Main#reInitAll()}). Each generation context loads its own copy of the
+ * generator classes, and therefore has its own copy of that state. All other
+ * classes (JDK, ph-commons etc.) are shared with the calling class loader.<br>
+ * A single context can be used for any number of runs, so that the generator
+ * classes are only loaded once. The methods of one context are synchronized -
+ * use one context per thread to generate grammars concurrently.<br>
+ * The static entry points {@link Main#mainProgram(String...)},
+ * {@link com.helger.pgcc.jjtree.JJTree#main(String[])} and
+ * {@link com.helger.pgcc.jjdoc.JJDocMain#mainProgram(String[])} run each call
+ * in an idle context of a shared pool (see {@link #runPooled(IThrowingFunction)}).
+ *
+ * @since 2.0.0
+ */
+public final class GenerationContext implements AutoCloseable
+{
+  private static final String ISOLATED_PACKAGE_PREFIX = "com.helger.pgcc.";
+  private static final String CLASS_LOADER_NAME = "pgcc-generation-context";
+
+  /** The idle contexts of the static entry points, most recently used first */
+  private static final Deque <GenerationContext> POOL = new ConcurrentLinkedDeque <> ();
+
+  /**
+   * Class loader that defines all generator classes itself (child first) and
+   * delegates everything else to the parent.
+   */
+  private static final class IsolatingClassLoader extends ClassLoader
+  {
+    static
+    {
+      registerAsParallelCapable ();
+    }
+
+    private final ProtectionDomain m_aProtectionDomain;
+
+    IsolatingClassLoader (@Nonnull final ClassLoader aParent)
+    {
+      super (CLASS_LOADER_NAME, aParent);
+      m_aProtectionDomain = GenerationContext.class.getProtectionDomain ();
+    }
+
+    @Nullable
+    Class <?> findLoaded (@Nonnull final String sName)
+    {
+      return findLoadedClass (sName);
+    }
+
+    @Override
+    protected Class <?> loadClass (final String sName, final boolean bResolve) throws ClassNotFoundException
+    {
+      if (!sName.startsWith (ISOLATED_PACKAGE_PREFIX))
+        return super.loadClass (sName, bResolve);
+
+      synchronized (getClassLoadingLock (sName))
+      {
+        Class <?> ret = findLoadedClass (sName);
+        if (ret == null)
+          ret = findClass (sName);
+        if (bResolve)
+          resolveClass (ret);
+        return ret;
+      }
+    }
+
+    @Override
+    protected Class <?> findClass (final String sName) throws ClassNotFoundException
+    {
+      final String sPath = sName.replace ('.', '/') + ".class";
+      try (final InputStream aIS = getParent ().getResourceAsStream (sPath))
+      {
+        if (aIS == null)
+          throw new ClassNotFoundException (sName);
+        final byte [] aBytes = aIS.readAllBytes ();
+        return defineClass (sName, aBytes, 0, aBytes.length, m_aProtectionDomain);
+      }
+      catch (final IOException ex)
+      {
+        throw new ClassNotFoundException (sName, ex);
+      }
+    }
+  }
+
+  private IsolatingClassLoader m_aClassLoader;
+
+  /**
+   * Create a new context based on the class loader that loaded PGCC.
+   */
+  public GenerationContext ()
+  {
+    this (GenerationContext.class.getClassLoader ());
+  }
+
+  /**
+   * Create a new context.
+   *
+   * @param aParentClassLoader
+   *        The class loader to load the generator classes from. May not be
+   *        <code>null</code>.
+   */
+  public GenerationContext (@Nonnull final ClassLoader aParentClassLoader)
+  {
+    m_aClassLoader = new IsolatingClassLoader (aParentClassLoader);
+  }
+
+  @Nonnull
+  private Object _invoke (@Nonnull final String sClassName,
+                          @Nonnull final String sMethodName,
+                          @Nonnull final String [] args) throws Exception
+  {
+    if (m_aClassLoader == null)
+      throw new IllegalStateException ("This generation context was already closed");
+
+    final ClassLoader aOldCL = Thread.currentThread ().getContextClassLoader ();
+    Thread.currentThread ().setContextClassLoader (m_aClassLoader);
+    try
+    {
+      final Class <?> aClass = m_aClassLoader.loadClass (sClassName);
+      final Method aMethod = aClass.getMethod (sMethodName, String [].class);
+      // JJTree uses an instance method
+      final Object aTarget = Modifier.isStatic (aMethod.getModifiers ()) ? null : aClass.getConstructor ().newInstance ();
+      return aMethod.invoke (aTarget, (Object) args);
+    }
+    catch (final InvocationTargetException ex)
+    {
+      final Throwable aCause = ex.getCause ();
+      if (aCause instanceof Error)
+        throw (Error) aCause;
+      if (aCause instanceof Exception)
+        throw (Exception) aCause;
+      throw ex;
+    }
+    finally
+    {
+      Thread.currentThread ().setContextClassLoader (aOldCL);
+    }
+  }
+
+  @Nonnull
+  private static IllegalStateException _wrap (@Nonnull final Exception ex)
+  {
+    return new IllegalStateException ("Failed to invoke generator in generation context", ex);
+  }
+
+  /**
+   * Run PGCC in this context. This is the equivalent of
+   * {@link Main#mainProgram(String...)}.
+   *
+   * @param args
+   *        main arguments
+   * @return {@link ESuccess}
+   * @throws IOException
+   *         on IO error
+   */
+  @Nonnull
+  public synchronized ESuccess mainProgram (@Nonnull final String... args) throws IOException
+  {
+    try
+    {
+      return (ESuccess) _invoke ("com.helger.pgcc.parser.Main", "mainProgram", args);
+    }
+    catch (final IOException | RuntimeException ex)
+    {
+      throw ex;
+    }
+    catch (final Exception ex)
+    {
+      throw _wrap (ex);
+    }
+  }
+
+  /**
+   * Run JJTree in this context. This is the equivalent of
+   * {@link com.helger.pgcc.jjtree.JJTree#main(String[])}.
+   *
+   * @param args
+   *        main arguments
+   * @return {@link ESuccess}
+   */
+  @Nonnull
+  public synchronized ESuccess jjtree (@Nonnull final String... args)
+  {
+    try
+    {
+      return (ESuccess) _invoke ("com.helger.pgcc.jjtree.JJTree", "main", args);
+    }
+    catch (final RuntimeException ex)
+    {
+      throw ex;
+    }
+    catch (final Exception ex)
+    {
+      throw _wrap (ex);
+    }
+  }
+
+  /**
+   * Run JJDoc in this context. This is the equivalent of
+   * {@link com.helger.pgcc.jjdoc.JJDocMain#mainProgram(String[])}.
+   *
+   * @param args
+   *        main arguments
+   * @return {@link ESuccess}
+   * @throws Exception
+   *         in case of error
+   */
+  @Nonnull
+  public synchronized ESuccess jjdoc (@Nonnull final String... args) throws Exception
+  {
+    return (ESuccess) _invoke ("com.helger.pgcc.jjdoc.JJDocMain", "mainProgram", args);
+  }
+
+  /**
+   * Redirect the console output of all generators running in this context. By
+   * default {@link System#out} and {@link System#err} are used.
+   *
+   * @param aOut
+   *        The stream for informational output. May not be <code>null</code>.
+   * @param aErr
+   *        The stream for warnings and errors. May not be <code>null</code>.
+   */
+  public synchronized void setOutput (@Nonnull final PrintStream aOut, @Nonnull final PrintStream aErr)
+  {
+    _setOutput (aOut::println, aOut::flush, aErr::println, aErr::flush);
+  }
+
+  private void _setOutput (@Nonnull final Consumer <String> aOut,
+                           @Nonnull final Runnable aOutFlush,
+                           @Nonnull final Consumer <String> aErr,
+                           @Nonnull final Runnable aErrFlush)
+  {
+    if (m_aClassLoader == null)
+      throw new IllegalStateException ("This generation context was already closed");
+
+    // The PGPrinter of this context is a different class than the one of the
+    // caller
+    try
+    {
+      final Class <?> aPrinterClass = m_aClassLoader.loadClass ("com.helger.pgcc.PGPrinter");
+      final Class <?> aIPrinterClass = m_aClassLoader.loadClass ("com.helger.pgcc.PGPrinter$IPrinter");
+      final Constructor <?> aCtor = m_aClassLoader.loadClass ("com.helger.pgcc.PGPrinter$ForwardingPrinter")
+                                                  .getConstructor (Consumer.class, Runnable.class);
+      aPrinterClass.getMethod ("init", aIPrinterClass, aIPrinterClass)
+                   .invoke (null, aCtor.newInstance (aOut, aOutFlush), aCtor.newInstance (aErr, aErrFlush));
+    }
+    catch (final ReflectiveOperationException ex)
+    {
+      throw _wrap (ex);
+    }
+  }
+
+  private void _reInit ()
+  {
+    try
+    {
+      // Nothing to clear if this context never ran
+      final Class <?> aMainClass = m_aClassLoader.findLoaded ("com.helger.pgcc.parser.Main");
+      if (aMainClass != null)
+        aMainClass.getMethod ("reInitAll").invoke (null);
+    }
+    catch (final ReflectiveOperationException ex)
+    {
+      throw _wrap (ex);
+    }
+  }
+
+  /**
+   * Release the generator classes of this context. The static state of the
+   * last run is cleared right away, the classes themselves are unloaded by the
+   * garbage collector once no generated object references them anymore. The
+   * context cannot be used afterwards.
+   */
+  public synchronized void close ()
+  {
+    if (m_aClassLoader != null)
+    {
+      try
+      {
+        _reInit ();
+      }
+      finally
+      {
+        m_aClassLoader = null;
+      }
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the calling generator classes were loaded by
+   *         a generation context, <code>false</code> if they were loaded by
+   *         the application.
+   */
+  public static boolean isRunningInContext ()
+  {
+    return CLASS_LOADER_NAME.equals (GenerationContext.class.getClassLoader ().getName ());
+  }
+
+  /**
+   * Run a generator in an idle context of the shared pool. A new context is
+   * created if all pooled contexts are in use, so concurrent calls run in
+   * parallel. The output of the context is passed on to the current
+   * {@link PGPrinter} of the caller. The static state is cleared before the
+   * context is returned to the pool.
+   *
+   * @param aRunner
+   *        The generator to run. May not be <code>null</code>.
+   * @return The result of the runner.
+   * @throws EX
+   *         if the runner fails
+   * @param <EX>
+   *        exception type
+   */
+  @Nonnull
+  public static <EX extends Exception> ESuccess runPooled (@Nonnull final IThrowingFunction <GenerationContext, ESuccess, EX> aRunner) throws EX
+  {
+    GenerationContext aCtx = POOL.pollFirst ();
+    if (aCtx == null)
+      aCtx = new GenerationContext ();
+
+    final IPrinter aOut = PGPrinter.getInfoPrinter ();
+    final IPrinter aErr = PGPrinter.getErrorPrinter ();
+    synchronized (aCtx)
+    {
+      aCtx._setOutput (aOut::println, aOut::flush, aErr::println, aErr::flush);
+    }
+    try
+    {
+      return aRunner.apply (aCtx);
+    }
+    finally
+    {
+      synchronized (aCtx)
+      {
+        aCtx._reInit ();
+      }
+      POOL.offerFirst (aCtx);
+    }
+  }
+}
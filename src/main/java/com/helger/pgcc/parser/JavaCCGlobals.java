@@ -42,8 +42,10 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.helger.annotation.Nonempty;
 import com.helger.base.string.StringHelper;
@@ -216,7 +218,11 @@ public final class JavaCCGlobals
   protected static int s_maskindex = 0;
   protected static int s_jj2index = 0;
   private static boolean s_bLookAheadNeeded = false;
+  // Number of recycled tokens in the token manager - determined by ParseGen
+  private static int s_nTokenRingSize = 0;
   protected static final List <int []> MASK_VALS = new ArrayList <> ();
+  // All files written in the current run - used by the generation cache
+  private static final Set <File> GENERATED_FILES = new LinkedHashSet <> ();
 
   static ExpAction s_aActForEof;
   static String s_sNextStateForEof;
@@ -235,6 +241,41 @@ public final class JavaCCGlobals
     s_bLookAheadNeeded = bLookAheadNeeded;
   }
 
+  /**
+   * @return The number of regular tokens the token manager keeps for reuse. 0
+   *         means tokens are not recycled.
+   */
+  public static int getTokenRingSize ()
+  {
+    return s_nTokenRingSize;
+  }
+
+  public static void setTokenRingSize (final int nTokenRingSize)
+  {
+    s_nTokenRingSize = nTokenRingSize;
+  }
+
+  /**
+   * Remember a file that was written or kept in the current run.
+   *
+   * @param aFile
+   *        The output file. May not be <code>null</code>.
+   */
+  public static void addGeneratedFile (@Nonnull final File aFile)
+  {
+    GENERATED_FILES.add (aFile.getAbsoluteFile ());
+  }
+
+  /**
+   * @return All files written or kept in the current run in creation order.
+   *         Never <code>null</code>.
+   */
+  @Nonnull
+  public static ICommonsList <File> getAllGeneratedFiles ()
+  {
+    return new CommonsArrayList <> (GENERATED_FILES);
+  }
+
   @Nullable
   public static Token getOtherLanguageDeclTokenBegin ()
   {
@@ -706,7 +747,9 @@ public final class JavaCCGlobals
     s_maskindex = 0;
     s_jj2index = 0;
     s_bLookAheadNeeded = false;
+    s_nTokenRingSize = 0;
     MASK_VALS.clear ();
+    GENERATED_FILES.clear ();
     s_cline = 0;
     s_ccol = 0;
     s_aActForEof = null;
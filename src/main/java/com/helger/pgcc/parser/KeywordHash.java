@@ -0,0 +1,502 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.helger.pgcc.parser.exp.ExpRStringLiteral;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * The string literals of one lexical state that are completely matched by the
+ * NFA of that state as well - usually the keywords that are matched by the
+ * identifier token. Instead of putting them into the string literal DFA, the
+ * token manager matches them with the NFA and afterwards looks up the matched
+ * image in a minimal perfect hash table to find the keyword kind.<br>
+ * The hash is "hash and displace": the FNV-1a hash of the image selects a
+ * bucket and the displacement stored for that bucket selects the slot, so
+ * that each keyword ends up in its own slot.
+ */
+final class KeywordHash
+{
+  private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+  private static final int FNV_PRIME = 0x01000193;
+  private static final int MAX_DISPLACEMENT = 1 << 20;
+
+  private final boolean m_ignoreCase;
+  private final int m_seed;
+  private final int [] m_displacements;
+  // Indexed by slot
+  private final ExpRStringLiteral [] m_literals;
+  private final String [] m_images;
+  private final int [] m_kinds;
+  // The NFA kinds that can match a keyword
+  private final Set <Integer> m_nfaKinds;
+  private final int m_minLength;
+  private final int m_maxLength;
+
+  private KeywordHash (final boolean ignoreCase,
+                       final int seed,
+                       @Nonnull final int [] displacements,
+                       @Nonnull final ExpRStringLiteral [] literals,
+                       @Nonnull final String [] images,
+                       @Nonnull final Set <Integer> nfaKinds)
+  {
+    m_ignoreCase = ignoreCase;
+    m_seed = seed;
+    m_displacements = displacements;
+    m_literals = literals;
+    m_images = images;
+    m_kinds = new int [literals.length];
+    for (int i = 0; i < literals.length; i++)
+      m_kinds[i] = literals[i].getOrdinal ();
+    m_nfaKinds = nfaKinds;
+    int minLength = Integer.MAX_VALUE;
+    int maxLength = 0;
+    for (final String s : images)
+    {
+      minLength = Math.min (minLength, s.length ());
+      maxLength = Math.max (maxLength, s.length ());
+    }
+    m_minLength = minLength;
+    m_maxLength = maxLength;
+  }
+
+  private static char _fold (final char c)
+  {
+    return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+  }
+
+  static int hash (final int seed, @Nonnull final String s)
+  {
+    int h = seed;
+    for (int i = 0; i < s.length (); i++)
+      h = (h ^ s.charAt (i)) * FNV_PRIME;
+    return h;
+  }
+
+  static int mix (final int h)
+  {
+    // Finalizer of MurmurHash3
+    int ret = h;
+    ret ^= ret >>> 16;
+    ret *= 0x85ebca6b;
+    ret ^= ret >>> 13;
+    ret *= 0xc2b2ae35;
+    return ret ^ (ret >>> 16);
+  }
+
+  private static boolean _isAsciiOnly (final String s)
+  {
+    for (int i = 0; i < s.length (); i++)
+      if (s.charAt (i) > 0x7f)
+        return false;
+    return true;
+  }
+
+  /**
+   * Run the NFA on all spellings of the image.
+   *
+   * @param initialStates
+   *        The epsilon closure of the initial state of the NFA.
+   * @param image
+   *        The literal to check.
+   * @param ignoreCase
+   *        <code>true</code> if the literal is matched ignoring the case.
+   * @param nfaKinds
+   *        Is filled with the kinds the NFA matches for the image.
+   * @return <code>true</code> if the NFA matches every spelling of the image
+   *         completely.
+   */
+  private static boolean _isMatchedByNfa (@Nonnull final List <NfaState> initialStates,
+                                          @Nonnull final String image,
+                                          final boolean ignoreCase,
+                                          @Nonnull final Set <Integer> nfaKinds)
+  {
+    // The state sets that are reached by the different spellings
+    Set <List <NfaState>> current = new HashSet <> ();
+    current.add (initialStates);
+    final Set <Integer> kinds = new TreeSet <> ();
+    for (int i = 0; i < image.length (); i++)
+    {
+      final char c = image.charAt (i);
+      final char [] variants;
+      if (ignoreCase && Character.toLowerCase (c) != Character.toUpperCase (c))
+        variants = new char [] { Character.toLowerCase (c), Character.toUpperCase (c) };
+      else
+        variants = new char [] { c };
+      final Set <List <NfaState>> next = new HashSet <> ();
+      for (final List <NfaState> states : current)
+        for (final char v : variants)
+        {
+          final List <NfaState> newStates = new ArrayList <> ();
+          final int kind = NfaState.moveFromSet (v, states, newStates);
+          if (i == image.length () - 1)
+          {
+            if (kind == Integer.MAX_VALUE)
+              return false;
+            kinds.add (Integer.valueOf (kind));
+          }
+          else
+          {
+            if (newStates.isEmpty ())
+              return false;
+            next.add (newStates);
+          }
+        }
+      current = next;
+    }
+    nfaKinds.addAll (kinds);
+    return true;
+  }
+
+  /**
+   * Select the keywords of a lexical state and build the hash table for them.
+   *
+   * @param initialState
+   *        The initial state of the NFA of the lexical state. The closures
+   *        must already be computed.
+   * @param literals
+   *        The string literals of the lexical state. Only literals of at least
+   *        2 chars should be passed.
+   * @param ignoreCase
+   *        <code>true</code> if the literals of the lexical state ignore the
+   *        case.
+   * @param nonKeywords
+   *        Is filled with the literals that are no keywords and must be put
+   *        into the string literal DFA.
+   * @return <code>null</code> if there are no keywords.
+   */
+  @Nullable
+  static KeywordHash create (@Nonnull final NfaState initialState,
+                             @Nonnull final Collection <ExpRStringLiteral> literals,
+                             final boolean ignoreCase,
+                             @Nonnull final List <ExpRStringLiteral> nonKeywords)
+  {
+    final List <NfaState> initialStates = new ArrayList <> (initialState.m_epsilonMoves);
+    final Set <Integer> nfaKinds = new TreeSet <> ();
+    // By the key that is used for hashing
+    final Map <String, List <ExpRStringLiteral>> keywords = new HashMap <> ();
+    for (final ExpRStringLiteral aLiteral : literals)
+    {
+      final String image = aLiteral.m_image;
+      if ((ignoreCase && !_isAsciiOnly (image)) ||
+          initialStates.isEmpty () ||
+          !_isMatchedByNfa (initialStates, image, ignoreCase, nfaKinds))
+      {
+        nonKeywords.add (aLiteral);
+        continue;
+      }
+
+      String key = image;
+      if (ignoreCase)
+      {
+        final StringBuilder aSB = new StringBuilder (image.length ());
+        for (int i = 0; i < image.length (); i++)
+          aSB.append (_fold (image.charAt (i)));
+        key = aSB.toString ();
+      }
+      keywords.computeIfAbsent (key, k -> new ArrayList <> ()).add (aLiteral);
+    }
+
+    // Literals that only differ in case stay in the DFA
+    final List <String> keys = new ArrayList <> ();
+    for (final Map.Entry <String, List <ExpRStringLiteral>> aEntry : keywords.entrySet ())
+      if (aEntry.getValue ().size () == 1)
+        keys.add (aEntry.getKey ());
+      else
+        nonKeywords.addAll (aEntry.getValue ());
+    if (keys.isEmpty ())
+      return null;
+    // Make the result reproducible
+    keys.sort (null);
+
+    final int n = keys.size ();
+    for (int attempt = 0;; attempt++)
+    {
+      final int seed = FNV_OFFSET_BASIS + attempt * 0x9e3779b9;
+      final int [] hashes = new int [n];
+      for (int i = 0; i < n; i++)
+        hashes[i] = hash (seed, keys.get (i));
+      final int [] displacements = new int [n];
+      final int [] slots = _findSlots (hashes, displacements);
+      if (slots == null)
+        continue;
+
+      final ExpRStringLiteral [] sortedLiterals = new ExpRStringLiteral [n];
+      final String [] images = new String [n];
+      for (int i = 0; i < n; i++)
+      {
+        sortedLiterals[slots[i]] = keywords.get (keys.get (i)).get (0);
+        images[slots[i]] = keys.get (i);
+      }
+      return new KeywordHash (ignoreCase, seed, displacements, sortedLiterals, images, nfaKinds);
+    }
+  }
+
+  /**
+   * @return The slot of each hash or <code>null</code> if two hashes are
+   *         equal.
+   */
+  @Nullable
+  private static int [] _findSlots (@Nonnull final int [] hashes, @Nonnull final int [] displacements)
+  {
+    final int n = hashes.length;
+    final List <List <Integer>> buckets = new ArrayList <> (n);
+    for (int i = 0; i < n; i++)
+      buckets.add (new ArrayList <> ());
+    for (int i = 0; i < n; i++)
+      buckets.get ((hashes[i] & 0x7fffffff) % n).add (Integer.valueOf (i));
+
+    // Place the biggest buckets first
+    final Integer [] order = new Integer [n];
+    for (int i = 0; i < n; i++)
+      order[i] = Integer.valueOf (i);
+    Arrays.sort (order, (a, b) -> buckets.get (b.intValue ()).size () - buckets.get (a.intValue ()).size ());
+
+    final int [] slots = new int [n];
+    final boolean [] used = new boolean [n];
+    int freeSlot = 0;
+    for (final Integer aBucket : order)
+    {
+      final List <Integer> bucket = buckets.get (aBucket.intValue ());
+      if (bucket.isEmpty ())
+        break;
+
+      if (bucket.size () == 1)
+      {
+        // Single entries are placed directly into a free slot
+        while (used[freeSlot])
+          freeSlot++;
+        used[freeSlot] = true;
+        slots[bucket.get (0).intValue ()] = freeSlot;
+        displacements[aBucket.intValue ()] = -freeSlot - 1;
+        continue;
+      }
+
+      boolean placed = false;
+      for (int d = 0; d < MAX_DISPLACEMENT && !placed; d++)
+      {
+        placed = true;
+        final List <Integer> taken = new ArrayList <> (bucket.size ());
+        for (final Integer aIndex : bucket)
+        {
+          final int slot = (mix (hashes[aIndex.intValue ()] ^ d) & 0x7fffffff) % n;
+          if (used[slot] || taken.contains (Integer.valueOf (slot)))
+          {
+            placed = false;
+            break;
+          }
+          taken.add (Integer.valueOf (slot));
+        }
+        if (placed)
+        {
+          for (int i = 0; i < bucket.size (); i++)
+          {
+            final int slot = taken.get (i).intValue ();
+            used[slot] = true;
+            slots[bucket.get (i).intValue ()] = slot;
+          }
+          displacements[aBucket.intValue ()] = d;
+        }
+      }
+      if (!placed)
+        return null;
+    }
+    return slots;
+  }
+
+  /**
+   * Look up an image like the generated code does.
+   *
+   * @param image
+   *        The matched image
+   * @return The keyword kind or {@link Integer#MAX_VALUE} if the image is no
+   *         keyword.
+   */
+  int getKind (@Nonnull final String image)
+  {
+    String key = image;
+    if (m_ignoreCase)
+    {
+      final StringBuilder aSB = new StringBuilder (image.length ());
+      for (int i = 0; i < image.length (); i++)
+        aSB.append (_fold (image.charAt (i)));
+      key = aSB.toString ();
+    }
+    final int n = m_images.length;
+    final int h = hash (m_seed, key);
+    final int d = m_displacements[(h & 0x7fffffff) % n];
+    final int slot = d < 0 ? -d - 1 : (mix (h ^ d) & 0x7fffffff) % n;
+    return m_images[slot].equals (key) ? m_kinds[slot] : Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return The condition on <code>jjmatchedKind</code> that must be true
+   *         before the keyword lookup is worth it.
+   */
+  @Nonnull
+  String getNfaKindCondition ()
+  {
+    final StringBuilder ret = new StringBuilder ();
+    for (final Integer aKind : m_nfaKinds)
+    {
+      if (ret.length () > 0)
+        ret.append (" || ");
+      ret.append ("jjmatchedKind == ").append (aKind);
+    }
+    return ret.toString ();
+  }
+
+  private static void _dumpIntArray (@Nonnull final CodeGenerator codeGenerator,
+                                     @Nonnull final String name,
+                                     @Nonnull final int [] values)
+  {
+    codeGenerator.genCode ("static final int[] " + name + " = {");
+    for (int i = 0; i < values.length; i++)
+    {
+      if (i % 16 == 0)
+        codeGenerator.genCode ("\n   ");
+      codeGenerator.genCode (values[i] + ", ");
+    }
+    codeGenerator.genCodeLine ("\n};");
+  }
+
+  private void _dumpCharRead (@Nonnull final CodeGenerator codeGenerator)
+  {
+    codeGenerator.genCodeLine ("      final char c = input_stream.getSuffixChar(len, i);");
+  }
+
+  /**
+   * Generate the hash tables and the method <code>jjKeywordKind_N</code> for
+   * the lexical state. The method must be called after the token was backed up
+   * to the matched length.
+   *
+   * @param codeGenerator
+   *        The code generator to use
+   * @param lexState
+   *        The lexical state index
+   */
+  void dumpLookup (@Nonnull final CodeGenerator codeGenerator, final int lexState)
+  {
+    final int n = m_images.length;
+    final String sFold = m_ignoreCase ? "(c >= 'A' && c <= 'Z' ? c + 32 : c)" : "c";
+
+    codeGenerator.genCodeNewLine ();
+    _dumpIntArray (codeGenerator, "jjKeywordDisplacements_" + lexState, m_displacements);
+    codeGenerator.genCode ("static final String[] jjKeywordImages_" + lexState + " = {");
+    for (int i = 0; i < n; i++)
+    {
+      if (i % 8 == 0)
+        codeGenerator.genCode ("\n   ");
+      codeGenerator.genCode ("\"" + JavaCCGlobals.addEscapes (m_images[i]) + "\", ");
+    }
+    codeGenerator.genCodeLine ("\n};");
+    _dumpIntArray (codeGenerator, "jjKeywordKinds_" + lexState, m_kinds);
+
+    codeGenerator.genCodeNewLine ();
+    codeGenerator.genCodeLine ("/** @return the keyword kind of the matched image or the provided kind */");
+    codeGenerator.genCodeLine ("private int jjKeywordKind_" + lexState + "(final int kind)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   final int len = jjmatchedPos + 1;");
+    codeGenerator.genCodeLine ("   if (len < " + m_minLength + " || len > " + m_maxLength + ")");
+    codeGenerator.genCodeLine ("      return kind;");
+    codeGenerator.genCodeLine ("   int h = 0x" + Integer.toHexString (m_seed) + ";");
+    codeGenerator.genCodeLine ("   for (int i = 0; i < len; i++)");
+    codeGenerator.genCodeLine ("   {");
+    _dumpCharRead (codeGenerator);
+    codeGenerator.genCodeLine ("      h = (h ^ " + sFold + ") * 0x" + Integer.toHexString (FNV_PRIME) + ";");
+    codeGenerator.genCodeLine ("   }");
+    codeGenerator.genCodeLine ("   final int d = jjKeywordDisplacements_" + lexState + "[(h & 0x7fffffff) % " + n + "];");
+    codeGenerator.genCodeLine ("   final int slot = d < 0 ? -d - 1 : (jjKeywordMix(h ^ d) & 0x7fffffff) % " + n + ";");
+    codeGenerator.genCodeLine ("   final String image = jjKeywordImages_" + lexState + "[slot];");
+    codeGenerator.genCodeLine ("   if (image.length() != len)");
+    codeGenerator.genCodeLine ("      return kind;");
+    codeGenerator.genCodeLine ("   for (int i = 0; i < len; i++)");
+    codeGenerator.genCodeLine ("   {");
+    _dumpCharRead (codeGenerator);
+    codeGenerator.genCodeLine ("      if (" + sFold + " != image.charAt(i))");
+    codeGenerator.genCodeLine ("         return kind;");
+    codeGenerator.genCodeLine ("   }");
+    codeGenerator.genCodeLine ("   final int keywordKind = jjKeywordKinds_" + lexState + "[slot];");
+    codeGenerator.genCodeLine ("   return keywordKind < kind ? keywordKind : kind;");
+    codeGenerator.genCodeLine ("}");
+  }
+
+  /**
+   * Generate the method <code>jjKeywordMix</code> that is shared by all
+   * lexical states.
+   *
+   * @param codeGenerator
+   *        The code generator to use
+   */
+  static void dumpMix (@Nonnull final CodeGenerator codeGenerator)
+  {
+    codeGenerator.genCodeNewLine ();
+    codeGenerator.genCodeLine ("private static int jjKeywordMix(int h)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   h ^= h >>> 16;");
+    codeGenerator.genCodeLine ("   h *= 0x85ebca6b;");
+    codeGenerator.genCodeLine ("   h ^= h >>> 13;");
+    codeGenerator.genCodeLine ("   h *= 0xc2b2ae35;");
+    codeGenerator.genCodeLine ("   return h ^ (h >>> 16);");
+    codeGenerator.genCodeLine ("}");
+  }
+
+  int getKeywordCount ()
+  {
+    return m_images.length;
+  }
+
+  /**
+   * Make the images of the keywords known as string literal images, e.g. for
+   * <code>jjstrLiteralImages</code>. This must happen after the string literal
+   * DFA of the lexical state was generated.
+   */
+  void registerImages ()
+  {
+    for (final ExpRStringLiteral aLiteral : m_literals)
+      ExpRStringLiteral.s_allImages[aLiteral.getOrdinal ()] = aLiteral.m_image;
+  }
+}
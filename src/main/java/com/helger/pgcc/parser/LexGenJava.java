@@ -64,7 +64,6 @@
 
 package com.helger.pgcc.parser;
 
-import static com.helger.pgcc.parser.JavaCCGlobals.CU_TO_INSERTION_POINT_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.LEXSTATE_I2S;
 import static com.helger.pgcc.parser.JavaCCGlobals.REXPR_LIST;
 import static com.helger.pgcc.parser.JavaCCGlobals.getFileExtension;
@@ -92,6 +91,7 @@ import com.helger.pgcc.parser.exp.AbstractExpRegularExpression;
 import com.helger.pgcc.parser.exp.ExpAction;
 import com.helger.pgcc.parser.exp.ExpRChoice;
 import com.helger.pgcc.parser.exp.ExpRStringLiteral;
+import com.helger.pgcc.parser.table.DfaJavaCodeGenerator;
 import com.helger.pgcc.parser.table.TokenManagerCodeGenerator;
 
 /**
@@ -138,6 +138,8 @@ public class LexGenJava extends CodeGenerator
   public static boolean [] s_canReachOnMore;
   public static boolean [] s_hasNfa;
   public static boolean [] s_mixed;
+  // Per lexical state, null if there are no keywords
+  static KeywordHash [] s_keywordHashes;
   public static NfaState s_initialState;
   public static int s_curKind;
   static boolean s_hasSkipActions = false;
@@ -160,52 +162,7 @@ public class LexGenJava extends CodeGenerator
     // into a single Enum class
     genCodeLine ("/* " + getIdString (tn, s_tokMgrClassName + getFileExtension ()) + " */");
 
-    boolean bHasImport = false;
-    int nIndex = 0;
-    int i = 1;
-    for (;;)
-    {
-      if (CU_TO_INSERTION_POINT_1.size () <= nIndex)
-        break;
-
-      int nKind = CU_TO_INSERTION_POINT_1.get (nIndex).kind;
-      if (nKind == JavaCCParserConstants.PACKAGE || nKind == JavaCCParserConstants.IMPORT)
-      {
-        if (nKind == JavaCCParserConstants.IMPORT)
-          bHasImport = true;
-
-        for (; i < CU_TO_INSERTION_POINT_1.size (); i++)
-        {
-          nKind = CU_TO_INSERTION_POINT_1.get (i).kind;
-          if (nKind == JavaCCParserConstants.SEMICOLON ||
-              nKind == JavaCCParserConstants.ABSTRACT ||
-              nKind == JavaCCParserConstants.FINAL ||
-              nKind == JavaCCParserConstants.PRIVATE ||
-              nKind == JavaCCParserConstants.PROTECTED ||
-              nKind == JavaCCParserConstants.PUBLIC ||
-              nKind == JavaCCParserConstants.CLASS ||
-              nKind == JavaCCParserConstants.INTERFACE ||
-              nKind == JavaCCParserConstants.ENUM)
-          {
-            setLineAndCol (CU_TO_INSERTION_POINT_1.get (nIndex).beginLine,
-                           CU_TO_INSERTION_POINT_1.get (nIndex).beginColumn);
-            int j = nIndex;
-            for (; j < i; j++)
-            {
-              printToken (CU_TO_INSERTION_POINT_1.get (j));
-            }
-            if (nKind == JavaCCParserConstants.SEMICOLON)
-              printToken (CU_TO_INSERTION_POINT_1.get (j));
-            genCodeNewLine ();
-            break;
-          }
-        }
-        ++i;
-        nIndex = i;
-      }
-      else
-        break;
-    }
+    final boolean bHasImport = genPackageAndImports ();
 
     genCodeNewLine ();
     genCodeLine ("/** Token Manager. */");
@@ -396,6 +353,7 @@ public class LexGenJava extends CodeGenerator
     s_rexprs = new AbstractExpRegularExpression [s_maxOrdinal];
     ExpRStringLiteral.s_allImages = new String [s_maxOrdinal];
     s_canReachOnMore = new boolean [s_maxLexStates];
+    s_keywordHashes = new KeywordHash [s_maxLexStates];
   }
 
   private static int _getIndex (final String name)
@@ -418,7 +376,24 @@ public class LexGenJava extends CodeGenerator
     if (!Options.isBuildTokenManager () || Options.isUserTokenManager () || JavaCCErrors.getErrorCount () > 0)
       return;
 
-    final String codeGeneratorClass = Options.getTokenManagerCodeGenerator ();
+    String codeGeneratorClass = Options.getTokenManagerCodeGenerator ();
+    if (Options.isByteCharStream ())
+    {
+      // Only the DFA can be converted to match UTF-8 bytes
+      if (codeGeneratorClass == null)
+        codeGeneratorClass = DfaJavaCodeGenerator.class.getName ();
+      if (Options.isJavaUnicodeEscape ())
+        JavaCCErrors.semantic_error ("The option BYTE_CHAR_STREAM cannot be combined with JAVA_UNICODE_ESCAPE.");
+      if (Options.getJavaTemplateType ().equals (Options.JAVA_TEMPLATE_TYPE_MODERN))
+        JavaCCErrors.semantic_error ("The option BYTE_CHAR_STREAM is not supported by the modern Java template type.");
+    }
+    if (Options.isCharSequenceCharStream ())
+    {
+      if (Options.isJavaUnicodeEscape ())
+        JavaCCErrors.semantic_error ("The option CHAR_SEQUENCE_CHAR_STREAM cannot be combined with JAVA_UNICODE_ESCAPE.");
+      if (Options.isByteCharStream ())
+        JavaCCErrors.semantic_error ("The option CHAR_SEQUENCE_CHAR_STREAM cannot be combined with BYTE_CHAR_STREAM.");
+    }
     s_keepLineCol = Options.isKeepLineColumn ();
     s_errorHandlingClass = Options.getTokenMgrErrorClass ();
     final List <ExpRChoice> choices = new ArrayList <> ();
@@ -430,6 +405,8 @@ public class LexGenJava extends CodeGenerator
     _buildLexStatesTable ();
 
     boolean ignoring = false;
+    // Keywords are only hashed in the classic token manager
+    final boolean bKeywordHash = Options.isKeywordHash () && !s_generateDataOnly && codeGeneratorClass == null;
 
     for (final Map.Entry <String, List <TokenProduction>> aEntry : s_allTpsForState.entrySet ())
     {
@@ -445,6 +422,7 @@ public class LexGenJava extends CodeGenerator
       s_initialState = new NfaState ();
       s_initStates.put (key, s_initialState);
       ignoring = false;
+      final List <ExpRStringLiteral> keywordCandidates = new ArrayList <> ();
 
       s_singlesToSkip[s_lexStateIndex] = new NfaState ();
       s_singlesToSkip[s_lexStateIndex].m_dummy = true;
@@ -480,7 +458,11 @@ public class LexGenJava extends CodeGenerator
               s_curRE instanceof ExpRStringLiteral &&
               StringHelper.isNotEmpty (((ExpRStringLiteral) s_curRE).m_image))
           {
-            ((ExpRStringLiteral) s_curRE).generateDfa ();
+            // Keyword candidates are put into the DFA after the NFA is complete
+            if (bKeywordHash && ((ExpRStringLiteral) s_curRE).m_image.length () > 1)
+              keywordCandidates.add ((ExpRStringLiteral) s_curRE);
+            else
+              ((ExpRStringLiteral) s_curRE).generateDfa ();
             if (i != 0 && !s_mixed[s_lexStateIndex] && ignoring != ignore)
             {
               s_mixed[s_lexStateIndex] = true;
@@ -591,6 +573,24 @@ public class LexGenJava extends CodeGenerator
         if (s_initMatch[s_lexStateIndex] == 0)
           s_initMatch[s_lexStateIndex] = Integer.MAX_VALUE;
 
+      if (!keywordCandidates.isEmpty ())
+      {
+        final List <ExpRStringLiteral> nonKeywords = new ArrayList <> ();
+        if (s_hasNfa[s_lexStateIndex] && !s_mixed[s_lexStateIndex])
+          s_keywordHashes[s_lexStateIndex] = KeywordHash.create (s_initialState,
+                                                                 keywordCandidates,
+                                                                 Options.isIgnoreCase () || ignoring,
+                                                                 nonKeywords);
+        else
+          nonKeywords.addAll (keywordCandidates);
+
+        for (final ExpRStringLiteral aLiteral : nonKeywords)
+        {
+          s_curRE = aLiteral;
+          aLiteral.generateDfa ();
+        }
+      }
+
       ExpRStringLiteral.fillSubString ();
 
       if (s_hasNfa[s_lexStateIndex] && !s_mixed[s_lexStateIndex])
@@ -608,6 +608,13 @@ public class LexGenJava extends CodeGenerator
         {
           NfaState.dumpMoveNfa (this);
         }
+        final KeywordHash aKeywordHash = s_keywordHashes[s_lexStateIndex];
+        if (aKeywordHash != null)
+        {
+          aKeywordHash.dumpLookup (this, s_lexStateIndex);
+          // Only now, so that the literal DFA does not know them
+          aKeywordHash.registerImages ();
+        }
       }
       s_totalNumStates += NfaState.s_generatedStates;
       if (s_stateSetSize < NfaState.s_generatedStates)
@@ -673,6 +680,15 @@ public class LexGenJava extends CodeGenerator
                                        ee.getMessage ());
           return;
         }
+        if (Options.isByteCharStream () && !(gen instanceof DfaJavaCodeGenerator))
+        {
+          JavaCCErrors.semantic_error ("The option BYTE_CHAR_STREAM requires the token manager code generator " +
+                                       DfaJavaCodeGenerator.class.getName () +
+                                       " but " +
+                                       codeGeneratorClass +
+                                       " is used.");
+          return;
+        }
         gen.generateCode (s_tokenizerData);
         gen.finish (s_tokenizerData);
       }
@@ -686,6 +702,8 @@ public class LexGenJava extends CodeGenerator
     NfaState.dumpStateSets (this);
     NfaState.dumpNonAsciiMoveMethods (this);
     _dumpGetNextToken ();
+    if (_hasKeywordHash ())
+      KeywordHash.dumpMix (this);
 
     if (Options.isDebugTokenManager ())
     {
@@ -734,6 +752,14 @@ public class LexGenJava extends CodeGenerator
     }
   }
 
+  private static boolean _hasKeywordHash ()
+  {
+    for (final KeywordHash aKeywordHash : s_keywordHashes)
+      if (aKeywordHash != null)
+        return true;
+    return false;
+  }
+
   protected static void checkEmptyStringMatch ()
   {
     final boolean [] seen = new boolean [s_maxLexStates];
@@ -904,22 +930,53 @@ public class LexGenJava extends CodeGenerator
     return 0xffff;
   }
 
+  private void _genNewToken (final String sIndent, final boolean hasBinaryNewToken)
+  {
+    if (hasBinaryNewToken)
+    {
+      genCodeLine (sIndent + "t = Token.newToken(jjmatchedKind, curTokenImage);");
+    }
+    else
+    {
+      genCodeLine (sIndent + "t = Token.newToken(jjmatchedKind);");
+      genCodeLine (sIndent + "t.kind = jjmatchedKind;");
+      genCodeLine (sIndent + "t.image = curTokenImage;");
+    }
+  }
+
   private void _dumpFillToken ()
   {
     final double tokenVersion = OutputHelper.getVersionDashStar ("Token.java");
     final boolean hasBinaryNewToken = tokenVersion > 4.09;
+    final boolean bLazyImage = Options.isLazyTokenImage ();
+    final boolean bLazyLineColumn = s_keepLineCol && Options.isLazyLineColumn ();
+    final int nTokenRingSize = JavaCCGlobals.getTokenRingSize ();
+
+    if (nTokenRingSize > 0)
+    {
+      genCodeLine ("/** Regular tokens that are recycled - see option RECYCLE_TOKENS */");
+      genCodeLine ("private final Token[] jjTokenRing = new Token[" + nTokenRingSize + "];");
+      genCodeLine ("private int jjTokenRingPos;");
+      genCodeNewLine ();
+    }
 
     genCodeLine ("protected Token jjFillToken()");
     genCodeLine ("{");
     genCodeLine ("   final Token t;");
     genCodeLine ("   final String curTokenImage;");
-    if (s_keepLineCol)
+    if (bLazyLineColumn)
     {
-      genCodeLine ("   final int beginLine;");
-      genCodeLine ("   final int endLine;");
-      genCodeLine ("   final int beginColumn;");
-      genCodeLine ("   final int endColumn;");
+      genCodeLine ("   final long beginOffset;");
+      genCodeLine ("   final long endOffset;");
     }
+    else
+      if (s_keepLineCol)
+      {
+        genCodeLine ("   final int beginLine;");
+        genCodeLine ("   final int endLine;");
+        genCodeLine ("   final int beginColumn;");
+        genCodeLine ("   final int endColumn;");
+      }
 
     if (s_hasEmptyMatch)
     {
@@ -930,39 +987,60 @@ public class LexGenJava extends CodeGenerator
       genCodeLine ("      else");
       genCodeLine ("         curTokenImage = image.toString();");
 
-      if (s_keepLineCol)
-      {
-        genCodeLine ("      beginLine = endLine = input_stream.getEndLine();");
-        genCodeLine ("      beginColumn = endColumn = input_stream.getEndColumn();");
-      }
+      if (bLazyLineColumn)
+        genCodeLine ("      beginOffset = endOffset = input_stream.getEndOffset();");
+      else
+        if (s_keepLineCol)
+        {
+          genCodeLine ("      beginLine = endLine = input_stream.getEndLine();");
+          genCodeLine ("      beginColumn = endColumn = input_stream.getEndColumn();");
+        }
 
       genCodeLine ("   }");
       genCodeLine ("   else");
       genCodeLine ("   {");
       genCodeLine ("      String im = jjstrLiteralImages[jjmatchedKind];");
-      genCodeLine ("      curTokenImage = im == null ? input_stream.getImage() : im;");
+      if (bLazyImage)
+        genCodeLine ("      curTokenImage = im;");
+      else
+        genCodeLine ("      curTokenImage = im == null ? input_stream.getImage() : im;");
 
-      if (s_keepLineCol)
+      if (bLazyLineColumn)
       {
-        genCodeLine ("      beginLine = input_stream.getBeginLine();");
-        genCodeLine ("      beginColumn = input_stream.getBeginColumn();");
-        genCodeLine ("      endLine = input_stream.getEndLine();");
-        genCodeLine ("      endColumn = input_stream.getEndColumn();");
+        genCodeLine ("      beginOffset = input_stream.getBeginOffset();");
+        genCodeLine ("      endOffset = input_stream.getEndOffset();");
       }
+      else
+        if (s_keepLineCol)
+        {
+          genCodeLine ("      beginLine = input_stream.getBeginLine();");
+          genCodeLine ("      beginColumn = input_stream.getBeginColumn();");
+          genCodeLine ("      endLine = input_stream.getEndLine();");
+          genCodeLine ("      endColumn = input_stream.getEndColumn();");
+        }
 
       genCodeLine ("   }");
     }
     else
     {
       genCodeLine ("   String im = jjstrLiteralImages[jjmatchedKind];");
-      genCodeLine ("   curTokenImage = im == null ? input_stream.getImage() : im;");
-      if (s_keepLineCol)
+      if (bLazyImage)
+        genCodeLine ("   curTokenImage = im;");
+      else
+        genCodeLine ("   curTokenImage = im == null ? input_stream.getImage() : im;");
+      if (bLazyLineColumn)
       {
-        genCodeLine ("   beginLine = input_stream.getBeginLine();");
-        genCodeLine ("   beginColumn = input_stream.getBeginColumn();");
-        genCodeLine ("   endLine = input_stream.getEndLine();");
-        genCodeLine ("   endColumn = input_stream.getEndColumn();");
+        genCodeLine ("   beginOffset = input_stream.getBeginOffset();");
+        genCodeLine ("   endOffset = input_stream.getEndOffset();");
       }
+      else
+        if (s_keepLineCol)
+        {
+          genCodeLine ("   beginLine = input_stream.getBeginLine();");
+          genCodeLine ("   beginColumn = input_stream.getBeginColumn();");
+          genCodeLine ("   endLine = input_stream.getEndLine();");
+          genCodeLine ("   endColumn = input_stream.getEndColumn();");
+        }
     }
 
     if (Options.getTokenFactory ().length () > 0)
@@ -970,26 +1048,74 @@ public class LexGenJava extends CodeGenerator
       genCodeLine ("   t = " + Options.getTokenFactory () + ".newToken(jjmatchedKind, curTokenImage);");
     }
     else
-      if (hasBinaryNewToken)
+      if (nTokenRingSize > 0)
       {
-        genCodeLine ("   t = Token.newToken(jjmatchedKind, curTokenImage);");
+        // Special tokens are not recycled, as there may be arbitrary many
+        final String sIndent = s_hasSpecial ? "      " : "   ";
+        if (s_hasSpecial)
+        {
+          genCodeLine ("   if ((jjtoToken[jjmatchedKind >> 6] & (1L << (jjmatchedKind & 077))) != 0L)");
+          genCodeLine ("   {");
+        }
+        genCodeLine (sIndent + "// Reuse the token that left the lookahead window of the parser");
+        genCodeLine (sIndent + "final Token recycled = jjTokenRing[jjTokenRingPos];");
+        genCodeLine (sIndent + "if (recycled == null)");
+        genCodeLine (sIndent + "{");
+        _genNewToken (sIndent + "   ", hasBinaryNewToken);
+        genCodeLine (sIndent + "   jjTokenRing[jjTokenRingPos] = t;");
+        genCodeLine (sIndent + "}");
+        genCodeLine (sIndent + "else");
+        genCodeLine (sIndent + "{");
+        genCodeLine (sIndent + "   t = recycled;");
+        genCodeLine (sIndent + "   t.kind = jjmatchedKind;");
+        genCodeLine (sIndent + "   t.image = curTokenImage;");
+        genCodeLine (sIndent + "   t.next = null;");
+        genCodeLine (sIndent + "   t.specialToken = null;");
+        genCodeLine (sIndent + "}");
+        genCodeLine (sIndent + "if (++jjTokenRingPos == " + nTokenRingSize + ")");
+        genCodeLine (sIndent + "   jjTokenRingPos = 0;");
+        if (s_hasSpecial)
+        {
+          genCodeLine ("   }");
+          genCodeLine ("   else");
+          genCodeLine ("   {");
+          _genNewToken ("      ", hasBinaryNewToken);
+          genCodeLine ("   }");
+        }
       }
       else
-      {
-        genCodeLine ("   t = Token.newToken(jjmatchedKind);");
-        genCodeLine ("   t.kind = jjmatchedKind;");
-        genCodeLine ("   t.image = curTokenImage;");
-      }
+        _genNewToken ("   ", hasBinaryNewToken);
 
-    if (s_keepLineCol)
+    if (bLazyImage)
     {
+      // Let the token reference the chars of the stream instead of copying
       genCodeNewLine ();
-      genCodeLine ("   t.beginLine = beginLine;");
-      genCodeLine ("   t.endLine = endLine;");
-      genCodeLine ("   t.beginColumn = beginColumn;");
-      genCodeLine ("   t.endColumn = endColumn;");
+      genCodeLine ("   if (curTokenImage == null)");
+      genCodeLine ("   {");
+      genCodeLine ("      final char[] imageBuffer = input_stream.getImageBuffer();");
+      genCodeLine ("      if (imageBuffer == null)");
+      genCodeLine ("         t.image = input_stream.getImage();");
+      genCodeLine ("      else");
+      genCodeLine ("         t.setImageWindow(imageBuffer, input_stream.getImageBegin(), input_stream.getImageLength());");
+      genCodeLine ("   }");
     }
 
+    if (bLazyLineColumn)
+    {
+      // The line and column are only computed if the token is asked for them
+      genCodeNewLine ();
+      genCodeLine ("   t.setPositionWindow(input_stream, beginOffset, endOffset);");
+    }
+    else
+      if (s_keepLineCol)
+      {
+        genCodeNewLine ();
+        genCodeLine ("   t.beginLine = beginLine;");
+        genCodeLine ("   t.endLine = endLine;");
+        genCodeLine ("   t.beginColumn = beginColumn;");
+        genCodeLine ("   t.endColumn = endColumn;");
+      }
+
     genCodeNewLine ();
     genCodeLine ("   return t;");
     genCodeLine ("}");
@@ -997,8 +1123,6 @@ public class LexGenJava extends CodeGenerator
 
   private void _dumpGetNextToken ()
   {
-    final EOutputLanguage eOutputLanguage = getOutputLanguage ();
-
     genCodeNewLine ();
     genCodeLine ("int curLexState = " + s_defaultLexState + ";");
     genCodeLine ("int defaultLexState = " + s_defaultLexState + ";");
@@ -1007,19 +1131,72 @@ public class LexGenJava extends CodeGenerator
     genCodeLine ("int jjmatchedPos;");
     genCodeLine ("int jjmatchedKind;");
     genCodeNewLine ();
-    genCodeLine ("/** Get the next Token. */");
-    genCodeLine ("public " + "Token getNextToken()" + " ");
-    genCodeLine ("{");
-    if (s_hasSpecial)
+    _dumpNextTokenMethod (false);
+
+    if (Options.isTokenBuffer ())
     {
-      genCodeLine ("  Token specialToken = null;");
+      genCodeLine ("private void jjAddToken(final TokenBuffer buf, final int kind)");
+      genCodeLine ("{");
+      genCodeLine ("  final long endOffset = input_stream.getEndOffset() + 1;");
+      genCodeLine ("  buf.add(kind, jjmatchedPos < 0 ? endOffset : input_stream.getBeginOffset(), endOffset, curLexState);");
+      genCodeLine ("}");
+      genCodeNewLine ();
+      _dumpNextTokenMethod (true);
+    }
+  }
+
+  /**
+   * Dump getNextToken or, if bTokenBuffer is true, fillTokens. Both share the
+   * matching code, but fillTokens adds the kinds and offsets of the tokens to a
+   * TokenBuffer instead of creating Token objects.
+   */
+  private void _dumpNextTokenMethod (final boolean bTokenBuffer)
+  {
+    final EOutputLanguage eOutputLanguage = getOutputLanguage ();
+    // Token objects are only needed for the lexical actions
+    final boolean bNeedsTokenForSpecial = !bTokenBuffer || s_hasSkipActions;
+    final boolean bNeedsTokenForEof = !bTokenBuffer ||
+                                      s_sNextStateForEof != null ||
+                                      s_aActForEof != null ||
+                                      Options.isCommonTokenAction ();
+    final boolean bNeedsToken = !bTokenBuffer || s_hasTokenActions || Options.isCommonTokenAction ();
+
+    if (bTokenBuffer)
+    {
+      genCodeLine ("/**");
+      genCodeLine (" * Add the next tokens to a buffer instead of creating Token objects.");
+      genCodeLine (" * SPECIAL_TOKENs are added like regular tokens. Stops after the EOF token.");
+      genCodeLine (" * @param buf The buffer to add the tokens to. It is not cleared.");
+      genCodeLine (" * @param max The maximum number of tokens to add.");
+      genCodeLine (" * @return the number of added tokens. Less than max only if the EOF token was added.");
+      genCodeLine (" */");
+      genCodeLine ("public int fillTokens(final TokenBuffer buf, final int max)");
+      genCodeLine ("{");
+      if (bNeedsToken || bNeedsTokenForEof || (s_hasSpecial && bNeedsTokenForSpecial))
+        genCodeLine ("  Token matchedToken;");
+      genCodeLine ("  int curPos = 0;");
+      genCodeLine ("  int count = 0;");
+      genCodeNewLine ();
+      genCodeLine ("  EOFLoop:");
+      genCodeLine ("  while (count < max)");
+      genCodeLine ("  {");
+    }
+    else
+    {
+      genCodeLine ("/** Get the next Token. */");
+      genCodeLine ("public " + "Token getNextToken()" + " ");
+      genCodeLine ("{");
+      if (s_hasSpecial)
+      {
+        genCodeLine ("  Token specialToken = null;");
+      }
+      genCodeLine ("  Token matchedToken;");
+      genCodeLine ("  int curPos = 0;");
+      genCodeNewLine ();
+      genCodeLine ("  EOFLoop:");
+      genCodeLine ("  for (;;)");
+      genCodeLine ("  {");
     }
-    genCodeLine ("  Token matchedToken;");
-    genCodeLine ("  int curPos = 0;");
-    genCodeNewLine ();
-    genCodeLine ("  EOFLoop:");
-    genCodeLine ("  for (;;)");
-    genCodeLine ("  {");
     genCodeLine ("   try");
     genCodeLine ("   {");
     genCodeLine ("      curChar = input_stream.beginToken();");
@@ -1032,9 +1209,10 @@ public class LexGenJava extends CodeGenerator
 
     genCodeLine ("      jjmatchedKind = 0;");
     genCodeLine ("      jjmatchedPos = -1;");
-    genCodeLine ("      matchedToken = jjFillToken();");
+    if (bNeedsTokenForEof)
+      genCodeLine ("      matchedToken = jjFillToken();");
 
-    if (s_hasSpecial)
+    if (s_hasSpecial && !bTokenBuffer)
       genCodeLine ("      matchedToken.specialToken = specialToken;");
 
     if (s_sNextStateForEof != null || s_aActForEof != null)
@@ -1043,7 +1221,13 @@ public class LexGenJava extends CodeGenerator
     if (Options.isCommonTokenAction ())
       genCodeLine ("      CommonTokenAction(matchedToken);");
 
-    genCodeLine ("      return matchedToken;");
+    if (bTokenBuffer)
+    {
+      genCodeLine ("      jjAddToken(buf, " + (bNeedsTokenForEof ? "matchedToken.kind" : "0") + ");");
+      genCodeLine ("      return count + 1;");
+    }
+    else
+      genCodeLine ("      return matchedToken;");
     genCodeLine ("   }");
 
     if (s_hasMoreActions || s_hasSkipActions || s_hasTokenActions)
@@ -1235,6 +1419,19 @@ public class LexGenJava extends CodeGenerator
       if (Options.isDebugTokenManager ())
         genCodeLine (prefix + "      }");
 
+      for (int i = 0; i < s_maxLexStates; i++)
+      {
+        final KeywordHash aKeywordHash = s_keywordHashes[i];
+        if (aKeywordHash == null)
+          continue;
+
+        String sCondition = aKeywordHash.getNfaKindCondition ();
+        if (s_maxLexStates > 1)
+          sCondition = "curLexState == " + i + " && (" + sCondition + ")";
+        genCodeLine (prefix + "      if (" + sCondition + ")");
+        genCodeLine (prefix + "         jjmatchedKind = jjKeywordKind_" + i + "(jjmatchedKind);");
+      }
+
       if (Options.isDebugTokenManager ())
       {
         if (Options.isJavaUnicodeEscape () || Options.isJavaUserCharStream ())
@@ -1263,14 +1460,18 @@ public class LexGenJava extends CodeGenerator
         genCodeLine (prefix + "      {");
       }
 
-      genCodeLine (prefix + "         matchedToken = jjFillToken();");
+      if (bNeedsToken)
+        genCodeLine (prefix + "         matchedToken = jjFillToken();");
 
-      if (s_hasSpecial)
+      if (s_hasSpecial && !bTokenBuffer)
         genCodeLine (prefix + "         matchedToken.specialToken = specialToken;");
 
       if (s_hasTokenActions)
         genCodeLine (prefix + "         TokenLexicalActions(matchedToken);");
 
+      if (bTokenBuffer)
+        genCodeLine (prefix + "         jjAddToken(buf, " + (bNeedsToken ? "matchedToken.kind" : "jjmatchedKind") + ");");
+
       if (s_maxLexStates > 1)
       {
         genCodeLine ("       if (jjnewLexState[jjmatchedKind] != -1)");
@@ -1280,7 +1481,13 @@ public class LexGenJava extends CodeGenerator
       if (Options.isCommonTokenAction ())
         genCodeLine (prefix + "         CommonTokenAction(matchedToken);");
 
-      genCodeLine (prefix + "         return matchedToken;");
+      if (bTokenBuffer)
+      {
+        genCodeLine (prefix + "         count++;");
+        genCodeLine (prefix + "         continue EOFLoop;");
+      }
+      else
+        genCodeLine (prefix + "         return matchedToken;");
 
       if (s_hasSkip || s_hasMore || s_hasSpecial)
       {
@@ -1306,15 +1513,24 @@ public class LexGenJava extends CodeGenerator
                          "(1L << (jjmatchedKind & 077))) != 0L)");
             genCodeLine (prefix + "         {");
 
-            genCodeLine (prefix + "            matchedToken = jjFillToken();");
+            if (bNeedsTokenForSpecial)
+              genCodeLine (prefix + "            matchedToken = jjFillToken();");
 
-            genCodeLine (prefix + "            if (specialToken == null)");
-            genCodeLine (prefix + "               specialToken = matchedToken;");
-            genCodeLine (prefix + "            else");
-            genCodeLine (prefix + "            {");
-            genCodeLine (prefix + "               matchedToken.specialToken = specialToken;");
-            genCodeLine (prefix + "               specialToken = (specialToken.next = matchedToken);");
-            genCodeLine (prefix + "            }");
+            if (bTokenBuffer)
+            {
+              genCodeLine (prefix + "            jjAddToken(buf, jjmatchedKind);");
+              genCodeLine (prefix + "            count++;");
+            }
+            else
+            {
+              genCodeLine (prefix + "            if (specialToken == null)");
+              genCodeLine (prefix + "               specialToken = matchedToken;");
+              genCodeLine (prefix + "            else");
+              genCodeLine (prefix + "            {");
+              genCodeLine (prefix + "               matchedToken.specialToken = specialToken;");
+              genCodeLine (prefix + "               specialToken = (specialToken.next = matchedToken);");
+              genCodeLine (prefix + "            }");
+            }
 
             if (s_hasSkipActions)
               genCodeLine (prefix + "            SkipLexicalActions(matchedToken);");
@@ -1409,6 +1625,8 @@ public class LexGenJava extends CodeGenerator
       genCodeLine (prefix + " }");
 
     genCodeLine ("  }");
+    if (bTokenBuffer)
+      genCodeLine ("  return count;");
     genCodeLine ("}");
     genCodeNewLine ();
   }
@@ -1689,6 +1907,7 @@ public class LexGenJava extends CodeGenerator
     s_maxLongsReqd = null;
     s_maxOrdinal = 1;
     s_mixed = null;
+    s_keywordHashes = null;
     s_newLexState = null;
     s_rexprs = null;
     s_singlesToSkip = null;
@@ -1699,6 +1918,7 @@ public class LexGenJava extends CodeGenerator
     s_toSpecial = null;
     s_toToken = null;
     s_tokMgrClassName = null;
+    s_totalNumStates = 0;
     s_tokenizerData = new TokenizerData ();
     s_generateDataOnly = false;
   }
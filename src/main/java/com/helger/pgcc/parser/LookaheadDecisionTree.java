@@ -0,0 +1,421 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static com.helger.pgcc.parser.JavaCCGlobals.PRODUCTION_TABLE;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.helger.collection.commons.CommonsArrayList;
+import com.helger.collection.commons.ICommonsList;
+import com.helger.pgcc.parser.exp.AbstractExpRegularExpression;
+import com.helger.pgcc.parser.exp.ExpChoice;
+import com.helger.pgcc.parser.exp.ExpLookahead;
+import com.helger.pgcc.parser.exp.ExpNonTerminal;
+import com.helger.pgcc.parser.exp.ExpOneOrMore;
+import com.helger.pgcc.parser.exp.ExpSequence;
+import com.helger.pgcc.parser.exp.ExpTryBlock;
+import com.helger.pgcc.parser.exp.ExpZeroOrMore;
+import com.helger.pgcc.parser.exp.ExpZeroOrOne;
+import com.helger.pgcc.parser.exp.Expansion;
+
+/**
+ * Precomputes the result of a syntactic lookahead with a limited amount for
+ * all kinds of the next tokens. The generated jj_3 scan routines are executed
+ * symbolically: whenever the scan tests a token that is not known yet, the tree
+ * forks into a node for the tested kind and a node for all other kinds. The
+ * leaves contain the result of the scan and how far it looked ahead, so the
+ * tree decides exactly like the scan.
+ */
+final class LookaheadDecisionTree
+{
+  /** The maximum number of nodes of a tree. Larger lookaheads are scanned. */
+  private static final int MAX_NODES = 256;
+  /** The maximum number of nodes of the first levels of a tree. */
+  private static final int MAX_LEVEL_NODES = 4096;
+  /** The maximum number of steps of one symbolic scan. */
+  private static final int MAX_STEPS = 100000;
+  /** The maximum nesting of productions of one symbolic scan. */
+  private static final int MAX_DEPTH = 500;
+
+  private static final int MATCH = 0;
+  private static final int MISMATCH = 1;
+  /** The scan stopped: limit reached, unknown token or not supported */
+  private static final int STOP = 2;
+
+  /**
+   * A node of the tree. Either it switches on the kind of the token at
+   * {@link #getPosition()} or it is a leaf with the result of the scan. A node
+   * below the last level of a tree built by {@link #buildLevels} is open: the
+   * scan tests the token at its position, but the node has neither kinds nor a
+   * default.
+   */
+  static final class Node
+  {
+    private final int m_nPos;
+    private final ICommonsList <Integer> m_aKinds = new CommonsArrayList <> ();
+    private final ICommonsList <Node> m_aChildren = new CommonsArrayList <> ();
+    private Node m_aDefault;
+    private final boolean m_bResult;
+    private final int m_nFar;
+
+    private Node (final int nPos)
+    {
+      m_nPos = nPos;
+      m_bResult = false;
+      m_nFar = 0;
+    }
+
+    private Node (final boolean bResult, final int nFar)
+    {
+      m_nPos = 0;
+      m_bResult = bResult;
+      m_nFar = nFar;
+    }
+
+    public boolean isLeaf ()
+    {
+      return m_nPos == 0;
+    }
+
+    public boolean isOpen ()
+    {
+      return m_nPos > 0 && m_aDefault == null;
+    }
+
+    /**
+     * @return The 1-based position of the token switched on. 0 for a leaf.
+     */
+    public int getPosition ()
+    {
+      return m_nPos;
+    }
+
+    /**
+     * @return The token kinds with a node of their own, in the order the scan
+     *         tests them.
+     */
+    public ICommonsList <Integer> getKinds ()
+    {
+      return m_aKinds;
+    }
+
+    public ICommonsList <Node> getChildren ()
+    {
+      return m_aChildren;
+    }
+
+    /**
+     * @return The node for all other kinds.
+     */
+    public Node getDefault ()
+    {
+      return m_aDefault;
+    }
+
+    /**
+     * @return <code>true</code> if the lookahead succeeds at this leaf.
+     */
+    public boolean getResult ()
+    {
+      return m_bResult;
+    }
+
+    /**
+     * @return The number of tokens the scan looked at before reaching this
+     *         leaf.
+     */
+    public int getFar ()
+    {
+      return m_nFar;
+    }
+  }
+
+  private final Expansion m_aExpansion;
+  private final int m_nLimit;
+  private final int m_nMaxLevels;
+  private final int m_nMaxNodes;
+
+  // State of the current symbolic scan
+  private int [] m_aPrefix;
+  private Set <Integer> m_aExcluded;
+  private int m_nPos;
+  private int m_nFar;
+  private int m_nSteps;
+  private int m_nDepth;
+  private int m_nForkKind;
+  private boolean m_bUnsupported;
+  private int m_nNodes;
+
+  private LookaheadDecisionTree (final Expansion aExpansion,
+                                 final int nLimit,
+                                 final int nMaxLevels,
+                                 final int nMaxNodes)
+  {
+    m_aExpansion = aExpansion;
+    m_nLimit = nLimit;
+    m_nMaxLevels = nMaxLevels;
+    m_nMaxNodes = nMaxNodes;
+  }
+
+  private int _scanToken (final int nKind)
+  {
+    final int nPos = m_nPos + 1;
+    m_nFar = Math.max (m_nFar, nPos);
+    if (nPos <= m_aPrefix.length)
+    {
+      if (m_aPrefix[nPos - 1] != nKind)
+        return MISMATCH;
+    }
+    else
+    {
+      // The first token that is not known yet
+      if (m_aExcluded.contains (Integer.valueOf (nKind)))
+        return MISMATCH;
+      m_nForkKind = nKind;
+      return STOP;
+    }
+    m_nPos = nPos;
+    // Like the LookaheadSuccess of jj_scan_token
+    return nPos == m_nLimit ? STOP : MATCH;
+  }
+
+  private int _unsupported ()
+  {
+    m_bUnsupported = true;
+    return STOP;
+  }
+
+  /**
+   * Mirrors ParseEngine.buildPhase3Routine.
+   */
+  private int _scan (final Expansion e)
+  {
+    if (++m_nSteps > MAX_STEPS)
+      return _unsupported ();
+
+    if (e instanceof AbstractExpRegularExpression)
+      return _scanToken (((AbstractExpRegularExpression) e).getOrdinal ());
+
+    if (e instanceof ExpNonTerminal)
+    {
+      final NormalProduction ntprod = PRODUCTION_TABLE.get (((ExpNonTerminal) e).getName ());
+      if (ntprod instanceof AbstractCodeProduction || m_nDepth == MAX_DEPTH)
+        return _unsupported ();
+      m_nDepth++;
+      final int ret = _scan (ntprod.getExpansion ());
+      m_nDepth--;
+      return ret;
+    }
+
+    if (e instanceof ExpChoice)
+    {
+      final ExpChoice e_nrw = (ExpChoice) e;
+      final int nSavedPos = m_nPos;
+      for (final Expansion aChoice : e_nrw.getChoices ())
+      {
+        final ExpSequence nested_seq = (ExpSequence) aChoice;
+        final ExpLookahead la = (ExpLookahead) nested_seq.getUnitAt (0);
+        if (la.getActionTokens ().isNotEmpty ())
+        {
+          // Semantic lookahead can only be evaluated while parsing
+          return _unsupported ();
+        }
+        final int ret = _scan (nested_seq);
+        if (ret != MISMATCH)
+          return ret;
+        m_nPos = nSavedPos;
+      }
+      return MISMATCH;
+    }
+
+    if (e instanceof ExpSequence)
+    {
+      final ExpSequence e_nrw = (ExpSequence) e;
+      // We skip the first element since it is the Lookahead object.
+      for (int i = 1; i < e_nrw.getUnitCount (); i++)
+      {
+        final int ret = _scan (e_nrw.getUnitAt (i));
+        if (ret != MATCH)
+          return ret;
+      }
+      return MATCH;
+    }
+
+    if (e instanceof ExpTryBlock)
+      return _scan (((ExpTryBlock) e).m_exp);
+
+    if (e instanceof ExpOneOrMore)
+    {
+      final Expansion nested_e = ((ExpOneOrMore) e).getExpansion ();
+      final int ret = _scan (nested_e);
+      if (ret != MATCH)
+        return ret;
+      return _scanRepeatedly (nested_e);
+    }
+
+    if (e instanceof ExpZeroOrMore)
+      return _scanRepeatedly (((ExpZeroOrMore) e).getExpansion ());
+
+    if (e instanceof ExpZeroOrOne)
+    {
+      final int nSavedPos = m_nPos;
+      final int ret = _scan (((ExpZeroOrOne) e).getExpansion ());
+      if (ret == STOP)
+        return STOP;
+      if (ret == MISMATCH)
+        m_nPos = nSavedPos;
+      return MATCH;
+    }
+
+    // Actions are not scanned
+    return MATCH;
+  }
+
+  private int _scanRepeatedly (final Expansion nested_e)
+  {
+    while (true)
+    {
+      final int nSavedPos = m_nPos;
+      final int ret = _scan (nested_e);
+      if (ret == STOP)
+        return STOP;
+      if (ret == MISMATCH)
+      {
+        m_nPos = nSavedPos;
+        return MATCH;
+      }
+      if (m_nPos == nSavedPos)
+        return _unsupported ();
+    }
+  }
+
+  /**
+   * Run the scan for the passed known tokens.
+   *
+   * @param aPrefix
+   *        The kinds of the first tokens.
+   * @param aExcluded
+   *        The kinds the token after the prefix is known not to have.
+   * @return <code>null</code> if the scan tested the token after the prefix
+   *         for a kind that is not excluded. In that case the kind is in
+   *         m_nForkKind.
+   */
+  private Node _run (final int [] aPrefix, final Set <Integer> aExcluded)
+  {
+    m_aPrefix = aPrefix;
+    m_aExcluded = aExcluded;
+    m_nPos = 0;
+    m_nFar = 0;
+    m_nSteps = 0;
+    m_nDepth = 0;
+    m_nForkKind = -1;
+    final int ret = _scan (m_aExpansion);
+    if (m_nForkKind >= 0)
+      return null;
+    // A completed scan and a scan that reached the limit both succeed
+    return new Node (ret != MISMATCH, m_nFar);
+  }
+
+  private Node _build (final int [] aPrefix)
+  {
+    final Set <Integer> aExcluded = new HashSet <> ();
+    Node ret = _run (aPrefix, aExcluded);
+    if (m_bUnsupported || ++m_nNodes > m_nMaxNodes)
+      return null;
+    if (ret != null)
+      return ret;
+    if (aPrefix.length == m_nMaxLevels)
+      return new Node (aPrefix.length + 1);
+
+    ret = new Node (aPrefix.length + 1);
+    while (true)
+    {
+      final int nKind = m_nForkKind;
+      final int [] aChildPrefix = new int [aPrefix.length + 1];
+      System.arraycopy (aPrefix, 0, aChildPrefix, 0, aPrefix.length);
+      aChildPrefix[aPrefix.length] = nKind;
+      final Node aChild = _build (aChildPrefix);
+      if (aChild == null)
+        return null;
+      ret.m_aKinds.add (Integer.valueOf (nKind));
+      ret.m_aChildren.add (aChild);
+
+      aExcluded.add (Integer.valueOf (nKind));
+      final Node aDefault = _run (aPrefix, aExcluded);
+      if (m_bUnsupported || ++m_nNodes > m_nMaxNodes)
+        return null;
+      if (aDefault != null)
+      {
+        ret.m_aDefault = aDefault;
+        return ret;
+      }
+    }
+  }
+
+  /**
+   * Build the decision tree of a syntactic lookahead.
+   *
+   * @param aExpansion
+   *        The expansion the lookahead scans.
+   * @param nAmount
+   *        The lookahead amount. Must be limited.
+   * @return <code>null</code> if the lookahead cannot be decided by a tree,
+   *         because the scan evaluates semantic lookahead or a JAVACODE
+   *         production, or if the tree would get too large.
+   */
+  static Node build (final Expansion aExpansion, final int nAmount)
+  {
+    return new LookaheadDecisionTree (aExpansion, nAmount, Integer.MAX_VALUE, MAX_NODES)._build (new int [0]);
+  }
+
+  /**
+   * Build the first levels of the decision tree of a syntactic lookahead.
+   *
+   * @param aExpansion
+   *        The expansion the lookahead scans.
+   * @param nAmount
+   *        The lookahead amount. May be unlimited.
+   * @param nLevels
+   *        The number of levels to build. The nodes below are open.
+   * @return <code>null</code> if the levels cannot be built, because the scan
+   *         evaluates semantic lookahead or a JAVACODE production before it
+   *         gets below the levels, or if they would get too large.
+   */
+  static Node buildLevels (final Expansion aExpansion, final int nAmount, final int nLevels)
+  {
+    return new LookaheadDecisionTree (aExpansion, nAmount, nLevels, MAX_LEVEL_NODES)._build (new int [0]);
+  }
+}
@@ -223,7 +223,10 @@ public class Main
 
   /**
    * The method to call to exercise the parser from other Java programs. It
-   * returns an error code. See how the main program above uses this method.
+   * returns an error code. See how the main program above uses this method.<br>
+   * The generator state is static, so each call runs in a pooled
+   * {@link GenerationContext} with its own copy of that state. Concurrent calls
+   * (also of JJTree and JJDoc) therefore run in parallel.
    *
    * @param args
    *        main arguments
@@ -233,6 +236,14 @@ public class Main
    */
   @Nonnull
   public static ESuccess mainProgram (final String... args) throws IOException
+  {
+    if (!GenerationContext.isRunningInContext ())
+      return GenerationContext.runPooled (aCtx -> aCtx.mainProgram (args));
+    return _mainProgram (args);
+  }
+
+  @Nonnull
+  private static ESuccess _mainProgram (final String... args) throws IOException
   {
     // Initialize all static state
     reInitAll ();
@@ -262,6 +273,11 @@ public class Main
       Options.setCmdLineOption (args[arg]);
     }
 
+    // Must be decided before the grammar file is read
+    final boolean bUseCache = Options.isGenerationCache ();
+    File aCacheFile = null;
+    String sCacheKey = null;
+
     JavaCCParser parser = null;
     try
     {
@@ -277,6 +293,18 @@ public class Main
         return ESuccess.FAILURE;
       }
 
+      if (bUseCache)
+      {
+        aCacheFile = GenerationCache.getCacheFile (Options.getOutputDirectory (), fp);
+        sCacheKey = GenerationCache.createKey (fp, Options.getAllOptions ());
+        if (GenerationCache.isUpToDate (aCacheFile, sCacheKey))
+        {
+          PGPrinter.info ("Grammar file " + args[args.length - 1] + " and options are unchanged. Nothing to generate.");
+          return ESuccess.SUCCESS;
+        }
+        GenerationCache.remove (aCacheFile);
+      }
+
       final Reader aReader = FileHelper.getBufferedReader (new File (args[args.length - 1]), Options.getGrammarEncoding ());
       if (aReader == null)
       {
@@ -375,6 +403,9 @@ public class Main
       {
         PGPrinter.info ("Detected " + nErrors + " error(s) and " + nWarnings + " warning(s).");
       }
+
+      if (bUseCache && nErrors == 0)
+        GenerationCache.write (aCacheFile, sCacheKey, JavaCCGlobals.getAllGeneratedFiles ());
       return ESuccess.valueOf (nErrors == 0);
     }
     catch (final MetaParseException e)
@@ -67,6 +67,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -3494,6 +3495,10 @@ public class NfaState
     s_jjCheckNAddStatesDualNeeded = false;
     s_kinds = null;
     s_statesForState = null;
+    s_initialStates.clear ();
+    s_statesForLexicalState.clear ();
+    s_nfaStateOffset.clear ();
+    s_matchAnyChar.clear ();
   }
 
   private static final Map <Integer, NfaState> s_initialStates = new HashMap <> ();
@@ -3531,15 +3536,18 @@ public class NfaState
   {
     NfaState [] cleanStates;
     final List <NfaState> cleanStateList = new ArrayList <> ();
+    // The composite states are indices within the lexical state as well
+    final Map <NfaState, Integer> offsets = new IdentityHashMap <> ();
     for (final int l : s_statesForLexicalState.keySet ())
     {
-      final int offset = s_nfaStateOffset.get (Integer.valueOf (l)).intValue ();
+      final Integer offset = s_nfaStateOffset.get (Integer.valueOf (l));
       final List <NfaState> states = s_statesForLexicalState.get (Integer.valueOf (l));
       for (final NfaState state : states)
       {
+        offsets.put (state, offset);
         if (state.m_stateName == -1)
           continue;
-        state.m_stateName += offset;
+        state.m_stateName += offset.intValue ();
       }
       cleanStateList.addAll (states);
     }
@@ -3567,8 +3575,9 @@ public class NfaState
       final SortedSet <Integer> composite = new TreeSet <> ();
       if (s.m_isComposite)
       {
+        final int offset = offsets.get (s).intValue ();
         for (final int c : s.m_compositeStates)
-          composite.add (Integer.valueOf (c));
+          composite.add (Integer.valueOf (c + offset));
       }
       tokenizerData.addNfaState (s.m_stateName, chars, nextStates, composite, s.m_kindToPrint);
     }
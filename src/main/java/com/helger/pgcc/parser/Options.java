@@ -148,6 +148,21 @@ public class Options
   public static final String USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC = "SUPPORT_CLASS_VISIBILITY_PUBLIC";
   public static final String USEROPTION__OUTPUT_DIRECTORY = "OUTPUT_DIRECTORY";
   public static final String USEROPTION__KEEP_LINE_COLUMN = "KEEP_LINE_COLUMN";
+  public static final String USEROPTION__LAZY_TOKEN_IMAGE = "LAZY_TOKEN_IMAGE";
+  public static final String USEROPTION__LAZY_LINE_COLUMN = "LAZY_LINE_COLUMN";
+  public static final String USEROPTION__RECYCLE_TOKENS = "RECYCLE_TOKENS";
+  public static final String USEROPTION__GENERATION_CACHE = "GENERATION_CACHE";
+  public static final String USEROPTION__KEYWORD_HASH = "KEYWORD_HASH";
+  public static final String USEROPTION__BYTE_CHAR_STREAM = "BYTE_CHAR_STREAM";
+  public static final String USEROPTION__CHAR_SEQUENCE_CHAR_STREAM = "CHAR_SEQUENCE_CHAR_STREAM";
+  public static final String USEROPTION__TOKEN_BUFFER = "TOKEN_BUFFER";
+  public static final String USEROPTION__TOKEN_SPLITERATOR = "TOKEN_SPLITERATOR";
+  public static final String USEROPTION__LOOKAHEAD_MEMO = "LOOKAHEAD_MEMO";
+  public static final String USEROPTION__EXCEPTION_FREE_LOOKAHEAD = "EXCEPTION_FREE_LOOKAHEAD";
+  public static final String USEROPTION__LAZY_ERROR_REPORTING = "LAZY_ERROR_REPORTING";
+  public static final String USEROPTION__PARSE_EXCEPTION_STACK_TRACE = "PARSE_EXCEPTION_STACK_TRACE";
+  public static final String USEROPTION__LOOKAHEAD_DECISION_TREES = "LOOKAHEAD_DECISION_TREES";
+  public static final String USEROPTION__LOOKAHEAD_PREFILTER = "LOOKAHEAD_PREFILTER";
   public static final String USEROPTION__GRAMMAR_ENCODING = "GRAMMAR_ENCODING";
   public static final String USEROPTION__OUTPUT_ENCODING = "OUTPUT_ENCODING";
   public static final String USEROPTION__TOKEN_FACTORY = "TOKEN_FACTORY";
@@ -216,6 +231,21 @@ public class Options
     temp.add (new OptionInfo (USEROPTION__COMMON_TOKEN_ACTION, EOptionType.BOOLEAN, Boolean.FALSE));
     temp.add (new OptionInfo (USEROPTION__CACHE_TOKENS, EOptionType.BOOLEAN, Boolean.FALSE));
     temp.add (new OptionInfo (USEROPTION__KEEP_LINE_COLUMN, EOptionType.BOOLEAN, Boolean.TRUE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_TOKEN_IMAGE, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_LINE_COLUMN, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__RECYCLE_TOKENS, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__GENERATION_CACHE, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__KEYWORD_HASH, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__BYTE_CHAR_STREAM, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__CHAR_SEQUENCE_CHAR_STREAM, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__TOKEN_BUFFER, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__TOKEN_SPLITERATOR, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LOOKAHEAD_MEMO, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__EXCEPTION_FREE_LOOKAHEAD, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_ERROR_REPORTING, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__PARSE_EXCEPTION_STACK_TRACE, EOptionType.BOOLEAN, Boolean.TRUE));
+    temp.add (new OptionInfo (USEROPTION__LOOKAHEAD_DECISION_TREES, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LOOKAHEAD_PREFILTER, EOptionType.BOOLEAN, Boolean.FALSE));
 
     temp.add (new OptionInfo (USEROPTION__GENERATE_BOILERPLATE, EOptionType.BOOLEAN, Boolean.TRUE));
 
@@ -665,6 +695,70 @@ public class Options
       }
       s_optionValues.put (USEROPTION__DEBUG_PARSER, Boolean.TRUE);
     }
+
+    if (isLazyLineColumn () && (!isKeepLineColumn () || isJavaUnicodeEscape () || isUserTokenManager ()))
+    {
+      JavaCCErrors.warning ("Option LAZY_LINE_COLUMN is only supported with KEEP_LINE_COLUMN=true, " +
+                            "JAVA_UNICODE_ESCAPE=false and USER_TOKEN_MANAGER=false and will be ignored.");
+      s_optionValues.put (USEROPTION__LAZY_LINE_COLUMN, Boolean.FALSE);
+    }
+
+    if (isTokenBuffer () && !isLazyLineColumn ())
+    {
+      // The offsets of the tokens are only tracked for LAZY_LINE_COLUMN
+      JavaCCErrors.warning ("Option TOKEN_BUFFER is only supported with LAZY_LINE_COLUMN=true and will be ignored.");
+      s_optionValues.put (USEROPTION__TOKEN_BUFFER, Boolean.FALSE);
+    }
+
+    if (isTokenSpliterator () &&
+        (getJdkVersion ().isOlderThan (EJDKVersion.JDK_1_8) ||
+         isUserTokenManager () ||
+         isJavaUserCharStream () ||
+         isTokenManagerUsesParser () ||
+         isRecycleTokens ()))
+    {
+      // Every chunk needs its own token manager and the tokens must stay valid
+      JavaCCErrors.warning ("Option TOKEN_SPLITERATOR is only supported with JDK_VERSION 1.8 or later, " +
+                            "USER_TOKEN_MANAGER=false, USER_CHAR_STREAM=false, TOKEN_MANAGER_USES_PARSER=false and " +
+                            "RECYCLE_TOKENS=false and will be ignored.");
+      s_optionValues.put (USEROPTION__TOKEN_SPLITERATOR, Boolean.FALSE);
+    }
+
+    if (isLookaheadMemo () && (getOutputLanguage () != EOutputLanguage.JAVA || hasDepthLimit ()))
+    {
+      // A scan that failed because of the depth limit must not be remembered
+      JavaCCErrors.warning ("Option LOOKAHEAD_MEMO is only supported with OUTPUT_LANGUAGE java and " +
+                            "without DEPTH_LIMIT and will be ignored.");
+      s_optionValues.put (USEROPTION__LOOKAHEAD_MEMO, Boolean.FALSE);
+    }
+
+    if (isLazyErrorReporting () &&
+        (getOutputLanguage () != EOutputLanguage.JAVA || !isErrorReporting () || hasDepthLimit ()))
+    {
+      // A failed depth check leaves jj_depth unbalanced, so the re-run would
+      // not fail at the same place
+      JavaCCErrors.warning ("Option LAZY_ERROR_REPORTING is only supported with OUTPUT_LANGUAGE java, " +
+                            "ERROR_REPORTING=true and without DEPTH_LIMIT and will be ignored.");
+      s_optionValues.put (USEROPTION__LAZY_ERROR_REPORTING, Boolean.FALSE);
+    }
+
+    if (isLookaheadDecisionTrees () &&
+        (getOutputLanguage () != EOutputLanguage.JAVA || hasDepthLimit () || isDebugLookahead ()))
+    {
+      // A decision tree neither checks the depth nor traces the scan
+      JavaCCErrors.warning ("Option LOOKAHEAD_DECISION_TREES is only supported with OUTPUT_LANGUAGE java and " +
+                            "without DEPTH_LIMIT and DEBUG_LOOKAHEAD and will be ignored.");
+      s_optionValues.put (USEROPTION__LOOKAHEAD_DECISION_TREES, Boolean.FALSE);
+    }
+
+    if (isLookaheadPrefilter () &&
+        (getOutputLanguage () != EOutputLanguage.JAVA || hasDepthLimit () || isDebugLookahead ()))
+    {
+      // Without the scan neither the depth is checked nor the scan traced
+      JavaCCErrors.warning ("Option LOOKAHEAD_PREFILTER is only supported with OUTPUT_LANGUAGE java and " +
+                            "without DEPTH_LIMIT and DEBUG_LOOKAHEAD and will be ignored.");
+      s_optionValues.put (USEROPTION__LOOKAHEAD_PREFILTER, Boolean.FALSE);
+    }
   }
 
   /**
@@ -887,6 +981,193 @@ public class Options
     return booleanValue (USEROPTION__KEEP_LINE_COLUMN);
   }
 
+  /**
+   * Find the lazy line column value. If enabled, the char stream only records
+   * the offsets of the line starts, and tokens compute their line and column
+   * numbers from their offsets when they are first requested.
+   *
+   * @return The requested lazy line column value.
+   */
+  public static boolean isLazyLineColumn ()
+  {
+    return booleanValue (USEROPTION__LAZY_LINE_COLUMN);
+  }
+
+  /**
+   * Find the lazy token image value. If enabled, the token manager does not
+   * create a String for each token but lets the token reference the chars of
+   * the char stream. The String is only created on first access.
+   *
+   * @return The requested lazy token image value.
+   */
+  public static boolean isLazyTokenImage ()
+  {
+    return booleanValue (USEROPTION__LAZY_TOKEN_IMAGE);
+  }
+
+  /**
+   * Find the recycle tokens value. If enabled, the token manager reuses the
+   * regular tokens that left the lookahead window of the parser instead of
+   * creating new ones.
+   *
+   * @return The requested recycle tokens value.
+   */
+  public static boolean isRecycleTokens ()
+  {
+    return booleanValue (USEROPTION__RECYCLE_TOKENS);
+  }
+
+  /**
+   * Find the generation cache value. If enabled, the generation is skipped if
+   * neither the grammar file, nor the options nor the PGCC version changed
+   * since the last successful run. Only the command line value is considered.
+   *
+   * @return The requested generation cache value.
+   */
+  public static boolean isGenerationCache ()
+  {
+    return booleanValue (USEROPTION__GENERATION_CACHE);
+  }
+
+  /**
+   * Find the keyword hash value. If enabled, the string literals that are
+   * matched by another regular expression as well (like keywords by the
+   * identifier) are matched by the NFA of the token manager and classified
+   * afterwards by a perfect hash lookup, instead of being part of the string
+   * literal DFA.
+   *
+   * @return The requested keyword hash value.
+   */
+  public static boolean isKeywordHash ()
+  {
+    return booleanValue (USEROPTION__KEYWORD_HASH);
+  }
+
+  /**
+   * Find the byte char stream value. If enabled, the token manager matches the
+   * bytes of the UTF-8 encoded input instead of chars, and the generated
+   * ByteCharStream reads the bytes without decoding them.
+   *
+   * @return The requested byte char stream value.
+   */
+  public static boolean isByteCharStream ()
+  {
+    return booleanValue (USEROPTION__BYTE_CHAR_STREAM);
+  }
+
+  /**
+   * Find the char sequence char stream value. If enabled, the generated
+   * CharSequenceCharStream reads directly from an in-memory String or char
+   * array instead of copying the input into a buffer.
+   *
+   * @return The requested char sequence char stream value.
+   */
+  public static boolean isCharSequenceCharStream ()
+  {
+    return booleanValue (USEROPTION__CHAR_SEQUENCE_CHAR_STREAM);
+  }
+
+  /**
+   * Find the token buffer value. If enabled, the token manager has an
+   * additional method fillTokens that writes the kinds and offsets of the next
+   * tokens into a TokenBuffer instead of creating Token objects.
+   *
+   * @return The requested token buffer value.
+   */
+  public static boolean isTokenBuffer ()
+  {
+    return booleanValue (USEROPTION__TOKEN_BUFFER);
+  }
+
+  /**
+   * Find the token spliterator value. If enabled, a ...TokenSpliterator is
+   * generated that splits an in-memory input at line ends and lexes the parts
+   * with separate token managers, e.g. in a parallel stream.
+   *
+   * @return The requested token spliterator value.
+   */
+  public static boolean isTokenSpliterator ()
+  {
+    return booleanValue (USEROPTION__TOKEN_SPLITERATOR);
+  }
+
+  /**
+   * Find the lookahead memo value. If enabled, the parser remembers the result
+   * of each production scanned during a syntactic lookahead without limit per
+   * start token, so that nested lookaheads do not scan the same tokens again.
+   *
+   * @return The requested lookahead memo value.
+   */
+  public static boolean isLookaheadMemo ()
+  {
+    return booleanValue (USEROPTION__LOOKAHEAD_MEMO);
+  }
+
+  /**
+   * Find the exception free lookahead value. If enabled, a syntactic lookahead
+   * that reached its limit sets the flag jj_done and returns from the scan
+   * routines, instead of throwing a LookaheadSuccess exception. This is how
+   * C++ parsers always work.
+   *
+   * @return The requested exception free lookahead value.
+   */
+  public static boolean isExceptionFreeLookahead ()
+  {
+    return booleanValue (USEROPTION__EXCEPTION_FREE_LOOKAHEAD);
+  }
+
+  /**
+   * Find the lazy error reporting value. If enabled, the bookkeeping for the
+   * error messages is only done while a production that failed is parsed
+   * again. Each production called from outside of the parser remembers the
+   * token it started at, and after a ParseException it parses the input again
+   * from this token to create the full error message. The actions are executed
+   * again during this second run.
+   *
+   * @return The requested lazy error reporting value.
+   */
+  public static boolean isLazyErrorReporting ()
+  {
+    return booleanValue (USEROPTION__LAZY_ERROR_REPORTING);
+  }
+
+  /**
+   * Find the parse exception stack trace value. If disabled, the generated
+   * ParseException does not fill in its stack trace, which makes creating it
+   * cheap for callers that reject many invalid inputs.
+   *
+   * @return The requested parse exception stack trace value.
+   */
+  public static boolean isParseExceptionStackTrace ()
+  {
+    return booleanValue (USEROPTION__PARSE_EXCEPTION_STACK_TRACE);
+  }
+
+  /**
+   * Find the lookahead decision trees value. If enabled, a syntactic lookahead
+   * with a limited amount is decided by nested switch statements on the kinds
+   * of the next tokens instead of a speculative scan, if the scan contains no
+   * semantic lookahead and no JAVACODE production.
+   *
+   * @return The requested lookahead decision trees value.
+   */
+  public static boolean isLookaheadDecisionTrees ()
+  {
+    return booleanValue (USEROPTION__LOOKAHEAD_DECISION_TREES);
+  }
+
+  /**
+   * Find the lookahead prefilter value. If enabled, a syntactic lookahead that
+   * is still scanned first checks the kinds of the next two tokens against the
+   * kinds the scan can succeed with, and only scans if they match.
+   *
+   * @return The requested lookahead prefilter value.
+   */
+  public static boolean isLookaheadPrefilter ()
+  {
+    return booleanValue (USEROPTION__LOOKAHEAD_PREFILTER);
+  }
+
   /**
    * Find the JDK version.
    *
@@ -76,10 +76,12 @@ import static com.helger.pgcc.parser.JavaCCGlobals.s_tokenCount;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import com.helger.base.string.StringHelper;
 import com.helger.collection.commons.CommonsArrayList;
 import com.helger.collection.commons.CommonsHashMap;
+import com.helger.collection.commons.CommonsLinkedHashMap;
 import com.helger.collection.commons.ICommonsList;
 import com.helger.collection.commons.ICommonsMap;
 import com.helger.pgcc.PGPrinter;
@@ -104,6 +106,7 @@ public class ParseEngine
   private int m_nGenSymbolIndex = 0;
   private int m_nIndentCount = 0;
   private boolean m_bJJ2LA = false;
+  private int m_nMemoRoutineCount = 0;
   private CodeGenerator m_codeGenerator;
 
   /**
@@ -333,6 +336,19 @@ public class ParseEngine
     }
   }
 
+  /**
+   * @param nMaskIndex
+   *        The index of the choice point
+   * @return The statement that remembers that the choice point was reached at
+   *         the current token. With lazy error reporting it is only executed
+   *         while a failed production is parsed again.
+   */
+  private static String _getLa1Assignment (final int nMaskIndex)
+  {
+    final String ret = "jj_la1[" + nMaskIndex + "] = jj_gen;";
+    return Options.isLazyErrorReporting () ? "if (jj_tracking) " + ret : ret;
+  }
+
   /**
    * This method takes two parameters - an array of Lookahead's "conds", and an array of String's
    * "actions". "actions" contains exactly one element more than "conds". "actions" are Java source
@@ -397,7 +413,7 @@ public class ParseEngine
             retval += INDENT_DEC + "\n" + "default:" + INDENT_INC;
             if (Options.isErrorReporting ())
             {
-              retval += "\njj_la1[" + s_maskindex + "] = jj_gen;";
+              retval += "\n" + _getLa1Assignment (s_maskindex);
               s_maskindex++;
             }
             MASK_VALS.add (tokenMask);
@@ -539,7 +555,7 @@ public class ParseEngine
             retval += INDENT_DEC + "\ndefault:" + INDENT_INC;
             if (Options.isErrorReporting ())
             {
-              retval += "\njj_la1[" + s_maskindex + "] = jj_gen;";
+              retval += "\n" + _getLa1Assignment (s_maskindex);
               s_maskindex++;
             }
             MASK_VALS.add (tokenMask);
@@ -594,7 +610,7 @@ public class ParseEngine
         retval += INDENT_DEC + "\n" + "default:" + INDENT_INC;
         if (Options.isErrorReporting ())
         {
-          retval += "\njj_la1[" + s_maskindex + "] = jj_gen;";
+          retval += "\n" + _getLa1Assignment (s_maskindex);
           MASK_VALS.add (tokenMask);
           s_maskindex++;
         }
@@ -861,6 +877,130 @@ public class ParseEngine
     }
   }
 
+  private void _genJavaMethodHeader (final BNFProduction p, final String sAccessMod, final String sMethodName)
+  {
+    Token t = p.getReturnTypeTokens ().get (0);
+    m_codeGenerator.genCode ("  final " + sAccessMod + " ");
+    s_cline = t.beginLine;
+    s_ccol = t.beginColumn;
+    m_codeGenerator.printTokenOnly (t);
+    for (int i = 1; i < p.getReturnTypeTokens ().size (); i++)
+    {
+      t = p.getReturnTypeTokens ().get (i);
+      m_codeGenerator.printToken (t);
+    }
+    m_codeGenerator.printTrailingComments (t);
+    m_codeGenerator.genCode (" " + sMethodName + "(");
+    if (p.getParameterListTokens ().size () != 0)
+    {
+      m_codeGenerator.printTokenSetup ((p.getParameterListTokens ().get (0)));
+      for (final Token aElement : p.getParameterListTokens ())
+      {
+        t = aElement;
+        m_codeGenerator.printToken (t);
+      }
+      m_codeGenerator.printTrailingComments (t);
+    }
+    m_codeGenerator.genCode (")");
+    m_codeGenerator.genCode (" throws ParseException");
+
+    for (final List <Token> name : p.getThrowsList ())
+    {
+      m_codeGenerator.genCode (", ");
+      for (final Token t2 : name)
+        m_codeGenerator.genCode (t2.image);
+    }
+  }
+
+  /**
+   * @param sLhs
+   *        The name of a BNF production
+   * @return The name of the method that contains the code of the production,
+   *         if lazy error reporting is enabled.
+   */
+  private static String _getLazyBodyName (final String sLhs)
+  {
+    return "jj_" + sLhs + "_body";
+  }
+
+  /**
+   * @param p
+   *        The production
+   * @return The comma separated names of the parameters of the production. The
+   *         name of a parameter is its last identifier outside of brackets.
+   */
+  private static String _getParameterNames (final BNFProduction p)
+  {
+    final StringBuilder ret = new StringBuilder ();
+    String sName = null;
+    int nNesting = 0;
+    for (final Token t : p.getParameterListTokens ())
+    {
+      if (t.kind == JavaCCParserConstants.IDENTIFIER)
+      {
+        if (nNesting == 0)
+          sName = t.image;
+      }
+      else
+        if (t.image.equals ("<") || t.image.equals ("(") || t.image.equals ("["))
+          nNesting++;
+        else
+          if (t.image.equals (")") || t.image.equals ("]"))
+            nNesting--;
+          else
+            if (t.image.length () > 0 && t.image.replace (">", "").isEmpty ())
+            {
+              // ">>" closes two type arguments
+              nNesting -= t.image.length ();
+            }
+            else
+              if (t.image.equals (",") && nNesting == 0)
+              {
+                ret.append (sName).append (", ");
+                sName = null;
+              }
+    }
+    if (sName != null)
+      ret.append (sName);
+    return ret.toString ();
+  }
+
+  /**
+   * Generate the body of the public method of a production with lazy error
+   * reporting. It calls the method with the code of the production and
+   * remembers the current token. After a ParseException it parses again from
+   * this token, this time with the bookkeeping for the error message.
+   */
+  private void _genLazyErrorReportingWrapper (final BNFProduction p, final boolean voidReturn)
+  {
+    final String sCall = _getLazyBodyName (p.getLhs ()) + "(" + _getParameterNames (p) + ");";
+    m_codeGenerator.genCodeLine (" {");
+    m_codeGenerator.genCodeLine ("    if (jj_tracking) {");
+    if (voidReturn)
+    {
+      m_codeGenerator.genCodeLine ("      " + sCall);
+      m_codeGenerator.genCodeLine ("      return;");
+    }
+    else
+      m_codeGenerator.genCodeLine ("      return " + sCall);
+    m_codeGenerator.genCodeLine ("    }");
+    m_codeGenerator.genCodeLine ("    final Token jj_checkpoint = token;");
+    m_codeGenerator.genCodeLine ("    try {");
+    m_codeGenerator.genCodeLine ("      " + (voidReturn ? "" : "return ") + sCall);
+    m_codeGenerator.genCodeLine ("    } catch (final ParseException ex) {");
+    m_codeGenerator.genCodeLine ("      jj_start_tracking(jj_checkpoint);");
+    m_codeGenerator.genCodeLine ("      try {");
+    m_codeGenerator.genCodeLine ("        " + sCall);
+    m_codeGenerator.genCodeLine ("      } finally {");
+    m_codeGenerator.genCodeLine ("        jj_tracking = false;");
+    m_codeGenerator.genCodeLine ("      }");
+    m_codeGenerator.genCodeLine ("      // The second run did not fail");
+    m_codeGenerator.genCodeLine ("      throw ex;");
+    m_codeGenerator.genCodeLine ("    }");
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+  }
+
   void buildPhase1Routine (final BNFProduction p)
   {
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
@@ -877,36 +1017,15 @@ public class ParseEngine
         m_codeGenerator.printTokenSetup (t);
         s_ccol = 1;
         m_codeGenerator.printLeadingComments (t);
-        m_codeGenerator.genCode ("  final " + (p.getAccessMod () != null ? p.getAccessMod () : "public") + " ");
-        s_cline = t.beginLine;
-        s_ccol = t.beginColumn;
-        m_codeGenerator.printTokenOnly (t);
-        for (int i = 1; i < p.getReturnTypeTokens ().size (); i++)
+        final String sAccessMod = p.getAccessMod () != null ? p.getAccessMod () : "public";
+        if (Options.isLazyErrorReporting ())
         {
-          t = p.getReturnTypeTokens ().get (i);
-          m_codeGenerator.printToken (t);
-        }
-        m_codeGenerator.printTrailingComments (t);
-        m_codeGenerator.genCode (" " + p.getLhs () + "(");
-        if (p.getParameterListTokens ().size () != 0)
-        {
-          m_codeGenerator.printTokenSetup ((p.getParameterListTokens ().get (0)));
-          for (final Token aElement : p.getParameterListTokens ())
-          {
-            t = aElement;
-            m_codeGenerator.printToken (t);
-          }
-          m_codeGenerator.printTrailingComments (t);
-        }
-        m_codeGenerator.genCode (")");
-        m_codeGenerator.genCode (" throws ParseException");
-
-        for (final List <Token> name : p.getThrowsList ())
-        {
-          m_codeGenerator.genCode (", ");
-          for (final Token t2 : name)
-            m_codeGenerator.genCode (t2.image);
+          _genJavaMethodHeader (p, sAccessMod, p.getLhs ());
+          _genLazyErrorReportingWrapper (p, voidReturn);
+          _genJavaMethodHeader (p, "private", _getLazyBodyName (p.getLhs ()));
         }
+        else
+          _genJavaMethodHeader (p, sAccessMod, p.getLhs ());
         break;
       case CPP:
         error_ret_cpp = _generateCPPMethodheader (p, t);
@@ -1127,7 +1246,13 @@ public class ParseEngine
           retval += m_codeGenerator.getTrailingComments (t);
           retval += " = ";
         }
-        retval += e_nrw.getName () + "(";
+        if (Options.isLazyErrorReporting () && e_nrw.getProd () instanceof BNFProduction)
+        {
+          // Calls inside the parser don't need the checkpoint of the wrapper
+          retval += _getLazyBodyName (e_nrw.getName ()) + "(";
+        }
+        else
+          retval += e_nrw.getName () + "(";
         if (e_nrw.getArgumentTokenCount () != 0)
         {
           m_codeGenerator.printTokenSetup (e_nrw.getArgumentTokenAt (0));
@@ -1481,10 +1606,227 @@ public class ParseEngine
     return retval;
   }
 
+  private static String _getDecisionTreeLeaf (final LookaheadDecisionTree.Node aLeaf)
+  {
+    final String sReturn = "return " + aLeaf.getResult () + ";";
+    // jj_save needs to know how far the scan would have looked
+    if (Options.isErrorReporting ())
+      return "jj_la = xla - " + aLeaf.getFar () + "; " + sReturn;
+    return sReturn;
+  }
+
+  private static String _getKindLabel (final int nKind)
+  {
+    final String sLabel = NAMES_OF_TOKENS.get (Integer.valueOf (nKind));
+    return sLabel != null ? sLabel : Integer.toString (nKind);
+  }
+
+  /**
+   * Append the code of a decision tree node. The token before the one the node
+   * switches on is in the variable jj_t&lt;pos-1&gt; or in token.
+   */
+  private static void _appendDecisionTree (final LookaheadDecisionTree.Node aNode,
+                                           final String sIndent,
+                                           final StringBuilder aSB)
+  {
+    if (aNode.isLeaf ())
+    {
+      aSB.append (sIndent).append (_getDecisionTreeLeaf (aNode)).append ('\n');
+      return;
+    }
+
+    final int nPos = aNode.getPosition ();
+    final String sToken = "jj_t" + nPos;
+    aSB.append (sIndent)
+       .append ("final Token ")
+       .append (sToken)
+       .append (" = jj_next_token(")
+       .append (nPos == 1 ? "token" : "jj_t" + (nPos - 1))
+       .append (");\n");
+
+    // Kinds with the same code share a case and the code of the default is
+    // not repeated
+    final String sCaseIndent = sIndent + "  ";
+    final StringBuilder aDefault = new StringBuilder ();
+    _appendDecisionTree (aNode.getDefault (), sCaseIndent + "  ", aDefault);
+    final ICommonsMap <String, ICommonsList <Integer>> aCases = new CommonsLinkedHashMap <> ();
+    for (int i = 0; i < aNode.getKinds ().size (); i++)
+    {
+      final StringBuilder aCase = new StringBuilder ();
+      _appendDecisionTree (aNode.getChildren ().get (i), sCaseIndent + "  ", aCase);
+      final String sCase = aCase.toString ();
+      if (!sCase.equals (aDefault.toString ()))
+        aCases.computeIfAbsent (sCase, k -> new CommonsArrayList <> ()).add (aNode.getKinds ().get (i));
+    }
+    if (aCases.isEmpty ())
+    {
+      // The kind does not matter, but the token is scanned anyway
+      _appendDecisionTree (aNode.getDefault (), sIndent, aSB);
+      return;
+    }
+
+    aSB.append (sIndent).append ("switch (").append (sToken).append (".kind) {\n");
+    for (final Map.Entry <String, ICommonsList <Integer>> aEntry : aCases.entrySet ())
+    {
+      for (final Integer aKind : aEntry.getValue ())
+        aSB.append (sCaseIndent).append ("case ").append (_getKindLabel (aKind.intValue ())).append (":\n");
+      final boolean bBlock = aEntry.getKey ().contains ("final Token ");
+      if (bBlock)
+        aSB.append (sCaseIndent).append ("{\n");
+      aSB.append (aEntry.getKey ());
+      if (bBlock)
+        aSB.append (sCaseIndent).append ("}\n");
+    }
+    aSB.append (sCaseIndent).append ("default:\n");
+    final boolean bBlock = aDefault.indexOf ("final Token ") >= 0;
+    if (bBlock)
+      aSB.append (sCaseIndent).append ("{\n");
+    aSB.append (aDefault);
+    if (bBlock)
+      aSB.append (sCaseIndent).append ("}\n");
+    aSB.append (sIndent).append ("}\n");
+  }
+
+  private void _buildDecisionTreeRoutine (final ExpLookahead la, final LookaheadDecisionTree.Node aTree)
+  {
+    final Expansion e = la.getLaExpansion ();
+    m_codeGenerator.genCodeLine ("  private boolean jj_2" + e.getInternalName () + "(int xla)");
+    m_codeGenerator.genCodeLine (" {");
+    m_codeGenerator.genCodeLine ("    // Decided by the kinds of the next tokens like the scan jj_3" + e.getInternalName ());
+    final StringBuilder aSB = new StringBuilder ();
+    if (Options.isErrorReporting ())
+    {
+      m_codeGenerator.genCodeLine ("    try {");
+      _appendDecisionTree (aTree, "      ", aSB);
+    }
+    else
+      _appendDecisionTree (aTree, "    ", aSB);
+    for (final String sLine : aSB.toString ().split ("\n"))
+      if (sLine.length () > 0)
+        m_codeGenerator.genCodeLine (sLine);
+    if (Options.isErrorReporting ())
+    {
+      m_codeGenerator.genCodeLine ("    }");
+      if (Options.isLazyErrorReporting ())
+        m_codeGenerator.genCodeLine ("    finally { if (jj_tracking) jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+      else
+        m_codeGenerator.genCodeLine ("    finally { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+    }
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+    // The scan routine is only needed to collect the expected tokens
+    if (Options.isErrorReporting ())
+    {
+      final Phase3Data p3d = new Phase3Data (e, la.getAmount ());
+      m_phase3list.add (p3d);
+      m_phase3table.put (e, p3d);
+    }
+  }
+
+  private static boolean _isFailingLeaf (final LookaheadDecisionTree.Node aNode)
+  {
+    return aNode != null && aNode.isLeaf () && !aNode.getResult ();
+  }
+
+  private static String _getKindSetInitializer (final ICommonsList <Integer> aKinds)
+  {
+    final long [] aSet = new long [(s_tokenCount + 63) / 64];
+    for (final Integer aKind : aKinds)
+      aSet[aKind.intValue () >>> 6] |= 1L << aKind.intValue ();
+    final StringBuilder aSB = new StringBuilder ("{");
+    for (int i = 0; i < aSet.length; i++)
+      aSB.append (i == 0 ? "" : ", ").append ("0x").append (Long.toHexString (aSet[i])).append ('L');
+    return aSB.append ('}').toString ();
+  }
+
+  private static String _getPrefilterReturn (final LookaheadDecisionTree.Node aLeaf)
+  {
+    // jj_save needs to know how far the scan would have looked
+    if (Options.isErrorReporting ())
+      return "{ jj_la = xla - " + aLeaf.getFar () + "; return false; }";
+    return "return false;";
+  }
+
+  /**
+   * Generate the sets of the kinds the first and the second token must have
+   * for the scan of a lookahead to succeed.
+   *
+   * @return The statements that return from the jj_2 routine without the scan
+   *         if the next tokens are not in the sets. Empty if the scan may succeed
+   *         for all kinds of the next token.
+   */
+  private ICommonsList <String> _genPrefilter (final ExpLookahead la)
+  {
+    final ICommonsList <String> ret = new CommonsArrayList <> ();
+    final Expansion e = la.getLaExpansion ();
+    LookaheadDecisionTree.Node aRoot = LookaheadDecisionTree.buildLevels (e, la.getAmount (), 2);
+    if (aRoot == null)
+      aRoot = LookaheadDecisionTree.buildLevels (e, la.getAmount (), 1);
+    if (aRoot == null || aRoot.isLeaf () || !_isFailingLeaf (aRoot.getDefault ()))
+      return ret;
+
+    final String sSetName = "jj_2" + e.getInternalName ();
+    m_codeGenerator.genCodeLine ("  private static final long[] " +
+                                 sSetName +
+                                 "_first = " +
+                                 _getKindSetInitializer (aRoot.getKinds ()) +
+                                 ";");
+    ret.add ("final Token jj_t1 = jj_next_token(token);");
+    ret.add ("if (!jj_in_set(" + sSetName + "_first, jj_t1.kind)) " + _getPrefilterReturn (aRoot.getDefault ()));
+
+    // The second token can only be checked if the scan tests it for all
+    // possible first tokens and fails for the same other kinds
+    final ICommonsList <Integer> aSecondKinds = new CommonsArrayList <> ();
+    LookaheadDecisionTree.Node aSecondDefault = null;
+    for (final LookaheadDecisionTree.Node aChild : aRoot.getChildren ())
+    {
+      if (aChild.isLeaf () || aChild.isOpen () || !_isFailingLeaf (aChild.getDefault ()))
+        return ret;
+      if (aSecondDefault != null && aSecondDefault.getFar () != aChild.getDefault ().getFar ())
+        return ret;
+      aSecondDefault = aChild.getDefault ();
+      for (final Integer aKind : aChild.getKinds ())
+        if (!aSecondKinds.contains (aKind))
+          aSecondKinds.add (aKind);
+    }
+    m_codeGenerator.genCodeLine ("  private static final long[] " +
+                                 sSetName +
+                                 "_second = " +
+                                 _getKindSetInitializer (aSecondKinds) +
+                                 ";");
+    ret.add ("if (!jj_in_set(" + sSetName + "_second, jj_next_token(jj_t1).kind)) " + _getPrefilterReturn (aSecondDefault));
+    return ret;
+  }
+
+  private void _genTryReturn (final ICommonsList <String> aPrefilter, final String sReturn)
+  {
+    if (aPrefilter.isEmpty ())
+      m_codeGenerator.genCodeLine ("    try { " + sReturn + " }");
+    else
+    {
+      m_codeGenerator.genCodeLine ("    try {");
+      for (final String sLine : aPrefilter)
+        m_codeGenerator.genCodeLine ("      " + sLine);
+      m_codeGenerator.genCodeLine ("      " + sReturn);
+      m_codeGenerator.genCodeLine ("    }");
+    }
+  }
+
   private void _buildPhase2Routine (final ExpLookahead la)
   {
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
     final Expansion e = la.getLaExpansion ();
+    if (Options.isLookaheadDecisionTrees () && la.getAmount () > 0 && la.getAmount () != Integer.MAX_VALUE)
+    {
+      final LookaheadDecisionTree.Node aTree = LookaheadDecisionTree.build (e, la.getAmount ());
+      if (aTree != null)
+      {
+        _buildDecisionTreeRoutine (la, aTree);
+        return;
+      }
+    }
+    final ICommonsList <String> aPrefilter = Options.isLookaheadPrefilter () ? _genPrefilter (la)
+                                                                             : new CommonsArrayList <> ();
     switch (eOutputLanguage)
     {
       case JAVA:
@@ -1500,6 +1842,15 @@ public class ParseEngine
     m_codeGenerator.genCodeLine ("    jj_la = xla;");
     m_codeGenerator.genCodeLine ("    jj_scanpos = token;");
     m_codeGenerator.genCodeLine ("    jj_lastpos = token;");
+    if (Options.isLookaheadMemo ())
+    {
+      // Only a lookahead without limit can reuse the result of another scan
+      m_codeGenerator.genCodeLine ("    jj_memo_on = xla == Integer.MAX_VALUE;");
+      m_codeGenerator.genCodeLine ("    if (++jj_memo_scan == 0) jj_memo_scan = 1;");
+      m_codeGenerator.genCodeLine ("    jj_scanidx = 0;");
+      m_codeGenerator.genCodeLine ("    jj_scanfar = 0;");
+      m_codeGenerator.genCodeLine ("    jj_scanfartok = token;");
+    }
 
     String ret_suffix = "";
     if (Options.hasDepthLimit ())
@@ -1510,8 +1861,25 @@ public class ParseEngine
     switch (eOutputLanguage)
     {
       case JAVA:
-        m_codeGenerator.genCodeLine ("    try { return (!jj_3" + e.getInternalName () + "()" + ret_suffix + "); }");
-        m_codeGenerator.genCodeLine ("    catch(LookaheadSuccess ls) { return true; }");
+        if (Options.isExceptionFreeLookahead ())
+        {
+          // jj_done must be read after the scan
+          m_codeGenerator.genCodeLine ("    jj_done = false;");
+          final String sReturn = "return (!jj_3" + e.getInternalName () + "()" + ret_suffix + " || jj_done);";
+          if (Options.isErrorReporting ())
+            _genTryReturn (aPrefilter, sReturn);
+          else
+          {
+            for (final String sLine : aPrefilter)
+              m_codeGenerator.genCodeLine ("    " + sLine);
+            m_codeGenerator.genCodeLine ("    " + sReturn);
+          }
+        }
+        else
+        {
+          _genTryReturn (aPrefilter, "return (!jj_3" + e.getInternalName () + "()" + ret_suffix + ");");
+          m_codeGenerator.genCodeLine ("    catch(LookaheadSuccess ls) { return true; }");
+        }
         break;
       case CPP:
         m_codeGenerator.genCodeLine ("    jj_done = false;");
@@ -1525,7 +1893,10 @@ public class ParseEngine
       switch (eOutputLanguage)
       {
         case JAVA:
-          m_codeGenerator.genCodeLine ("    finally { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+          if (Options.isLazyErrorReporting ())
+            m_codeGenerator.genCodeLine ("    finally { if (jj_tracking) jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+          else
+            m_codeGenerator.genCodeLine ("    finally { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
           break;
         case CPP:
           m_codeGenerator.genCodeLine (" { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
@@ -1545,6 +1916,31 @@ public class ParseEngine
 
   private Expansion m_jj3_expansion;
 
+  private void _genXspDeclaration ()
+  {
+    if (!m_xsp_declared)
+    {
+      m_xsp_declared = true;
+      m_codeGenerator.genCodeLine ("    " + _getTypeForToken () + " xsp;");
+      if (Options.isLookaheadMemo ())
+        m_codeGenerator.genCodeLine ("    int xsi;");
+    }
+  }
+
+  /**
+   * @return The statement to save the scan position. With lookahead memo the
+   *         index of the scan position is saved as well.
+   */
+  private static String _getSaveScanpos ()
+  {
+    return Options.isLookaheadMemo () ? "xsp = jj_scanpos; xsi = jj_scanidx;" : "xsp = jj_scanpos;";
+  }
+
+  private static String _getRestoreScanpos ()
+  {
+    return Options.isLookaheadMemo () ? "jj_scanpos = xsp; jj_scanidx = xsi;" : "jj_scanpos = xsp;";
+  }
+
   private String _genReturn (final boolean value)
   {
     final String retval = (value ? "true" : "false");
@@ -1555,6 +1951,11 @@ public class ParseEngine
                          "(LOOKAHEAD " +
                          (value ? "FAILED" : "SUCCEEDED") +
                          ")\");";
+      if (value && Options.isExceptionFreeLookahead () && m_codeGenerator.getOutputLanguage () == EOutputLanguage.JAVA)
+      {
+        // Returning because the lookahead succeeded is not a failure
+        tracecode = "if (!jj_done) " + tracecode;
+      }
       if (Options.isErrorReporting ())
       {
         tracecode = "if (!jj_rescan) " + tracecode;
@@ -1685,6 +2086,43 @@ public class ParseEngine
                   }
   }
 
+  /**
+   * Generate the scan routine of a production that looks up the result of an
+   * earlier scan of the production at the same token before scanning it in the
+   * method with the suffix "_scan". Results are only remembered during a
+   * lookahead without limit, as a limit may end the scan early. A result that
+   * depends on a semantic lookahead is only reused by the same lookahead. A remembered
+   * result also moves the furthest scanned token, so that jj_la and
+   * jj_lastpos are the same as after a real scan.
+   */
+  private void _genMemoRoutine (final String sMethodName)
+  {
+    final int nRoutine = m_nMemoRoutineCount++;
+    m_codeGenerator.genCodeLine ("  private boolean " + sMethodName + "()");
+    m_codeGenerator.genCodeLine (" {");
+    m_codeGenerator.genCodeLine ("    if (!jj_memo_on)");
+    m_codeGenerator.genCodeLine ("      return " + sMethodName + "_scan();");
+    m_codeGenerator.genCodeLine ("    final Token xst = jj_scanpos;");
+    m_codeGenerator.genCodeLine ("    final int xsi = jj_scanidx;");
+    m_codeGenerator.genCodeLine ("    final int xsem = jj_memo_sem;");
+    m_codeGenerator.genCodeLine ("    final int slot = jj_memo_find(" + nRoutine + ", xst);");
+    m_codeGenerator.genCodeLine ("    if (jj_memo_start(slot) == xst)");
+    m_codeGenerator.genCodeLine ("      return jj_memo_replay(slot, xsi);");
+    m_codeGenerator.genCodeLine ("    final int xfar = jj_scanfar;");
+    m_codeGenerator.genCodeLine ("    final Token xfartok = jj_scanfartok;");
+    m_codeGenerator.genCodeLine ("    jj_scanfar = xsi;");
+    m_codeGenerator.genCodeLine ("    jj_scanfartok = xst;");
+    m_codeGenerator.genCodeLine ("    final boolean ret = " + sMethodName + "_scan();");
+    m_codeGenerator.genCodeLine ("    if (jj_memo_on) jj_memo_put(" + nRoutine + ", xst, xsi, ret, xsem);");
+    m_codeGenerator.genCodeLine ("    if (xfar > jj_scanfar) {");
+    m_codeGenerator.genCodeLine ("      jj_scanfar = xfar;");
+    m_codeGenerator.genCodeLine ("      jj_scanfartok = xfartok;");
+    m_codeGenerator.genCodeLine ("    }");
+    m_codeGenerator.genCodeLine ("    return ret;");
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+  }
+
   private String _getTypeForToken ()
   {
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
@@ -1717,14 +2155,16 @@ public class ParseEngine
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
     if (!recursive_call)
     {
+      String sMethodName = "jj_3" + e.getInternalName ();
+      if (Options.isLookaheadMemo () && e.getParent () instanceof NormalProduction)
+      {
+        _genMemoRoutine (sMethodName);
+        sMethodName += "_scan";
+      }
       switch (eOutputLanguage)
       {
         case JAVA:
-          m_codeGenerator.genCodeLine ("  private " +
-                                       eOutputLanguage.getTypeBoolean () +
-                                       " jj_3" +
-                                       e.getInternalName () +
-                                       "()");
+          m_codeGenerator.genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " " + sMethodName + "()");
           break;
         case CPP:
           m_codeGenerator.genCodeLine (" inline bool jj_3" + e.getInternalName () + "()");
@@ -1737,6 +2177,8 @@ public class ParseEngine
       switch (eOutputLanguage)
       {
         case JAVA:
+          if (Options.isExceptionFreeLookahead ())
+            m_codeGenerator.genCodeLine ("    if (jj_done) return true;");
           break;
         case CPP:
           m_codeGenerator.genCodeLine ("    if (jj_done) return true;");
@@ -1798,7 +2240,10 @@ public class ParseEngine
         final NormalProduction ntprod = (PRODUCTION_TABLE.get (e_nrw.getName ()));
         if (ntprod instanceof AbstractCodeProduction)
         {
+          // The result of a scan that stopped at JAVACODE must not be
+          // remembered
           m_codeGenerator.genCodeLine ("    if (true) { jj_la = 0; jj_scanpos = jj_lastpos; " +
+                                       (Options.isLookaheadMemo () ? "jj_memo_on = false; " : "") +
                                        _genReturn (false) +
                                        "}");
         }
@@ -1819,12 +2264,8 @@ public class ParseEngine
           final ExpChoice e_nrw = (ExpChoice) e;
           if (e_nrw.getChoiceCount () != 1)
           {
-            if (!m_xsp_declared)
-            {
-              m_xsp_declared = true;
-              m_codeGenerator.genCodeLine ("    " + _getTypeForToken () + " xsp;");
-            }
-            m_codeGenerator.genCodeLine ("    xsp = jj_scanpos;");
+            _genXspDeclaration ();
+            m_codeGenerator.genCodeLine ("    " + _getSaveScanpos ());
           }
           for (int i = 0; i < e_nrw.getChoiceCount (); i++)
           {
@@ -1845,6 +2286,13 @@ public class ParseEngine
               m_codeGenerator.printTrailingComments (t);
               m_codeGenerator.genCodeLine (";");
               m_codeGenerator.genCodeLine ("    jj_lookingAhead = false;");
+              if (Options.isLookaheadMemo ())
+              {
+                // The result depends on the parser state, not only on the
+                // tokens, so the enclosing scans are only remembered for the
+                // current lookahead
+                m_codeGenerator.genCodeLine ("    jj_memo_sem++;");
+              }
             }
             m_codeGenerator.genCode ("    if (");
             if (la.getActionTokens ().isNotEmpty ())
@@ -1856,7 +2304,7 @@ public class ParseEngine
               // codeGenerator.genCodeLine("jj_3" + nested_seq.internal_name +
               // "()) {");
               m_codeGenerator.genCodeLine (_genjj_3Call (nested_seq) + ") {");
-              m_codeGenerator.genCodeLine ("    jj_scanpos = xsp;");
+              m_codeGenerator.genCodeLine ("    " + _getRestoreScanpos ());
             }
             else
             {
@@ -1909,11 +2357,7 @@ public class ParseEngine
             else
               if (e instanceof ExpOneOrMore)
               {
-                if (!m_xsp_declared)
-                {
-                  m_xsp_declared = true;
-                  m_codeGenerator.genCodeLine ("    " + _getTypeForToken () + " xsp;");
-                }
+                _genXspDeclaration ();
                 final ExpOneOrMore e_nrw = (ExpOneOrMore) e;
                 final Expansion nested_e = e_nrw.getExpansion ();
                 // codeGenerator.genCodeLine(" if (jj_3" +
@@ -1922,10 +2366,10 @@ public class ParseEngine
                 // codeGenerator.genCodeLine(" if (jj_la == 0 && jj_scanpos ==
                 // jj_lastpos) " + genReturn(false));
                 m_codeGenerator.genCodeLine ("    while (true) {");
-                m_codeGenerator.genCodeLine ("      xsp = jj_scanpos;");
+                m_codeGenerator.genCodeLine ("      " + _getSaveScanpos ());
                 // codeGenerator.genCodeLine(" if (jj_3" +
                 // nested_e.internal_name + "()) { jj_scanpos = xsp; break; }");
-                m_codeGenerator.genCodeLine ("      if (" + _genjj_3Call (nested_e) + ") { jj_scanpos = xsp; break; }");
+                m_codeGenerator.genCodeLine ("      if (" + _genjj_3Call (nested_e) + ") { " + _getRestoreScanpos () + " break; }");
                 // codeGenerator.genCodeLine(" if (jj_la == 0 && jj_scanpos ==
                 // jj_lastpos) " + genReturn(false));
                 m_codeGenerator.genCodeLine ("    }");
@@ -1933,21 +2377,19 @@ public class ParseEngine
               else
                 if (e instanceof ExpZeroOrMore)
                 {
-                  if (!m_xsp_declared)
-                  {
-                    m_xsp_declared = true;
-                    m_codeGenerator.genCodeLine ("    " + _getTypeForToken () + " xsp;");
-                  }
+                  _genXspDeclaration ();
                   final ExpZeroOrMore e_nrw = (ExpZeroOrMore) e;
                   final Expansion nested_e = e_nrw.getExpansion ();
                   m_codeGenerator.genCodeLine ("    while (true) {");
-                  m_codeGenerator.genCodeLine ("      xsp = jj_scanpos;");
+                  m_codeGenerator.genCodeLine ("      " + _getSaveScanpos ());
                   // codeGenerator.genCodeLine(" if (jj_3" +
                   // nested_e.internal_name + "()) { jj_scanpos = xsp; break;
                   // }");
                   m_codeGenerator.genCodeLine ("      if (" +
                                                _genjj_3Call (nested_e) +
-                                               ") { jj_scanpos = xsp; break; }");
+                                               ") { " +
+                                               _getRestoreScanpos () +
+                                               " break; }");
                   // codeGenerator.genCodeLine(" if (jj_la == 0 && jj_scanpos ==
                   // jj_lastpos) " + genReturn(false));
                   m_codeGenerator.genCodeLine ("    }");
@@ -1955,17 +2397,17 @@ public class ParseEngine
                 else
                   if (e instanceof ExpZeroOrOne)
                   {
-                    if (!m_xsp_declared)
-                    {
-                      m_xsp_declared = true;
-                      m_codeGenerator.genCodeLine ("    " + _getTypeForToken () + " xsp;");
-                    }
+                    _genXspDeclaration ();
                     final ExpZeroOrOne e_nrw = (ExpZeroOrOne) e;
                     final Expansion nested_e = e_nrw.getExpansion ();
-                    m_codeGenerator.genCodeLine ("    xsp = jj_scanpos;");
+                    m_codeGenerator.genCodeLine ("    " + _getSaveScanpos ());
                     // codeGenerator.genCodeLine(" if (jj_3" +
                     // nested_e.internal_name + "()) jj_scanpos = xsp;");
-                    m_codeGenerator.genCodeLine ("    if (" + _genjj_3Call (nested_e) + ") jj_scanpos = xsp;");
+                    m_codeGenerator.genCodeLine ("    if (" +
+                                                 _genjj_3Call (nested_e) +
+                                                 ") " +
+                                                 (Options.isLookaheadMemo () ? "{ " + _getRestoreScanpos () + " }"
+                                                                             : _getRestoreScanpos ()));
                     // codeGenerator.genCodeLine(" else if (jj_la == 0 &&
                     // jj_scanpos == jj_lastpos) " + genReturn(false));
                   }
@@ -2319,6 +2761,19 @@ public class ParseEngine
     codeGenerator.switchToMainFile ();
   }
 
+  /**
+   * @return The maximum number of tokens any generated syntactic lookahead may
+   *         scan. Only valid after {@link #build(CodeGenerator)}.
+   *         {@link Integer#MAX_VALUE} if the amount is unlimited.
+   */
+  int getMaxLookaheadAmount ()
+  {
+    int ret = 1;
+    for (final ExpLookahead aLA : m_phase2list)
+      ret = Math.max (ret, aLA.getAmount ());
+    return ret;
+  }
+
   public void reInit ()
   {
     m_nGenSymbolIndex = 0;
@@ -63,6 +63,7 @@
  */
 package com.helger.pgcc.parser;
 
+import static com.helger.pgcc.parser.JavaCCGlobals.BNF_PRODUCTIONS;
 import static com.helger.pgcc.parser.JavaCCGlobals.CU_FROM_INSERTION_POINT_2;
 import static com.helger.pgcc.parser.JavaCCGlobals.CU_TO_INSERTION_POINT_1;
 import static com.helger.pgcc.parser.JavaCCGlobals.CU_TO_INSERTION_POINT_2;
@@ -83,12 +84,290 @@ import java.util.List;
 import com.helger.pgcc.CPG;
 import com.helger.pgcc.EJDKVersion;
 import com.helger.pgcc.output.EOutputLanguage;
+import com.helger.pgcc.parser.exp.ExpAction;
+import com.helger.pgcc.parser.exp.ExpTryBlock;
+import com.helger.pgcc.parser.exp.Expansion;
 
 /**
  * Generate the parser.
  */
 public class ParseGenJava extends CodeGenerator
 {
+  /**
+   * @return The Java expression suffix to access the image of a token. With
+   *         lazy token images the field may not be filled yet.
+   */
+  private static String _getTokenImageAccess ()
+  {
+    return Options.isLazyTokenImage () ? ".getImage()" : ".image";
+  }
+
+  /**
+   * The table of the results of the scan routines of the productions, keyed by
+   * routine and start token. Each slot has three tokens (start, end and
+   * furthest scanned token - the end is <code>null</code> if the scan failed)
+   * and four ints (routine, index of the end and index of the furthest token,
+   * both relative to the start, and the lookahead the result is limited to).
+   * The result of a scan that evaluated a semantic lookahead depends on the
+   * state of the parser, so it is only reused during the same lookahead. The
+   * table grows up to a fixed size and is cleared if it is full or the parser
+   * is re-initialized.
+   */
+  private void _genLookaheadMemo ()
+  {
+    genCodeLine ("  private int jj_scanidx, jj_scanfar;");
+    genCodeLine ("  private Token jj_scanfartok;");
+    genCodeLine ("  private boolean jj_memo_on;");
+    genCodeLine ("  private Token[] jj_memo_tokens = new Token[3 * 256];");
+    genCodeLine ("  private int[] jj_memo_ints = new int[4 * 256];");
+    genCodeLine ("  private int jj_memo_count;");
+    genCodeLine ("  private int jj_memo_scan;");
+    genCodeLine ("  private int jj_memo_sem;");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_memo_clear() {");
+    genCodeLine ("	 java.util.Arrays.fill(jj_memo_tokens, null);");
+    genCodeLine ("	 jj_memo_count = 0;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private int jj_memo_find(int routine, Token start) {");
+    genCodeLine ("	 final int mask = jj_memo_tokens.length / 3 - 1;");
+    genCodeLine ("	 final int h = System.identityHashCode(start) + routine * 0x9E3779B9;");
+    genCodeLine ("	 int slot = (h ^ (h >>> 16)) & mask;");
+    genCodeLine ("	 while (jj_memo_tokens[3 * slot] != null &&");
+    genCodeLine ("	        (jj_memo_tokens[3 * slot] != start || jj_memo_ints[4 * slot] != routine))");
+    genCodeLine ("	   slot = (slot + 1) & mask;");
+    genCodeLine ("	 return slot;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private Token jj_memo_start(int slot) {");
+    genCodeLine ("	 final int scan = jj_memo_ints[4 * slot + 3];");
+    genCodeLine ("	 return scan == 0 || scan == jj_memo_scan ? jj_memo_tokens[3 * slot] : null;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private boolean jj_memo_replay(int slot, int xsi) {");
+    genCodeLine ("	 if (jj_memo_ints[4 * slot + 3] != 0) jj_memo_sem++;");
+    genCodeLine ("	 final int far = xsi + jj_memo_ints[4 * slot + 2];");
+    genCodeLine ("	 final Token fartok = jj_memo_tokens[3 * slot + 2];");
+    genCodeLine ("	 if (far > jj_scanfar) {");
+    genCodeLine ("	   jj_scanfar = far;");
+    genCodeLine ("	   jj_scanfartok = fartok;");
+    genCodeLine ("	 }");
+    genCodeLine ("	 // The lookahead has no limit, so jj_la counts down from Integer.MAX_VALUE");
+    genCodeLine ("	 final int lastidx = Integer.MAX_VALUE - jj_la;");
+    genCodeLine ("	 if (far > lastidx) {");
+    genCodeLine ("	   jj_la -= far - lastidx;");
+    genCodeLine ("	   jj_lastpos = fartok;");
+    genCodeLine ("	 }");
+    genCodeLine ("	 final Token end = jj_memo_tokens[3 * slot + 1];");
+    genCodeLine ("	 if (end == null) return true;");
+    genCodeLine ("	 jj_scanpos = end;");
+    genCodeLine ("	 jj_scanidx = xsi + jj_memo_ints[4 * slot + 1];");
+    genCodeLine ("	 return false;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_memo_put(int routine, Token start, int xsi, boolean failed, int xsem) {");
+    genCodeLine ("	 final int capacity = jj_memo_tokens.length / 3;");
+    genCodeLine ("	 if (2 * (jj_memo_count + 1) > capacity) {");
+    genCodeLine ("	   final Token[] oldTokens = jj_memo_tokens;");
+    genCodeLine ("	   final int[] oldInts = jj_memo_ints;");
+    genCodeLine ("	   // Bound the memory - a full table is cleared instead of grown");
+    genCodeLine ("	   final boolean grow = capacity < (1 << 16);");
+    genCodeLine ("	   jj_memo_tokens = new Token[grow ? 2 * oldTokens.length : oldTokens.length];");
+    genCodeLine ("	   jj_memo_ints = new int[grow ? 2 * oldInts.length : oldInts.length];");
+    genCodeLine ("	   jj_memo_count = 0;");
+    genCodeLine ("	   if (grow) {");
+    genCodeLine ("	     for (int i = 0; i < capacity; i++)");
+    genCodeLine ("	       if (oldTokens[3 * i] != null) {");
+    genCodeLine ("	         final int slot = jj_memo_find(oldInts[4 * i], oldTokens[3 * i]);");
+    genCodeLine ("	         System.arraycopy(oldTokens, 3 * i, jj_memo_tokens, 3 * slot, 3);");
+    genCodeLine ("	         System.arraycopy(oldInts, 4 * i, jj_memo_ints, 4 * slot, 4);");
+    genCodeLine ("	         jj_memo_count++;");
+    genCodeLine ("	       }");
+    genCodeLine ("	   }");
+    genCodeLine ("	 }");
+    genCodeLine ("	 final int slot = jj_memo_find(routine, start);");
+    genCodeLine ("	 if (jj_memo_tokens[3 * slot] == null) jj_memo_count++;");
+    genCodeLine ("	 jj_memo_tokens[3 * slot] = start;");
+    genCodeLine ("	 jj_memo_tokens[3 * slot + 1] = failed ? null : jj_scanpos;");
+    genCodeLine ("	 jj_memo_tokens[3 * slot + 2] = jj_scanfartok;");
+    genCodeLine ("	 jj_memo_ints[4 * slot] = routine;");
+    genCodeLine ("	 jj_memo_ints[4 * slot + 1] = jj_scanidx - xsi;");
+    genCodeLine ("	 jj_memo_ints[4 * slot + 2] = jj_scanfar - xsi;");
+    genCodeLine ("	 jj_memo_ints[4 * slot + 3] = jj_memo_sem == xsem ? 0 : jj_memo_scan;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+  }
+
+  /**
+   * @return The Java expression suffix to access the begin line and begin
+   *         column of a token. With lazy line and column the fields may not be
+   *         filled yet.
+   */
+  private static String _getTokenBeginLineAccess ()
+  {
+    return Options.isLazyLineColumn () ? ".getBeginLine()" : ".beginLine";
+  }
+
+  private static String _getTokenBeginColumnAccess ()
+  {
+    return Options.isLazyLineColumn () ? ".getBeginColumn()" : ".beginColumn";
+  }
+
+  /**
+   * Determine how many regular tokens the token manager may recycle. Tokens
+   * are only reused once they are outside the lookahead window of the parser.
+   */
+  private static void _determineTokenRingSize (final ParseEngine aEngine)
+  {
+    int nRingSize = 0;
+    if (Options.isRecycleTokens ())
+    {
+      final int nMaxLookahead = aEngine.getMaxLookaheadAmount ();
+      if (Options.isUserTokenManager ())
+        JavaCCErrors.warning ("Option RECYCLE_TOKENS is ignored because USER_TOKEN_MANAGER is enabled.");
+      else
+        if (Options.getTokenFactory ().length () > 0)
+          JavaCCErrors.warning ("Option RECYCLE_TOKENS is ignored because TOKEN_FACTORY is set.");
+        else
+          if (_isTokenTracked ())
+          {
+            // The nodes would keep tokens that are recycled later on
+            JavaCCErrors.warning ("Option RECYCLE_TOKENS is ignored because the grammar was created by JJTree with TRACK_TOKENS.");
+          }
+          else
+            if (nMaxLookahead == Integer.MAX_VALUE)
+              JavaCCErrors.warning ("Option RECYCLE_TOKENS is ignored because a syntactic lookahead has no limit. Use LOOKAHEAD(amount, expansion) instead.");
+            else
+              if (Options.isLazyErrorReporting ())
+              {
+                // The re-run for the error message starts at tokens that may
+                // already have been recycled
+                JavaCCErrors.warning ("Option RECYCLE_TOKENS is ignored because LAZY_ERROR_REPORTING is enabled.");
+              }
+              else
+              {
+                // The lookahead window plus the current and the previous token
+                nRingSize = nMaxLookahead + 2;
+                if (Options.isCacheTokens ())
+                {
+                  // The token after the current one is fetched eagerly
+                  nRingSize++;
+                }
+              }
+    }
+    JavaCCGlobals.setTokenRingSize (nRingSize);
+  }
+
+  /**
+   * @return <code>true</code> if JJTree created the grammar with the option
+   *         TRACK_TOKENS. JJTree does not copy its own options into the
+   *         grammar, but each node scope stores its first token - so the calls
+   *         of jjtSetFirstToken are searched instead.
+   */
+  private static boolean _isTokenTracked ()
+  {
+    final boolean [] ret = { false };
+    final ITreeWalkerOperation aOp = new ITreeWalkerOperation ()
+    {
+      public boolean goDeeper (final Expansion e)
+      {
+        return !ret[0];
+      }
+
+      public void action (final Expansion e)
+      {
+        if (e instanceof ExpAction && _containsFirstTokenCall (((ExpAction) e).getActionTokens ()))
+          ret[0] = true;
+      }
+    };
+    for (final NormalProduction aProduction : BNF_PRODUCTIONS)
+      if (aProduction instanceof BNFProduction)
+      {
+        if (_containsFirstTokenCall (((BNFProduction) aProduction).getDeclarationTokens ()))
+          return true;
+        ExpansionTreeWalker.preOrderWalk (aProduction.getExpansion (), aOp);
+        if (ret[0])
+          return true;
+      }
+    return false;
+  }
+
+  private static boolean _containsFirstTokenCall (final List <Token> aTokens)
+  {
+    for (final Token t : aTokens)
+      if ("jjtSetFirstToken".equals (t.image))
+        return true;
+    return false;
+  }
+
+  /**
+   * @param aId
+   *        The identifier of the caught exception
+   * @param aBlock
+   *        The tokens of the catch block
+   * @return <code>true</code> if the catch block contains a statement
+   *         <code>throw</code> that ends with the caught exception, like
+   *         <code>throw (ParseException)jjte000;</code> of JJTree.
+   */
+  private static boolean _isRethrown (final Token aId, final List <Token> aBlock)
+  {
+    boolean bInThrow = false;
+    Token aPrev = null;
+    for (final Token t : aBlock)
+    {
+      if ("throw".equals (t.image))
+        bInThrow = true;
+      else
+        if (bInThrow && ";".equals (t.image))
+        {
+          if (aPrev != null && aId.image.equals (aPrev.image))
+            return true;
+          bInThrow = false;
+        }
+      aPrev = t;
+    }
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if a try block of the grammar catches a
+   *         ParseException without throwing it again. It is created by the
+   *         parser while it does not keep track of the expected tokens.
+   */
+  private static boolean _isParseExceptionCaught ()
+  {
+    final boolean [] ret = { false };
+    final ITreeWalkerOperation aOp = new ITreeWalkerOperation ()
+    {
+      public boolean goDeeper (final Expansion e)
+      {
+        return !ret[0];
+      }
+
+      public void action (final Expansion e)
+      {
+        if (e instanceof ExpTryBlock)
+        {
+          final ExpTryBlock aTry = (ExpTryBlock) e;
+          for (int i = 0; i < aTry.m_types.size (); i++)
+          {
+            final StringBuilder aSB = new StringBuilder ();
+            for (final Token t : aTry.m_types.get (i))
+              aSB.append (t.image);
+            final String sType = aSB.substring (aSB.lastIndexOf (".") + 1);
+            if ((sType.equals ("ParseException") || sType.equals ("Exception") || sType.equals ("Throwable")) &&
+                !_isRethrown (aTry.m_ids.get (i), aTry.m_catchblks.get (i)))
+              ret[0] = true;
+          }
+        }
+      }
+    };
+    for (final NormalProduction aProduction : BNF_PRODUCTIONS)
+      if (aProduction instanceof BNFProduction)
+        ExpansionTreeWalker.preOrderWalk (aProduction.getExpansion (), aOp);
+    return ret[0];
+  }
+
   public void start (final boolean bIsJavaModernMode) throws MetaParseException
   {
     if (JavaCCErrors.getErrorCount () != 0)
@@ -97,6 +376,13 @@ public class ParseGenJava extends CodeGenerator
     if (!Options.isBuildParser ())
       return;
 
+    if (Options.isLazyErrorReporting () && _isParseExceptionCaught ())
+    {
+      JavaCCErrors.warning ("Option LAZY_ERROR_REPORTING is ignored because a try block of the grammar catches " +
+                            "ParseException without throwing it again. It would lack the expected tokens.");
+      Options.s_optionValues.put (Options.USEROPTION__LAZY_ERROR_REPORTING, Boolean.FALSE);
+    }
+
     final EOutputLanguage eOutputLanguage = getOutputLanguage ();
     final EJDKVersion eJavaVersion = Options.getJdkVersion ();
     final boolean bHasCharset = eJavaVersion.isNewerOrEqualsThan (EJDKVersion.JDK_1_6);
@@ -155,7 +441,9 @@ public class ParseGenJava extends CodeGenerator
     genCodeNewLine ();
     genCodeNewLine ();
 
-    new ParseEngine ().build (this);
+    final ParseEngine aEngine = new ParseEngine ();
+    aEngine.build (this);
+    _determineTokenRingSize (aEngine);
 
     if (Options.isUserTokenManager ())
     {
@@ -174,7 +462,7 @@ public class ParseGenJava extends CodeGenerator
         }
         else
         {
-          genCodeLine ("  SimpleCharStream jj_input_stream;");
+          genCodeLine ("  " + getCharStreamName () + " jj_input_stream;");
         }
       }
     }
@@ -206,6 +494,11 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("  private int jj_gen;");
       genCodeLine ("  final private int[] jj_la1 = new int[" + s_maskindex + "];");
+      if (Options.isLazyErrorReporting ())
+      {
+        genCodeLine ("  /** Whether a failed production is parsed again to create the error message. */");
+        genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_tracking;");
+      }
       final int tokenMaskSize = (s_tokenCount - 1) / 32 + 1;
       for (int i = 0; i < tokenMaskSize; i++)
       {
@@ -231,7 +524,6 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("  private final JJCalls[] jj_2_rtns = new JJCalls[" + s_jj2index + "];");
       genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_rescan = false;");
-      genCodeLine ("  private int jj_gc = 0;");
     }
     genCodeNewLine ();
 
@@ -313,6 +605,10 @@ public class ParseGenJava extends CodeGenerator
         {
           genCodeLine ("	 jjtree.reset();");
         }
+        if (Options.isLookaheadMemo () && s_jj2index != 0)
+        {
+          genCodeLine ("	 jj_memo_clear();");
+        }
         if (Options.isErrorReporting ())
         {
           genCodeLine ("	 jj_gen = 0;");
@@ -356,7 +652,7 @@ public class ParseGenJava extends CodeGenerator
                          s_cu_name +
                          "(final java.io.InputStream stream, final java.nio.charset.Charset encoding) {");
             genCodeLine ("   jj_input_stream = new " +
-                         (Options.isJavaUnicodeEscape () ? "JavaCharStream" : "SimpleCharStream") +
+                         getCharStreamName () +
                          "(stream, encoding, 1, 1);");
           }
           else
@@ -364,7 +660,7 @@ public class ParseGenJava extends CodeGenerator
             genCodeLine ("  public " + s_cu_name + "(final java.io.InputStream stream, final String encoding) {");
             genCodeLine ("   try {");
             genCodeLine ("     jj_input_stream = new " +
-                         (Options.isJavaUnicodeEscape () ? "JavaCharStream" : "SimpleCharStream") +
+                         getCharStreamName () +
                          "(stream, encoding, 1, 1);");
             genCodeLine ("   } catch(final java.io.UnsupportedEncodingException e) {");
             genCodeLine ("     throw new IllegalStateException(e);");
@@ -463,6 +759,10 @@ public class ParseGenJava extends CodeGenerator
           {
             genCodeLine ("	 jjtree.reset();");
           }
+          if (Options.isLookaheadMemo () && s_jj2index != 0)
+          {
+            genCodeLine ("	 jj_memo_clear();");
+          }
           if (Options.isErrorReporting ())
           {
             genCodeLine ("	 jj_gen = 0;");
@@ -479,61 +779,73 @@ public class ParseGenJava extends CodeGenerator
 
         final String readerInterfaceName = bIsJavaModernMode ? "Provider" : "java.io.Reader";
         final String stringReaderClass = bIsJavaModernMode ? "StringProvider" : "java.io.StringReader";
-
-        genCodeLine ("  /**");
-        genCodeLine ("   * Constructor with InputStream.");
-        genCodeLine ("   * @param stream char stream");
-        genCodeLine ("   */");
-        genCodeLine ("  public " + s_cu_name + "(final " + readerInterfaceName + " stream) {");
-        if (Options.isJavaUnicodeEscape ())
-        {
-          genCodeLine ("	 jj_input_stream = new JavaCharStream(stream, 1, 1);");
-        }
-        else
-        {
-          genCodeLine ("	 jj_input_stream = new SimpleCharStream(stream, 1, 1);");
-        }
-        if (Options.isTokenManagerUsesParser ())
-        {
-          genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(this, jj_input_stream);");
-        }
-        else
-        {
-          genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(jj_input_stream);");
-        }
-        genCodeLine ("	 token = new Token();");
-        if (Options.isCacheTokens ())
-        {
-          genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
-        }
-        else
-        {
-          genCodeLine ("	 jj_ntk = -1;");
-        }
-        if (Options.hasDepthLimit ())
+        // CharSequenceCharStream reads Strings and char arrays without copying
+        final List <String> aReaderTypes = new ArrayList <> ();
+        aReaderTypes.add (readerInterfaceName);
+        if (Options.isCharSequenceCharStream ())
         {
-          genCodeLine ("    jj_depth = -1;");
+          aReaderTypes.add ("CharSequence");
+          aReaderTypes.add ("char[]");
         }
-        if (Options.isErrorReporting ())
+
+        for (final String sReaderType : aReaderTypes)
         {
-          genCodeLine ("	 jj_gen = 0;");
-          if (s_maskindex > 0)
+          genCodeLine ("  /**");
+          genCodeLine ("   * Constructor with " + (sReaderType.equals (readerInterfaceName) ? "InputStream." : "an in-memory input that is not copied."));
+          genCodeLine ("   * @param stream char stream");
+          genCodeLine ("   */");
+          genCodeLine ("  public " + s_cu_name + "(final " + sReaderType + " stream) {");
+          if (Options.isJavaUnicodeEscape ())
           {
-            genCodeLine ("   for (int i = 0; i < " + s_maskindex + "; i++)");
-            genCodeLine ("     jj_la1[i] = -1;");
+            genCodeLine ("	 jj_input_stream = new JavaCharStream(stream, 1, 1);");
           }
-          if (s_jj2index != 0)
+          else
           {
-            genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
-            genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
+            genCodeLine ("	 jj_input_stream = new " + getCharStreamName () + "(stream, 1, 1);");
+          }
+          if (Options.isTokenManagerUsesParser ())
+          {
+            genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(this, jj_input_stream);");
+          }
+          else
+          {
+            genCodeLine ("	 token_source = new " + s_cu_name + "TokenManager(jj_input_stream);");
+          }
+          genCodeLine ("	 token = new Token();");
+          if (Options.isCacheTokens ())
+          {
+            genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
+          }
+          else
+          {
+            genCodeLine ("	 jj_ntk = -1;");
+          }
+          if (Options.hasDepthLimit ())
+          {
+            genCodeLine ("    jj_depth = -1;");
           }
+          if (Options.isErrorReporting ())
+          {
+            genCodeLine ("	 jj_gen = 0;");
+            if (s_maskindex > 0)
+            {
+              genCodeLine ("   for (int i = 0; i < " + s_maskindex + "; i++)");
+              genCodeLine ("     jj_la1[i] = -1;");
+            }
+            if (s_jj2index != 0)
+            {
+              genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
+              genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
+            }
+          }
+          genCodeLine ("  }");
+          genCodeNewLine ();
         }
-        genCodeLine ("  }");
-        genCodeNewLine ();
 
         // Add-in a string based constructor because its convenient (modern
-        // only to prevent regressions)
-        if (bIsJavaModernMode)
+        // only to prevent regressions). With CharSequenceCharStream a String
+        // is handled by the CharSequence constructor.
+        if (bIsJavaModernMode && !Options.isCharSequenceCharStream ())
         {
           genCodeLine ("  /**");
           genCodeLine ("   * Constructor with InputStream.");
@@ -554,77 +866,84 @@ public class ParseGenJava extends CodeGenerator
 
         }
 
-        genCodeLine ("  /**");
-        genCodeLine ("   * Reinitialise");
-        genCodeLine ("   * @param stream char stream");
-        genCodeLine ("   */");
-        genCodeLine ("  public void ReInit(final " + readerInterfaceName + " stream) {");
-        if (Options.isJavaUnicodeEscape ())
-        {
-          genCodeLine ("	if (jj_input_stream == null) {");
-          genCodeLine ("	  jj_input_stream = new JavaCharStream(stream, 1, 1);");
-          genCodeLine ("	} else {");
-          genCodeLine ("	  jj_input_stream.reInit(stream, 1, 1);");
-          genCodeLine ("  }");
-        }
-        else
+        for (final String sReaderType : aReaderTypes)
         {
-          genCodeLine ("	if (jj_input_stream == null) {");
-          genCodeLine ("	  jj_input_stream = new SimpleCharStream(stream, 1, 1);");
-          genCodeLine ("	} else {");
-          genCodeLine ("	  jj_input_stream.reInit(stream, 1, 1);");
-          genCodeLine ("  }");
-        }
+          genCodeLine ("  /**");
+          genCodeLine ("   * Reinitialise");
+          genCodeLine ("   * @param stream char stream");
+          genCodeLine ("   */");
+          genCodeLine ("  public void ReInit(final " + sReaderType + " stream) {");
+          if (Options.isJavaUnicodeEscape ())
+          {
+            genCodeLine ("	if (jj_input_stream == null) {");
+            genCodeLine ("	  jj_input_stream = new JavaCharStream(stream, 1, 1);");
+            genCodeLine ("	} else {");
+            genCodeLine ("	  jj_input_stream.reInit(stream, 1, 1);");
+            genCodeLine ("  }");
+          }
+          else
+          {
+            genCodeLine ("	if (jj_input_stream == null) {");
+            genCodeLine ("	  jj_input_stream = new " + getCharStreamName () + "(stream, 1, 1);");
+            genCodeLine ("	} else {");
+            genCodeLine ("	  jj_input_stream.reInit(stream, 1, 1);");
+            genCodeLine ("  }");
+          }
 
-        genCodeLine ("	if (token_source == null) {");
-        if (Options.isTokenManagerUsesParser ())
-          genCodeLine (" token_source = new " + s_cu_name + "TokenManager(this, jj_input_stream);");
-        else
-          genCodeLine (" token_source = new " + s_cu_name + "TokenManager(jj_input_stream);");
-        genCodeLine ("	}");
-        genCodeNewLine ();
+          genCodeLine ("	if (token_source == null) {");
+          if (Options.isTokenManagerUsesParser ())
+            genCodeLine (" token_source = new " + s_cu_name + "TokenManager(this, jj_input_stream);");
+          else
+            genCodeLine (" token_source = new " + s_cu_name + "TokenManager(jj_input_stream);");
+          genCodeLine ("	}");
+          genCodeNewLine ();
 
-        if (Options.isTokenManagerRequiresParserAccess ())
-        {
-          genCodeLine ("	 token_source.ReInit(this,jj_input_stream);");
-        }
-        else
-        {
-          genCodeLine ("	 token_source.ReInit(jj_input_stream);");
-        }
+          if (Options.isTokenManagerRequiresParserAccess ())
+          {
+            genCodeLine ("	 token_source.ReInit(this,jj_input_stream);");
+          }
+          else
+          {
+            genCodeLine ("	 token_source.ReInit(jj_input_stream);");
+          }
 
-        genCodeLine ("	 token = new Token();");
-        if (Options.isCacheTokens ())
-        {
-          genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
-        }
-        else
-        {
-          genCodeLine ("	 jj_ntk = -1;");
-        }
-        if (Options.hasDepthLimit ())
-        {
-          genCodeLine ("    jj_depth = -1;");
-        }
-        if (s_jjtreeGenerated)
-        {
-          genCodeLine ("	 jjtree.reset();");
-        }
-        if (Options.isErrorReporting ())
-        {
-          genCodeLine ("	 jj_gen = 0;");
-          if (s_maskindex > 0)
+          genCodeLine ("	 token = new Token();");
+          if (Options.isCacheTokens ())
           {
-            genCodeLine ("   for (int i = 0; i < " + s_maskindex + "; i++)");
-            genCodeLine ("     jj_la1[i] = -1;");
+            genCodeLine ("	 token.next = jj_nt = token_source.getNextToken();");
           }
-          if (s_jj2index != 0)
+          else
           {
-            genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
-            genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
+            genCodeLine ("	 jj_ntk = -1;");
+          }
+          if (Options.hasDepthLimit ())
+          {
+            genCodeLine ("    jj_depth = -1;");
           }
+          if (s_jjtreeGenerated)
+          {
+            genCodeLine ("	 jjtree.reset();");
+          }
+          if (Options.isLookaheadMemo () && s_jj2index != 0)
+          {
+            genCodeLine ("	 jj_memo_clear();");
+          }
+          if (Options.isErrorReporting ())
+          {
+            genCodeLine ("	 jj_gen = 0;");
+            if (s_maskindex > 0)
+            {
+              genCodeLine ("   for (int i = 0; i < " + s_maskindex + "; i++)");
+              genCodeLine ("     jj_la1[i] = -1;");
+            }
+            if (s_jj2index != 0)
+            {
+              genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
+              genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
+            }
+          }
+          genCodeLine ("  }");
         }
-        genCodeLine ("  }");
 
       }
     }
@@ -707,6 +1026,10 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("	 jjtree.reset();");
     }
+    if (Options.isLookaheadMemo () && s_jj2index != 0)
+    {
+      genCodeLine ("	 jj_memo_clear();");
+    }
     if (Options.isErrorReporting ())
     {
       genCodeLine ("	 jj_gen = 0;");
@@ -744,24 +1067,16 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    jj_ntk = -1;");
     }
     genCodeLine ("    if (token.kind == kind) {");
-    if (Options.isErrorReporting ())
+    if (Options.isLazyErrorReporting ())
     {
-      genCodeLine ("      jj_gen++;");
-      if (s_jj2index != 0)
+      // The bookkeeping is only needed in the second run
+      genCodeLine ("      if (jj_tracking) jj_gen++;");
+    }
+    else
+      if (Options.isErrorReporting ())
       {
-        genCodeLine ("      if (++jj_gc > 100) {");
-        genCodeLine ("        jj_gc = 0;");
-        genCodeLine ("        for (int i = 0; i < jj_2_rtns.length; i++) {");
-        genCodeLine ("          JJCalls c = jj_2_rtns[i];");
-        genCodeLine ("          while (c != null) {");
-        genCodeLine ("            if (c.gen < jj_gen)");
-        genCodeLine ("              c.first = null;");
-        genCodeLine ("            c = c.next;");
-        genCodeLine ("          }");
-        genCodeLine ("        }");
-        genCodeLine ("      }");
+        genCodeLine ("      jj_gen++;");
       }
-    }
     if (Options.isDebugParser ())
     {
       genCodeLine ("      trace_token(token, \"\");");
@@ -784,9 +1099,22 @@ public class ParseGenJava extends CodeGenerator
     {
       if (false)
         genCodeLine ("  @SuppressWarnings(\"serial\")");
-      genCodeLine ("  private static final class LookaheadSuccess extends IllegalStateException {}");
-      genCodeLine ("  private final LookaheadSuccess jj_ls = new LookaheadSuccess();");
+      if (Options.isExceptionFreeLookahead ())
+      {
+        genCodeLine ("  /** Whether the current lookahead succeeded because it reached its limit. */");
+        genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_done;");
+      }
+      else
+      {
+        genCodeLine ("  private static final class LookaheadSuccess extends IllegalStateException {}");
+        genCodeLine ("  private final LookaheadSuccess jj_ls = new LookaheadSuccess();");
+      }
       genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_scan_token(int kind) {");
+      if (Options.isExceptionFreeLookahead ())
+      {
+        // Nothing more to scan - the scan routines return to jj_2_...
+        genCodeLine ("	 if (jj_done) return true;");
+      }
       genCodeLine ("	 if (jj_scanpos == jj_lastpos) {");
       genCodeLine ("	   jj_la--;");
       genCodeLine ("	   if (jj_scanpos.next == null) {");
@@ -797,6 +1125,13 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("	 } else {");
       genCodeLine ("	   jj_scanpos = jj_scanpos.next;");
       genCodeLine ("	 }");
+      if (Options.isLookaheadMemo ())
+      {
+        genCodeLine ("	 if (++jj_scanidx > jj_scanfar) {");
+        genCodeLine ("	   jj_scanfar = jj_scanidx;");
+        genCodeLine ("	   jj_scanfartok = jj_scanpos;");
+        genCodeLine ("	 }");
+      }
       if (Options.isErrorReporting ())
       {
         genCodeLine ("	 if (jj_rescan) {");
@@ -816,10 +1151,32 @@ public class ParseGenJava extends CodeGenerator
           genCodeLine ("	 trace_scan(jj_scanpos, kind);");
         }
       genCodeLine ("	 if (jj_scanpos.kind != kind) return true;");
-      genCodeLine ("	 if (jj_la == 0 && jj_scanpos == jj_lastpos) throw jj_ls;");
+      if (Options.isExceptionFreeLookahead ())
+        genCodeLine ("	 if (jj_la == 0 && jj_scanpos == jj_lastpos) return jj_done = true;");
+      else
+        genCodeLine ("	 if (jj_la == 0 && jj_scanpos == jj_lastpos) throw jj_ls;");
       genCodeLine ("	 return false;");
       genCodeLine ("  }");
       genCodeNewLine ();
+      if (Options.isLookaheadMemo ())
+        _genLookaheadMemo ();
+      if (Options.isLookaheadDecisionTrees () || Options.isLookaheadPrefilter ())
+      {
+        genCodeLine ("  /** @return the token after t for the lookahead decision trees and prefilters. */");
+        genCodeLine ("  private Token jj_next_token(final Token t) {");
+        genCodeLine ("    if (t.next == null)");
+        genCodeLine ("      t.next = token_source.getNextToken();");
+        genCodeLine ("    return t.next;");
+        genCodeLine ("  }");
+        genCodeNewLine ();
+      }
+      if (Options.isLookaheadPrefilter ())
+      {
+        genCodeLine ("  private static boolean jj_in_set(final long[] set, final int kind) {");
+        genCodeLine ("    return (set[kind >>> 6] & (1L << kind)) != 0;");
+        genCodeLine ("  }");
+        genCodeNewLine ();
+      }
     }
     genCodeNewLine ();
     genCodeLine ("  /**");
@@ -842,10 +1199,15 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("     token = token.next = token_source.getNextToken();");
       genCodeLine ("	 jj_ntk = -1;");
     }
-    if (Options.isErrorReporting ())
+    if (Options.isLazyErrorReporting ())
     {
-      genCodeLine ("	 jj_gen++;");
+      genCodeLine ("	 if (jj_tracking) jj_gen++;");
     }
+    else
+      if (Options.isErrorReporting ())
+      {
+        genCodeLine ("	 jj_gen++;");
+      }
     if (Options.isDebugParser ())
     {
       genCodeLine ("	   trace_token(token, \" (in getNextToken)\");");
@@ -1017,6 +1379,8 @@ public class ParseGenJava extends CodeGenerator
       }
 
       genCodeLine ("  }");
+      if (Options.isLazyErrorReporting ())
+        _genStartTracking ();
     }
     else
     {
@@ -1025,10 +1389,10 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("  final Token errortok = token.next;");
       if (Options.isKeepLineColumn ())
       {
-        genCodeLine ("  final int line = errortok.beginLine;");
-        genCodeLine ("  final int column = errortok.beginColumn;");
+        genCodeLine ("  final int line = errortok" + _getTokenBeginLineAccess () + ";");
+        genCodeLine ("  final int column = errortok" + _getTokenBeginColumnAccess () + ";");
       }
-      genCodeLine ("  final String mess = errortok.kind == 0 ? tokenImage[0] : errortok.image;");
+      genCodeLine ("  final String mess = errortok.kind == 0 ? tokenImage[0] : errortok" + _getTokenImageAccess () + ";");
       if (Options.isKeepLineColumn ())
       {
         genCodeLine ("  return new ParseException(" +
@@ -1095,14 +1459,16 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("        tracePS.print(\" \");");
       genCodeLine ("      }");
       genCodeLine ("      tracePS.print(\"Consumed token: <\" + tokenImage[t.kind]);");
-      genCodeLine ("      if (t.kind != 0 && !tokenImage[t.kind].equals(\"\\\"\" + t.image + \"\\\"\")) {");
+      genCodeLine ("      if (t.kind != 0 && !tokenImage[t.kind].equals(\"\\\"\" + t" + _getTokenImageAccess () + " + \"\\\"\")) {");
       genCodeLine ("        tracePS.print(\": \\\"\" + " +
                    Options.getTokenMgrErrorClass () +
                    ".addEscapes(" +
-                   "t.image) + \"\\\"\");");
+                   "t" +
+                   _getTokenImageAccess () +
+                   ") + \"\\\"\");");
       genCodeLine ("      }");
-      genCodeLine ("      tracePS.println(\" at line \" + t.beginLine + " +
-                   "\" column \" + t.beginColumn + \">\" + where);");
+      genCodeLine ("      tracePS.println(\" at line \" + t" + _getTokenBeginLineAccess () + " + " +
+                   "\" column \" + t" + _getTokenBeginColumnAccess () + " + \">\" + where);");
       genCodeLine ("    }");
       genCodeLine ("  }");
       genCodeNewLine ();
@@ -1110,14 +1476,16 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    if (trace_enabled) {");
       genCodeLine ("      for (int i = 0; i < trace_indent; i++) { tracePS.print(\" \"); }");
       genCodeLine ("      tracePS.print(\"Visited token: <\" + tokenImage[t1.kind]);");
-      genCodeLine ("      if (t1.kind != 0 && !tokenImage[t1.kind].equals(\"\\\"\" + t1.image + \"\\\"\")) {");
+      genCodeLine ("      if (t1.kind != 0 && !tokenImage[t1.kind].equals(\"\\\"\" + t1" + _getTokenImageAccess () + " + \"\\\"\")) {");
       genCodeLine ("        tracePS.print(\": \\\"\" + " +
                    Options.getTokenMgrErrorClass () +
                    ".addEscapes(" +
-                   "t1.image) + \"\\\"\");");
+                   "t1" +
+                   _getTokenImageAccess () +
+                   ") + \"\\\"\");");
       genCodeLine ("      }");
-      genCodeLine ("      tracePS.println(\" at line \" + t1.beginLine + \"" +
-                   " column \" + t1.beginColumn + \">; Expected token: <\" + tokenImage[t2] + \">\");");
+      genCodeLine ("      tracePS.println(\" at line \" + t1" + _getTokenBeginLineAccess () + " + \"" +
+                   " column \" + t1" + _getTokenBeginColumnAccess () + " + \">; Expected token: <\" + tokenImage[t2] + \">\");");
       genCodeLine ("    }");
       genCodeLine ("  }");
       genCodeNewLine ();
@@ -1143,52 +1511,100 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("  private void jj_rescan_token() {");
       genCodeLine ("    jj_rescan = true;");
+      if (Options.isLookaheadMemo ())
+      {
+        // The rescan collects the expected tokens, so it must really scan
+        genCodeLine ("    jj_memo_on = false;");
+      }
       genCodeLine ("    for (int i = 0; i < " + s_jj2index + "; i++) {");
-      genCodeLine ("      try {");
-      genCodeLine ("        JJCalls p = jj_2_rtns[i];");
-      genCodeLine ("        do {");
-      genCodeLine ("          if (p.gen > jj_gen) {");
-      genCodeLine ("            jj_la = p.arg;");
-      genCodeLine ("            jj_scanpos = p.first;");
-      genCodeLine ("            jj_lastpos = p.first;");
-      genCodeLine ("            switch (i) {");
-      for (int i = 0; i < s_jj2index; i++)
+      if (Options.isExceptionFreeLookahead ())
       {
-        genCodeLine ("              case " + i + ": jj_3_" + (i + 1) + "(); break;");
+        genCodeLine ("      final JJCalls p = jj_2_rtns[i];");
+        genCodeLine ("      for (int j = 0; j < p.size; j++) {");
+        genCodeLine ("        if (p.gen[j] > jj_gen) {");
+        genCodeLine ("          jj_la = p.arg[j];");
+        genCodeLine ("          jj_scanpos = p.first[j];");
+        genCodeLine ("          jj_lastpos = p.first[j];");
+        genCodeLine ("          jj_done = false;");
+        genCodeLine ("          switch (i) {");
+        for (int i = 0; i < s_jj2index; i++)
+        {
+          genCodeLine ("            case " + i + ": jj_3_" + (i + 1) + "(); break;");
+        }
+        genCodeLine ("          }");
+        genCodeLine ("          // Like the exception, a successful lookahead ends the rescan of this index");
+        genCodeLine ("          if (jj_done) break;");
+        genCodeLine ("        }");
+        genCodeLine ("      }");
+      }
+      else
+      {
+        genCodeLine ("      try {");
+        genCodeLine ("        final JJCalls p = jj_2_rtns[i];");
+        genCodeLine ("        for (int j = 0; j < p.size; j++) {");
+        genCodeLine ("          if (p.gen[j] > jj_gen) {");
+        genCodeLine ("            jj_la = p.arg[j];");
+        genCodeLine ("            jj_scanpos = p.first[j];");
+        genCodeLine ("            jj_lastpos = p.first[j];");
+        genCodeLine ("            switch (i) {");
+        for (int i = 0; i < s_jj2index; i++)
+        {
+          genCodeLine ("              case " + i + ": jj_3_" + (i + 1) + "(); break;");
+        }
+        genCodeLine ("            }");
+        genCodeLine ("          }");
+        genCodeLine ("        }");
+        genCodeLine ("      } catch(LookaheadSuccess ls) { /* ignore */ }");
       }
-      genCodeLine ("            }");
-      genCodeLine ("          }");
-      genCodeLine ("          p = p.next;");
-      genCodeLine ("        } while (p != null);");
-      genCodeLine ("      } catch(LookaheadSuccess ls) { /* ignore */ }");
       genCodeLine ("    }");
       genCodeLine ("    jj_rescan = false;");
       genCodeLine ("  }");
       genCodeNewLine ();
       genCodeLine ("  private void jj_save(int index, int xla) {");
-      genCodeLine ("    JJCalls p = jj_2_rtns[index];");
-      genCodeLine ("    while (p.gen > jj_gen) {");
-      genCodeLine ("      if (p.next == null) {");
-      genCodeLine ("        p.next = new JJCalls();");
-      genCodeLine ("        p = p.next;");
-      genCodeLine ("        break;");
+      genCodeLine ("    final JJCalls p = jj_2_rtns[index];");
+      genCodeLine ("    // Reuse the first call that no longer reaches the current token and");
+      genCodeLine ("    // release the tokens of the other outdated calls");
+      genCodeLine ("    int i = -1;");
+      genCodeLine ("    for (int j = 0; j < p.size; j++) {");
+      genCodeLine ("      if (p.gen[j] <= jj_gen) {");
+      genCodeLine ("        if (i < 0)");
+      genCodeLine ("          i = j;");
+      genCodeLine ("        else");
+      genCodeLine ("          p.first[j] = null;");
       genCodeLine ("      }");
-      genCodeLine ("      p = p.next;");
       genCodeLine ("    }");
-      genCodeLine ("    p.gen = jj_gen + xla - jj_la; ");
-      genCodeLine ("    p.first = token;");
-      genCodeLine ("    p.arg = xla;");
+      genCodeLine ("    if (i < 0) {");
+      genCodeLine ("      if (p.size == p.gen.length)");
+      genCodeLine ("        p.grow();");
+      genCodeLine ("      i = p.size++;");
+      genCodeLine ("    }");
+      genCodeLine ("    p.gen[i] = jj_gen + xla - jj_la;");
+      genCodeLine ("    p.first[i] = token;");
+      genCodeLine ("    p.arg[i] = xla;");
       genCodeLine ("  }");
       genCodeNewLine ();
     }
 
     if (s_jj2index != 0 && Options.isErrorReporting ())
     {
+      genCodeLine ("  /**");
+      genCodeLine ("   * The calls of one syntactic lookahead. A call is outdated as soon as the");
+      genCodeLine ("   * parser consumed the last token it scanned - its generation. Outdated calls");
+      genCodeLine ("   * are skipped by the rescan. The next save of the same lookahead reuses or");
+      genCodeLine ("   * releases them, so no sweep over all lookaheads is needed.");
+      genCodeLine ("   */");
       genCodeLine ("  static final class JJCalls {");
-      genCodeLine ("	 int gen;");
-      genCodeLine ("	 Token first;");
-      genCodeLine ("	 int arg;");
-      genCodeLine ("	 JJCalls next;");
+      genCodeLine ("	 int size;");
+      genCodeLine ("	 int[] gen = new int[2];");
+      genCodeLine ("	 Token[] first = new Token[2];");
+      genCodeLine ("	 int[] arg = new int[2];");
+      genCodeNewLine ();
+      genCodeLine ("	 void grow() {");
+      genCodeLine ("	   final int newLength = gen.length * 2;");
+      genCodeLine ("	   gen = java.util.Arrays.copyOf(gen, newLength);");
+      genCodeLine ("	   first = java.util.Arrays.copyOf(first, newLength);");
+      genCodeLine ("	   arg = java.util.Arrays.copyOf(arg, newLength);");
+      genCodeLine ("	 }");
       genCodeLine ("  }");
       genCodeNewLine ();
     }
@@ -1210,6 +1626,31 @@ public class ParseGenJava extends CodeGenerator
     saveOutput (Options.getOutputDirectory () + File.separator + s_cu_name + getFileExtension ());
   }
 
+  private void _genStartTracking ()
+  {
+    genCodeNewLine ();
+    genCodeLine ("  /**");
+    genCodeLine ("   * Go back to the passed token and start the bookkeeping for the error message.");
+    genCodeLine ("   * @param checkpoint The token before the first token of the production.");
+    genCodeLine ("   */");
+    genCodeLine ("  private void jj_start_tracking(final Token checkpoint) {");
+    genCodeLine ("    token = checkpoint;");
+    if (Options.isCacheTokens ())
+      genCodeLine ("    jj_nt = token.next;");
+    else
+      genCodeLine ("    jj_ntk = -1;");
+    genCodeLine ("    jj_gen = 0;");
+    genCodeLine ("    jj_kind = -1;");
+    if (s_maskindex > 0)
+      genCodeLine ("    for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
+    if (s_jj2index != 0)
+    {
+      genCodeLine ("    for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+    }
+    genCodeLine ("    jj_tracking = true;");
+    genCodeLine ("  }");
+  }
+
   public static void reInit ()
   {
     JavaCCGlobals.setLookAheadNeeded (false);
@@ -214,14 +214,15 @@ public class TokenizerData
       final int vectorIndex = i >> 6;
       final long bits = (1L << (i & 077));
       EMatchType matchType = EMatchType.TOKEN;
-      if (toSkip.length > vectorIndex && (toSkip[vectorIndex] & bits) != 0L)
+      // Special tokens are also flagged as skip, so check them first
+      if (toSpecial.length > vectorIndex && (toSpecial[vectorIndex] & bits) != 0L)
       {
-        matchType = EMatchType.SKIP;
+        matchType = EMatchType.SPECIAL_TOKEN;
       }
       else
-        if (toSpecial.length > vectorIndex && (toSpecial[vectorIndex] & bits) != 0L)
+        if (toSkip.length > vectorIndex && (toSkip[vectorIndex] & bits) != 0L)
         {
-          matchType = EMatchType.SPECIAL_TOKEN;
+          matchType = EMatchType.SKIP;
         }
         else
           if (toMore.length > vectorIndex && (toMore[vectorIndex] & bits) != 0L)
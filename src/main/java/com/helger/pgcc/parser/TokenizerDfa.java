@@ -0,0 +1,827 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * A deterministic automaton compiled from {@link TokenizerData} by subset
+ * construction. The string literals and the NFA of each lexical state are
+ * merged into one automaton, so that tokenizing needs exactly one table lookup
+ * per input character and no allocation at all.<br>
+ * The accept kind is stored on the target state. If several kinds match the
+ * same input the smallest kind wins, as in the generated token managers.
+ */
+public final class TokenizerDfa
+{
+  /** Transition target if there is no transition at all */
+  public static final int NO_STATE = -1;
+
+  private final char [] m_charClass;
+  private final int m_classCount;
+  // Indexed by state * m_classCount + class
+  private final int [] m_transitions;
+  // Indexed by state - Integer.MAX_VALUE if it is not an accepting state
+  private final int [] m_acceptKinds;
+  // Indexed by lexical state
+  private final int [] m_startStates;
+  private final int [] m_wildcardKinds;
+  // Indexed by kind
+  private final TokenizerData.MatchInfo [] m_matchInfos;
+  private final int m_defaultLexState;
+
+  private TokenizerDfa (@Nonnull final char [] charClass,
+                        final int classCount,
+                        @Nonnull final int [] transitions,
+                        @Nonnull final int [] acceptKinds,
+                        @Nonnull final int [] startStates,
+                        @Nonnull final int [] wildcardKinds,
+                        @Nonnull final TokenizerData.MatchInfo [] matchInfos,
+                        final int defaultLexState)
+  {
+    m_charClass = charClass;
+    m_classCount = classCount;
+    m_transitions = transitions;
+    m_acceptKinds = acceptKinds;
+    m_startStates = startStates;
+    m_wildcardKinds = wildcardKinds;
+    m_matchInfos = matchInfos;
+    m_defaultLexState = defaultLexState;
+  }
+
+  /**
+   * @return The number of DFA states
+   */
+  public int getStateCount ()
+  {
+    return m_acceptKinds.length;
+  }
+
+  /**
+   * @return The number of character equivalence classes
+   */
+  public int getClassCount ()
+  {
+    return m_classCount;
+  }
+
+  public int getDefaultLexState ()
+  {
+    return m_defaultLexState;
+  }
+
+  /**
+   * @param lexState
+   *        lexical state index
+   * @return The start state for the provided lexical state or
+   *         {@link #NO_STATE} if nothing can be matched in it.
+   */
+  public int getStartState (final int lexState)
+  {
+    return m_startStates[lexState];
+  }
+
+  /**
+   * @param state
+   *        the current state. Must be &ge; 0.
+   * @param c
+   *        the next input character
+   * @return The next state or {@link #NO_STATE}
+   */
+  public int getNextState (final int state, final char c)
+  {
+    return m_transitions[state * m_classCount + m_charClass[c]];
+  }
+
+  /**
+   * @param state
+   *        the state to query. Must be &ge; 0.
+   * @return The matched kind when reaching this state or
+   *         {@link Integer#MAX_VALUE}
+   */
+  public int getAcceptKind (final int state)
+  {
+    return m_acceptKinds[state];
+  }
+
+  /**
+   * @param lexState
+   *        lexical state index
+   * @return The kind of the wildcard (~[]) match in this lexical state or
+   *         {@link Integer#MAX_VALUE}
+   */
+  public int getWildcardKind (final int lexState)
+  {
+    return m_wildcardKinds[lexState];
+  }
+
+  /**
+   * @param state
+   *        the current state. Must be &ge; 0.
+   * @param charClass
+   *        the character class of the next input character
+   * @return The next state or {@link #NO_STATE}
+   */
+  public int getNextStateForClass (final int state, final int charClass)
+  {
+    return m_transitions[state * m_classCount + charClass];
+  }
+
+  /**
+   * @return A copy of the char to class mapping, indexed by char.
+   */
+  @Nonnull
+  public char [] getCharClassMap ()
+  {
+    return m_charClass.clone ();
+  }
+
+  @Nullable
+  public TokenizerData.MatchInfo getMatchInfo (final int kind)
+  {
+    return kind >= 0 && kind < m_matchInfos.length ? m_matchInfos[kind] : null;
+  }
+
+  private static final class IntArrayKey
+  {
+    private final int [] m_values;
+    private final int m_hashCode;
+
+    IntArrayKey (final int [] values)
+    {
+      m_values = values;
+      m_hashCode = Arrays.hashCode (values);
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      return o instanceof IntArrayKey && Arrays.equals (m_values, ((IntArrayKey) o).m_values);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_hashCode;
+    }
+  }
+
+  /**
+   * Assign a block index to each signature, in order of first occurrence.
+   *
+   * @return The number of distinct blocks
+   */
+  private static int _assignBlocks (@Nonnull final int [] [] signatures, @Nonnull final int [] blocks)
+  {
+    final Map <IntArrayKey, Integer> ids = new HashMap <> ();
+    for (int i = 0; i < signatures.length; i++)
+    {
+      final IntArrayKey key = new IntArrayKey (signatures[i]);
+      Integer id = ids.get (key);
+      if (id == null)
+      {
+        id = Integer.valueOf (ids.size ());
+        ids.put (key, id);
+      }
+      blocks[i] = id.intValue ();
+    }
+    return ids.size ();
+  }
+
+  /**
+   * Create the minimal DFA that accepts the same tokens as this one. Equivalent
+   * states are merged by partition refinement (Moore's algorithm), starting
+   * with one block per accept kind. Afterwards character classes that have the
+   * same transitions in all states are merged as well.
+   *
+   * @return The minimized DFA and never <code>null</code>.
+   */
+  @Nonnull
+  public TokenizerDfa getMinimized ()
+  {
+    final int stateCount = getStateCount ();
+
+    // Refine the blocks until they are stable
+    final int [] [] signatures = new int [stateCount] [];
+    int [] blocks = new int [stateCount];
+    for (int s = 0; s < stateCount; s++)
+      signatures[s] = new int [] { m_acceptKinds[s] };
+    int blockCount = _assignBlocks (signatures, blocks);
+    while (true)
+    {
+      for (int s = 0; s < stateCount; s++)
+      {
+        final int [] sig = new int [m_classCount + 1];
+        sig[0] = blocks[s];
+        for (int cls = 0; cls < m_classCount; cls++)
+        {
+          final int target = m_transitions[s * m_classCount + cls];
+          sig[cls + 1] = target == NO_STATE ? NO_STATE : blocks[target];
+        }
+        signatures[s] = sig;
+      }
+      final int [] newBlocks = new int [stateCount];
+      final int newBlockCount = _assignBlocks (signatures, newBlocks);
+      blocks = newBlocks;
+      if (newBlockCount == blockCount)
+        break;
+      blockCount = newBlockCount;
+    }
+
+    // Merge the character classes with identical columns
+    final int [] [] columns = new int [m_classCount] [];
+    for (int cls = 0; cls < m_classCount; cls++)
+    {
+      final int [] column = new int [blockCount];
+      for (int s = 0; s < stateCount; s++)
+      {
+        final int target = m_transitions[s * m_classCount + cls];
+        column[blocks[s]] = target == NO_STATE ? NO_STATE : blocks[target];
+      }
+      columns[cls] = column;
+    }
+    final int [] newClassOf = new int [m_classCount];
+    final int newClassCount = _assignBlocks (columns, newClassOf);
+
+    final char [] charClass = new char [m_charClass.length];
+    for (int c = 0; c < charClass.length; c++)
+      charClass[c] = (char) newClassOf[m_charClass[c]];
+
+    final int [] transitions = new int [blockCount * newClassCount];
+    final int [] acceptKinds = new int [blockCount];
+    for (int s = 0; s < stateCount; s++)
+    {
+      acceptKinds[blocks[s]] = m_acceptKinds[s];
+      for (int cls = 0; cls < m_classCount; cls++)
+        transitions[blocks[s] * newClassCount + newClassOf[cls]] = columns[cls][blocks[s]];
+    }
+
+    final int [] startStates = new int [m_startStates.length];
+    for (int i = 0; i < startStates.length; i++)
+      startStates[i] = m_startStates[i] == NO_STATE ? NO_STATE : blocks[m_startStates[i]];
+
+    return new TokenizerDfa (charClass,
+                             newClassCount,
+                             transitions,
+                             acceptKinds,
+                             startStates,
+                             m_wildcardKinds.clone (),
+                             m_matchInfos,
+                             m_defaultLexState);
+  }
+
+  /**
+   * Builds the DFA of {@link #getUtf8Encoded()}. The states of this DFA keep
+   * their index. The states within multi-byte sequences and the clones needed
+   * for the wildcard kinds are appended.
+   */
+  private final class Utf8Encoder
+  {
+    private static final int UNSET = Integer.MIN_VALUE;
+
+    // Per new state: the char transitions (null within a multi-byte sequence)
+    private final List <int []> m_charRows = new ArrayList <> ();
+    private final List <int []> m_byteRows = new ArrayList <> ();
+    private final List <Integer> m_accepts = new ArrayList <> ();
+    // The wildcard kind each following char is matched with at least
+    private final List <Integer> m_wildcards = new ArrayList <> ();
+    // States within a multi-byte sequence, by the targets of the 64
+    // continuation bytes
+    private final Map <IntArrayKey, Integer> m_sequenceStates = new HashMap <> ();
+    // Clones with the accept kind of a wildcard, by state and kind
+    private final Map <Long, Integer> m_wildcardStates = new HashMap <> ();
+
+    Utf8Encoder ()
+    {
+      for (int s = 0; s < getStateCount (); s++)
+        _addState (Arrays.copyOfRange (m_transitions, s * m_classCount, (s + 1) * m_classCount),
+                   m_acceptKinds[s],
+                   Integer.MAX_VALUE);
+    }
+
+    private int _addState (@Nullable final int [] charRow, final int accept, final int wildcard)
+    {
+      final int [] byteRow = new int [256];
+      Arrays.fill (byteRow, NO_STATE);
+      m_charRows.add (charRow);
+      m_byteRows.add (byteRow);
+      m_accepts.add (Integer.valueOf (accept));
+      m_wildcards.add (Integer.valueOf (wildcard));
+      return m_byteRows.size () - 1;
+    }
+
+    int addWildcardStart (final int start, final int wildcard)
+    {
+      final int [] charRow = new int [m_classCount];
+      if (start == NO_STATE)
+        Arrays.fill (charRow, NO_STATE);
+      else
+        System.arraycopy (m_transitions, start * m_classCount, charRow, 0, m_classCount);
+      return _addState (charRow, start == NO_STATE ? Integer.MAX_VALUE : m_acceptKinds[start], wildcard);
+    }
+
+    /**
+     * @return The state after a complete char, considering that any char is
+     *         matched as the wildcard kind.
+     */
+    private int _withWildcard (final int target, final int wildcard)
+    {
+      if (wildcard == Integer.MAX_VALUE || (target != NO_STATE && m_acceptKinds[target] <= wildcard))
+        return target;
+
+      final Long key = Long.valueOf (((long) target << 32) | wildcard);
+      Integer ret = m_wildcardStates.get (key);
+      if (ret == null)
+      {
+        // A state that accepts the wildcard kind and otherwise continues like
+        // the target
+        ret = Integer.valueOf (addWildcardStart (target, Integer.MAX_VALUE));
+        m_accepts.set (ret.intValue (), Integer.valueOf (wildcard));
+        m_wildcardStates.put (key, ret);
+      }
+      return ret.intValue ();
+    }
+
+    private int _charTarget (@Nonnull final int [] charRow, final int wildcard, final int c)
+    {
+      return _withWildcard (charRow[m_charClass[c]], wildcard);
+    }
+
+    private int _sequenceState (@Nonnull final int [] targets)
+    {
+      boolean any = false;
+      for (final int t : targets)
+        if (t != NO_STATE)
+        {
+          any = true;
+          break;
+        }
+      if (!any)
+        return NO_STATE;
+
+      final IntArrayKey key = new IntArrayKey (targets.clone ());
+      Integer ret = m_sequenceStates.get (key);
+      if (ret == null)
+      {
+        ret = Integer.valueOf (_addState (null, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        System.arraycopy (targets, 0, m_byteRows.get (ret.intValue ()), 0x80, 64);
+        m_sequenceStates.put (key, ret);
+      }
+      return ret.intValue ();
+    }
+
+    private int _lowSurrogateState (final int afterHigh,
+                                    final int lowBlock,
+                                    final int wildcard,
+                                    @Nonnull final Map <Integer, int []> cache)
+    {
+      final int [] cached = cache.computeIfAbsent (Integer.valueOf (afterHigh), k -> {
+        final int [] ret = new int [16];
+        Arrays.fill (ret, UNSET);
+        return ret;
+      });
+      if (cached[lowBlock] == UNSET)
+      {
+        final int [] targets = new int [64];
+        for (int c3 = 0; c3 < 64; c3++)
+        {
+          final int target = afterHigh == NO_STATE ? NO_STATE
+                                                   : m_transitions[afterHigh * m_classCount +
+                                                                   m_charClass[0xdc00 + (lowBlock << 6) + c3]];
+          targets[c3] = _withWildcard (target, wildcard);
+        }
+        cached[lowBlock] = _sequenceState (targets);
+      }
+      return cached[lowBlock];
+    }
+
+    private void _encode (final int state)
+    {
+      final int [] charRow = m_charRows.get (state);
+      final int wildcard = m_wildcards.get (state).intValue ();
+      final int [] byteRow = m_byteRows.get (state);
+      final int [] seq1 = new int [64];
+      final int [] seq2 = new int [64];
+
+      // 1 byte
+      for (int b = 0; b < 0x80; b++)
+        byteRow[b] = _charTarget (charRow, wildcard, b);
+
+      // 2 bytes - C0 and C1 would be overlong
+      for (int b = 0xc2; b <= 0xdf; b++)
+      {
+        for (int c1 = 0; c1 < 64; c1++)
+          seq1[c1] = _charTarget (charRow, wildcard, ((b & 0x1f) << 6) | c1);
+        byteRow[b] = _sequenceState (seq1);
+      }
+
+      // 3 bytes without overlong forms and surrogates
+      for (int b = 0xe0; b <= 0xef; b++)
+      {
+        for (int c1 = 0; c1 < 64; c1++)
+          if ((b == 0xe0 && c1 < 0x20) || (b == 0xed && c1 >= 0x20))
+            seq2[c1] = NO_STATE;
+          else
+          {
+            for (int c2 = 0; c2 < 64; c2++)
+              seq1[c2] = _charTarget (charRow, wildcard, ((b & 0x0f) << 12) | (c1 << 6) | c2);
+            seq2[c1] = _sequenceState (seq1);
+          }
+        byteRow[b] = _sequenceState (seq2);
+      }
+
+      // 4 bytes - a surrogate pair in the char DFA
+      final int [] seq3 = new int [64];
+      final Map <Integer, int []> lowCache = new HashMap <> ();
+      for (int b = 0xf0; b <= 0xf4; b++)
+      {
+        for (int c1 = 0; c1 < 64; c1++)
+          if ((b == 0xf0 && c1 < 0x10) || (b == 0xf4 && c1 >= 0x10))
+            seq3[c1] = NO_STATE;
+          else
+          {
+            for (int c2 = 0; c2 < 64; c2++)
+            {
+              final int cp = ((b & 0x07) << 18) | (c1 << 12) | (c2 << 6);
+              final int afterHigh = charRow[m_charClass[0xd800 + ((cp - 0x10000) >> 10)]];
+              seq2[c2] = _lowSurrogateState (afterHigh, c2 & 0x0f, wildcard, lowCache);
+            }
+            seq3[c1] = _sequenceState (seq2);
+          }
+        byteRow[b] = _sequenceState (seq3);
+      }
+    }
+
+    @Nonnull
+    TokenizerDfa build (@Nonnull final int [] startStates, @Nonnull final int [] wildcardKinds)
+    {
+      // States may be added while encoding
+      for (int s = 0; s < m_charRows.size (); s++)
+        if (m_charRows.get (s) != null)
+          _encode (s);
+
+      // Remove the states that are no longer reachable, e.g. the ones after a
+      // single surrogate
+      final int [] newIndex = new int [m_byteRows.size ()];
+      Arrays.fill (newIndex, NO_STATE);
+      final List <Integer> order = new ArrayList <> ();
+      for (final int s : startStates)
+        if (s != NO_STATE && newIndex[s] == NO_STATE)
+        {
+          newIndex[s] = order.size ();
+          order.add (Integer.valueOf (s));
+        }
+      for (int i = 0; i < order.size (); i++)
+        for (final int target : m_byteRows.get (order.get (i).intValue ()))
+          if (target != NO_STATE && newIndex[target] == NO_STATE)
+          {
+            newIndex[target] = order.size ();
+            order.add (Integer.valueOf (target));
+          }
+
+      // Each byte is a class of its own, and all other chars are one class
+      final int classCount = 257;
+      final char [] charClass = new char [0x10000];
+      for (int c = 0; c < charClass.length; c++)
+        charClass[c] = (char) Math.min (c, 256);
+      final int [] transitions = new int [order.size () * classCount];
+      final int [] acceptKinds = new int [order.size ()];
+      for (int i = 0; i < order.size (); i++)
+      {
+        final int s = order.get (i).intValue ();
+        final int [] byteRow = m_byteRows.get (s);
+        for (int b = 0; b < 256; b++)
+          transitions[i * classCount + b] = byteRow[b] == NO_STATE ? NO_STATE : newIndex[byteRow[b]];
+        transitions[i * classCount + 256] = NO_STATE;
+        acceptKinds[i] = m_accepts.get (s).intValue ();
+      }
+      final int [] newStartStates = new int [startStates.length];
+      for (int i = 0; i < startStates.length; i++)
+        newStartStates[i] = startStates[i] == NO_STATE ? NO_STATE : newIndex[startStates[i]];
+
+      return new TokenizerDfa (charClass,
+                               classCount,
+                               transitions,
+                               acceptKinds,
+                               newStartStates,
+                               wildcardKinds,
+                               m_matchInfos,
+                               m_defaultLexState);
+    }
+  }
+
+  /**
+   * Convert this DFA to a DFA over the bytes of the UTF-8 encoded input. The
+   * chars 0-255 of the resulting DFA are the bytes, each multi-byte sequence
+   * is expanded into a chain of states. Invalid UTF-8 input and single
+   * surrogates are never matched. The wildcard kinds are part of the automaton
+   * in the result, because a wildcard char may consist of several bytes. If
+   * the DFA was compiled with ignore case, the input must not be lower cased
+   * before matching.
+   *
+   * @return The new DFA and never <code>null</code>. It is not minimized.
+   */
+  @Nonnull
+  public TokenizerDfa getUtf8Encoded ()
+  {
+    final Utf8Encoder encoder = new Utf8Encoder ();
+    final int [] startStates = new int [m_startStates.length];
+    final int [] wildcardKinds = new int [m_startStates.length];
+    Arrays.fill (wildcardKinds, Integer.MAX_VALUE);
+    for (int lexState = 0; lexState < startStates.length; lexState++)
+    {
+      final int wildcard = m_wildcardKinds[lexState];
+      if (wildcard == Integer.MAX_VALUE)
+        startStates[lexState] = m_startStates[lexState];
+      else
+        startStates[lexState] = encoder.addWildcardStart (m_startStates[lexState], wildcard);
+    }
+    return encoder.build (startStates, wildcardKinds);
+  }
+
+  private static final class DfaStateKey
+  {
+    private final BitSet m_states;
+    private final int m_kind;
+
+    DfaStateKey (final BitSet states, final int kind)
+    {
+      m_states = states;
+      m_kind = kind;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (!(o instanceof DfaStateKey))
+        return false;
+      final DfaStateKey rhs = (DfaStateKey) o;
+      return m_kind == rhs.m_kind && m_states.equals (rhs.m_states);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return m_states.hashCode () * 31 + m_kind;
+    }
+  }
+
+  /**
+   * Compile the tokenizer data into a DFA.
+   *
+   * @param td
+   *        The tokenizer data as created by {@link LexGenJava}. May not be
+   *        <code>null</code>.
+   * @param ignoreCase
+   *        <code>true</code> to lower case all input characters before
+   *        matching, as in the global IGNORE_CASE option
+   * @return The compiled DFA and never <code>null</code>.
+   */
+  @Nonnull
+  public static TokenizerDfa compile (@Nonnull final TokenizerData td, final boolean ignoreCase)
+  {
+    // NFA states are numbered 0..nfaCount-1. The literals are appended as
+    // "pseudo states" after that, one per literal character, so that literal
+    // and NFA matching can be determinized together.
+    int nfaCount = 0;
+    for (final TokenizerData.NfaState aState : td.m_nfa.values ())
+    {
+      nfaCount = Math.max (nfaCount, aState.m_index + 1);
+      for (final Integer aNext : aState.m_nextStates)
+        nfaCount = Math.max (nfaCount, aNext.intValue () + 1);
+      for (final Integer aComposite : aState.m_compositeStates)
+        nfaCount = Math.max (nfaCount, aComposite.intValue () + 1);
+    }
+
+    final StringBuilder literalChars = new StringBuilder ();
+    final List <int []> literalsPerLexState = new ArrayList <> ();
+    final int lexStateCount = td.m_lexStateNames.length;
+    for (int i = 0; i < lexStateCount; i++)
+      literalsPerLexState.add (new int [0]);
+    // Per pseudo state: the kind if this is the last char of a literal
+    final List <Integer> literalEndKind = new ArrayList <> ();
+    if (td.m_literalSequence != null)
+      for (final Map.Entry <Integer, List <String>> aEntry : td.m_literalSequence.entrySet ())
+      {
+        final int lexState = aEntry.getKey ().intValue () >> 16;
+        final List <Integer> kinds = td.m_literalKinds.get (aEntry.getKey ());
+        int [] starts = literalsPerLexState.get (lexState);
+        int litIndex = 0;
+        for (final String s : aEntry.getValue ())
+        {
+          starts = Arrays.copyOf (starts, starts.length + 1);
+          starts[starts.length - 1] = nfaCount + literalChars.length ();
+          for (int k = 0; k < s.length (); k++)
+            literalEndKind.add (Integer.valueOf (k == s.length () - 1 ? kinds.get (litIndex).intValue () : Integer.MAX_VALUE));
+          literalChars.append (s);
+          litIndex++;
+        }
+        literalsPerLexState.set (lexState, starts);
+      }
+    final int stateSpace = nfaCount + literalChars.length ();
+
+    // Build the character classes
+    final CharClassPartition partition = new CharClassPartition ();
+    for (final TokenizerData.NfaState aState : td.m_nfa.values ())
+      partition.refine (aState.m_characters);
+    for (int i = 0; i < literalChars.length (); i++)
+      partition.refine (new char [] { literalChars.charAt (i) });
+    if (ignoreCase)
+      partition.foldToLowerCase ();
+    final int classCount = partition.getClassCount ();
+
+    // The classes each NFA state can move on
+    final int [] [] nfaClasses = new int [nfaCount] [];
+    final int [] nfaKinds = new int [nfaCount];
+    final int [] [] nfaNext = new int [nfaCount] [];
+    Arrays.fill (nfaKinds, Integer.MAX_VALUE);
+    for (final TokenizerData.NfaState aState : td.m_nfa.values ())
+    {
+      final BitSet classes = new BitSet (classCount);
+      for (final Character c : aState.m_characters)
+        classes.set (partition.getClassOf (c.charValue ()));
+      nfaClasses[aState.m_index] = classes.stream ().toArray ();
+      nfaKinds[aState.m_index] = aState.m_kind;
+      nfaNext[aState.m_index] = aState.m_nextStates.stream ().mapToInt (Integer::intValue).toArray ();
+    }
+
+    // The NFA start states after a literal was matched completely
+    final BitSet [] afterLiteral = new BitSet [literalChars.length ()];
+    for (int i = 0; i < literalChars.length (); i++)
+    {
+      final int kind = literalEndKind.get (i).intValue ();
+      if (kind != Integer.MAX_VALUE && td.m_kindToNfaStartState != null)
+      {
+        final Integer start = td.m_kindToNfaStartState.get (Integer.valueOf (kind));
+        afterLiteral[i] = _getStartSet (td, start == null ? -1 : start.intValue (), stateSpace);
+      }
+    }
+
+    // Subset construction
+    final Map <DfaStateKey, Integer> stateIndex = new HashMap <> ();
+    final List <DfaStateKey> worklist = new ArrayList <> ();
+    final int [] startStates = new int [lexStateCount];
+    final int [] wildcardKinds = new int [lexStateCount];
+    for (int lexState = 0; lexState < lexStateCount; lexState++)
+    {
+      final Integer nfaStart = td.m_initialStates == null ? null : td.m_initialStates.get (Integer.valueOf (lexState));
+      final BitSet start = _getStartSet (td, nfaStart == null ? -1 : nfaStart.intValue (), stateSpace);
+      for (final int s : literalsPerLexState.get (lexState))
+        start.set (s);
+      startStates[lexState] = start.isEmpty () ? NO_STATE : _getOrAddState (new DfaStateKey (start, Integer.MAX_VALUE),
+                                                                             stateIndex,
+                                                                             worklist);
+
+      final Integer wildcard = td.m_wildcardKind == null ? null : td.m_wildcardKind.get (Integer.valueOf (lexState));
+      wildcardKinds[lexState] = wildcard == null ? Integer.MAX_VALUE : wildcard.intValue ();
+    }
+
+    int [] transitions = new int [Math.max (worklist.size (), 16) * classCount];
+    final BitSet [] nextPerClass = new BitSet [classCount];
+    final int [] kindPerClass = new int [classCount];
+    for (int current = 0; current < worklist.size (); current++)
+    {
+      final BitSet states = worklist.get (current).m_states;
+      Arrays.fill (nextPerClass, null);
+      Arrays.fill (kindPerClass, Integer.MAX_VALUE);
+
+      for (int s = states.nextSetBit (0); s >= 0; s = states.nextSetBit (s + 1))
+      {
+        if (s < nfaCount)
+        {
+          if (nfaClasses[s] == null)
+            continue;
+          for (final int cls : nfaClasses[s])
+          {
+            if (nextPerClass[cls] == null)
+              nextPerClass[cls] = new BitSet (stateSpace);
+            for (final int n : nfaNext[s])
+              nextPerClass[cls].set (n);
+            if (nfaKinds[s] < kindPerClass[cls])
+              kindPerClass[cls] = nfaKinds[s];
+          }
+        }
+        else
+        {
+          final int litPos = s - nfaCount;
+          final int cls = partition.getClassOf (literalChars.charAt (litPos));
+          if (nextPerClass[cls] == null)
+            nextPerClass[cls] = new BitSet (stateSpace);
+          final int kind = literalEndKind.get (litPos).intValue ();
+          if (kind == Integer.MAX_VALUE)
+            nextPerClass[cls].set (s + 1);
+          else
+          {
+            if (kind < kindPerClass[cls])
+              kindPerClass[cls] = kind;
+            if (afterLiteral[litPos] != null)
+              nextPerClass[cls].or (afterLiteral[litPos]);
+          }
+        }
+      }
+
+      if ((current + 1) * classCount > transitions.length)
+        transitions = Arrays.copyOf (transitions, transitions.length * 2);
+      for (int cls = 0; cls < classCount; cls++)
+      {
+        final int target;
+        if (nextPerClass[cls] == null)
+          target = NO_STATE;
+        else
+          target = _getOrAddState (new DfaStateKey (nextPerClass[cls], kindPerClass[cls]), stateIndex, worklist);
+        transitions[current * classCount + cls] = target;
+      }
+    }
+
+    final int stateCount = worklist.size ();
+    final int [] acceptKinds = new int [stateCount];
+    for (int i = 0; i < stateCount; i++)
+      acceptKinds[i] = worklist.get (i).m_kind;
+
+    int maxKind = -1;
+    for (final Integer aKind : td.m_allMatches.keySet ())
+      maxKind = Math.max (maxKind, aKind.intValue ());
+    final TokenizerData.MatchInfo [] matchInfos = new TokenizerData.MatchInfo [maxKind + 1];
+    for (final Map.Entry <Integer, TokenizerData.MatchInfo> aEntry : td.m_allMatches.entrySet ())
+      matchInfos[aEntry.getKey ().intValue ()] = aEntry.getValue ();
+
+    return new TokenizerDfa (partition.getClassMap (),
+                             classCount,
+                             Arrays.copyOf (transitions, stateCount * classCount),
+                             acceptKinds,
+                             startStates,
+                             wildcardKinds,
+                             matchInfos,
+                             td.m_defaultLexState);
+  }
+
+  @Nonnull
+  private static BitSet _getStartSet (@Nonnull final TokenizerData td, final int nfaStartState, final int stateSpace)
+  {
+    final BitSet ret = new BitSet (stateSpace);
+    if (nfaStartState >= 0)
+    {
+      ret.set (nfaStartState);
+      // Composite states are only expanded for start states
+      final TokenizerData.NfaState start = td.m_nfa.get (Integer.valueOf (nfaStartState));
+      if (start != null)
+        for (final Integer aComposite : start.m_compositeStates)
+          ret.set (aComposite.intValue ());
+    }
+    return ret;
+  }
+
+  private static int _getOrAddState (@Nonnull final DfaStateKey key,
+                                     @Nonnull final Map <DfaStateKey, Integer> stateIndex,
+                                     @Nonnull final List <DfaStateKey> worklist)
+  {
+    final Integer existing = stateIndex.get (key);
+    if (existing != null)
+      return existing.intValue ();
+    final int ret = worklist.size ();
+    worklist.add (key);
+    stateIndex.put (key, Integer.valueOf (ret));
+    return ret;
+  }
+}
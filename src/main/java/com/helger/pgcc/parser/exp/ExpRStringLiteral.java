@@ -1826,6 +1826,10 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
     s_charCnt = 0;
     s_allImages = null;
     boilerPlateDumped = false;
+    literalsByLength.clear ();
+    literalKinds.clear ();
+    kindToLexicalState.clear ();
+    nfaStateMap.clear ();
   }
 
   @Override
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser.table;
+
+import java.util.Map;
+
+import com.helger.pgcc.parser.CodeGenerator;
+import com.helger.pgcc.parser.JavaCCErrors;
+import com.helger.pgcc.parser.Options;
+import com.helger.pgcc.parser.TokenizerData;
+import com.helger.pgcc.parser.TokenizerDfa;
+
+/**
+ * Token manager code generator that converts the string literals and the NFA
+ * of all lexical states into one minimized DFA at generation time. The
+ * generated token manager needs exactly one table lookup per input char,
+ * instead of simulating the NFA at runtime like the classic token manager and
+ * the {@link TableDrivenJavaCodeGenerator}. Everything besides matching is
+ * shared with the table driven token manager.<br>
+ * Use it with
+ * <code>-TOKEN_MANAGER_CODE_GENERATOR=com.helger.pgcc.parser.table.DfaJavaCodeGenerator</code>.
+ */
+public class DfaJavaCodeGenerator extends TableDrivenJavaCodeGenerator
+{
+  /** States are stored as chars and 0 means "no state" */
+  private static final int MAX_STATES = Character.MAX_VALUE - 1;
+  /** Accept kind of non-accepting states */
+  private static final char NO_KIND = Character.MAX_VALUE;
+
+  @Override
+  protected void addTemplateOptions (final Map <String, Object> options, final TokenizerData tokenizerData)
+  {
+    options.put ("dfaTokenManager", Boolean.TRUE);
+  }
+
+  @Override
+  protected void dumpMatchingTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    TokenizerDfa dfa = TokenizerDfa.compile (tokenizerData, Options.isIgnoreCase ()).getMinimized ();
+    if (Options.isByteCharStream ())
+      dfa = dfa.getUtf8Encoded ().getMinimized ();
+    final int stateCount = dfa.getStateCount ();
+    final int classCount = dfa.getClassCount ();
+    if (stateCount > MAX_STATES)
+    {
+      JavaCCErrors.semantic_error ("The lexer DFA has " +
+                                   stateCount +
+                                   " states, but at most " +
+                                   MAX_STATES +
+                                   " are supported. Please use a different token manager code generator.");
+      return;
+    }
+
+    dumpCharClassTables (codeGenerator, dfa.getCharClassMap ());
+    codeGenerator.genCodeLine ("private static final int jjDfaClassCount = " + classCount + ";");
+
+    // Row 0 is the "no state" row without any transitions
+    final StringBuilder next = new StringBuilder ((stateCount + 1) * classCount);
+    for (int cls = 0; cls < classCount; cls++)
+      next.append ((char) 0);
+    for (int state = 0; state < stateCount; state++)
+      for (int cls = 0; cls < classCount; cls++)
+        next.append ((char) (dfa.getNextStateForClass (state, cls) + 1));
+    dumpPackedChars (codeGenerator, "jjDfaNext", next);
+
+    final StringBuilder kinds = new StringBuilder (stateCount + 1);
+    kinds.append (NO_KIND);
+    for (int state = 0; state < stateCount; state++)
+    {
+      final int kind = dfa.getAcceptKind (state);
+      kinds.append (kind == Integer.MAX_VALUE ? NO_KIND : (char) kind);
+    }
+    dumpPackedChars (codeGenerator, "jjDfaKind", kinds);
+
+    final int lexStateCount = tokenizerData.m_lexStateNames.length;
+    codeGenerator.genCodeLine ("private static final int[] jjDfaStart = {");
+    for (int lexState = 0; lexState < lexStateCount; lexState++)
+    {
+      if (lexState > 0)
+        codeGenerator.genCode (", ");
+      codeGenerator.genCode (Integer.toString (dfa.getStartState (lexState) + 1));
+    }
+    codeGenerator.genCodeLine ("};");
+
+    codeGenerator.genCodeLine ("private static final int[] canMatchAnyChar = {");
+    for (int lexState = 0; lexState < lexStateCount; lexState++)
+    {
+      if (lexState > 0)
+        codeGenerator.genCode (", ");
+      codeGenerator.genCode (Integer.toString (dfa.getWildcardKind (lexState)));
+    }
+    codeGenerator.genCodeLine ("};");
+  }
+}
@@ -35,14 +35,19 @@ package com.helger.pgcc.parser.table;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import com.helger.base.string.StringHelper;
 import com.helger.pgcc.output.EOutputLanguage;
+import com.helger.pgcc.parser.CharClassPartition;
 import com.helger.pgcc.parser.CodeGenerator;
+import com.helger.pgcc.parser.JavaCCErrors;
+import com.helger.pgcc.parser.JavaCCGlobals;
 import com.helger.pgcc.parser.Options;
 import com.helger.pgcc.parser.TokenizerData;
 
@@ -53,6 +58,8 @@ import com.helger.pgcc.parser.TokenizerData;
 public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
 {
   private static final String TokenManagerTemplate = "/templates/TableDrivenTokenManager.template";
+  /** Trie nodes are stored as chars */
+  private static final int MAX_TRIE_NODES = Character.MAX_VALUE;
   private final CodeGenerator m_codeGenerator = new CodeGenerator ();
 
   @Override
@@ -72,11 +79,31 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     options.put ("superClass", StringHelper.isEmpty (superClass) ? "" : "extends " + superClass);
     options.put ("noDfa", Boolean.valueOf (Options.isNoDfa ()));
     options.put ("generatedStates", Integer.valueOf (tokenizerData.m_nfa.size ()));
+    options.put ("recycleTokens", Boolean.valueOf (JavaCCGlobals.getTokenRingSize () > 0));
+    options.put ("tokenRingSize", Integer.valueOf (JavaCCGlobals.getTokenRingSize ()));
+    options.put ("dfaTokenManager", Boolean.FALSE);
+    // fillTokens only creates Token objects for the lexical actions
+    boolean hasTokenActions = false;
+    boolean hasSkipActions = false;
+    for (final TokenizerData.MatchInfo matchInfo : tokenizerData.m_allMatches.values ())
+      if (matchInfo.m_action != null)
+      {
+        if (matchInfo.m_matchType == TokenizerData.EMatchType.TOKEN)
+          hasTokenActions = true;
+        else
+          if (matchInfo.m_matchType != TokenizerData.EMatchType.MORE)
+            hasSkipActions = true;
+      }
+    options.put ("hasTokenActions", Boolean.valueOf (hasTokenActions));
+    options.put ("hasSkipActions", Boolean.valueOf (hasSkipActions));
+    addTemplateOptions (options, tokenizerData);
     try
     {
+      // Same package and imports as the parser
+      if (m_codeGenerator.genPackageAndImports ())
+        m_codeGenerator.genCodeLine ("@SuppressWarnings (\"unused\")");
       m_codeGenerator.writeTemplate (TokenManagerTemplate, options);
-      _dumpDfaTables (m_codeGenerator, tokenizerData);
-      dumpNfaTables (m_codeGenerator, tokenizerData);
+      dumpMatchingTables (m_codeGenerator, tokenizerData);
       _dumpMatchInfo (m_codeGenerator, tokenizerData);
     }
     catch (final IOException ioe)
@@ -95,109 +122,186 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     m_codeGenerator.saveOutput (fileName);
   }
 
-  private void _dumpDfaTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  /**
+   * Add or modify the variables that are available in the token manager
+   * template. Does nothing by default.
+   *
+   * @param options
+   *        The template variables. Never <code>null</code>.
+   * @param tokenizerData
+   *        data
+   */
+  protected void addTemplateOptions (final Map <String, Object> options, final TokenizerData tokenizerData)
+  {}
+
+  /**
+   * Dump the tables that are used to match the next token - the string literal
+   * tables and the NFA tables by default.
+   *
+   * @param codeGenerator
+   *        The code generator to write to. Never <code>null</code>.
+   * @param tokenizerData
+   *        data
+   */
+  protected void dumpMatchingTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
-    final Map <Integer, int []> startAndSize = new HashMap <> ();
-    int i = 0;
+    _dumpLiteralTrie (codeGenerator, tokenizerData);
+    dumpNfaTables (codeGenerator, tokenizerData);
+  }
+
+  private static final class LiteralTrieNode
+  {
+    private final char m_char;
+    private final TreeMap <Character, LiteralTrieNode> m_children = new TreeMap <> ();
+    private int m_index;
+    private int m_firstChild;
+    // Index of the literal that ends at this node or -1
+    private int m_literal = -1;
+
+    LiteralTrieNode (final char c)
+    {
+      m_char = c;
+    }
+  }
 
-    codeGenerator.genCodeLine ("private static final int[] stringLiterals = {");
-    for (final int key : tokenizerData.m_literalSequence.keySet ())
+  /**
+   * Dump the string literals of all lexical states as one trie. The nodes are
+   * numbered breadth first, so that the children of a node are consecutive and
+   * sorted by char. Longer literals are matched without going back to the start
+   * of the token for each candidate.
+   */
+  private static void _dumpLiteralTrie (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    final int lexStateCount = tokenizerData.m_lexStateNames.length;
+    final LiteralTrieNode [] roots = new LiteralTrieNode [lexStateCount];
+    final List <Integer> literalKinds = new ArrayList <> ();
+    for (final Map.Entry <Integer, List <String>> aEntry : tokenizerData.m_literalSequence.entrySet ())
     {
-      final int [] arr = new int [2];
-      final List <String> l = tokenizerData.m_literalSequence.get (Integer.valueOf (key));
-      final List <Integer> kinds = tokenizerData.m_literalKinds.get (Integer.valueOf (key));
-      arr[0] = i;
-      arr[1] = l.size ();
+      final int lexState = aEntry.getKey ().intValue () >> 16;
+      if (roots[lexState] == null)
+        roots[lexState] = new LiteralTrieNode ((char) 0);
+      final List <Integer> kinds = tokenizerData.m_literalKinds.get (aEntry.getKey ());
       int j = 0;
-      if (i > 0)
-        codeGenerator.genCodeLine (", ");
-      for (final String s : l)
+      for (final String s : aEntry.getValue ())
       {
-        if (j > 0)
-          codeGenerator.genCodeLine (", ");
-        codeGenerator.genCode (Integer.toString (s.length ()));
+        LiteralTrieNode node = roots[lexState];
         for (int k = 0; k < s.length (); k++)
+          node = node.m_children.computeIfAbsent (Character.valueOf (s.charAt (k)),
+                                                  c -> new LiteralTrieNode (c.charValue ()));
+        // Like the first match of the literal sequence
+        if (node.m_literal < 0)
         {
-          codeGenerator.genCode (", ");
-          codeGenerator.genCode (Integer.toString (s.charAt (k)));
-          i++;
+          node.m_literal = literalKinds.size ();
+          literalKinds.add (kinds.get (j));
         }
-        final Integer kind = kinds.get (j);
-        codeGenerator.genCode (", " + kind);
-        codeGenerator.genCode (", " + tokenizerData.m_kindToNfaStartState.get (kind));
-        i += 3;
         j++;
       }
-      startAndSize.put (Integer.valueOf (key), arr);
+    }
+
+    final List <LiteralTrieNode> nodes = new ArrayList <> ();
+    for (final LiteralTrieNode aRoot : roots)
+      if (aRoot != null)
+        nodes.add (aRoot);
+    for (int i = 0; i < nodes.size (); i++)
+    {
+      final LiteralTrieNode aNode = nodes.get (i);
+      aNode.m_index = i;
+      aNode.m_firstChild = nodes.size ();
+      nodes.addAll (aNode.m_children.values ());
+    }
+    if (nodes.size () > MAX_TRIE_NODES)
+    {
+      JavaCCErrors.semantic_error ("The string literal trie has " +
+                                   nodes.size () +
+                                   " nodes, but at most " +
+                                   MAX_TRIE_NODES +
+                                   " are supported. Please use a different token manager code generator.");
+      return;
+    }
+
+    codeGenerator.genCodeLine ("private static final int[] jjLiteralRoot = {");
+    for (int lexState = 0; lexState < lexStateCount; lexState++)
+    {
+      if (lexState > 0)
+        codeGenerator.genCode (", ");
+      codeGenerator.genCode (Integer.toString (roots[lexState] == null ? -1 : roots[lexState].m_index));
     }
     codeGenerator.genCodeLine ("};");
 
-    codeGenerator.genCodeLine ("private static final java.util.Map<Integer, int[]> startAndSize =\n" +
-                               "    new java.util.HashMap<Integer, int[]>();");
+    final StringBuilder chars = new StringBuilder (nodes.size ());
+    final StringBuilder firstChild = new StringBuilder (nodes.size ());
+    final StringBuilder childCount = new StringBuilder (nodes.size ());
+    final StringBuilder literal = new StringBuilder (nodes.size ());
+    for (final LiteralTrieNode aNode : nodes)
+    {
+      chars.append (aNode.m_char);
+      firstChild.append ((char) aNode.m_firstChild);
+      childCount.append ((char) aNode.m_children.size ());
+      // 0 means no literal ends here
+      literal.append ((char) (aNode.m_literal + 1));
+    }
+    dumpPackedChars (codeGenerator, "jjLiteralChar", chars);
+    dumpPackedChars (codeGenerator, "jjLiteralFirstChild", firstChild);
+    dumpPackedChars (codeGenerator, "jjLiteralChildCount", childCount);
+    dumpPackedChars (codeGenerator, "jjLiteralMatch", literal);
 
-    // Static block to actually initialize the map from the int array above.
-    codeGenerator.genCodeLine ("static {");
-    for (final int key : tokenizerData.m_literalSequence.keySet ())
+    codeGenerator.genCodeLine ("private static final int[] jjLiteralKind = {");
+    for (int i = 0; i < literalKinds.size (); i++)
     {
-      final int [] arr = startAndSize.get (Integer.valueOf (key));
-      codeGenerator.genCodeLine ("startAndSize.put(" + key + ", new int[]{" + arr[0] + ", " + arr[1] + "});");
+      if (i > 0)
+        codeGenerator.genCode (i % 16 == 0 ? ",\n" : ", ");
+      codeGenerator.genCode (literalKinds.get (i).toString ());
     }
-    codeGenerator.genCodeLine ("}");
+    codeGenerator.genCodeLine ("};");
+
+    // The NFA start state after the literal was matched
+    codeGenerator.genCodeLine ("private static final int[] jjLiteralNfaStart = {");
+    for (int i = 0; i < literalKinds.size (); i++)
+    {
+      if (i > 0)
+        codeGenerator.genCode (i % 16 == 0 ? ",\n" : ", ");
+      codeGenerator.genCode (tokenizerData.m_kindToNfaStartState.get (literalKinds.get (i)).toString ());
+    }
+    codeGenerator.genCodeLine ("};");
   }
 
   private void dumpNfaTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
     final EOutputLanguage eOutputLanguage = codeGenerator.getOutputLanguage ();
 
-    // WE do the following for java so that the generated code is reasonable
-    // size and can be compiled. May not be needed for other languages.
-    codeGenerator.genCodeLine ("private static final " + eOutputLanguage.getTypeLong () + "[][] jjCharData = {");
+    // Instead of one bit vector over all chars per state, the chars are mapped
+    // to equivalence classes first, and each state only has one bit per class.
     final Map <Integer, TokenizerData.NfaState> nfa = tokenizerData.m_nfa;
+    final CharClassPartition partition = new CharClassPartition ();
+    for (final TokenizerData.NfaState aState : nfa.values ())
+      partition.refine (aState.m_characters);
+    dumpCharClassTables (codeGenerator, partition.getClassMap ());
+
+    final int classCount = partition.getClassCount ();
+    final int classLongs = (classCount + 63) / 64;
+    codeGenerator.genCodeLine ("private static final int jjClassLongs = " + classLongs + ";");
+    codeGenerator.genCodeLine ("private static final " + eOutputLanguage.getTypeLong () + "[] jjStateClasses = {");
     for (int i = 0; i < nfa.size (); i++)
     {
       final TokenizerData.NfaState tmp = nfa.get (Integer.valueOf (i));
+      final long [] longs = new long [classLongs];
+      if (tmp != null)
+        for (final char c : tmp.m_characters)
+        {
+          final int cls = partition.getClassOf (c);
+          longs[cls >> 6] |= 1L << (cls & 077);
+        }
       if (i > 0)
         codeGenerator.genCodeLine (",");
-      if (tmp == null)
+      for (int k = 0; k < classLongs; k++)
       {
-        codeGenerator.genCode ("{}");
-        continue;
-      }
-      codeGenerator.genCode ("{");
-      final BitSet bits = new BitSet ();
-      for (final char c : tmp.m_characters)
-      {
-        bits.set (c);
-      }
-      final long [] longs = bits.toLongArray ();
-      for (int k = 0; k < longs.length; k++)
-      {
-        int rep = 1;
-        while (k + rep < longs.length && longs[k + rep] == longs[k])
-          rep++;
         if (k > 0)
           codeGenerator.genCode (", ");
-        codeGenerator.genCode (rep + ", ");
         codeGenerator.genCode (eOutputLanguage.getLongHex (longs[k]));
-        k += rep - 1;
       }
-      codeGenerator.genCode ("}");
     }
     codeGenerator.genCodeLine ("};");
 
-    codeGenerator.genCodeLine ("private static final long[][] jjChars = ");
-    codeGenerator.genCodeLine ("    new long[" + tokenizerData.m_nfa.size () + "][(Character.MAX_VALUE >> 6) + 1]; ");
-    codeGenerator.genCodeLine ("static { ");
-    codeGenerator.genCodeLine ("  for (int i = 0; i < " + tokenizerData.m_nfa.size () + "; i++) { ");
-    codeGenerator.genCodeLine ("    int ind = 0; ");
-    codeGenerator.genCodeLine ("    for (int j = 0; j < jjCharData[i].length; j += 2) { ");
-    codeGenerator.genCodeLine ("      for (int k = 0; k < (int)jjCharData[i][j]; k++) { ");
-    codeGenerator.genCodeLine ("        jjChars[i][ind++] = jjCharData[i][j + 1]; ");
-    codeGenerator.genCodeLine ("      } ");
-    codeGenerator.genCodeLine ("    } ");
-    codeGenerator.genCodeLine ("  } ");
-    codeGenerator.genCodeLine ("} ");
-
     codeGenerator.genCodeLine ("private static final int[][] jjcompositeState = {");
     for (int i = 0; i < nfa.size (); i++)
     {
@@ -281,6 +385,108 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     codeGenerator.genCodeLine ("};");
   }
 
+  /**
+   * Dump the char to class mapping as a two level table. The high byte of a
+   * char selects a page of 256 class ids, and identical pages are shared - like
+   * the jjbitVec arrays of the classic token manager. The page contents are
+   * run length encoded in string constants, so that they neither bloat the
+   * static initializer nor hit the constant pool limits.
+   */
+  protected static void dumpCharClassTables (final CodeGenerator codeGenerator, final char [] classMap)
+  {
+    final Map <String, Integer> pageOffsets = new HashMap <> ();
+    final StringBuilder pageData = new StringBuilder ();
+    final int [] pageTable = new int [256];
+    for (int hi = 0; hi < 256; hi++)
+    {
+      final String page = new String (classMap, hi << 8, 256);
+      Integer offset = pageOffsets.get (page);
+      if (offset == null)
+      {
+        offset = Integer.valueOf (pageData.length ());
+        pageOffsets.put (page, offset);
+        pageData.append (page);
+      }
+      pageTable[hi] = offset.intValue ();
+    }
+
+    codeGenerator.genCodeLine ("private static final int[] jjCharClassPage = {");
+    for (int hi = 0; hi < 256; hi++)
+    {
+      if (hi > 0)
+        codeGenerator.genCode (hi % 16 == 0 ? ",\n" : ", ");
+      codeGenerator.genCode ("0x" + Integer.toHexString (pageTable[hi]));
+    }
+    codeGenerator.genCodeLine ("};");
+
+    dumpPackedChars (codeGenerator, "jjCharClassData", pageData);
+
+    codeGenerator.genCodeLine ("private static char[] jjUnpackRuns(int size, String[] packed) {");
+    codeGenerator.genCodeLine ("  final char[] ret = new char[size];");
+    codeGenerator.genCodeLine ("  int pos = 0;");
+    codeGenerator.genCodeLine ("  for (final String s : packed) {");
+    codeGenerator.genCodeLine ("    for (int i = 0; i < s.length(); i += 2) {");
+    codeGenerator.genCodeLine ("      final char cls = s.charAt(i + 1);");
+    codeGenerator.genCodeLine ("      for (int k = s.charAt(i); k > 0; k--) ret[pos++] = cls;");
+    codeGenerator.genCodeLine ("    }");
+    codeGenerator.genCodeLine ("  }");
+    codeGenerator.genCodeLine ("  return ret;");
+    codeGenerator.genCodeLine ("}");
+  }
+
+  /**
+   * Dump a char array as run length encoded string constants, that are
+   * unpacked by the <code>jjUnpackRuns</code> method of the char class tables.
+   *
+   * @param codeGenerator
+   *        The code generator to write to. Never <code>null</code>.
+   * @param name
+   *        The name of the created field
+   * @param data
+   *        The array content
+   */
+  protected static void dumpPackedChars (final CodeGenerator codeGenerator, final String name, final CharSequence data)
+  {
+    // Pairs of (run length, value)
+    final StringBuilder runs = new StringBuilder ();
+    int i = 0;
+    while (i < data.length ())
+    {
+      final char value = data.charAt (i);
+      int len = 1;
+      while (i + len < data.length () && data.charAt (i + len) == value && len < Character.MAX_VALUE)
+        len++;
+      runs.append ((char) len).append (value);
+      i += len;
+    }
+
+    codeGenerator.genCodeLine ("private static final char[] " + name + " = jjUnpackRuns(" + data.length () + ", new String[] {");
+    final int chunkSize = 2048;
+    for (int start = 0; start < runs.length (); start += chunkSize)
+    {
+      if (start > 0)
+        codeGenerator.genCodeLine (",");
+      codeGenerator.genCode ("\"");
+      final int end = Math.min (start + chunkSize, runs.length ());
+      for (int k = start; k < end; k++)
+      {
+        // Unicode escapes are resolved before lexing, so use octal if possible
+        final char c = runs.charAt (k);
+        if (c <= 0xff)
+          codeGenerator.genCode ("\\" + Integer.toOctalString (c));
+        else
+        {
+          String hexVal = Integer.toHexString (c);
+          while (hexVal.length () < 4)
+            hexVal = "0" + hexVal;
+          codeGenerator.genCode ("\\u" + hexVal);
+        }
+      }
+      codeGenerator.genCode ("\"");
+    }
+    codeGenerator.genCodeLine ("});");
+  }
+
   private void _dumpMatchInfo (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
     final Map <Integer, TokenizerData.MatchInfo> allMatches = tokenizerData.m_allMatches;
@@ -310,6 +516,8 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
           toSkip.set (i);
           break;
         case SPECIAL_TOKEN:
+          // The runtime checks for skip first and only then for special
+          toSkip.set (i);
           toSpecial.set (i);
           break;
         case MORE:
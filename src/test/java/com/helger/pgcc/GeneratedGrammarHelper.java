@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.helger.io.file.FileOperations;
+import com.helger.pgcc.jjtree.JJTree;
+import com.helger.pgcc.parser.Main;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Generate the code of a test grammar, compile it with the system Java compiler
+ * and load the compiled classes, so that tests can run the generated parser.
+ */
+public final class GeneratedGrammarHelper
+{
+  private GeneratedGrammarHelper ()
+  {}
+
+  /**
+   * Generate the code of a grammar into an empty directory.
+   *
+   * @param sGrammar
+   *        The path of the grammar file
+   * @param sOutDir
+   *        The output directory. It is deleted first, as existing support
+   *        classes are not overwritten.
+   * @param aBaseOptions
+   *        The command line options of the test class
+   * @param aExtraOptions
+   *        The command line options of the single test
+   * @return The output directory. Never <code>null</code>.
+   * @throws Exception
+   *         in case of error
+   */
+  @Nonnull
+  public static File generate (@Nonnull final String sGrammar,
+                               @Nonnull final String sOutDir,
+                               @Nonnull final List <String> aBaseOptions,
+                               @Nonnull final String... aExtraOptions) throws Exception
+  {
+    final File aOutDir = new File (sOutDir);
+    FileOperations.deleteDirRecursiveIfExisting (aOutDir);
+    final List <String> aArgs = new ArrayList <> ();
+    aArgs.add ("-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ());
+    aArgs.addAll (aBaseOptions);
+    aArgs.addAll (Arrays.asList (aExtraOptions));
+    aArgs.add (new File (sGrammar).getAbsolutePath ());
+    assertTrue (Main.mainProgram (aArgs.toArray (new String [0])).isSuccess ());
+    return aOutDir;
+  }
+
+  /**
+   * Generate the code of a JJTree grammar into an empty directory. JJTree
+   * creates the grammar and the node classes, PGCC the parser.
+   *
+   * @param sGrammar
+   *        The path of the JJTree grammar file
+   * @param sOutDir
+   *        The output directory. It is deleted first.
+   * @param aOptions
+   *        The command line options of PGCC
+   * @return The output directory. Never <code>null</code>.
+   * @throws Exception
+   *         in case of error
+   */
+  @Nonnull
+  public static File generateJJTree (@Nonnull final String sGrammar,
+                                     @Nonnull final String sOutDir,
+                                     @Nonnull final String... aOptions) throws Exception
+  {
+    final File aOutDir = new File (sOutDir);
+    FileOperations.deleteDirRecursiveIfExisting (aOutDir);
+    final File aSrc = new File (sGrammar);
+    assertTrue (new JJTree ().main (new String [] { "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (), aSrc.getAbsolutePath () })
+                             .isSuccess ());
+    final String sName = aSrc.getName ();
+    final List <String> aArgs = new ArrayList <> ();
+    aArgs.add ("-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath ());
+    aArgs.addAll (Arrays.asList (aOptions));
+    aArgs.add (new File (aOutDir, sName.substring (0, sName.lastIndexOf ('.')) + ".jj").getAbsolutePath ());
+    assertTrue (Main.mainProgram (aArgs.toArray (new String [0])).isSuccess ());
+    return aOutDir;
+  }
+
+  /**
+   * Compile all Java files of a directory in place and load them.
+   *
+   * @param aDir
+   *        The directory with the generated code
+   * @return The class loader for the compiled classes. Never <code>null</code>.
+   * @throws Exception
+   *         in case of error
+   */
+  @Nonnull
+  public static ClassLoader compile (@Nonnull final File aDir) throws Exception
+  {
+    final JavaCompiler javac = ToolProvider.getSystemJavaCompiler ();
+    final StandardJavaFileManager fileManager = javac.getStandardFileManager (null, null, null);
+    final List <File> files = Arrays.asList (aDir.listFiles (f -> f.getName ().endsWith (".java")));
+    final Iterable <? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromFiles (files);
+    assertTrue (javac.getTask (null, fileManager, null, null, null, compilationUnits).call ().booleanValue ());
+
+    return URLClassLoader.newInstance (new URL [] { aDir.toURI ().toURL () }, GeneratedGrammarHelper.class.getClassLoader ());
+  }
+
+  /**
+   * Generate the code of a grammar into an empty directory, compile it and load
+   * it.
+   *
+   * @param sGrammar
+   *        The path of the grammar file
+   * @param sOutDir
+   *        The output directory
+   * @param aBaseOptions
+   *        The command line options of the test class
+   * @param aExtraOptions
+   *        The command line options of the single test
+   * @return The class loader for the compiled classes. Never <code>null</code>.
+   * @throws Exception
+   *         in case of error
+   */
+  @Nonnull
+  public static ClassLoader generateAndCompile (@Nonnull final String sGrammar,
+                                                @Nonnull final String sOutDir,
+                                                @Nonnull final List <String> aBaseOptions,
+                                                @Nonnull final String... aExtraOptions) throws Exception
+  {
+    return compile (generate (sGrammar, sOutDir, aBaseOptions, aExtraOptions));
+  }
+
+  /**
+   * Generate the code of a grammar into an empty directory, compile it and load
+   * it.
+   *
+   * @param sGrammar
+   *        The path of the grammar file
+   * @param sOutDir
+   *        The output directory
+   * @param aOptions
+   *        The command line options
+   * @return The class loader for the compiled classes. Never <code>null</code>.
+   * @throws Exception
+   *         in case of error
+   */
+  @Nonnull
+  public static ClassLoader generateAndCompile (@Nonnull final String sGrammar,
+                                                @Nonnull final String sOutDir,
+                                                @Nonnull final String... aOptions) throws Exception
+  {
+    return generateAndCompile (sGrammar, sOutDir, Collections.emptyList (), aOptions);
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.helger.io.file.FileOperations;
+import com.helger.pgcc.GeneratedGrammarHelper;
+import com.helger.pgcc.parser.BatchMain.GrammarResult;
+
+/**
+ * Test class for {@link BatchMain}
+ */
+public final class BatchMainFuncTest
+{
+  @Test
+  public void testResolveGrammarFiles () throws Exception
+  {
+    final Set <File> aFiles = new LinkedHashSet <> ();
+    assertTrue (BatchMain.resolveGrammarFiles ("grammars/*.jjt", aFiles).isSuccess ());
+    assertEquals (5, aFiles.size ());
+    for (final File f : aFiles)
+      assertTrue (f.getPath (), f.getName ().endsWith (".jjt"));
+
+    aFiles.clear ();
+    assertTrue (BatchMain.resolveGrammarFiles ("src/test/resources/**/grammar.jj", aFiles).isSuccess ());
+    assertTrue (aFiles.contains (new File ("src/test/resources/recycle/grammar.jj")));
+
+    // Duplicates are ignored
+    assertTrue (BatchMain.resolveGrammarFiles ("src/test/resources/recycle/grammar.jj", aFiles).isSuccess ());
+    final int nCount = aFiles.size ();
+    assertTrue (BatchMain.resolveGrammarFiles ("src/test/resources/recycle/grammar.jj", aFiles).isSuccess ());
+    assertEquals (nCount, aFiles.size ());
+
+    // Errors
+    assertTrue (BatchMain.resolveGrammarFiles ("grammars/DoesNotExist.jj", aFiles).isFailure ());
+    assertTrue (BatchMain.resolveGrammarFiles ("grammars/BackupCharStream.java", aFiles).isFailure ());
+  }
+
+  @Test
+  public void testGenerate () throws Exception
+  {
+    final Set <File> aFiles = new LinkedHashSet <> ();
+    assertTrue (BatchMain.resolveGrammarFiles ("grammars/*.jj*", aFiles).isSuccess ());
+    assertTrue (BatchMain.resolveGrammarFiles ("src/test/resources/issues/*/grammar.jj", aFiles).isSuccess ());
+    final List <File> aGrammars = new ArrayList <> (aFiles);
+
+    final File fDest = new File ("target/batch");
+    final List <GrammarResult> aResults = BatchMain.generate (aGrammars, List.of ("-JDK_VERSION=1.8"), fDest, 3);
+    assertEquals (aGrammars.size (), aResults.size ());
+    for (int i = 0; i < aResults.size (); ++i)
+    {
+      final GrammarResult aResult = aResults.get (i);
+      assertEquals (aGrammars.get (i), aResult.getGrammar ());
+      assertTrue (aResult.getGrammar () + "\n" + aResult.getOutput (), aResult.getSuccess ().isSuccess ());
+      assertTrue (aResult.getDurationMillis () >= 0);
+    }
+
+    // JJTree and PGCC were both run
+    assertTrue (new File (fDest, "JSONParser/JSONParser.jj").exists ());
+    assertTrue (new File (fDest, "JSONParser/JSONParser.java").exists ());
+    assertTrue (new File (fDest, "JSONParser/JJTJSONParserState.java").exists ());
+    // Grammars with the same name don't overwrite each other
+    assertTrue (new File (fDest, "grammar/Token.java").exists ());
+    assertTrue (new File (fDest, "grammar_2/Token.java").exists ());
+  }
+
+  @Test
+  public void testJJTreeGrammarGetsCommandLineOptions () throws Exception
+  {
+    final File fDest = new File ("target/batch-options");
+    final List <GrammarResult> aResults = BatchMain.generate (List.of (new File ("grammars/JSONParser.jjt")),
+                                                              List.of ("-JDK_VERSION=1.8", "-DEBUG_PARSER=true", "-MULTI=true"),
+                                                              fDest,
+                                                              1);
+    final GrammarResult aResult = aResults.get (0);
+    assertTrue (aResult.getOutput (), aResult.getSuccess ().isSuccess ());
+    // The JJTree only option is not passed to PGCC
+    assertFalse (aResult.getOutput (), aResult.getOutput ().contains ("Bad option"));
+    final String sParser = new String (Files.readAllBytes (new File (fDest, "JSONParser/JSONParser.java").toPath ()),
+                                       StandardCharsets.UTF_8);
+    assertTrue (sParser.contains ("trace_call"));
+  }
+
+  @Test
+  public void testGenerateSameGrammarTwice () throws Exception
+  {
+    final File aGrammar = new File ("grammars/ChemNumber.jj");
+    final List <GrammarResult> aResults = BatchMain.generate (List.of (aGrammar, aGrammar),
+                                                              List.of ("-JDK_VERSION=1.8"),
+                                                              new File ("target/batch-twice"),
+                                                              2);
+    assertEquals (2, aResults.size ());
+    for (final GrammarResult aResult : aResults)
+    {
+      assertEquals (aGrammar, aResult.getGrammar ());
+      assertTrue (aResult.getOutput (), aResult.getSuccess ().isSuccess ());
+    }
+    assertTrue (new File ("target/batch-twice/ChemNumber_2/ChemNumber.java").exists ());
+  }
+
+  @Test
+  public void testGenerateGrammarsInSameDirectory () throws Exception
+  {
+    // Without output directory the grammars share Token.java and the other
+    // support classes
+    final File aDir = new File ("target/batch-samedir");
+    FileOperations.deleteDirRecursiveIfExisting (aDir);
+    aDir.mkdirs ();
+    final List <File> aGrammars = new ArrayList <> ();
+    for (final String sGrammar : new String [] { "lazyerrorreporting/grammar.jj",
+                                                 "lazyerrorreporting/trycatch.jj",
+                                                 "lookaheadcalls/grammar.jj" })
+    {
+      final File aGrammar = new File (aDir, sGrammar.replace ('/', '_'));
+      Files.copy (new File ("src/test/resources", sGrammar).toPath (), aGrammar.toPath ());
+      aGrammars.add (aGrammar);
+    }
+
+    final List <GrammarResult> aResults = BatchMain.generate (aGrammars, List.of ("-JDK_VERSION=1.8"), null, 3);
+    assertEquals (aGrammars.size (), aResults.size ());
+    for (int i = 0; i < aResults.size (); ++i)
+    {
+      final GrammarResult aResult = aResults.get (i);
+      assertEquals (aGrammars.get (i), aResult.getGrammar ());
+      assertTrue (aResult.getOutput (), aResult.getSuccess ().isSuccess ());
+    }
+
+    // All parsers compile with the shared support classes
+    final ClassLoader aLoader = GeneratedGrammarHelper.compile (aDir);
+    for (final String sParser : new String [] { "LazyParser", "TryCatchParser", "ReleaseParser" })
+      Class.forName (sParser, true, aLoader);
+  }
+
+  @Test
+  public void testMainProgram () throws Exception
+  {
+    assertTrue (BatchMain.mainProgram ().isFailure ());
+    assertTrue (BatchMain.mainProgram ("-BATCH_THREADS=0", "grammars/JavaCC.jj").isFailure ());
+    assertTrue (BatchMain.mainProgram ("-OUTPUT_FILE=x.jj", "grammars/JavaCC.jj").isFailure ());
+    assertTrue (BatchMain.mainProgram ("-OUTPUT_DIRECTORY=target/batch-main", "grammars/DoesNotExist*.jj").isFailure ());
+    assertTrue (BatchMain.mainProgram ("-BATCH_THREADS=2",
+                                       "-OUTPUT_DIRECTORY=target/batch-main",
+                                       "-JDK_VERSION=1.8",
+                                       "grammars/ChemNumber.jj",
+                                       "grammars/JSONParser.jjt")
+                         .isSuccess ());
+    assertTrue (new File ("target/batch-main/ChemNumber/ChemNumber.java").exists ());
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+import com.helger.pgcc.parser.table.DfaJavaCodeGenerator;
+
+/**
+ * Test the option CHAR_SEQUENCE_CHAR_STREAM: the tokens read directly from a
+ * String or char array must be the same as the ones read via
+ * SimpleCharStream.
+ */
+public final class CharSequenceCharStreamFuncTest
+{
+  private static final String INPUT;
+  static
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 30; i++)
+      aSB.append ("\tselect a" +
+                  i +
+                  ",\tb_1 , * from tab where x == 3.14 and y != 'it''s' /* comment\r\n * */\r\n" +
+                  "// line comment\n" +
+                  "  selected = (fromage,42)\t\t wherever\rand_ andx 'multi\r\nline\tstring'\n" +
+                  "äpfel\t= '€ 中' 中文 straße\n\n");
+    INPUT = aSB.toString ();
+  }
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8"),
+                                                      aExtraOptions);
+  }
+
+  /**
+   * @return The different inputs to test. All of them contain {@link #INPUT}
+   *         and nothing else.
+   */
+  private static List <Object []> _getInputs ()
+  {
+    final char [] aPadded = ("xx" + INPUT + "yyy").toCharArray ();
+    final List <Object []> ret = new ArrayList <> ();
+    ret.add (new Object [] { INPUT });
+    ret.add (new Object [] { INPUT.toCharArray () });
+    ret.add (new Object [] { aPadded, Integer.valueOf (2), Integer.valueOf (INPUT.length ()) });
+    ret.add (new Object [] { CharBuffer.wrap (aPadded, 2, INPUT.length ()) });
+    ret.add (new Object [] { new StringBuilder (INPUT) });
+    ret.add (new Object [] { new StringReader (INPUT) });
+    return ret;
+  }
+
+  private static Object _createStream (final ClassLoader aLoader, final Object [] aInput, final int nTabSize) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("CharSequenceCharStream", true, aLoader);
+    final Object aStream;
+    if (aInput.length == 3)
+      aStream = aStreamClass.getConstructor (char [].class, int.class, int.class, int.class, int.class)
+                            .newInstance (aInput[0], aInput[1], aInput[2], Integer.valueOf (1), Integer.valueOf (1));
+    else
+    {
+      final Class <?> aParamClass = aInput[0] instanceof char [] ? char [].class
+                                                                 : aInput[0] instanceof Reader ? Reader.class
+                                                                                               : CharSequence.class;
+      aStream = aStreamClass.getConstructor (aParamClass).newInstance (aInput[0]);
+    }
+    aStreamClass.getMethod ("setTabSize", int.class).invoke (aStream, Integer.valueOf (nTabSize));
+    return aStream;
+  }
+
+  private static List <Object> _readAllTokens (final ClassLoader aLoader,
+                                               final String sStreamClass,
+                                               final Object aStream) throws Exception
+  {
+    final Class <?> aTMClass = Class.forName ("TDParserTokenManager", true, aLoader);
+    final Object aTM = aTMClass.getConstructor (Class.forName (sStreamClass, true, aLoader)).newInstance (aStream);
+    final Method aGetNextToken = aTMClass.getMethod ("getNextToken");
+
+    final List <Object> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      ret.add (aToken);
+      if (aToken.getClass ().getField ("kind").getInt (aToken) == 0)
+        break;
+    }
+    return ret;
+  }
+
+  private static List <Object> _readAllTokens (final ClassLoader aLoader,
+                                               final String sInput,
+                                               final int nTabSize) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    final Object aStream = aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    aStreamClass.getMethod ("setTabSize", int.class).invoke (aStream, Integer.valueOf (nTabSize));
+    return _readAllTokens (aLoader, "SimpleCharStream", aStream);
+  }
+
+  private static Object _get (final Object aToken, final String sName) throws Exception
+  {
+    final String sGetter = "get" + Character.toUpperCase (sName.charAt (0)) + sName.substring (1);
+    try
+    {
+      // Lazy images and positions are only available via the getters
+      return aToken.getClass ().getMethod (sGetter).invoke (aToken);
+    }
+    catch (final NoSuchMethodException ex)
+    {
+      return aToken.getClass ().getField (sName).get (aToken);
+    }
+  }
+
+  private static List <String> _describe (final List <Object> aTokens) throws Exception
+  {
+    final List <String> ret = new ArrayList <> ();
+    for (final Object aToken : aTokens)
+    {
+      final Class <?> aTokenClass = aToken.getClass ();
+      final List <Object> aParts = new ArrayList <> ();
+      final Object aSpecialToken = aTokenClass.getField ("specialToken").get (aToken);
+      if (aSpecialToken != null)
+        aParts.add (aSpecialToken);
+      aParts.add (aToken);
+
+      for (final Object aPart : aParts)
+        ret.add ((aPart == aSpecialToken ? "special " : "") +
+                 aTokenClass.getField ("kind").getInt (aPart) +
+                 ":" +
+                 _get (aPart, "image") +
+                 "@" +
+                 _get (aPart, "beginLine") +
+                 ":" +
+                 _get (aPart, "beginColumn") +
+                 "-" +
+                 _get (aPart, "endLine") +
+                 ":" +
+                 _get (aPart, "endColumn"));
+    }
+    return ret;
+  }
+
+  private static String _getParseError (final ClassLoader aLoader, final Class <?> aInputClass, final Object aInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName ("TDParser", true, aLoader);
+    final Object aParser = aParserClass.getConstructor (aInputClass).newInstance (aInput);
+    try
+    {
+      aParserClass.getMethod ("Start").invoke (aParser);
+      fail ();
+      return null;
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return ex.getCause ().getMessage ();
+    }
+  }
+
+  @Test
+  public void testSameTokensAsSimpleCharStream () throws Exception
+  {
+    final ClassLoader aDefaultLoader = _generateAndCompile ("target/charsequence/default");
+    final List <ClassLoader> aLoaders = new ArrayList <> ();
+    aLoaders.add (_generateAndCompile ("target/charsequence/classic", "-CHAR_SEQUENCE_CHAR_STREAM=true"));
+    aLoaders.add (_generateAndCompile ("target/charsequence/lazy",
+                                       "-CHAR_SEQUENCE_CHAR_STREAM=true",
+                                       "-LAZY_TOKEN_IMAGE=true",
+                                       "-LAZY_LINE_COLUMN=true",
+                                       "-KEYWORD_HASH=true"));
+    aLoaders.add (_generateAndCompile ("target/charsequence/dfa",
+                                       "-CHAR_SEQUENCE_CHAR_STREAM=true",
+                                       "-TOKEN_MANAGER_CODE_GENERATOR=" + DfaJavaCodeGenerator.class.getName ()));
+
+    for (final int nTabSize : new int [] { 1, 4, 8 })
+    {
+      final List <String> aExpected = _describe (_readAllTokens (aDefaultLoader, INPUT, nTabSize));
+      assertEquals ("9:select@1:" + (nTabSize + 1) + "-1:" + (nTabSize + 6), aExpected.get (0));
+
+      for (final ClassLoader aLoader : aLoaders)
+        for (final Object [] aInput : _getInputs ())
+          assertEquals (aExpected,
+                        _describe (_readAllTokens (aLoader,
+                                                   "CharSequenceCharStream",
+                                                   _createStream (aLoader, aInput, nTabSize))));
+    }
+  }
+
+  @Test
+  public void testEmptyInput () throws Exception
+  {
+    final ClassLoader aDefaultLoader = _generateAndCompile ("target/charsequence/default");
+    final ClassLoader aLoader = _generateAndCompile ("target/charsequence/classic", "-CHAR_SEQUENCE_CHAR_STREAM=true");
+    final List <Object> aTokens = _readAllTokens (aLoader,
+                                                  "CharSequenceCharStream",
+                                                  _createStream (aLoader, new Object [] { "" }, 8));
+    assertEquals (1, aTokens.size ());
+    assertEquals (_describe (_readAllTokens (aDefaultLoader, "", 8)), _describe (aTokens));
+  }
+
+  @Test
+  public void testParseException () throws Exception
+  {
+    final ClassLoader aDefaultLoader = _generateAndCompile ("target/charsequence/default");
+    final ClassLoader aLoader = _generateAndCompile ("target/charsequence/classic", "-CHAR_SEQUENCE_CHAR_STREAM=true");
+    for (final String sInput : new String [] { "a b\r\n\tc\t  select", "a\n\n\tb\r\r  (", "\t\tfrom" })
+    {
+      final String sExpected = _getParseError (aDefaultLoader, Reader.class, new StringReader (sInput));
+      assertTrue (sExpected, sExpected.contains ("line "));
+      assertEquals (sExpected, _getParseError (aLoader, CharSequence.class, sInput));
+      assertEquals (sExpected, _getParseError (aLoader, char [].class, sInput.toCharArray ()));
+      assertEquals (sExpected, _getParseError (aLoader, Reader.class, new StringReader (sInput)));
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the option EXCEPTION_FREE_LOOKAHEAD: the parser must take the same
+ * decisions and create the same error messages as with the LookaheadSuccess
+ * exception.
+ */
+public final class ExceptionFreeLookaheadFuncTest
+{
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/exceptionfreelookahead/grammar.jj",
+                                                      sOutDir,
+                                                      aExtraOptions);
+  }
+
+  /**
+   * @return the actions of the parser and the error message, if any
+   */
+  private static String _parse (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName ("LAParser", true, aLoader);
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    String sResult;
+    try
+    {
+      aParserClass.getMethod ("Start").invoke (aParser);
+      sResult = "OK";
+    }
+    catch (final InvocationTargetException ex)
+    {
+      sResult = ex.getCause ().getClass ().getSimpleName () + ": " + ex.getCause ().getMessage ();
+    }
+    return aParserClass.getField ("trace").get (aParser) + " " + sResult;
+  }
+
+  private static char _pick (final Random aRandom, final String sChars)
+  {
+    return sChars.charAt (aRandom.nextInt (sChars.length ()));
+  }
+
+  private static String _createValue (final Random aRandom, final int nDepth)
+  {
+    if (nDepth < 3 && aRandom.nextInt (10) < 3)
+      return _createCall (aRandom, nDepth + 1);
+    return Character.toString (_pick (aRandom, "abc123"));
+  }
+
+  private static String _createArgs (final Random aRandom, final int nDepth)
+  {
+    final StringBuilder aSB = new StringBuilder (_createValue (aRandom, nDepth));
+    while (aRandom.nextInt (10) < 4)
+      aSB.append (',').append (_createValue (aRandom, nDepth));
+    return aSB.toString ();
+  }
+
+  private static String _createCall (final Random aRandom, final int nDepth)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    aSB.append (_pick (aRandom, "fgh")).append ('(').append (aRandom.nextInt (10) < 7 ? _createArgs (aRandom, nDepth) : "").append (')');
+    while (aRandom.nextInt (10) < 3)
+      aSB.append ('(').append (aRandom.nextBoolean () ? _createArgs (aRandom, nDepth) : "").append (')');
+    return aSB.toString ();
+  }
+
+  private static String _createStatement (final Random aRandom, final int nDepth)
+  {
+    final char cVar = _pick (aRandom, "xyz");
+    switch (aRandom.nextInt (nDepth > 3 ? 8 : 10))
+    {
+      case 0:
+      case 1:
+        return cVar + "=(" + _createArgs (aRandom, nDepth) + ");";
+      case 2:
+      case 3:
+        return cVar + "=" + _createValue (aRandom, nDepth) + ";";
+      case 4:
+      case 5:
+        return _createCall (aRandom, nDepth) + ";";
+      case 6:
+      case 7:
+        return _createCall (aRandom, nDepth) + "=" + _createValue (aRandom, nDepth) + ";";
+      default:
+        final StringBuilder aSB = new StringBuilder ("{");
+        for (int i = aRandom.nextInt (4); i > 0; i--)
+          aSB.append (' ').append (_createStatement (aRandom, nDepth + 1));
+        return aSB.append ('}').toString ();
+    }
+  }
+
+  private static void _assertSameResults (final ClassLoader aExpected, final ClassLoader aActual) throws Exception
+  {
+    final Random aRandom = new Random (3);
+    int nOK = 0;
+    for (int i = 0; i < 2000; i++)
+    {
+      final StringBuilder aSB = new StringBuilder ();
+      for (int j = aRandom.nextInt (4); j >= 0; j--)
+        aSB.append (_createStatement (aRandom, 0)).append (' ');
+      String sInput = aSB.toString ();
+      if ((i & 1) != 0)
+      {
+        // Break every second input
+        final int nPos = aRandom.nextInt (sInput.length ());
+        sInput = sInput.substring (0, nPos) + _pick (aRandom, "(){};=,a1") + sInput.substring (nPos + 1);
+      }
+      final String sExpected = _parse (aExpected, sInput);
+      assertEquals (sInput, sExpected, _parse (aActual, sInput));
+      if (sExpected.endsWith (" OK"))
+        nOK++;
+    }
+    assertTrue (nOK > 500);
+  }
+
+  @Test
+  public void testSameResultsAsWithException () throws Exception
+  {
+    _assertSameResults (_generateAndCompile ("target/exceptionfreelookahead/plain"),
+                        _generateAndCompile ("target/exceptionfreelookahead/flag", "-EXCEPTION_FREE_LOOKAHEAD=true"));
+
+    final String sParser = new String (Files.readAllBytes (new File ("target/exceptionfreelookahead/flag/LAParser.java").toPath ()),
+                                       StandardCharsets.UTF_8);
+    assertFalse (sParser.contains ("LookaheadSuccess"));
+    assertTrue (sParser.contains ("jj_done"));
+  }
+
+  @Test
+  public void testWithoutErrorReporting () throws Exception
+  {
+    _assertSameResults (_generateAndCompile ("target/exceptionfreelookahead/plain-noerr", "-ERROR_REPORTING=false"),
+                        _generateAndCompile ("target/exceptionfreelookahead/flag-noerr",
+                                             "-ERROR_REPORTING=false",
+                                             "-EXCEPTION_FREE_LOOKAHEAD=true"));
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+import com.helger.io.file.FileOperations;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for {@link GenerationCache}
+ */
+public final class GenerationCacheFuncTest
+{
+  private static final long OLD_TIMESTAMP = 1_000_000_000_000L;
+
+  private static boolean _generate (@Nonnull final File fDest, @Nonnull final File fGrammar, final String... aExtraOptions) throws Exception
+  {
+    final String [] aArgs = new String [aExtraOptions.length + 3];
+    aArgs[0] = "-GENERATION_CACHE=true";
+    aArgs[1] = "-OUTPUT_DIRECTORY=" + fDest.getPath ();
+    System.arraycopy (aExtraOptions, 0, aArgs, 2, aExtraOptions.length);
+    aArgs[aArgs.length - 1] = fGrammar.getPath ();
+    return Main.mainProgram (aArgs).isSuccess ();
+  }
+
+  private static void _touchAll (@Nonnull final File fDest)
+  {
+    for (final File f : fDest.listFiles ())
+      assertTrue (f.setLastModified (OLD_TIMESTAMP));
+  }
+
+  private static boolean _isRegenerated (@Nonnull final File fFile)
+  {
+    return fFile.lastModified () != OLD_TIMESTAMP;
+  }
+
+  @Test
+  public void testCache () throws Exception
+  {
+    final File fDest = new File ("target/gencache");
+    FileOperations.deleteDirRecursiveIfExisting (fDest);
+    fDest.mkdirs ();
+
+    // Use a copy of the grammar, so that it can be modified
+    final File fGrammar = new File (fDest, "Grammar.jj");
+    Files.copy (new File ("src/test/resources/tabledriven/grammar.jj").toPath (), fGrammar.toPath ());
+    final File fOut = new File (fDest, "out");
+    final File fCache = GenerationCache.getCacheFile (fOut, fGrammar);
+    final File fParser = new File (fOut, "TDParser.java");
+
+    assertTrue (_generate (fOut, fGrammar));
+    assertTrue (fCache.exists ());
+    assertTrue (fParser.exists ());
+    final String sCache = new String (Files.readAllBytes (fCache.toPath ()), StandardCharsets.UTF_8);
+    assertTrue (sCache, sCache.contains ("file=TDParser.java"));
+    assertTrue (sCache, sCache.contains ("file=Token.java"));
+
+    // Nothing changed
+    _touchAll (fOut);
+    assertTrue (_generate (fOut, fGrammar));
+    assertFalse (_isRegenerated (fParser));
+
+    // Different options
+    assertTrue (_generate (fOut, fGrammar, "-DEBUG_PARSER=true"));
+    assertTrue (_isRegenerated (fParser));
+    _touchAll (fOut);
+    assertTrue (_generate (fOut, fGrammar, "-DEBUG_PARSER=true"));
+    assertFalse (_isRegenerated (fParser));
+
+    // Modified grammar
+    final String sOldKey = GenerationCache.createKey (fGrammar, Options.getAllOptions ());
+    Files.write (fGrammar.toPath (), "\n// modified\n".getBytes (StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertNotEquals (sOldKey, GenerationCache.createKey (fGrammar, Options.getAllOptions ()));
+    assertTrue (_generate (fOut, fGrammar, "-DEBUG_PARSER=true"));
+    assertTrue (_isRegenerated (fParser));
+
+    // Deleted output file
+    _touchAll (fOut);
+    assertTrue (new File (fOut, "Token.java").delete ());
+    assertTrue (_generate (fOut, fGrammar, "-DEBUG_PARSER=true"));
+    assertTrue (new File (fOut, "Token.java").exists ());
+    assertTrue (_isRegenerated (fParser));
+
+    // Without the option the cache is not used
+    _touchAll (fOut);
+    assertTrue (Main.mainProgram ("-OUTPUT_DIRECTORY=" + fOut.getPath (), "-DEBUG_PARSER=true", fGrammar.getPath ()).isSuccess ());
+    assertTrue (_isRegenerated (fParser));
+  }
+
+  @Test
+  public void testFailedGenerationRemovesCache () throws Exception
+  {
+    final File fDest = new File ("target/gencache-error");
+    FileOperations.deleteDirRecursiveIfExisting (fDest);
+    fDest.mkdirs ();
+
+    final File fGrammar = new File (fDest, "Broken.jj");
+    Files.copy (new File ("src/test/resources/tabledriven/grammar.jj").toPath (), fGrammar.toPath ());
+    final File fOut = new File (fDest, "out");
+    final File fCache = GenerationCache.getCacheFile (fOut, fGrammar);
+    assertTrue (_generate (fOut, fGrammar));
+    assertTrue (fCache.exists ());
+
+    Files.write (fGrammar.toPath (), "\nvoid Broken () : { } { <UNDEFINED_TOKEN> }\n".getBytes (StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertFalse (_generate (fOut, fGrammar));
+    assertFalse (fCache.exists ());
+  }
+}
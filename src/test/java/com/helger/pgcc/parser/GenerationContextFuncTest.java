@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.helger.base.functional.IThrowingFunction;
+import com.helger.base.state.ESuccess;
+import com.helger.io.file.FileOperations;
+import com.helger.io.file.FileSystemIterator;
+import com.helger.io.file.FilenameHelper;
+import com.helger.io.file.IFileFilter;
+import com.helger.pgcc.PGPrinter;
+import com.helger.pgcc.PGPrinter.IPrinter;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for {@link GenerationContext}
+ */
+public final class GenerationContextFuncTest
+{
+  private static final int THREADS = 4;
+
+  @Nonnull
+  private static String [] _args (@Nonnull final File fGrammar, @Nonnull final File fDest)
+  {
+    return new String [] { "-OUTPUT_DIRECTORY=" + fDest.getAbsolutePath (), "-JDK_VERSION=1.8", fGrammar.getAbsolutePath () };
+  }
+
+  @Test
+  public void testConcurrentGeneration () throws Exception
+  {
+    final List <File> aGrammars = new ArrayList <> ();
+    for (final File f : new FileSystemIterator (new File ("grammars")).withFilter (IFileFilter.filenameEndsWith (".jj")))
+      aGrammars.add (f);
+    assertTrue (aGrammars.size () > THREADS);
+
+    // Existing support files would not be overwritten
+    FileOperations.deleteDirRecursiveIfExisting (new File ("target/gencontext"));
+
+    // Reference: sequential generation with the static entry point
+    final File fSeq = new File ("target/gencontext/seq");
+    for (final File f : aGrammars)
+    {
+      final File fDest = new File (fSeq, FilenameHelper.getBaseName (f));
+      fDest.mkdirs ();
+      assertTrue (Main.mainProgram (_args (f, fDest)).isSuccess ());
+    }
+
+    // Concurrent generation - one context per thread, each context is reused
+    final File fPar = new File ("target/gencontext/par");
+    final ThreadLocal <GenerationContext> aContexts = ThreadLocal.withInitial (GenerationContext::new);
+    _generateConcurrently (aGrammars, fPar, args -> aContexts.get ().mainProgram (args));
+    _assertSameFiles (aGrammars, fSeq, fPar);
+
+    // Concurrent calls of the static entry point run in pooled contexts
+    final File fStatic = new File ("target/gencontext/static");
+    _generateConcurrently (aGrammars, fStatic, Main::mainProgram);
+    _assertSameFiles (aGrammars, fSeq, fStatic);
+  }
+
+  private static void _generateConcurrently (@Nonnull final List <File> aGrammars,
+                                             @Nonnull final File fBaseDir,
+                                             @Nonnull final IThrowingFunction <String [], ESuccess, Exception> aGenerator) throws Exception
+  {
+    final ExecutorService aES = Executors.newFixedThreadPool (THREADS);
+    try
+    {
+      final List <Future <ESuccess>> aResults = new ArrayList <> ();
+      for (final File f : aGrammars)
+      {
+        final File fDest = new File (fBaseDir, FilenameHelper.getBaseName (f));
+        fDest.mkdirs ();
+        aResults.add (aES.submit ( () -> aGenerator.apply (_args (f, fDest))));
+      }
+      for (int i = 0; i < aResults.size (); ++i)
+        assertTrue ("Failed to generate " + aGrammars.get (i).getName (), aResults.get (i).get ().isSuccess ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  private static void _assertSameFiles (@Nonnull final List <File> aGrammars,
+                                        @Nonnull final File fSeq,
+                                        @Nonnull final File fPar) throws Exception
+  {
+    for (final File f : aGrammars)
+    {
+      final String sBaseName = FilenameHelper.getBaseName (f);
+      final File fSeqDir = new File (fSeq, sBaseName);
+      int nFiles = 0;
+      for (final File fSeqFile : new FileSystemIterator (fSeqDir).withFilter (IFileFilter.filenameEndsWith (".java")))
+      {
+        final File fParFile = new File (new File (fPar, sBaseName), fSeqFile.getName ());
+        assertTrue (fParFile.getPath (), fParFile.exists ());
+        assertArrayEquals (fParFile.getPath (), Files.readAllBytes (fSeqFile.toPath ()), Files.readAllBytes (fParFile.toPath ()));
+        nFiles++;
+      }
+      assertTrue (sBaseName, nFiles > 0);
+    }
+  }
+
+  @Test
+  public void testStaticEntryPointRunsInParallel () throws Exception
+  {
+    final List <File> aGrammars = new ArrayList <> ();
+    for (final File f : new FileSystemIterator (new File ("grammars")).withFilter (IFileFilter.filenameEndsWith (".jj")))
+      if (aGrammars.size () < THREADS)
+        aGrammars.add (f);
+    FileOperations.deleteDirRecursiveIfExisting (new File ("target/gencontext/parallel"));
+
+    // Each call blocks on its first line of output until all calls printed one
+    final CountDownLatch aAllStarted = new CountDownLatch (THREADS);
+    final ThreadLocal <Boolean> aStarted = ThreadLocal.withInitial ( () -> Boolean.FALSE);
+    final AtomicBoolean aTimedOut = new AtomicBoolean (false);
+    final IPrinter aPrinter = new IPrinter ()
+    {
+      public void close ()
+      {}
+
+      public void println (@Nonnull final String s)
+      {
+        if (!aStarted.get ().booleanValue ())
+        {
+          aStarted.set (Boolean.TRUE);
+          aAllStarted.countDown ();
+          try
+          {
+            if (!aAllStarted.await (30, TimeUnit.SECONDS))
+              aTimedOut.set (true);
+          }
+          catch (final InterruptedException ex)
+          {
+            Thread.currentThread ().interrupt ();
+          }
+        }
+      }
+
+      public void flush ()
+      {}
+    };
+
+    final IPrinter aOldOut = PGPrinter.getInfoPrinter ();
+    final IPrinter aOldErr = PGPrinter.getErrorPrinter ();
+    PGPrinter.init (aPrinter);
+    try
+    {
+      _generateConcurrently (aGrammars, new File ("target/gencontext/parallel"), Main::mainProgram);
+    }
+    finally
+    {
+      PGPrinter.init (aOldOut, aOldErr);
+    }
+    // The output of the pooled contexts reached the printer of the caller
+    assertEquals (0, aAllStarted.getCount ());
+    assertFalse ("Static calls were not executed in parallel", aTimedOut.get ());
+  }
+
+  @Test
+  public void testIsolatedState () throws Exception
+  {
+    final File fDest = new File ("target/gencontext/isolated");
+    fDest.mkdirs ();
+
+    Options.init ();
+    Options.setCmdLineOption ("-OUTPUT_DIRECTORY=outer");
+
+    final GenerationContext aCtx = new GenerationContext ();
+    try
+    {
+      // A context can be used several times
+      assertTrue (aCtx.mainProgram (_args (new File ("grammars/JavaCC.jj"), fDest)).isSuccess ());
+      assertTrue (aCtx.mainProgram (_args (new File ("grammars/JavaCC.jj"), fDest)).isSuccess ());
+
+      // The state of the context is not visible from the outside
+      assertEquals (new File ("outer"), Options.getOutputDirectory ());
+    }
+    finally
+    {
+      aCtx.close ();
+      Options.init ();
+    }
+
+    try
+    {
+      aCtx.mainProgram (_args (new File ("grammars/JavaCC.jj"), fDest));
+      fail ();
+    }
+    catch (final IllegalStateException ex)
+    {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the option KEYWORD_HASH: keywords classified by the perfect hash must
+ * result in the same tokens as the string literal DFA.
+ */
+public final class KeywordHashFuncTest
+{
+  private static final String INPUT;
+  static
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 40; i++)
+      aSB.append ("select a" +
+                  i +
+                  ", * from tab where x == 3.14 and y != 'it''s' /* from */\n" +
+                  "SELECT Select selected = (fromage,42) wherever and_ andx an a s sel fro wher\n" +
+                  "äpfel = 'select' 中文 from中 straße\n");
+    INPUT = aSB.toString ();
+  }
+
+  private static File _generate (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generate ("src/test/resources/tabledriven/grammar.jj",
+                                            sOutDir,
+                                            Arrays.asList ("-JDK_VERSION=1.8"),
+                                            aExtraOptions);
+  }
+
+  private static List <String> _readAllTokens (final ClassLoader aLoader, final int nBufferSize) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    final Class <?> aTMClass = Class.forName ("TDParserTokenManager", true, aLoader);
+    final Object aStream = aStreamClass.getConstructor (Reader.class, int.class, int.class, int.class)
+                                       .newInstance (new StringReader (INPUT),
+                                                     Integer.valueOf (1),
+                                                     Integer.valueOf (1),
+                                                     Integer.valueOf (nBufferSize));
+    final Object aTM = aTMClass.getConstructor (aStreamClass).newInstance (aStream);
+    final Method aGetNextToken = aTMClass.getMethod ("getNextToken");
+    final Class <?> aTokenClass = Class.forName ("Token", true, aLoader);
+    final Field aKind = aTokenClass.getField ("kind");
+    final Field aImage = aTokenClass.getField ("image");
+    final Field aBeginColumn = aTokenClass.getField ("beginColumn");
+
+    final List <String> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      final int nKind = aKind.getInt (aToken);
+      ret.add (nKind + ":" + aImage.get (aToken) + "@" + aBeginColumn.getInt (aToken));
+      if (nKind == 0)
+        break;
+    }
+    return ret;
+  }
+
+  private static String _readTokenManager (final File aOutDir) throws Exception
+  {
+    return new String (Files.readAllBytes (new File (aOutDir, "TDParserTokenManager.java").toPath ()),
+                       StandardCharsets.UTF_8);
+  }
+
+  private void _check (final String sName, final String... aOptions) throws Exception
+  {
+    final File aClassicDir = _generate ("target/keywordhash/" + sName + "-dfa", aOptions);
+    final List <String> aExtraOptions = new ArrayList <> (Arrays.asList (aOptions));
+    aExtraOptions.add ("-KEYWORD_HASH=true");
+    final File aHashDir = _generate ("target/keywordhash/" + sName + "-hash",
+                                     aExtraOptions.toArray (new String [0]));
+
+    assertFalse (_readTokenManager (aClassicDir).contains ("jjKeywordKind_0"));
+    final String sHashTM = _readTokenManager (aHashDir);
+    assertTrue (sHashTM.contains ("jjKeywordKind_0"));
+    // Only "==" and "!=" are left in the string literal DFA
+    assertTrue (sHashTM.contains ("jjMoveStringLiteralDfa1_0"));
+    assertFalse (sHashTM.contains ("jjMoveStringLiteralDfa2_0"));
+
+    final List <String> aExpected = _readAllTokens (GeneratedGrammarHelper.compile (aClassicDir), 4096);
+    assertEquals ("9:select@1", aExpected.get (0));
+    // Small buffers force the suffix to wrap around the end of the buffer
+    final ClassLoader aHashLoader = GeneratedGrammarHelper.compile (aHashDir);
+    for (final int nBufferSize : new int [] { 32, 64, 4096 })
+      assertEquals (aExpected, _readAllTokens (aHashLoader, nBufferSize));
+  }
+
+  @Test
+  public void testSameTokensAsDfa () throws Exception
+  {
+    _check ("default");
+  }
+
+  @Test
+  public void testIgnoreCase () throws Exception
+  {
+    _check ("ignorecase", "-IGNORE_CASE=true");
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the option LAZY_ERROR_REPORTING: the parser must create the same error
+ * messages as with ERROR_REPORTING alone, without the bookkeeping on valid
+ * input.
+ */
+public final class LazyErrorReportingFuncTest
+{
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return _generateAndCompileGrammar ("grammar.jj", sOutDir, aExtraOptions);
+  }
+
+  private static ClassLoader _generateAndCompileGrammar (final String sGrammar,
+                                                         final String sOutDir,
+                                                         final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/lazyerrorreporting/" + sGrammar,
+                                                      sOutDir,
+                                                      aExtraOptions);
+  }
+
+  private static Object _createParser (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName ("LazyParser", true, aLoader);
+    return aParserClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+  }
+
+  /**
+   * @return the actions of the parser or the error message. The actions are
+   *         executed twice on errors with lazy error reporting.
+   */
+  private static String _parse (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Object aParser = _createParser (aLoader, sInput);
+    try
+    {
+      aParser.getClass ().getMethod ("Start").invoke (aParser);
+      return aParser.getClass ().getField ("trace").get (aParser) + " OK";
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return ex.getCause ().getClass ().getSimpleName () + ": " + ex.getCause ().getMessage ();
+    }
+  }
+
+  /**
+   * Call a production with a parameter and a return value from outside.
+   */
+  private static String _parseSum (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Object aParser = _createParser (aLoader, sInput);
+    try
+    {
+      return aParser.getClass ().getMethod ("Sum", int.class).invoke (aParser, Integer.valueOf (2)) + " OK";
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return ex.getCause ().getClass ().getSimpleName () + ": " + ex.getCause ().getMessage ();
+    }
+  }
+
+  private static char _pick (final Random aRandom, final String sChars)
+  {
+    return sChars.charAt (aRandom.nextInt (sChars.length ()));
+  }
+
+  private static String _createSum (final Random aRandom, final int nDepth)
+  {
+    final StringBuilder aSB = new StringBuilder (_createTerm (aRandom, nDepth));
+    while (aRandom.nextInt (10) < 4)
+      aSB.append (_pick (aRandom, "+-")).append (_createTerm (aRandom, nDepth));
+    return aSB.toString ();
+  }
+
+  private static String _createTerm (final Random aRandom, final int nDepth)
+  {
+    switch (nDepth < 3 ? aRandom.nextInt (6) : 0)
+    {
+      case 0:
+      case 1:
+        return Character.toString (_pick (aRandom, "0123456789"));
+      case 2:
+        return Character.toString (_pick (aRandom, "abc"));
+      case 3:
+        return "(" + _createSum (aRandom, nDepth + 1) + ")";
+      default:
+        return _createCall (aRandom, nDepth + 1);
+    }
+  }
+
+  private static String _createCall (final Random aRandom, final int nDepth)
+  {
+    final StringBuilder aSB = new StringBuilder ().append (_pick (aRandom, "fgh")).append ('(');
+    if (aRandom.nextInt (10) < 7)
+    {
+      aSB.append (_createSum (aRandom, nDepth));
+      while (aRandom.nextInt (10) < 3)
+        aSB.append (',').append (_createSum (aRandom, nDepth));
+    }
+    return aSB.append (')').toString ();
+  }
+
+  private static String _createStatement (final Random aRandom, final int nDepth)
+  {
+    switch (aRandom.nextInt (nDepth > 2 ? 6 : 7))
+    {
+      case 0:
+      case 1:
+      case 2:
+        return _pick (aRandom, "xyz") + "=" + _createSum (aRandom, nDepth) + ";";
+      case 3:
+      case 4:
+        return _createCall (aRandom, nDepth) + ";";
+      case 5:
+        return ";";
+      default:
+        final StringBuilder aSB = new StringBuilder ("{");
+        for (int i = aRandom.nextInt (4); i > 0; i--)
+          aSB.append (' ').append (_createStatement (aRandom, nDepth + 1));
+        return aSB.append ('}').toString ();
+    }
+  }
+
+  private static String _break (final Random aRandom, final String sInput)
+  {
+    final int nPos = aRandom.nextInt (sInput.length ());
+    return sInput.substring (0, nPos) + _pick (aRandom, "(){};=,+a1") + sInput.substring (nPos + 1);
+  }
+
+  @Test
+  public void testSameErrorMessages () throws Exception
+  {
+    final ClassLoader aPlain = _generateAndCompile ("target/lazyerrorreporting/plain");
+    final ClassLoader aLazy = _generateAndCompile ("target/lazyerrorreporting/lazy", "-LAZY_ERROR_REPORTING=true");
+
+    final Random aRandom = new Random (5);
+    int nErrors = 0;
+    for (int i = 0; i < 2000; i++)
+    {
+      final StringBuilder aSB = new StringBuilder ();
+      for (int j = aRandom.nextInt (4); j >= 0; j--)
+        aSB.append (_createStatement (aRandom, 0)).append (' ');
+      String sInput = aSB.toString ();
+      // Break every second input
+      if ((i & 1) != 0)
+        sInput = _break (aRandom, sInput);
+      final String sExpected = _parse (aPlain, sInput);
+      assertEquals (sInput, sExpected, _parse (aLazy, sInput));
+      if (sExpected.startsWith ("ParseException"))
+        nErrors++;
+
+      String sSum = _createSum (aRandom, 0);
+      if ((i & 1) != 0)
+        sSum = _break (aRandom, sSum);
+      assertEquals (sSum, _parseSum (aPlain, sSum), _parseSum (aLazy, sSum));
+    }
+    assertTrue (nErrors > 500);
+  }
+
+  @Test
+  public void testNoBookkeepingOnValidInput () throws Exception
+  {
+    final ClassLoader aLazy = _generateAndCompile ("target/lazyerrorreporting/lazy", "-LAZY_ERROR_REPORTING=true");
+    final Object aParser = _createParser (aLazy, "x=1+f(2,g(a));{y=(3-b);h();}");
+    aParser.getClass ().getMethod ("Start").invoke (aParser);
+    assertEquals ("x=1;y=2;call;{} OK", aParser.getClass ().getField ("trace").get (aParser) + " OK");
+
+    final Field aGen = aParser.getClass ().getDeclaredField ("jj_gen");
+    aGen.setAccessible (true);
+    assertEquals (0, aGen.getInt (aParser));
+  }
+
+  @Test
+  public void testIgnoredForCaughtParseException () throws Exception
+  {
+    // The exception caught by the grammar is created without the bookkeeping
+    final ClassLoader aLoader = _generateAndCompileGrammar ("trycatch.jj",
+                                                            "target/lazyerrorreporting/trycatch",
+                                                            "-LAZY_ERROR_REPORTING=true");
+    final Class <?> aParserClass = Class.forName ("TryCatchParser", true, aLoader);
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader ("c"));
+    aParserClass.getMethod ("Start").invoke (aParser);
+    final String sError = (String) aParserClass.getField ("error").get (aParser);
+    assertTrue (sError, sError.startsWith ("Encountered \" \"c\" \"c\"\" at line 1, column 1."));
+    assertTrue (sError, sError.contains ("Was expecting one of:"));
+  }
+
+  /**
+   * @return the error message of the JJTree parser or "OK"
+   */
+  private static String _parseTree (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName ("TreeParser", true, aLoader);
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    try
+    {
+      aParserClass.getMethod ("Start").invoke (aParser);
+      return "OK";
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return ex.getCause ().getClass ().getSimpleName () + ": " + ex.getCause ().getMessage ();
+    }
+  }
+
+  @Test
+  public void testJJTreeGrammar () throws Exception
+  {
+    // The node scopes of JJTree catch Throwable, but throw it again
+    final File aPlainDir = GeneratedGrammarHelper.generateJJTree ("src/test/resources/lazyerrorreporting/grammar.jjt",
+                                                                  "target/lazyerrorreporting/jjtree-plain");
+    final File aLazyDir = GeneratedGrammarHelper.generateJJTree ("src/test/resources/lazyerrorreporting/grammar.jjt",
+                                                                 "target/lazyerrorreporting/jjtree-lazy",
+                                                                 "-LAZY_ERROR_REPORTING=true");
+    assertTrue (new String (Files.readAllBytes (new File (aLazyDir, "TreeParser.java").toPath ()),
+                            StandardCharsets.UTF_8).contains ("jj_start_tracking"));
+
+    final ClassLoader aPlain = GeneratedGrammarHelper.compile (aPlainDir);
+    final ClassLoader aLazy = GeneratedGrammarHelper.compile (aLazyDir);
+    for (final String sInput : new String [] { "x=1; f(a,g(2)); y=h();",
+                                               "x=f(1,;",
+                                               "f(a)(",
+                                               "x=y",
+                                               "x=g(h(1),2;",
+                                               "f(;",
+                                               "x=1; y=2 z=3;" })
+    {
+      final String sExpected = _parseTree (aPlain, sInput);
+      assertEquals (sInput, sExpected, _parseTree (aLazy, sInput));
+    }
+    assertEquals ("OK", _parseTree (aLazy, "x=1; f(a,g(2)); y=h();"));
+    assertTrue (_parseTree (aLazy, "x=f(1,;").startsWith ("ParseException: "));
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+import com.helger.pgcc.parser.table.DfaJavaCodeGenerator;
+import com.helger.pgcc.parser.table.TableDrivenJavaCodeGenerator;
+
+/**
+ * Test the option LAZY_LINE_COLUMN: the positions computed from the line
+ * offsets must be the same as the eagerly tracked ones.
+ */
+public final class LazyLineColumnFuncTest
+{
+  private static final String INPUT;
+  static
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 30; i++)
+      aSB.append ("\tselect a" +
+                  i +
+                  ",\tb_1 , * from tab where x == 3.14 and y != 'it''s' /* comment\r\n * */\r\n" +
+                  "// line comment\n" +
+                  "  selected = (fromage,42)\t\t wherever\rand_ andx 'multi\r\nline\tstring'\n" +
+                  "äpfel\t= '€ 中' 中文 straße\n\n");
+    INPUT = aSB.toString ();
+  }
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8"),
+                                                      aExtraOptions);
+  }
+
+  private static Object _createTokenManager (final ClassLoader aLoader,
+                                             final String sInput,
+                                             final int nBufferSize,
+                                             final int nTabSize) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    final Class <?> aTMClass = Class.forName ("TDParserTokenManager", true, aLoader);
+    final Object aStream = aStreamClass.getConstructor (Reader.class, int.class, int.class, int.class)
+                                       .newInstance (new StringReader (sInput),
+                                                     Integer.valueOf (1),
+                                                     Integer.valueOf (1),
+                                                     Integer.valueOf (nBufferSize));
+    aStreamClass.getMethod ("setTabSize", int.class).invoke (aStream, Integer.valueOf (nTabSize));
+    return aTMClass.getConstructor (aStreamClass).newInstance (aStream);
+  }
+
+  private static List <Object> _readAllTokens (final ClassLoader aLoader,
+                                               final int nBufferSize,
+                                               final int nTabSize) throws Exception
+  {
+    final Object aTM = _createTokenManager (aLoader, INPUT, nBufferSize, nTabSize);
+    final Method aGetNextToken = aTM.getClass ().getMethod ("getNextToken");
+    final Field aKind = Class.forName ("Token", true, aLoader).getField ("kind");
+
+    final List <Object> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      ret.add (aToken);
+      if (aKind.getInt (aToken) == 0)
+        break;
+    }
+    return ret;
+  }
+
+  private static int _getPosition (final Object aToken, final String sName, final boolean bLazy) throws Exception
+  {
+    if (bLazy)
+    {
+      final String sGetter = "get" + Character.toUpperCase (sName.charAt (0)) + sName.substring (1);
+      return ((Integer) aToken.getClass ().getMethod (sGetter).invoke (aToken)).intValue ();
+    }
+    return aToken.getClass ().getField (sName).getInt (aToken);
+  }
+
+  private static List <String> _describe (final List <Object> aTokens, final boolean bLazy) throws Exception
+  {
+    final List <String> ret = new ArrayList <> ();
+    for (final Object aToken : aTokens)
+    {
+      final Class <?> aTokenClass = aToken.getClass ();
+      final List <Object> aParts = new ArrayList <> ();
+      final Object aSpecialToken = aTokenClass.getField ("specialToken").get (aToken);
+      if (aSpecialToken != null)
+        aParts.add (aSpecialToken);
+      aParts.add (aToken);
+
+      for (final Object aPart : aParts)
+        ret.add ((aPart == aSpecialToken ? "special " : "") +
+                 aTokenClass.getField ("kind").getInt (aPart) +
+                 ":" +
+                 aTokenClass.getField ("image").get (aPart) +
+                 "@" +
+                 _getPosition (aPart, "beginLine", bLazy) +
+                 ":" +
+                 _getPosition (aPart, "beginColumn", bLazy) +
+                 "-" +
+                 _getPosition (aPart, "endLine", bLazy) +
+                 ":" +
+                 _getPosition (aPart, "endColumn", bLazy));
+    }
+    return ret;
+  }
+
+  private static String _getParseError (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Object aTM = _createTokenManager (aLoader, sInput, 4096, 4);
+    final Class <?> aParserClass = Class.forName ("TDParser", true, aLoader);
+    final Object aParser = aParserClass.getConstructor (aTM.getClass ()).newInstance (aTM);
+    try
+    {
+      aParserClass.getMethod ("Start").invoke (aParser);
+      fail ();
+      return null;
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return ex.getCause ().getMessage ();
+    }
+  }
+
+  @Test
+  public void testSamePositionsAsEager () throws Exception
+  {
+    final ClassLoader aEagerLoader = _generateAndCompile ("target/lazylinecolumn/eager");
+    final ClassLoader aLoader = _generateAndCompile ("target/lazylinecolumn/lazy", "-LAZY_LINE_COLUMN=true");
+    final ClassLoader aTableLoader = _generateAndCompile ("target/lazylinecolumn/table",
+                                                          "-LAZY_LINE_COLUMN=true",
+                                                          "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                                                                    TableDrivenJavaCodeGenerator.class.getName ());
+    final ClassLoader aDfaLoader = _generateAndCompile ("target/lazylinecolumn/dfa",
+                                                        "-LAZY_LINE_COLUMN=true",
+                                                        "-TOKEN_MANAGER_CODE_GENERATOR=" + DfaJavaCodeGenerator.class.getName ());
+
+    for (final int nTabSize : new int [] { 1, 4, 8 })
+    {
+      final List <String> aExpected = _describe (_readAllTokens (aEagerLoader, 4096, nTabSize), false);
+      assertEquals ("9:select@1:" + (nTabSize + 1) + "-1:" + (nTabSize + 6), aExpected.get (0));
+
+      // Small buffers force many buffer renewals and lookahead backups
+      for (final int nBufferSize : new int [] { 4, 7, 16, 4096 })
+      {
+        assertEquals (aExpected, _describe (_readAllTokens (aEagerLoader, nBufferSize, nTabSize), false));
+        final List <Object> aTokens = _readAllTokens (aLoader, nBufferSize, nTabSize);
+        // The positions are only computed on demand
+        assertEquals (0, aTokens.get (1).getClass ().getField ("beginLine").getInt (aTokens.get (1)));
+        assertEquals (aExpected, _describe (aTokens, true));
+        assertEquals (aExpected, _describe (_readAllTokens (aTableLoader, nBufferSize, nTabSize), true));
+        assertEquals (aExpected, _describe (_readAllTokens (aDfaLoader, nBufferSize, nTabSize), true));
+      }
+    }
+  }
+
+  @Test
+  public void testParseException () throws Exception
+  {
+    final ClassLoader aEagerLoader = _generateAndCompile ("target/lazylinecolumn/eager");
+    final ClassLoader aLoader = _generateAndCompile ("target/lazylinecolumn/lazy", "-LAZY_LINE_COLUMN=true");
+    for (final String sInput : new String [] { "a b\r\n\tc\t  select", "a\n\n\tb\r\r  (", "\t\tfrom" })
+    {
+      final String sExpected = _getParseError (aEagerLoader, sInput);
+      assertTrue (sExpected, sExpected.contains ("line "));
+      assertEquals (sExpected, _getParseError (aLoader, sInput));
+    }
+  }
+}
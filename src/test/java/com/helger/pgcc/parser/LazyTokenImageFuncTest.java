@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+import com.helger.pgcc.parser.table.TableDrivenJavaCodeGenerator;
+
+/**
+ * Test the option LAZY_TOKEN_IMAGE: tokens reference the buffer of the char
+ * stream and must return the same images as eagerly created tokens - also
+ * after the stream moved on to new buffers.
+ */
+public final class LazyTokenImageFuncTest
+{
+  private static final String INPUT;
+  static
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 40; i++)
+      aSB.append ("select a" +
+                  i +
+                  ", b_1 , * from tab where x == 3.14 and y != 'it''s' /* comment * */\n" +
+                  "// line comment\n" +
+                  "selected = (fromage,42) wherever and_ andx\n" +
+                  "äpfel = '€ 中' 中文 straße\n");
+    INPUT = aSB.toString ();
+  }
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8"),
+                                                      aExtraOptions);
+  }
+
+  private static List <Object> _readAllTokens (final ClassLoader aLoader, final int nBufferSize) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    final Class <?> aTMClass = Class.forName ("TDParserTokenManager", true, aLoader);
+    final Object aStream = aStreamClass.getConstructor (Reader.class, int.class, int.class, int.class)
+                                       .newInstance (new StringReader (INPUT),
+                                                     Integer.valueOf (1),
+                                                     Integer.valueOf (1),
+                                                     Integer.valueOf (nBufferSize));
+    final Object aTM = aTMClass.getConstructor (aStreamClass).newInstance (aStream);
+    final Method aGetNextToken = aTMClass.getMethod ("getNextToken");
+    final Field aKind = Class.forName ("Token", true, aLoader).getField ("kind");
+
+    final List <Object> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      ret.add (aToken);
+      if (aKind.getInt (aToken) == 0)
+        break;
+    }
+    return ret;
+  }
+
+  private static List <String> _describe (final List <Object> aTokens, final boolean bLazy) throws Exception
+  {
+    final List <String> ret = new ArrayList <> ();
+    if (aTokens.isEmpty ())
+      return ret;
+
+    final Class <?> aTokenClass = aTokens.get (0).getClass ();
+    final Field aKind = aTokenClass.getField ("kind");
+    final Field aImage = aTokenClass.getField ("image");
+    final Field aBeginLine = aTokenClass.getField ("beginLine");
+    final Field aBeginColumn = aTokenClass.getField ("beginColumn");
+    final Field aSpecial = aTokenClass.getField ("specialToken");
+    final Method aGetImage = bLazy ? aTokenClass.getMethod ("getImage") : null;
+    final Method aGetImageSequence = bLazy ? aTokenClass.getMethod ("getImageSequence") : null;
+
+    for (final Object aToken : aTokens)
+    {
+      final List <Object> aParts = new ArrayList <> ();
+      final Object aSpecialToken = aSpecial.get (aToken);
+      if (aSpecialToken != null)
+        aParts.add (aSpecialToken);
+      aParts.add (aToken);
+
+      for (final Object aPart : aParts)
+      {
+        final String sImage;
+        if (bLazy)
+        {
+          // The sequence must not need the String
+          final String sSequence = aGetImageSequence.invoke (aPart).toString ();
+          sImage = (String) aGetImage.invoke (aPart);
+          assertEquals (sImage, sSequence);
+        }
+        else
+          sImage = (String) aImage.get (aPart);
+        ret.add ((aPart == aSpecialToken ? "special " : "") +
+                 aKind.getInt (aPart) +
+                 ":" +
+                 sImage +
+                 "@" +
+                 aBeginLine.getInt (aPart) +
+                 ":" +
+                 aBeginColumn.getInt (aPart));
+      }
+    }
+    return ret;
+  }
+
+  @Test
+  public void testSameImagesAsEager () throws Exception
+  {
+    final List <String> aExpected = _describe (_readAllTokens (_generateAndCompile ("target/lazyimage/eager"), 4096), false);
+    assertEquals ("9:select@1:1", aExpected.get (0));
+
+    final ClassLoader aLoader = _generateAndCompile ("target/lazyimage/lazy", "-LAZY_TOKEN_IMAGE=true");
+    final ClassLoader aTableLoader = _generateAndCompile ("target/lazyimage/table",
+                                                          "-LAZY_TOKEN_IMAGE=true",
+                                                          "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                                                                    TableDrivenJavaCodeGenerator.class.getName ());
+    // Small buffers force many buffer renewals while tokens are alive
+    for (final int nBufferSize : new int [] { 4, 7, 64, 4096 })
+    {
+      final List <Object> aTokens = _readAllTokens (aLoader, nBufferSize);
+      final Field aImage = aTokens.get (1).getClass ().getField ("image");
+      // Identifiers are not created eagerly
+      assertNull (aImage.get (aTokens.get (1)));
+      assertEquals (aExpected, _describe (aTokens, true));
+      assertEquals (aExpected, _describe (_readAllTokens (aTableLoader, nBufferSize), true));
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the bookkeeping of the syntactic lookaheads for the error messages in
+ * the JJCalls arrays.
+ */
+public final class LookaheadCallsFuncTest
+{
+  private static ClassLoader _generateAndCompile (final String sOutDir) throws Exception
+  {
+    // The nested lookaheads of the grammar are saved at different tokens and
+    // rescanned for the expected tokens of the error messages
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/exceptionfreelookahead/grammar.jj", sOutDir);
+  }
+
+  private static Object _parse (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    return _parse (aLoader, "LAParser", sInput);
+  }
+
+  private static Object _parse (final ClassLoader aLoader, final String sParserClass, final String sInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName (sParserClass, true, aLoader);
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    aParserClass.getMethod ("Start").invoke (aParser);
+    return aParser;
+  }
+
+  private static String _getErrorMessage (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    return _getErrorMessage (aLoader, "LAParser", sInput);
+  }
+
+  private static String _getErrorMessage (final ClassLoader aLoader,
+                                          final String sParserClass,
+                                          final String sInput) throws Exception
+  {
+    try
+    {
+      _parse (aLoader, sParserClass, sInput);
+      return "OK";
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return ex.getCause ().getMessage ().replace ("\r\n", "\n");
+    }
+  }
+
+  private static Object _getField (final Object aObject, final String sName) throws Exception
+  {
+    final Field aField = aObject.getClass ().getDeclaredField (sName);
+    aField.setAccessible (true);
+    return aField.get (aObject);
+  }
+
+  @Test
+  public void testErrorMessages () throws Exception
+  {
+    final ClassLoader aLoader = _generateAndCompile ("target/lookaheadcalls");
+    assertEquals ("Encountered \" \";\" \";\"\" at line 1, column 20.\n\nWas expecting one of:\n\n\")\" ...\n    \",\" ...\n    ",
+                  _getErrorMessage (aLoader, "x=(f(g(a,b),h(1)(2);"));
+    assertEquals ("Encountered \" \"=\" \"=\"\" at line 1, column 14.\n\nWas expecting one of:\n\n\")\" ...\n    \",\" ...\n    ",
+                  _getErrorMessage (aLoader, "f(g(h(a,b)(c)=1;"));
+    assertEquals ("Encountered \" \"}\" \"}\"\" at line 1, column 18.\n\nWas expecting:\n\n\";\" ...\n    ",
+                  _getErrorMessage (aLoader, "{ x=1; { f(a)(b) } }"));
+    assertEquals ("Encountered \" \"=\" \"=\"\" at line 1, column 13.\n\nWas expecting:\n\n\";\" ...\n    ",
+                  _getErrorMessage (aLoader, "f(a)(b)(c,d)=g(h(1),2)(;"));
+    assertEquals ("Encountered \"<EOF>\" at line 1, column 15.\n\nWas expecting one of:\n\n\")\" ...\n    \",\" ...\n    ",
+                  _getErrorMessage (aLoader, "f(1,2,g(3)(4)(5"));
+  }
+
+  @Test
+  public void testOutdatedCallsAreReleased () throws Exception
+  {
+    final ClassLoader aLoader = _generateAndCompile ("target/lookaheadcalls");
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 2000; i++)
+      aSB.append ("x=(f(a)(b),g(1)); y=f(h(a)); { f(a)(b); }\n");
+    final Object aParser = _parse (aLoader, aSB.toString ());
+
+    // Only the tokens of the last lines may still be reachable
+    final Object aCalls = _getField (aParser, "jj_2_rtns");
+    for (int i = 0; i < Array.getLength (aCalls); i++)
+    {
+      final Object aCall = Array.get (aCalls, i);
+      final int nSize = ((Integer) _getField (aCall, "size")).intValue ();
+      assertTrue (nSize <= 4);
+      final Object [] aFirst = (Object []) _getField (aCall, "first");
+      for (int j = 0; j < nSize; j++)
+        if (aFirst[j] != null)
+          assertTrue (aFirst[j].getClass ().getField ("beginLine").getInt (aFirst[j]) > 1990);
+    }
+  }
+
+  @Test
+  public void testOutdatedCallWithoutFurtherLookaheads () throws Exception
+  {
+    final ClassLoader aLoader = GeneratedGrammarHelper.generateAndCompile ("src/test/resources/lookaheadcalls/grammar.jj",
+                                                                           "target/lookaheadcalls/outdated");
+    final StringBuilder aSB = new StringBuilder ("a b\n");
+    for (int i = 0; i < 2000; i++)
+      aSB.append ("1 2 3\n");
+    final Object aParser = _parse (aLoader, "ReleaseParser", aSB.toString ());
+
+    // The call of the header is kept until the lookahead is saved again
+    final Object aCall = Array.get (_getField (aParser, "jj_2_rtns"), 0);
+    assertEquals (1, ((Integer) _getField (aCall, "size")).intValue ());
+    assertTrue (((int []) _getField (aCall, "gen"))[0] <= ((Integer) _getField (aParser, "jj_gen")).intValue ());
+
+    // As it is outdated, the rescan skips it
+    assertEquals ("Encountered \" \"a\" \"a\"\" at line 1, column 9.\n\nWas expecting one of:\n\n<EOF> \n    <NUMBER> ...\n    ",
+                  _getErrorMessage (aLoader, "ReleaseParser", "a b 1 2 a"));
+  }
+}
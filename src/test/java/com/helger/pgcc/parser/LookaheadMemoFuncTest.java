@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the option LOOKAHEAD_MEMO: the parser must accept and reject the same
+ * inputs with the same actions and error messages as without the option, but
+ * without scanning nested lookaheads again and again.
+ */
+public final class LookaheadMemoFuncTest
+{
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return _generateAndCompileGrammar ("grammar.jj", sOutDir, aExtraOptions);
+  }
+
+  private static ClassLoader _generateAndCompileGrammar (final String sGrammar,
+                                                         final String sOutDir,
+                                                         final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/lookaheadmemo/" + sGrammar,
+                                                      sOutDir,
+                                                      aExtraOptions);
+  }
+
+  /**
+   * @return the actions of the parser and the error message, if any
+   */
+  private static String _parse (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    return _parse (aLoader, "MemoParser", sInput);
+  }
+
+  private static String _parse (final ClassLoader aLoader, final String sParserClass, final String sInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName (sParserClass, true, aLoader);
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    String sResult;
+    try
+    {
+      aParserClass.getMethod ("Start").invoke (aParser);
+      sResult = "OK";
+    }
+    catch (final InvocationTargetException ex)
+    {
+      sResult = ex.getCause ().getClass ().getSimpleName () + ": " + ex.getCause ().getMessage ();
+    }
+    return aParserClass.getField ("trace").get (aParser) + " " + sResult;
+  }
+
+  private static String _createExpr (final Random aRandom, final int nDepth)
+  {
+    final StringBuilder aSB = new StringBuilder (_createPrimary (aRandom, nDepth));
+    while (aRandom.nextInt (10) < 3)
+      aSB.append ('+').append (_createPrimary (aRandom, nDepth));
+    return aSB.toString ();
+  }
+
+  private static String _createPrimary (final Random aRandom, final int nDepth)
+  {
+    final int n = aRandom.nextInt (10);
+    if (nDepth > 5 || n < 3)
+      return Character.toString ("abz".charAt (aRandom.nextInt (3)));
+    if (n < 6)
+      return "(" + _createExpr (aRandom, nDepth + 1) + ")!";
+    String ret = "(" + (n < 9 ? _createExpr (aRandom, nDepth + 1) : "") + ")";
+    for (int i = aRandom.nextInt (3); i > 0; i--)
+      ret += "!!";
+    return ret;
+  }
+
+  @Test
+  public void testSameResultsAsWithoutMemo () throws Exception
+  {
+    final ClassLoader aPlain = _generateAndCompile ("target/lookaheadmemo/plain");
+    final ClassLoader aMemo = _generateAndCompile ("target/lookaheadmemo/memo", "-LOOKAHEAD_MEMO=true");
+
+    final Random aRandom = new Random (11);
+    int nOK = 0;
+    for (int i = 0; i < 2000; i++)
+    {
+      String sInput = _createExpr (aRandom, 0);
+      while (aRandom.nextInt (10) < 2)
+        sInput += "," + _createExpr (aRandom, 0);
+      if ((i & 1) != 0)
+      {
+        // Break every second input
+        final int nPos = aRandom.nextInt (sInput.length ());
+        sInput = sInput.substring (0, nPos) + "()!+,a".charAt (aRandom.nextInt (6)) + sInput.substring (nPos + 1);
+      }
+      final String sExpected = _parse (aPlain, sInput);
+      assertEquals (sInput, sExpected, _parse (aMemo, sInput));
+      if (sExpected.endsWith (" OK"))
+        nOK++;
+    }
+    assertTrue (nOK > 200);
+  }
+
+  @Test
+  public void testNestedLookahead () throws Exception
+  {
+    final ClassLoader aMemo = _generateAndCompile ("target/lookaheadmemo/memo", "-LOOKAHEAD_MEMO=true");
+
+    // Without the option this scans each level about 2^40 times
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 40; i++)
+      aSB.append ('(');
+    aSB.append ("a+b");
+    for (int i = 0; i < 40; i++)
+      aSB.append (")");
+    assertEquals ("ab+ OK", _parse (aMemo, aSB.toString ()));
+
+    final String sPrimary = aSB.toString ();
+    aSB.setLength (0);
+    for (int i = 0; i < 40; i++)
+      aSB.append ("(");
+    aSB.append ("a");
+    for (int i = 0; i < 40; i++)
+      aSB.append (")!");
+    assertEquals ("a!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!! OK", _parse (aMemo, aSB.toString ()));
+    assertTrue (_parse (aMemo, sPrimary + "+" + sPrimary + ",").contains ("ParseException"));
+  }
+
+  @Test
+  public void testOnlyRoutinesOfProductionsAreRemembered () throws Exception
+  {
+    _generateAndCompile ("target/lookaheadmemo/memo", "-LOOKAHEAD_MEMO=true");
+    final String sParser = new String (Files.readAllBytes (new File ("target/lookaheadmemo/memo/MemoParser.java").toPath ()),
+                                       StandardCharsets.UTF_8);
+    // Expr and Primary
+    assertTrue (sParser.contains ("jj_memo_put(0, "));
+    assertTrue (sParser.contains ("jj_memo_put(1, "));
+    assertFalse (sParser.contains ("jj_memo_put(2, "));
+    // Each ReInit forgets the scans of the previous input
+    assertTrue (sParser.contains ("jj_memo_clear();"));
+
+    _generateAndCompile ("target/lookaheadmemo/plain");
+    assertFalse (new String (Files.readAllBytes (new File ("target/lookaheadmemo/plain/MemoParser.java").toPath ()),
+                             StandardCharsets.UTF_8).contains ("jj_memo"));
+  }
+
+  @Test
+  public void testSemanticLookaheadIsNotRemembered () throws Exception
+  {
+    // The result of a semantic lookahead depends on the state of the parser
+    final ClassLoader aPlain = _generateAndCompileGrammar ("semantic.jj", "target/lookaheadmemo/semantic-plain");
+    final ClassLoader aMemo = _generateAndCompileGrammar ("semantic.jj",
+                                                          "target/lookaheadmemo/semantic-memo",
+                                                          "-LOOKAHEAD_MEMO=true");
+    assertEquals ("inner OK", _parse (aPlain, "SemanticParser", "( a"));
+    assertEquals ("inner OK", _parse (aMemo, "SemanticParser", "( a"));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test that the sets checked before a scan do not change the result of a lookahead.
+ */
+public final class LookaheadPrefilterFuncTest
+{
+  private static final String [] INPUTS = { "x=(1,f(a)(b));",
+                                            "y=f(a)(b)(c);",
+                                            "f(a)(b,g(1));",
+                                            "f(a)(b)=g(h(1))(2);",
+                                            "{ x=(a); { f(1); y=2; } f(a)=b; }",
+                                            "x=(f(g(a,b),h(1)(2);",
+                                            "f(g(h(a,b)(c)=1;",
+                                            "{ x=1; { f(a)(b) } }",
+                                            "f(a)(b)(c,d)=g(h(1),2)(;",
+                                            "x=(1,f(a)(g(b),c);",
+                                            "{ f(g(h(a))) = x; y=(a,b) z }",
+                                            "f(1,2,g(3)(4)(5",
+                                            "x=;",
+                                            "f(=1;" };
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aOptions) throws Exception
+  {
+    // The grammar has lookaheads of two to four tokens and an unlimited one, so
+    // the prefilter sets for the first and second token are both used
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/exceptionfreelookahead/grammar.jj",
+                                                      sOutDir,
+                                                      aOptions);
+  }
+
+  private static String _parse (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName ("LAParser", true, aLoader);
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    try
+    {
+      aParserClass.getMethod ("Start").invoke (aParser);
+      return aParserClass.getField ("trace").get (aParser) + " OK";
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return ex.getCause ().getMessage ().replace ("\r\n", "\n");
+    }
+  }
+
+  private static String _readParser (final String sOutDir) throws Exception
+  {
+    return new String (Files.readAllBytes (new File (sOutDir, "LAParser.java").toPath ()), StandardCharsets.UTF_8);
+  }
+
+  private static void _assertSameResults (final String sOptions, final String... aOptions) throws Exception
+  {
+    final List <String> aTreeOptions = new ArrayList <> (Arrays.asList (aOptions));
+    aTreeOptions.add ("-LOOKAHEAD_PREFILTER=true");
+    final ClassLoader aScanLoader = _generateAndCompile ("target/prefilter/scan" + sOptions, aOptions);
+    final ClassLoader aTreeLoader = _generateAndCompile ("target/prefilter/tree" + sOptions,
+                                                         aTreeOptions.toArray (new String [0]));
+    for (final String sInput : INPUTS)
+      assertEquals (sInput, _parse (aScanLoader, sInput), _parse (aTreeLoader, sInput));
+  }
+
+  @Test
+  public void testSameResults () throws Exception
+  {
+    _assertSameResults ("");
+    _assertSameResults ("cache", "-CACHE_TOKENS=true");
+    _assertSameResults ("lazy", "-LAZY_ERROR_REPORTING=true", "-EXCEPTION_FREE_LOOKAHEAD=true");
+    _assertSameResults ("noerror", "-ERROR_REPORTING=false");
+    _assertSameResults ("memo", "-LOOKAHEAD_MEMO=true");
+  }
+
+  @Test
+  public void testSets () throws Exception
+  {
+    _generateAndCompile ("target/prefilter/generated", "-LOOKAHEAD_PREFILTER=true");
+    final String sParser = _readParser ("target/prefilter/generated");
+    // LOOKAHEAD(2) Statement(): <IDENTIFIER> or "{" followed by "=", "(",
+    // <IDENTIFIER>, "{" or "}"
+    assertTrue (sParser.contains ("jj_2_1_first = {0x1100L};"));
+    assertTrue (sParser.contains ("jj_2_1_second = {0x1360L};"));
+    // The unlimited LOOKAHEAD(Call() "=") starts with <IDENTIFIER> "("
+    assertTrue (sParser.contains ("jj_2_5_first = {0x1000L};"));
+    assertTrue (sParser.contains ("jj_2_5_second = {0x40L};"));
+    assertTrue (sParser.contains ("if (!jj_in_set(jj_2_5_second, jj_next_token(jj_t1).kind)) { jj_la = xla - 2; return false; }"));
+  }
+}
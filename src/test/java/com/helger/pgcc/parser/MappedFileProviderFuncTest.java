@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the generated MappedFileProvider of the modern templates. It must
+ * deliver the same chars as the StringProvider - also if multi-byte sequences
+ * cross the mapped segments.
+ */
+public final class MappedFileProviderFuncTest
+{
+  private static final File OUT_DIR = new File ("target/mappedfile").getAbsoluteFile ();
+  private static ClassLoader s_aLoader;
+
+  @BeforeClass
+  public static void generateAndCompile () throws Exception
+  {
+    s_aLoader = GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                           OUT_DIR.getPath (),
+                                                           "-JDK_VERSION=1.8",
+                                                           "-JAVA_TEMPLATE_TYPE=modern");
+  }
+
+  private static Object _createMappedProvider (final String sContent, final Charset aCharset, final int nSegmentSize) throws Exception
+  {
+    final File aFile = new File (OUT_DIR, "input-" + aCharset.name () + "-" + nSegmentSize + ".txt");
+    Files.write (aFile.toPath (), sContent.getBytes (aCharset));
+    final Class <?> aClass = Class.forName ("MappedFileProvider", true, s_aLoader);
+    return aClass.getConstructor (File.class, Charset.class, int.class)
+                 .newInstance (aFile, aCharset, Integer.valueOf (nSegmentSize));
+  }
+
+  private static String _readAll (final Object aProvider, final int nChunkSize) throws Exception
+  {
+    final Method aRead = Class.forName ("Provider", true, s_aLoader).getMethod ("read", char [].class, int.class, int.class);
+    final StringBuilder aSB = new StringBuilder ();
+    final char [] aBuf = new char [nChunkSize + 3];
+    while (true)
+    {
+      final int nRead = ((Integer) aRead.invoke (aProvider, aBuf, Integer.valueOf (3), Integer.valueOf (nChunkSize))).intValue ();
+      if (nRead < 0)
+        break;
+      assertTrue (nRead > 0);
+      aSB.append (aBuf, 3, nRead);
+    }
+    ((Closeable) aProvider).close ();
+    return aSB.toString ();
+  }
+
+  private static List <String> _tokenize (final Object aProvider) throws Exception
+  {
+    final Class <?> aProviderClass = Class.forName ("Provider", true, s_aLoader);
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, s_aLoader);
+    final Class <?> aTMClass = Class.forName ("TDParserTokenManager", true, s_aLoader);
+    final Object aStream = aStreamClass.getConstructor (aProviderClass).newInstance (aProvider);
+    final Constructor <?> aCtor = aTMClass.getConstructor (aStreamClass);
+    final Object aTM = aCtor.newInstance (aStream);
+    final Method aGetNextToken = aTMClass.getMethod ("getNextToken");
+    final Class <?> aTokenClass = Class.forName ("Token", true, s_aLoader);
+    final Field aKind = aTokenClass.getField ("kind");
+    final Field aImage = aTokenClass.getField ("image");
+    final Field aBeginLine = aTokenClass.getField ("beginLine");
+
+    final List <String> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      final int nKind = aKind.getInt (aToken);
+      ret.add (nKind + ":" + aImage.get (aToken) + "@" + aBeginLine.getInt (aToken));
+      if (nKind == 0)
+        break;
+    }
+    return ret;
+  }
+
+  @Test
+  public void testReadChars () throws Exception
+  {
+    // Multi-byte sequences and a surrogate pair
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 100; i++)
+      aSB.append ("aä€中𝄞").append (i).append ('\n');
+    final String sContent = aSB.toString ();
+
+    for (final int nSegmentSize : new int [] { 16, 17, 100, 4096 })
+      for (final int nChunkSize : new int [] { 1, 2, 5, 1000 })
+        assertEquals (sContent, _readAll (_createMappedProvider (sContent, StandardCharsets.UTF_8, nSegmentSize), nChunkSize));
+
+    final String sLatin1 = "select straße äÿ;\n";
+    for (final int nChunkSize : new int [] { 1, 7, 1000 })
+      assertEquals (sLatin1, _readAll (_createMappedProvider (sLatin1, StandardCharsets.ISO_8859_1, 16), nChunkSize));
+
+    // Empty file
+    assertEquals ("", _readAll (_createMappedProvider ("", StandardCharsets.UTF_8, 16), 10));
+  }
+
+  @Test
+  public void testSameTokensAsStringProvider () throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 50; i++)
+      aSB.append ("select a" + i + ", b_1 from tab where x == 3.14 and y != 'it''s'\näpfel = '€ 中' 中文 straße\n");
+    final String sInput = aSB.toString ();
+
+    final Class <?> aStringProviderClass = Class.forName ("StringProvider", true, s_aLoader);
+    final List <String> aExpected = _tokenize (aStringProviderClass.getConstructor (String.class).newInstance (sInput));
+    assertEquals ("9:select@1", aExpected.get (0));
+
+    assertEquals (aExpected, _tokenize (_createMappedProvider (sInput, StandardCharsets.UTF_8, 64)));
+    assertEquals (aExpected, _tokenize (_createMappedProvider (sInput, StandardCharsets.UTF_8, 1024 * 1024)));
+    assertEquals (aExpected, _tokenize (_createMappedProvider (sInput, StandardCharsets.UTF_16, 64)));
+
+    final String sLatin1Input = sInput.replace ("€", "e").replace ("中", "z").replace ("文", "w");
+    assertEquals (_tokenize (aStringProviderClass.getConstructor (String.class).newInstance (sLatin1Input)),
+                  _tokenize (_createMappedProvider (sLatin1Input, StandardCharsets.ISO_8859_1, 64)));
+  }
+}
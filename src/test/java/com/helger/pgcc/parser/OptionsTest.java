@@ -63,7 +63,7 @@ public final class OptionsTest
   @Test
   public void testDefaults ()
   {
-    assertEquals (44, Options.s_optionValues.size ());
+    assertEquals (59, Options.s_optionValues.size ());
 
     assertTrue (Options.isBuildParser ());
     assertTrue (Options.isBuildTokenManager ());
@@ -77,6 +77,21 @@ public final class OptionsTest
     assertFalse (Options.isIgnoreCase ());
     assertFalse (Options.isJavaUnicodeEscape ());
     assertTrue (Options.isKeepLineColumn ());
+    assertFalse (Options.isLazyTokenImage ());
+    assertFalse (Options.isLazyLineColumn ());
+    assertFalse (Options.isRecycleTokens ());
+    assertFalse (Options.isGenerationCache ());
+    assertFalse (Options.isKeywordHash ());
+    assertFalse (Options.isByteCharStream ());
+    assertFalse (Options.isCharSequenceCharStream ());
+    assertFalse (Options.isTokenBuffer ());
+    assertFalse (Options.isTokenSpliterator ());
+    assertFalse (Options.isLookaheadMemo ());
+    assertFalse (Options.isExceptionFreeLookahead ());
+    assertFalse (Options.isLazyErrorReporting ());
+    assertTrue (Options.isParseExceptionStackTrace ());
+    assertFalse (Options.isLookaheadDecisionTrees ());
+    assertFalse (Options.isLookaheadPrefilter ());
     assertTrue (Options.isSanityCheck ());
     assertFalse (Options.isUnicodeInput ());
     assertFalse (Options.isJavaUserCharStream ());
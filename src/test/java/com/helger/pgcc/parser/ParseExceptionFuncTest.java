@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the lazily created message of the generated ParseException and the
+ * option PARSE_EXCEPTION_STACK_TRACE.
+ */
+public final class ParseExceptionFuncTest
+{
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/exceptionfreelookahead/grammar.jj",
+                                                      sOutDir,
+                                                      aExtraOptions);
+  }
+
+  private static Exception _parse (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName ("LAParser", true, aLoader);
+    Object aParser;
+    try
+    {
+      aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    }
+    catch (final NoSuchMethodException ex)
+    {
+      // The modern templates parse a String directly
+      aParser = aParserClass.getConstructor (String.class).newInstance (sInput);
+    }
+    try
+    {
+      aParserClass.getMethod ("Start").invoke (aParser);
+    }
+    catch (final InvocationTargetException ex)
+    {
+      return (Exception) ex.getCause ();
+    }
+    throw new IllegalStateException ("No error in " + sInput);
+  }
+
+  @Test
+  public void testLazyMessage () throws Exception
+  {
+    final ClassLoader aLoader = _generateAndCompile ("target/parseexception/default");
+    final Exception ex = _parse (aLoader, "f(g(h(a,b)(c)=1;");
+    assertEquals ("ParseException", ex.getClass ().getSimpleName ());
+    final String sMessage = ex.getMessage ().replace ("\r\n", "\n");
+    assertEquals ("Encountered \" \"=\" \"=\"\" at line 1, column 14.\n\nWas expecting one of:\n\n\")\" ...\n    \",\" ...\n    ",
+                  sMessage);
+    // Created once
+    assertSame (ex.getMessage (), ex.getMessage ());
+    assertTrue (ex.toString ().endsWith (ex.getMessage ()));
+    assertTrue (ex.getStackTrace ().length > 0);
+
+    // The constructors for the user are unchanged
+    final Class <?> aExClass = ex.getClass ();
+    assertEquals ("Custom", ((Exception) aExClass.getConstructor (String.class).newInstance ("Custom")).getMessage ());
+    assertEquals (null, ((Exception) aExClass.getConstructor ().newInstance ()).getMessage ());
+  }
+
+  @Test
+  public void testNoStackTrace () throws Exception
+  {
+    for (final String sTemplateType : new String [] { Options.JAVA_TEMPLATE_TYPE_CLASSIC,
+                                                      Options.JAVA_TEMPLATE_TYPE_MODERN })
+    {
+      final ClassLoader aLoader = _generateAndCompile ("target/parseexception/" + sTemplateType,
+                                                       "-JAVA_TEMPLATE_TYPE=" + sTemplateType,
+                                                       "-PARSE_EXCEPTION_STACK_TRACE=false");
+      final Exception ex = _parse (aLoader, "f(g(h(a,b)(c)=1;");
+      assertEquals ("ParseException", ex.getClass ().getSimpleName ());
+      assertEquals (0, ex.getStackTrace ().length);
+      assertNotNull (ex.getMessage ());
+      assertTrue (ex.getMessage ().contains ("line 1, column 14"));
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.io.file.FileOperations;
+import com.helger.pgcc.GeneratedGrammarHelper;
+import com.helger.pgcc.jjtree.JJTree;
+import com.helger.pgcc.parser.table.TableDrivenJavaCodeGenerator;
+
+/**
+ * Test the option RECYCLE_TOKENS: the parser must produce the same result as
+ * without recycling, while the token manager reuses its regular tokens.
+ */
+public final class RecycleTokensFuncTest
+{
+  private static final String INPUT;
+  static
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 200; i++)
+      aSB.append ("a" +
+                  i +
+                  " = (1, 2, " +
+                  i +
+                  ");\n" +
+                  "# comment " +
+                  i +
+                  "\n" +
+                  "b = c" +
+                  i +
+                  ";\n" +
+                  "call" +
+                  i +
+                  "();\n" +
+                  "d = 42; # trailing\n");
+    INPUT = aSB.toString ();
+  }
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/recycle/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8"),
+                                                      aExtraOptions);
+  }
+
+  @SuppressWarnings ("unchecked")
+  private static List <String> _parse (final ClassLoader aLoader) throws Exception
+  {
+    final Class <?> aParserClass = Class.forName ("RecycleParser", true, aLoader);
+    final Object aParser = aParserClass.getConstructor (Reader.class).newInstance (new StringReader (INPUT));
+    aParserClass.getMethod ("Start").invoke (aParser);
+    return (List <String>) aParserClass.getField ("items").get (aParser);
+  }
+
+  private static List <Object> _readTokens (final ClassLoader aLoader, final int nCount, final List <String> aSpecialImages) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    final Class <?> aTMClass = Class.forName ("RecycleParserTokenManager", true, aLoader);
+    final Object aStream = aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (INPUT));
+    final Object aTM = aTMClass.getConstructor (aStreamClass).newInstance (aStream);
+    final Method aGetNextToken = aTMClass.getMethod ("getNextToken");
+    final Field aSpecial = Class.forName ("Token", true, aLoader).getField ("specialToken");
+    final List <Object> ret = new ArrayList <> ();
+    for (int i = 0; i < nCount; i++)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      // Must be read before the token is recycled
+      final Object aSpecialToken = aSpecial.get (aToken);
+      if (aSpecialToken != null)
+        aSpecialImages.add (aSpecialToken.toString ());
+      ret.add (aToken);
+    }
+    return ret;
+  }
+
+  private static void _checkRecycled (final ClassLoader aLoader) throws Exception
+  {
+    // Maximum lookahead is 3, plus the current and the previous token
+    final int nRingSize = 5;
+    final List <String> aSpecialImages = new ArrayList <> ();
+    final List <Object> aTokens = _readTokens (aLoader, 8 * nRingSize, aSpecialImages);
+    for (int i = 0; i < nRingSize; i++)
+      for (int j = i + 1; j < nRingSize; j++)
+        assertNotSame (aTokens.get (i), aTokens.get (j));
+    for (int i = nRingSize; i < aTokens.size (); i++)
+      assertSame (aTokens.get (i - nRingSize), aTokens.get (i));
+
+    // Special tokens are not recycled
+    assertEquals (Arrays.asList ("# comment 0", "# trailing", "# comment 1"), aSpecialImages);
+  }
+
+  @Test
+  public void testSameResultAsWithoutRecycling () throws Exception
+  {
+    final List <String> aExpected = _parse (_generateAndCompile ("target/recycle/plain"));
+    assertEquals (800, aExpected.size ());
+    assertEquals ("a0=(1,2,0)", aExpected.get (0));
+    assertEquals ("b=c0", aExpected.get (1));
+    assertEquals ("call0()", aExpected.get (2));
+
+    // Without the option every token is new
+    final List <Object> aTokens = _readTokens (_generateAndCompile ("target/recycle/plain"), 20, new ArrayList <> ());
+    assertFalse (aTokens.get (0) == aTokens.get (5));
+
+    final ClassLoader aLoader = _generateAndCompile ("target/recycle/classic", "-RECYCLE_TOKENS=true");
+    assertEquals (aExpected, _parse (aLoader));
+    _checkRecycled (aLoader);
+
+    final ClassLoader aTableLoader = _generateAndCompile ("target/recycle/table",
+                                                          "-RECYCLE_TOKENS=true",
+                                                          "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                                                                    TableDrivenJavaCodeGenerator.class.getName ());
+    assertEquals (aExpected, _parse (aTableLoader));
+    _checkRecycled (aTableLoader);
+  }
+
+  @Test
+  public void testIgnoredWithLazyErrorReporting () throws Exception
+  {
+    // The re-run of LAZY_ERROR_REPORTING needs the tokens since the checkpoint
+    final ClassLoader aLoader = _generateAndCompile ("target/recycle/lazy",
+                                                     "-RECYCLE_TOKENS=true",
+                                                     "-LAZY_ERROR_REPORTING=true");
+    final List <Object> aTokens = _readTokens (aLoader, 20, new ArrayList <> ());
+    assertNotSame (aTokens.get (0), aTokens.get (5));
+    assertEquals (800, _parse (aLoader).size ());
+  }
+
+  private static String _generateJJTree (final String sOutDir, final String sTrackTokens) throws Exception
+  {
+    final File aOutDir = new File (sOutDir);
+    FileOperations.deleteDirRecursiveIfExisting (aOutDir);
+    assertTrue (new JJTree ().main (new String [] { "-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (),
+                                                    "-TRACK_TOKENS=" + sTrackTokens,
+                                                    "grammars/JSONParser.jjt" })
+                             .isSuccess ());
+    assertTrue (Main.mainProgram ("-OUTPUT_DIRECTORY=" + aOutDir.getAbsolutePath (),
+                                  "-RECYCLE_TOKENS=true",
+                                  new File (aOutDir, "JSONParser.jj").getAbsolutePath ())
+                    .isSuccess ());
+    return new String (Files.readAllBytes (new File (aOutDir, "JSONParserTokenManager.java").toPath ()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testIgnoredWithTrackTokens () throws Exception
+  {
+    assertTrue (_generateJJTree ("target/recycle/jjtree", "false").contains ("jjTokenRing"));
+    // The nodes keep their first and last token
+    assertFalse (_generateJJTree ("target/recycle/jjtree-track", "true").contains ("jjTokenRing"));
+  }
+}
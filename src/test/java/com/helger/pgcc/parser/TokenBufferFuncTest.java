@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+import com.helger.pgcc.parser.table.DfaJavaCodeGenerator;
+import com.helger.pgcc.parser.table.TableDrivenJavaCodeGenerator;
+
+/**
+ * Test the option TOKEN_BUFFER: fillTokens must find the same tokens as
+ * getNextToken.
+ */
+public final class TokenBufferFuncTest
+{
+  private static final String INPUT;
+  static
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 30; i++)
+      aSB.append ("\tselect a" +
+                  i +
+                  ",\tb_1 , * from tab where x == 3.14 and y != 'it''s' /* comment\r\n * */\r\n" +
+                  "// line comment\n" +
+                  "  selected = (fromage,42)\t\t wherever\rand_ andx 'multi\r\nline\tstring'\n" +
+                  "äpfel\t= '€ 中' 中文 straße\n\n");
+    INPUT = aSB.toString ();
+  }
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8", "-LAZY_LINE_COLUMN=true", "-TOKEN_BUFFER=true"),
+                                                      aExtraOptions);
+  }
+
+  private static Object _createStream (final ClassLoader aLoader, final int nBufferSize) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    return aStreamClass.getConstructor (Reader.class, int.class, int.class, int.class)
+                       .newInstance (new StringReader (INPUT),
+                                     Integer.valueOf (1),
+                                     Integer.valueOf (1),
+                                     Integer.valueOf (nBufferSize));
+  }
+
+  private static Object _createTokenManager (final ClassLoader aLoader, final Object aStream) throws Exception
+  {
+    return Class.forName ("TDParserTokenManager", true, aLoader).getConstructor (aStream.getClass ()).newInstance (aStream);
+  }
+
+  private static int _getInt (final Object aObj, final String sMethod) throws Exception
+  {
+    return ((Integer) aObj.getClass ().getMethod (sMethod).invoke (aObj)).intValue ();
+  }
+
+  /**
+   * @return All tokens of getNextToken including the special tokens, in the
+   *         order of the input.
+   */
+  private static List <String> _readWithGetNextToken (final ClassLoader aLoader, final int nBufferSize) throws Exception
+  {
+    final Object aTM = _createTokenManager (aLoader, _createStream (aLoader, nBufferSize));
+    final Method aGetNextToken = aTM.getClass ().getMethod ("getNextToken");
+
+    final List <String> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      final Class <?> aTokenClass = aToken.getClass ();
+      final Object aSpecialToken = aTokenClass.getField ("specialToken").get (aToken);
+      if (aSpecialToken != null)
+        ret.add (aTokenClass.getField ("kind").getInt (aSpecialToken) +
+                 ":" +
+                 aTokenClass.getField ("image").get (aSpecialToken) +
+                 "@" +
+                 _getInt (aSpecialToken, "getBeginLine") +
+                 ":" +
+                 _getInt (aSpecialToken, "getBeginColumn"));
+      final int nKind = aTokenClass.getField ("kind").getInt (aToken);
+      ret.add (nKind +
+               ":" +
+               aTokenClass.getField ("image").get (aToken) +
+               "@" +
+               _getInt (aToken, "getBeginLine") +
+               ":" +
+               _getInt (aToken, "getBeginColumn"));
+      if (nKind == 0)
+        break;
+    }
+    return ret;
+  }
+
+  private static List <String> _readWithFillTokens (final ClassLoader aLoader,
+                                                    final int nBufferSize,
+                                                    final int nMax) throws Exception
+  {
+    final Object aStream = _createStream (aLoader, nBufferSize);
+    final Object aTM = _createTokenManager (aLoader, aStream);
+    final Class <?> aBufferClass = Class.forName ("TokenBuffer", true, aLoader);
+    // Start small to test the growing
+    final Object aBuffer = aBufferClass.getConstructor (int.class).newInstance (Integer.valueOf (1));
+    final Method aFillTokens = aTM.getClass ().getMethod ("fillTokens", aBufferClass, int.class);
+    final Method aGetLineOfOffset = aStream.getClass ().getMethod ("getLineOfOffset", long.class);
+    final Method aGetColumnOfOffset = aStream.getClass ().getMethod ("getColumnOfOffset", long.class);
+
+    final Method aGetKind = aBufferClass.getMethod ("getKind", int.class);
+    int nSize = 0;
+    while (true)
+    {
+      final int nCount = ((Integer) aFillTokens.invoke (aTM, aBuffer, Integer.valueOf (nMax))).intValue ();
+      assertTrue (nCount > 0 && nCount <= nMax);
+      nSize += nCount;
+      assertEquals (nSize, ((Integer) aBufferClass.getMethod ("size").invoke (aBuffer)).intValue ());
+      // The last token is EOF
+      if (((Integer) aGetKind.invoke (aBuffer, Integer.valueOf (nSize - 1))).intValue () == 0)
+        break;
+      assertEquals (nMax, nCount);
+    }
+
+    final List <String> ret = new ArrayList <> ();
+    for (int i = 0; i < nSize; i++)
+    {
+      final Integer aIndex = Integer.valueOf (i);
+      final int nKind = ((Integer) aGetKind.invoke (aBuffer, aIndex)).intValue ();
+      final long nBegin = ((Long) aBufferClass.getMethod ("getBeginOffset", int.class).invoke (aBuffer, aIndex)).longValue ();
+      final long nEnd = ((Long) aBufferClass.getMethod ("getEndOffset", int.class).invoke (aBuffer, aIndex)).longValue ();
+      assertEquals (0, ((Integer) aBufferClass.getMethod ("getLexicalState", int.class).invoke (aBuffer, aIndex)).intValue ());
+      // Empty tokens like EOF are at the position of the previous char
+      final Long aPosOffset = Long.valueOf (nBegin == nEnd ? nEnd - 1 : nBegin);
+      ret.add (nKind +
+               ":" +
+               INPUT.substring ((int) nBegin, (int) nEnd) +
+               "@" +
+               aGetLineOfOffset.invoke (aStream, aPosOffset) +
+               ":" +
+               aGetColumnOfOffset.invoke (aStream, aPosOffset));
+    }
+    return ret;
+  }
+
+  @Test
+  public void testSameTokensAsGetNextToken () throws Exception
+  {
+    final List <ClassLoader> aLoaders = new ArrayList <> ();
+    aLoaders.add (_generateAndCompile ("target/tokenbuffer/classic"));
+    aLoaders.add (_generateAndCompile ("target/tokenbuffer/table",
+                                       "-TOKEN_MANAGER_CODE_GENERATOR=" + TableDrivenJavaCodeGenerator.class.getName ()));
+    aLoaders.add (_generateAndCompile ("target/tokenbuffer/dfa",
+                                       "-TOKEN_MANAGER_CODE_GENERATOR=" + DfaJavaCodeGenerator.class.getName ()));
+
+    for (final ClassLoader aLoader : aLoaders)
+    {
+      final List <String> aExpected = _readWithGetNextToken (aLoader, 4096);
+      assertEquals ("9:select@1:2", aExpected.get (0));
+      assertEquals ("0:@" + aExpected.get (aExpected.size () - 1).substring (3), aExpected.get (aExpected.size () - 1));
+
+      // Small buffers force many buffer renewals and lookahead backups
+      for (final int nBufferSize : new int [] { 4, 4096 })
+        for (final int nMax : new int [] { 1, 7, 100000 })
+          assertEquals (aExpected, _readWithFillTokens (aLoader, nBufferSize, nMax));
+    }
+  }
+}
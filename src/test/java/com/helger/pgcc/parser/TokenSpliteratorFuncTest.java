@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Test the option TOKEN_SPLITERATOR: the tokens of the parts must be the same
+ * as the ones of a single token manager.
+ */
+public final class TokenSpliteratorFuncTest
+{
+  private static final String INPUT;
+  static
+  {
+    // No token spans a line end
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < 500; i++)
+      aSB.append ("\tselect a" +
+                  i +
+                  ",\tb_1 , * from tab /* x */ where x == 3.14 and y != 'it''s'\r\n" +
+                  "  selected = (fromage,42)\t\t wherever\rand_ andx 'single\tstring'\n" +
+                  "äpfel\t= '€ 中' 中文 straße\n\n");
+    INPUT = aSB.toString ();
+  }
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8", "-TOKEN_SPLITERATOR=true"),
+                                                      aExtraOptions);
+  }
+
+  private static String _describe (final Object aToken)
+  {
+    try
+    {
+      final Class <?> aTokenClass = aToken.getClass ();
+      return aTokenClass.getField ("kind").getInt (aToken) +
+             ":" +
+             aTokenClass.getField ("image").get (aToken) +
+             "@" +
+             aTokenClass.getField ("beginLine").getInt (aToken) +
+             ":" +
+             aTokenClass.getField ("beginColumn").getInt (aToken) +
+             "-" +
+             aTokenClass.getField ("endLine").getInt (aToken) +
+             ":" +
+             aTokenClass.getField ("endColumn").getInt (aToken);
+    }
+    catch (final ReflectiveOperationException ex)
+    {
+      throw new IllegalStateException (ex);
+    }
+  }
+
+  private static List <String> _readSequential (final ClassLoader aLoader) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    final Object aStream = aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (INPUT));
+    final Object aTM = Class.forName ("TDParserTokenManager", true, aLoader).getConstructor (aStreamClass).newInstance (aStream);
+    final Method aGetNextToken = aTM.getClass ().getMethod ("getNextToken");
+
+    final List <String> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      ret.add (_describe (aToken));
+      if (aToken.getClass ().getField ("kind").getInt (aToken) == 0)
+        break;
+    }
+    return ret;
+  }
+
+  @SuppressWarnings ("unchecked")
+  private static Spliterator <Object> _createSpliterator (final ClassLoader aLoader,
+                                                          final int nMinChunkSize,
+                                                          final IntPredicate aSplitPoint) throws Exception
+  {
+    return (Spliterator <Object>) Class.forName ("TDParserTokenSpliterator", true, aLoader)
+                                       .getConstructor (CharSequence.class, int.class, IntPredicate.class)
+                                       .newInstance (INPUT, Integer.valueOf (nMinChunkSize), aSplitPoint);
+  }
+
+  @Test
+  public void testSameTokensAsSequential () throws Exception
+  {
+    final ClassLoader aLoader = _generateAndCompile ("target/tokenspliterator/classic");
+    final List <String> aExpected = _readSequential (aLoader);
+    assertEquals ("9:select@1:2-1:7", aExpected.get (0));
+
+    // Split very often
+    for (final int nMinChunkSize : new int [] { 1, 100, 1000, 1000000 })
+      for (final boolean bParallel : new boolean [] { false, true })
+        assertEquals (aExpected,
+                      StreamSupport.stream (_createSpliterator (aLoader, nMinChunkSize, null), bParallel)
+                                   .map (TokenSpliteratorFuncTest::_describe)
+                                   .collect (Collectors.toList ()));
+
+    // Split only before "select"
+    final IntPredicate aBeforeSelect = i -> INPUT.startsWith ("\tselect", i);
+    assertEquals (aExpected,
+                  StreamSupport.stream (_createSpliterator (aLoader, 10, aBeforeSelect), true)
+                               .map (TokenSpliteratorFuncTest::_describe)
+                               .collect (Collectors.toList ()));
+
+    // The convenience method
+    final Method aStream = Class.forName ("TDParserTokenSpliterator", true, aLoader)
+                                .getMethod ("stream", CharSequence.class, boolean.class);
+    assertEquals (aExpected,
+                  ((java.util.stream.Stream <?>) aStream.invoke (null, INPUT, Boolean.TRUE)).map (TokenSpliteratorFuncTest::_describe)
+                                                                                           .collect (Collectors.toList ()));
+  }
+
+  @Test
+  public void testTrySplit () throws Exception
+  {
+    final ClassLoader aLoader = _generateAndCompile ("target/tokenspliterator/classic");
+    final Spliterator <Object> aSpliterator = _createSpliterator (aLoader, 1000, null);
+    final long nSize = aSpliterator.estimateSize ();
+    final Spliterator <Object> aPrefix = aSpliterator.trySplit ();
+    assertNotNull (aPrefix);
+    assertEquals (nSize, aPrefix.estimateSize () + aSpliterator.estimateSize ());
+    // The split is after a line feed
+    assertEquals ('\n', INPUT.charAt ((int) aPrefix.estimateSize () - 1));
+
+    // No more splitting after lexing started
+    assertTrue (aSpliterator.tryAdvance (x -> {}));
+    assertNull (aSpliterator.trySplit ());
+
+    // Too small to split
+    assertNull (_createSpliterator (aLoader, INPUT.length (), null).trySplit ());
+  }
+}
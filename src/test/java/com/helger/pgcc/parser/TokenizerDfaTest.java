@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.annotation.Nonnull;
+
+/**
+ * Test class for class {@link TokenizerDfa}.
+ */
+public final class TokenizerDfaTest
+{
+  private static final String GRAMMAR = "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n" +
+                                        "SKIP : { \" \" | \"\\n\" }\n" +
+                                        "TOKEN : { <IF: \"if\"> | <INT: \"int\"> | <EQ: \"=\"> | <EQEQ: \"==\"> }\n" +
+                                        "TOKEN : { <ID: [\"a\"-\"z\"] ([\"a\"-\"z\",\"0\"-\"9\"])*> | <NUM: ([\"0\"-\"9\"])+> }\n" +
+                                        "void Start() : {} { <EOF> }\n";
+
+  @Before
+  public void setUp ()
+  {
+    Options.init ();
+    Main.reInitAll ();
+  }
+
+  @Nonnull
+  private static TokenizerData _buildTokenizerData (final String grammar) throws Exception
+  {
+    final JavaCCParser parser = new JavaCCParser (grammar);
+    parser.javacc_input ();
+    Semanticize.start ();
+    LexGenJava.s_generateDataOnly = true;
+    new LexGenJava ().start ();
+    assertEquals (0, JavaCCErrors.getErrorCount ());
+    return LexGenJava.s_tokenizerData;
+  }
+
+  @Nonnull
+  private static List <String> _tokenize (final TokenizerDfa dfa, final String input)
+  {
+    final List <String> ret = new ArrayList <> ();
+    int curPos = 0;
+    final int lexState = dfa.getDefaultLexState ();
+    while (curPos < input.length ())
+    {
+      final int beg = curPos;
+      int matchedPos = -1;
+      int matchedKind = Integer.MAX_VALUE;
+      int state = dfa.getStartState (lexState);
+      while (state != TokenizerDfa.NO_STATE && curPos < input.length ())
+      {
+        state = dfa.getNextState (state, input.charAt (curPos));
+        if (state != TokenizerDfa.NO_STATE && dfa.getAcceptKind (state) != Integer.MAX_VALUE)
+        {
+          matchedKind = dfa.getAcceptKind (state);
+          matchedPos = curPos;
+        }
+        curPos++;
+      }
+      if (matchedKind == Integer.MAX_VALUE)
+      {
+        ret.add ("error@" + beg);
+        break;
+      }
+      if (dfa.getMatchInfo (matchedKind).m_matchType == TokenizerData.EMatchType.TOKEN)
+        ret.add (matchedKind + ":" + input.substring (beg, matchedPos + 1));
+      curPos = matchedPos + 1;
+    }
+    return ret;
+  }
+
+  @Test
+  public void testLongestMatchAndPriority () throws Exception
+  {
+    final TokenizerDfa dfa = TokenizerDfa.compile (_buildTokenizerData (GRAMMAR), false);
+    assertTrue (dfa.getStateCount () > 0);
+    assertTrue (dfa.getClassCount () > 1);
+
+    // Kinds: 1,2 SKIP; 3 IF; 4 INT; 5 EQ; 6 EQEQ; 7 ID; 8 NUM
+    final List <String> tokens = _tokenize (dfa, "if iffy int==x1 = 42\nin");
+    assertEquals ("[3:if, 7:iffy, 4:int, 6:==, 7:x1, 5:=, 8:42, 7:in]", tokens.toString ());
+  }
+
+  @Test
+  public void testMinimized () throws Exception
+  {
+    // "a", "b", "c" and "d" lead to equivalent states
+    final String grammar = "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n" +
+                           "SKIP : { \" \" }\n" +
+                           "TOKEN : { <X: (\"a\")+ | [\"b\",\"c\"] (\"a\")* | \"d\" (\"a\")*> }\n" +
+                           "void Start() : {} { <EOF> }\n";
+    final TokenizerDfa dfa = TokenizerDfa.compile (_buildTokenizerData (grammar), false);
+    final TokenizerDfa minimized = dfa.getMinimized ();
+    assertTrue (minimized.getStateCount () < dfa.getStateCount ());
+    assertTrue (minimized.getClassCount () < dfa.getClassCount ());
+    assertEquals (minimized.getStateCount (), minimized.getMinimized ().getStateCount ());
+
+    final String input = "aaa ba ca d daa";
+    assertEquals ("[2:aaa, 2:ba, 2:ca, 2:d, 2:daa]", _tokenize (minimized, input).toString ());
+    assertEquals (_tokenize (dfa, input), _tokenize (minimized, input));
+    assertEquals ("[2:a, error@1]", _tokenize (minimized, "ax").toString ());
+  }
+
+  @Test
+  public void testMinimizedSameTokens () throws Exception
+  {
+    final TokenizerDfa dfa = TokenizerDfa.compile (_buildTokenizerData (GRAMMAR), false);
+    final TokenizerDfa minimized = dfa.getMinimized ();
+    assertTrue (minimized.getStateCount () <= dfa.getStateCount ());
+
+    final String input = "if iffy int==x1 = 42\nin i in9 intx";
+    assertEquals (_tokenize (dfa, input), _tokenize (minimized, input));
+    assertEquals ("[7:ab, error@3]", _tokenize (minimized, "ab #").toString ());
+  }
+
+  @Test
+  public void testTokenError () throws Exception
+  {
+    final TokenizerDfa dfa = TokenizerDfa.compile (_buildTokenizerData (GRAMMAR), false);
+    assertEquals ("[7:ab, error@3]", _tokenize (dfa, "ab #").toString ());
+  }
+
+  @Test
+  public void testCompositeStatesInOtherLexicalState () throws Exception
+  {
+    // The NFA of IN_LINE is not the first one, so its composite start state
+    // must not refer to the states of DEFAULT
+    final String grammar = "PARSER_BEGIN(Test) public class Test {} PARSER_END(Test)\n" +
+                           "MORE : { \"//\" : IN_LINE | <\"/**\" ~[\"/\"]> { input_stream.backup(1); } : IN_DOC }\n" +
+                           "<IN_LINE> SPECIAL_TOKEN : { <LINE: \"\\n\" | \"\\r\" | \"\\r\\n\"> : DEFAULT }\n" +
+                           "<IN_DOC> SPECIAL_TOKEN : { <DOC: \"*/\"> : DEFAULT }\n" +
+                           "<IN_LINE, IN_DOC> MORE : { < ~[] > }\n" +
+                           "void Start() : {} { <EOF> }\n";
+    final TokenizerData td = _buildTokenizerData (grammar);
+    final int inLine = Arrays.asList (td.m_lexStateNames).indexOf ("IN_LINE");
+    final TokenizerDfa dfa = TokenizerDfa.compile (td, false);
+    final int start = dfa.getStartState (inLine);
+    assertEquals (TokenizerDfa.NO_STATE, dfa.getNextState (start, '*'));
+    assertEquals (3, dfa.getAcceptKind (dfa.getNextState (start, '\n')));
+    assertEquals (3, dfa.getAcceptKind (dfa.getNextState (dfa.getNextState (start, '\r'), '\n')));
+  }
+
+  @Test
+  public void testIgnoreCase () throws Exception
+  {
+    Options.setCmdLineOption ("-IGNORE_CASE=true");
+    final TokenizerDfa dfa = TokenizerDfa.compile (_buildTokenizerData (GRAMMAR), Options.isIgnoreCase ());
+    assertEquals ("[3:IF, 7:Iffy, 4:inT]", _tokenize (dfa, "IF Iffy inT").toString ());
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Generates the same grammar with the classic and the DFA token manager and
+ * checks that both produce the same tokens and the same lexical errors.
+ */
+public final class DfaTokenManagerFuncTest
+{
+  private static final String INPUT = "select a, b_1 , * from tab where x == 3.14 and y != 'it''s' /* comment * */\n" +
+                                      "// line comment\n" +
+                                      "selected = (fromage,42) wherever and_ andx\n" +
+                                      "äpfel = '€ 中' 中文 straße\n" +
+                                      "SELECT Select fromAND 1.x 12. /**/ /* a\nb */ and";
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8"),
+                                                      aExtraOptions);
+  }
+
+  private static List <String> _tokenize (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    return _tokenize (aLoader, aStreamClass, aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (sInput)));
+  }
+
+  private static List <String> _tokenize (final ClassLoader aLoader,
+                                          final Class <?> aStreamClass,
+                                          final Object aStream) throws Exception
+  {
+    final Class <?> aTMClass = Class.forName ("TDParserTokenManager", true, aLoader);
+    final Constructor <?> aCtor = aTMClass.getConstructor (aStreamClass);
+    final Object aTM = aCtor.newInstance (aStream);
+    final Method aGetNextToken = aTMClass.getMethod ("getNextToken");
+    final Class <?> aTokenClass = Class.forName ("Token", true, aLoader);
+    final Field aKind = aTokenClass.getField ("kind");
+    final Field aImage = aTokenClass.getField ("image");
+    final Field aSpecial = aTokenClass.getField ("specialToken");
+    final Field aBeginLine = aTokenClass.getField ("beginLine");
+    final Field aBeginColumn = aTokenClass.getField ("beginColumn");
+
+    final List <String> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken;
+      try
+      {
+        aToken = aGetNextToken.invoke (aTM);
+      }
+      catch (final InvocationTargetException ex)
+      {
+        ret.add ("error " + ex.getCause ().getMessage ());
+        break;
+      }
+      final Object aSpecialToken = aSpecial.get (aToken);
+      if (aSpecialToken != null)
+        ret.add ("special " + aKind.getInt (aSpecialToken) + ":" + aImage.get (aSpecialToken));
+      final int nKind = aKind.getInt (aToken);
+      ret.add (nKind + ":" + aImage.get (aToken) + "@" + aBeginLine.getInt (aToken) + ":" + aBeginColumn.getInt (aToken));
+      if (nKind == 0)
+        break;
+    }
+    return ret;
+  }
+
+  private static void _assertSameTokens (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    final ClassLoader aClassic = _generateAndCompile (sOutDir + "/classic", aExtraOptions);
+    final List <String> aDfaOptions = new ArrayList <> (Arrays.asList (aExtraOptions));
+    aDfaOptions.add ("-TOKEN_MANAGER_CODE_GENERATOR=" + DfaJavaCodeGenerator.class.getName ());
+    final ClassLoader aDfa = _generateAndCompile (sOutDir + "/dfa", aDfaOptions.toArray (new String [0]));
+
+    // The NFA is not simulated at runtime
+    final String sTM = new String (Files.readAllBytes (new File (sOutDir + "/dfa/TDParserTokenManager.java").toPath ()),
+                                   StandardCharsets.UTF_8);
+    assertTrue (sTM.contains ("jjMoveDfa"));
+    assertFalse (sTM.contains ("jjMoveNfa"));
+
+    for (final String sInput : new String [] { INPUT, "", "  ", "a 'unterminated", "x ## y", "/* open comment" })
+      assertEquals (_tokenize (aClassic, sInput), _tokenize (aDfa, sInput));
+    final List <String> aError = _tokenize (aDfa, "x ## y");
+    assertEquals (2, aError.size ());
+    assertTrue (aError.get (1).startsWith ("error Lexical error at line 1, column 3."));
+  }
+
+  private static void _assertSameTokensForBytes (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    final ClassLoader aClassic = _generateAndCompile (sOutDir + "/classic", aExtraOptions);
+    final List <String> aByteOptions = new ArrayList <> (Arrays.asList (aExtraOptions));
+    aByteOptions.add ("-BYTE_CHAR_STREAM=true");
+    final ClassLoader aBytes = _generateAndCompile (sOutDir + "/bytes", aByteOptions.toArray (new String [0]));
+    assertFalse (new File (sOutDir + "/bytes/SimpleCharStream.java").exists ());
+
+    final Class <?> aStreamClass = Class.forName ("ByteCharStream", true, aBytes);
+    // Supplementary chars are a single column in the byte stream, so they are
+    // only used at the end of a line
+    for (final String sInput : new String [] { INPUT,
+                                               "",
+                                               "x ## y",
+                                               "/* ä€中 */ straße x /* \uD83D\uDE00 */\nx",
+                                               "x '\uD83D\uDE00'\n'中''€'",
+                                               "a 'unterminated €" })
+    {
+      final List <String> aExpected = _tokenize (aClassic, sInput);
+      final byte [] aUtf8 = sInput.getBytes (StandardCharsets.UTF_8);
+      assertEquals (aExpected,
+                    _tokenize (aBytes,
+                               aStreamClass,
+                               aStreamClass.getConstructor (InputStream.class).newInstance (new ByteArrayInputStream (aUtf8))));
+      assertEquals (aExpected,
+                    _tokenize (aBytes,
+                               aStreamClass,
+                               aStreamClass.getConstructor (ByteBuffer.class).newInstance (ByteBuffer.wrap (aUtf8))));
+      assertEquals (aExpected,
+                    _tokenize (aBytes,
+                               aStreamClass,
+                               aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (sInput))));
+      assertEquals (aExpected,
+                    _tokenize (aBytes,
+                               aStreamClass,
+                               aStreamClass.getConstructor (InputStream.class, Charset.class)
+                                           .newInstance (new ByteArrayInputStream (sInput.getBytes (StandardCharsets.UTF_16)),
+                                                         StandardCharsets.UTF_16)));
+    }
+
+    // Invalid UTF-8 is a lexical error
+    final List <String> aError = _tokenize (aBytes,
+                                            aStreamClass,
+                                            aStreamClass.getConstructor (InputStream.class)
+                                                        .newInstance (new ByteArrayInputStream (new byte [] { 'a', ' ', (byte) 0xc3, 'b' })));
+    assertEquals (2, aError.size ());
+    assertEquals ("20:a@1:1", aError.get (0));
+    assertTrue (aError.get (1).startsWith ("error Lexical error at line 1"));
+  }
+
+  @Test
+  public void testSameTokensAsClassic () throws Exception
+  {
+    _assertSameTokens ("target/dfa/default");
+  }
+
+  @Test
+  public void testSameTokensAsClassicIgnoreCase () throws Exception
+  {
+    _assertSameTokens ("target/dfa/ignorecase", "-IGNORE_CASE=true");
+  }
+
+  @Test
+  public void testByteCharStream () throws Exception
+  {
+    _assertSameTokensForBytes ("target/dfa/bytes");
+  }
+
+  @Test
+  public void testByteCharStreamIgnoreCase () throws Exception
+  {
+    _assertSameTokensForBytes ("target/dfa/bytesignorecase", "-IGNORE_CASE=true");
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017-2025 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser.table;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedGrammarHelper;
+
+/**
+ * Generates the same grammar with the classic and the table driven token
+ * manager and checks that both produce the same tokens - also when many table
+ * driven token managers are used concurrently.
+ */
+public final class TableDrivenTokenManagerFuncTest
+{
+  private static final String INPUT = "select a, b_1 , * from tab where x == 3.14 and y != 'it''s' /* comment * */\n" +
+                                      "// line comment\n" +
+                                      "selected = (fromage,42) wherever and_ andx\n" +
+                                      "\u00e4pfel = '\u20ac \u4e2d' \u4e2d\u6587 stra\u00dfe\n";
+
+  private static ClassLoader _generateAndCompile (final String sOutDir, final String... aExtraOptions) throws Exception
+  {
+    return GeneratedGrammarHelper.generateAndCompile ("src/test/resources/tabledriven/grammar.jj",
+                                                      sOutDir,
+                                                      Arrays.asList ("-JDK_VERSION=1.8", "-STATIC=false"),
+                                                      aExtraOptions);
+  }
+
+  private static List <String> _tokenize (final ClassLoader aLoader, final String sInput) throws Exception
+  {
+    final Class <?> aStreamClass = Class.forName ("SimpleCharStream", true, aLoader);
+    final Class <?> aTMClass = Class.forName ("TDParserTokenManager", true, aLoader);
+    final Object aStream = aStreamClass.getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    final Constructor <?> aCtor = aTMClass.getConstructor (aStreamClass);
+    final Object aTM = aCtor.newInstance (aStream);
+    final Method aGetNextToken = aTMClass.getMethod ("getNextToken");
+    final Class <?> aTokenClass = Class.forName ("Token", true, aLoader);
+    final Field aKind = aTokenClass.getField ("kind");
+    final Field aImage = aTokenClass.getField ("image");
+    final Field aSpecial = aTokenClass.getField ("specialToken");
+
+    final List <String> ret = new ArrayList <> ();
+    while (true)
+    {
+      final Object aToken = aGetNextToken.invoke (aTM);
+      final Object aSpecialToken = aSpecial.get (aToken);
+      if (aSpecialToken != null)
+        ret.add ("special " + aKind.getInt (aSpecialToken) + ":" + aImage.get (aSpecialToken));
+      final int nKind = aKind.getInt (aToken);
+      ret.add (nKind + ":" + aImage.get (aToken));
+      if (nKind == 0)
+        break;
+    }
+    return ret;
+  }
+
+  @Test
+  public void testSameTokensAsClassic () throws Exception
+  {
+    final List <String> aExpected = _tokenize (_generateAndCompile ("target/tabledriven/classic"), INPUT);
+    assertEquals ("9:select", aExpected.get (0));
+
+    final ClassLoader aLoader = _generateAndCompile ("target/tabledriven/table",
+                                                     "-TOKEN_MANAGER_CODE_GENERATOR=" + TableDrivenJavaCodeGenerator.class.getName ());
+    assertEquals (aExpected, _tokenize (aLoader, INPUT));
+
+    // Use many token managers at the same time
+    final ExecutorService aES = Executors.newFixedThreadPool (8);
+    try
+    {
+      final List <Future <List <String>>> aResults = new ArrayList <> ();
+      for (int i = 0; i < 64; i++)
+        aResults.add (aES.submit ( () -> {
+          List <String> ret = null;
+          for (int j = 0; j < 50; j++)
+            ret = _tokenize (aLoader, INPUT);
+          return ret;
+        }));
+      for (final Future <List <String>> aResult : aResults)
+        assertEquals (aExpected, aResult.get ());
+    }
+    finally
+    {
+      aES.shutdown ();
+    }
+  }
+
+  @Test
+  public void testLiteralPrefixes () throws Exception
+  {
+    final ClassLoader aClassicLoader = _generateAndCompile ("target/tabledriven/classic-prefix");
+    final ClassLoader aLoader = _generateAndCompile ("target/tabledriven/table-prefix",
+                                                     "-TOKEN_MANAGER_CODE_GENERATOR=" + TableDrivenJavaCodeGenerator.class.getName ());
+    // Prefixes of literals, literals followed by identifier chars and literals
+    // at the end of the input
+    for (final String sInput : new String [] { "s",
+                                               "sel",
+                                               "selec select selectx fro from",
+                                               "a==b=c!=d",
+                                               "=",
+                                               "==",
+                                               "where",
+                                               "wher",
+                                               "and an a" })
+      assertEquals (sInput, _tokenize (aClassicLoader, sInput), _tokenize (aLoader, sInput));
+  }
+}